@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.benchmark;
+
+import mavlc.services.serialization.BinarySerialization;
+import mavlc.services.serialization.XmlSerialization;
+import mavlc.syntax.module.Module;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares the {@link BinarySerialization binary AST format} with the XStream-based {@link XmlSerialization}
+ * on the decorated reference trees of the test cases. The sizes of both encodings are printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AstSerializationBenchmark {
+	
+	private List<Module> modules;
+	private Path tempDirectory;
+	private List<Path> xmlFiles;
+	private List<Path> binaryFiles;
+	
+	@Setup
+	public void setup() throws IOException {
+		List<Path> references;
+		try(Stream<Path> files = Files.walk(Paths.get("src", "test", "testcases", "trees"))) {
+			references = files.filter(p -> p.toString().endsWith(".xml")).sorted().collect(Collectors.toList());
+		}
+		
+		tempDirectory = Files.createTempDirectory("mavlc-serialization-benchmark");
+		modules = new ArrayList<>();
+		xmlFiles = new ArrayList<>();
+		binaryFiles = new ArrayList<>();
+		long xmlSize = 0, binarySize = 0;
+		for(Path reference : references) {
+			Module module = XmlSerialization.deserialize(reference.toString());
+			modules.add(module);
+			
+			Path xmlFile = tempDirectory.resolve(modules.size() + ".xml");
+			XmlSerialization.serialize(module, xmlFile);
+			xmlFiles.add(xmlFile);
+			xmlSize += XmlSerialization.serialize(module).getBytes(StandardCharsets.UTF_8).length;
+			
+			Path binaryFile = tempDirectory.resolve(modules.size() + ".bin");
+			BinarySerialization.serialize(module, binaryFile);
+			binaryFiles.add(binaryFile);
+			binarySize += Files.size(binaryFile);
+		}
+		System.out.printf("%n%d trees: XML %d bytes, binary %d bytes (%.1f%%)%n",
+				modules.size(), xmlSize, binarySize, 100.0 * binarySize / xmlSize);
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		try(Stream<Path> files = Files.walk(tempDirectory)) {
+			for(Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+				Files.delete(file);
+		}
+	}
+	
+	@Benchmark
+	public void xmlSerialize(Blackhole blackhole) {
+		for(Module module : modules)
+			blackhole.consume(XmlSerialization.serialize(module));
+	}
+	
+	@Benchmark
+	public void binarySerialize(Blackhole blackhole) {
+		for(Module module : modules)
+			blackhole.consume(BinarySerialization.serialize(module));
+	}
+	
+	@Benchmark
+	public void xmlDeserialize(Blackhole blackhole) {
+		for(Path file : xmlFiles)
+			blackhole.consume(XmlSerialization.<Module>deserialize(file.toString()));
+	}
+	
+	@Benchmark
+	public void binaryDeserialize(Blackhole blackhole) throws IOException {
+		for(Path file : binaryFiles)
+			blackhole.consume(BinarySerialization.<Module>deserialize(file));
+	}
+}
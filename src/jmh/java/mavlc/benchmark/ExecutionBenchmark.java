@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.benchmark;
+
+import mavlc.context_analysis.ContextualAnalysis;
+import mavlc.context_analysis.ModuleEnvironment;
+import mavlc.execution.Engine;
+import mavlc.execution.Executable;
+import mavlc.parsing.Parser;
+import mavlc.parsing.Scanner;
+import mavlc.syntax.module.Module;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the execution engines on a 3x3 convolution of a 512x512 image, the
+ * typical image-processing kernel of MAVL programs. The image is computed by the
+ * program instead of read with readImage, so no file I/O is measured.
+ * {@link #java} runs the same kernel written in Java as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionBenchmark {
+	
+	private static final String kernel = "" +
+			"function int clamp(int v) {\n" +
+			"\tvar int r;\n" +
+			"\tr = v;\n" +
+			"\tif(v < 0) r = 0;\n" +
+			"\tif(v > 255) r = 255;\n" +
+			"\treturn r;\n" +
+			"}\n" +
+			"\n" +
+			"function void main() {\n" +
+			"\tvar matrix<int>[512][512] image;\n" +
+			"\tvar matrix<int>[512][512] result;\n" +
+			"\tval matrix<int>[3][3] kernel = [[1, 2, 1], [2, 4, 2], [1, 2, 1]];\n" +
+			"\tvar int y;\n" +
+			"\tvar int x;\n" +
+			"\tvar int i;\n" +
+			"\tvar int j;\n" +
+			"\tvar int sum;\n" +
+			"\tfor(y = 0; y < 512; y = y + 1)\n" +
+			"\t\tfor(x = 0; x < 512; x = x + 1)\n" +
+			"\t\t\timage[y][x] = modulo(x * 7 + y * 13, 256);\n" +
+			"\tfor(y = 1; y < 511; y = y + 1) {\n" +
+			"\t\tfor(x = 1; x < 511; x = x + 1) {\n" +
+			"\t\t\tsum = 0;\n" +
+			"\t\t\tfor(i = 0; i < 3; i = i + 1)\n" +
+			"\t\t\t\tfor(j = 0; j < 3; j = j + 1)\n" +
+			"\t\t\t\t\tsum = sum + kernel[i][j] * image[y + i - 1][x + j - 1];\n" +
+			"\t\t\tresult[y][x] = clamp(sum / 16);\n" +
+			"\t\t}\n" +
+			"\t}\n" +
+			"\tprintInt(result[100][200]);\n" +
+			"}\n";
+	
+	@Param({"interpreter", "closure", "bytecode"})
+	public Engine engine;
+	
+	private Executable executable;
+	
+	@Setup
+	public void setup() {
+		Module module = new Parser(new Scanner(kernel.getBytes(StandardCharsets.UTF_8)).scanCompact()).parse();
+		module.accept(new ContextualAnalysis(new ModuleEnvironment()));
+		executable = engine.prepare(module);
+	}
+	
+	@Benchmark
+	public ByteArrayOutputStream execute() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		executable.execute(new ByteArrayInputStream(new byte[0]), out, Paths.get("."), 0);
+		return out;
+	}
+	
+	@Benchmark
+	public int[] java() {
+		int[] image = new int[512 * 512], result = new int[512 * 512];
+		int[] kernel = { 1, 2, 1, 2, 4, 2, 1, 2, 1 };
+		for(int y = 0; y < 512; y++)
+			for(int x = 0; x < 512; x++)
+				image[y * 512 + x] = (x * 7 + y * 13) % 256;
+		for(int y = 1; y < 511; y++) {
+			for(int x = 1; x < 511; x++) {
+				int sum = 0;
+				for(int i = 0; i < 3; i++)
+					for(int j = 0; j < 3; j++)
+						sum += kernel[i * 3 + j] * image[(y + i - 1) * 512 + x + j - 1];
+				result[y * 512 + x] = Math.min(Math.max(sum / 16, 0), 255);
+			}
+		}
+		return result;
+	}
+}
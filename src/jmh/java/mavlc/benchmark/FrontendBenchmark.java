@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.benchmark;
+
+import mavlc.context_analysis.ContextualAnalysis;
+import mavlc.context_analysis.ModuleEnvironment;
+import mavlc.parsing.Parser;
+import mavlc.parsing.Scanner;
+import mavlc.parsing.Token;
+import mavlc.parsing.TokenStore;
+import mavlc.services.serialization.XmlSerialization;
+import mavlc.services.visualization.Dumper;
+import mavlc.services.visualization.VisualGraph;
+import mavlc.services.visualization.Visualizer;
+import mavlc.syntax.module.Module;
+import mavlc.testing.ProgramGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage of the compiler front end and the AST services on a synthetic program
+ * built by the {@link ProgramGenerator}. The size of the program is controlled by the parameters,
+ * e.g. {@code -p functions=1024 -p depth=4}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrontendBenchmark {
+	
+	@Param({"16", "256"})
+	public int functions;
+	
+	@Param({"3"})
+	public int depth;
+	
+	@Param({"8"})
+	public int matrixSize;
+	
+	@Param({"42"})
+	public long seed;
+	
+	private byte[] source;
+	private TokenStore tokens;
+	private Module module;
+	
+	/** A fresh syntax tree for each invocation of {@link #analyze}, the analysis decorates the tree in place. */
+	@State(Scope.Thread)
+	public static class UndecoratedModule {
+		Module module;
+		
+		@Setup(Level.Invocation)
+		public void setup(FrontendBenchmark benchmark) {
+			module = new Parser(benchmark.tokens).parse();
+		}
+	}
+	
+	@Setup
+	public void setup() {
+		String program = new ProgramGenerator(seed)
+				.setFunctionCount(functions)
+				.setNestingDepth(depth)
+				.setMatrixSize(matrixSize)
+				.generate();
+		source = program.getBytes(StandardCharsets.UTF_8);
+		tokens = new Scanner(source).scanCompact();
+		module = new Parser(tokens).parse();
+		module.accept(new ContextualAnalysis(new ModuleEnvironment()));
+		System.out.printf("%n%d functions: %d bytes, %d tokens%n", functions, source.length, tokens.size());
+	}
+	
+	@Benchmark
+	public Deque<Token> scan() {
+		return new Scanner(source).scan();
+	}
+	
+	@Benchmark
+	public Module parse() {
+		return new Parser(tokens).parse();
+	}
+	
+	@Benchmark
+	public ModuleEnvironment analyze(UndecoratedModule undecorated) {
+		ModuleEnvironment env = new ModuleEnvironment();
+		undecorated.module.accept(new ContextualAnalysis(env));
+		return env;
+	}
+	
+	@Benchmark
+	public String dump() {
+		return Dumper.dump(module);
+	}
+	
+	@Benchmark
+	public String serializeXml() {
+		return XmlSerialization.serialize(module);
+	}
+	
+	@Benchmark
+	public VisualGraph visualize() {
+		return new Visualizer().buildVisualGraph(module, true);
+	}
+}
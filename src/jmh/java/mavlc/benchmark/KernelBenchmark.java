@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.benchmark;
+
+import mavlc.execution.Kernels;
+import mavlc.execution.ParallelKernels;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the tiled matrix kernels with the untiled loops and the parallel kernels
+ * on square float matrices.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KernelBenchmark {
+	
+	@Param({"64", "512"})
+	public int size;
+	
+	private float[] left, right;
+	
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		left = new float[size * size];
+		right = new float[size * size];
+		for(int i = 0; i < left.length; i++) {
+			left[i] = random.nextFloat();
+			right[i] = random.nextFloat();
+		}
+	}
+	
+	@Benchmark
+	public float[] multiply() {
+		return Kernels.matrixMultiply(left, right, size, size, size);
+	}
+	
+	@Benchmark
+	public float[] multiplyUntiled() {
+		float[] result = new float[size * size];
+		for(int i = 0; i < size; i++) {
+			for(int k = 0; k < size; k++) {
+				float factor = left[i * size + k];
+				for(int j = 0; j < size; j++) result[i * size + j] += factor * right[k * size + j];
+			}
+		}
+		return result;
+	}
+	
+	@Benchmark
+	public float[] multiplyParallel() {
+		return ParallelKernels.matrixMultiply(left, right, size, size, size);
+	}
+	
+	@Benchmark
+	public float[] transpose() {
+		return Kernels.transpose(left, size, size);
+	}
+	
+	@Benchmark
+	public float[] transposeUntiled() {
+		float[] result = new float[size * size];
+		for(int i = 0; i < size; i++)
+			for(int j = 0; j < size; j++) result[j * size + i] = left[i * size + j];
+		return result;
+	}
+}
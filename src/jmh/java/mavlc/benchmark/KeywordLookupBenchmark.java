@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.benchmark;
+
+import mavlc.parsing.KeywordTable;
+import mavlc.parsing.Scanner;
+import mavlc.parsing.Token;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures keyword recognition in the {@link Scanner} on identifier-heavy input.
+ * <p>
+ * {@code linearLookup} replicates the former linear scan over all keyword patterns, {@code tableLookup}
+ * uses the perfect hash {@link KeywordTable}. {@code scanIdentifiers} runs the scanner on a whole program.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeywordLookupBenchmark {
+	
+	private static final List<Token.TokenType> keywords = Arrays.asList(
+			Token.TokenType.INT, Token.TokenType.FLOAT, Token.TokenType.BOOL, Token.TokenType.VOID, Token.TokenType.STRING, Token.TokenType.MATRIX, Token.TokenType.VECTOR,
+			Token.TokenType.VAL, Token.TokenType.VAR, Token.TokenType.FOR, Token.TokenType.IF, Token.TokenType.ELSE, Token.TokenType.RETURN, Token.TokenType.FUNCTION, Token.TokenType.SWITCH, Token.TokenType.CASE, Token.TokenType.DEFAULT, Token.TokenType.FOREACH, Token.TokenType.RECORD);
+	
+	// the keyword token types are spelled like their lower case names
+	private static final String[] keywordSpellings = keywords.stream().map(keyword -> keyword.name().toLowerCase(Locale.ROOT)).toArray(String[]::new);
+	
+	private static final KeywordTable table = new KeywordTable(keywords,
+			new String[]{"true", "false"}, new Token.TokenType[]{Token.TokenType.BOOLLIT, Token.TokenType.BOOLLIT});
+	
+	private StringBuilder[] spellings;
+	private byte[] source;
+	
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		String[] names = new String[512];
+		for(int i = 0; i < names.length; i++)
+			names[i] = (i % 3 == 0 ? "pixel" : i % 3 == 1 ? "value" : "idx") + "_" + i;
+		
+		// every fourth spelling is a keyword, the rest are identifiers
+		spellings = new StringBuilder[4096];
+		for(int i = 0; i < spellings.length; i++) {
+			String spelling = i % 4 == 0 ? keywordSpellings[random.nextInt(keywordSpellings.length)] : names[random.nextInt(names.length)];
+			spellings[i] = new StringBuilder(spelling);
+		}
+		
+		StringBuilder program = new StringBuilder();
+		program.append("function void main() {\n");
+		for(int i = 0; i < 20000; i++) {
+			String a = names[random.nextInt(names.length)];
+			String b = names[random.nextInt(names.length)];
+			String c = names[random.nextInt(names.length)];
+			program.append("\tval int ").append(a).append("_v").append(i).append(" = ").append(b).append(" * ").append(c).append(";\n");
+			program.append("\t").append(b).append(" = ").append(c).append(" + ").append(a).append(";\n");
+		}
+		program.append("}\n");
+		source = program.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+	
+	@Benchmark
+	public void linearLookup(Blackhole blackhole) {
+		for(StringBuilder spelling : spellings) {
+			Token.TokenType type = Token.TokenType.ID;
+			for(int i = 0; i < keywordSpellings.length; i++) {
+				if(keywordSpellings[i].equals(spelling.toString())) {
+					type = keywords.get(i);
+					break;
+				}
+			}
+			blackhole.consume(type);
+		}
+	}
+	
+	@Benchmark
+	public void tableLookup(Blackhole blackhole) {
+		for(StringBuilder spelling : spellings) {
+			int slot = table.find(spelling);
+			blackhole.consume(slot >= 0 ? table.type(slot) : Token.TokenType.ID);
+		}
+	}
+	
+	@Benchmark
+	public Deque<Token> scanIdentifiers() {
+		return new Scanner(source).scan();
+	}
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.benchmark;
+
+import mavlc.context_analysis.ContextualAnalysis;
+import mavlc.context_analysis.ModuleEnvironment;
+import mavlc.execution.Engine;
+import mavlc.execution.Executable;
+import mavlc.optimization.Optimizer;
+import mavlc.parsing.Parser;
+import mavlc.parsing.Scanner;
+import mavlc.syntax.module.Module;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures an image pipeline of three foreach loops over a 512x512 matrix with and without
+ * the optimizer, which fuses the loops into a single traversal of the matrix. The cache misses
+ * per operation can be compared with the perfnorm profiler of JMH where perf is available.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopFusionBenchmark {
+	
+	private static final String pipeline = "" +
+			"function void main() {\n" +
+			"\tvar matrix<int>[512][512] image;\n" +
+			"\tvar int y;\n" +
+			"\tvar int x;\n" +
+			"\tvar int sum;\n" +
+			"\tfor(y = 0; y < 512; y = y + 1)\n" +
+			"\t\tfor(x = 0; x < 512; x = x + 1)\n" +
+			"\t\t\timage[y][x] = x + y;\n" +
+			"\t// normalize, threshold and invert\n" +
+			"\tforeach(var int p : image)\n" +
+			"\t\tp = p * 255 / 1022;\n" +
+			"\tforeach(var int p : image)\n" +
+			"\t\tp = p > 128 ? 255 : 0;\n" +
+			"\tforeach(var int p : image)\n" +
+			"\t\tp = 255 - p;\n" +
+			"\tsum = 0;\n" +
+			"\tforeach(val int p : image)\n" +
+			"\t\tsum = sum + p;\n" +
+			"\tprintInt(sum);\n" +
+			"}\n";
+	
+	@Param({"interpreter", "closure", "bytecode"})
+	public Engine engine;
+	
+	@Param({"false", "true"})
+	public boolean optimize;
+	
+	private Executable executable;
+	
+	@Setup
+	public void setup() {
+		Module module = new Parser(new Scanner(pipeline.getBytes(StandardCharsets.UTF_8)).scanCompact()).parse();
+		module.accept(new ContextualAnalysis(new ModuleEnvironment()));
+		if(optimize) module = new Optimizer().optimize(module).module;
+		executable = engine.prepare(module);
+	}
+	
+	@Benchmark
+	public ByteArrayOutputStream execute() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		executable.execute(new ByteArrayInputStream(new byte[0]), out, Paths.get("."), 0);
+		return out;
+	}
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.benchmark;
+
+import mavlc.parsing.Scanner;
+import mavlc.parsing.Token;
+import mavlc.parsing.TokenStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares the different input sources of the {@link Scanner} on a large source file
+ * built by concatenating the MAVL test cases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScannerBenchmark {
+	
+	/** Approximate size of the scanned source in kilobytes. */
+	@Param({"64", "4096"})
+	public int sizeKb;
+	
+	private File sourceFile;
+	private byte[] sourceBytes;
+	
+	@Setup
+	public void setup() throws IOException {
+		sourceBytes = buildSource(sizeKb * 1024);
+		sourceFile = File.createTempFile("mavlc-scanner-benchmark", ".mavl");
+		sourceFile.deleteOnExit();
+		Files.write(sourceFile.toPath(), sourceBytes);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		//noinspection ResultOfMethodCallIgnored
+		sourceFile.delete();
+	}
+	
+	@Benchmark
+	public Deque<Token> streamingScan() throws IOException {
+		try(InputStream in = new FileInputStream(sourceFile)) {
+			return new Scanner(in).scan();
+		}
+	}
+	
+	@Benchmark
+	public Deque<Token> mappedScan() throws IOException {
+		return new Scanner(sourceFile).scan();
+	}
+	
+	@Benchmark
+	public Deque<Token> inMemoryScan() {
+		return new Scanner(sourceBytes).scan();
+	}
+	
+	@Benchmark
+	public TokenStore compactScan() throws IOException {
+		return new Scanner(sourceFile).scanCompact();
+	}
+	
+	/** Concatenates the test case sources until the requested size is reached. */
+	static byte[] buildSource(int size) throws IOException {
+		List<Path> sources;
+		try(Stream<Path> files = Files.walk(Paths.get("src", "test", "testcases"))) {
+			sources = files.filter(p -> p.toString().endsWith(".mavl")).sorted().collect(Collectors.toList());
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(size + 4096);
+		while(out.size() < size) {
+			for(Path source : sources) {
+				out.write(Files.readAllBytes(source));
+				out.write('\n');
+			}
+		}
+		return out.toByteArray();
+	}
+}
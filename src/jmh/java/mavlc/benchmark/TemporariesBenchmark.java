@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.benchmark;
+
+import mavlc.context_analysis.ContextualAnalysis;
+import mavlc.context_analysis.ModuleEnvironment;
+import mavlc.execution.Engine;
+import mavlc.execution.Executable;
+import mavlc.parsing.Parser;
+import mavlc.parsing.Scanner;
+import mavlc.syntax.module.Module;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures structure operations on 512x512 matrices whose intermediate results are
+ * temporaries, which the closure engine writes to reused buffers. The allocated bytes
+ * per operation can be compared with the gc profiler of JMH.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemporariesBenchmark {
+	
+	private static final String program = "" +
+			"function void main() {\n" +
+			"\tvar matrix<float>[512][512] a;\n" +
+			"\tvar matrix<float>[512][512] b;\n" +
+			"\tvar float sum;\n" +
+			"\tvar int i;\n" +
+			"\tforeach(var float x : a)\n" +
+			"\t\tx = 0.5;\n" +
+			"\tforeach(var float x : b)\n" +
+			"\t\tx = 0.25;\n" +
+			"\tfor(i = 0; i < 16; i = i + 1)\n" +
+			"\t\tsum = sum + (((a + b) * 0.5 - ~b) * (a - b))[i][i];\n" +
+			"\tprintFloat(sum);\n" +
+			"}\n";
+	
+	@Param({"interpreter", "closure", "bytecode"})
+	public Engine engine;
+	
+	private Executable executable;
+	
+	@Setup
+	public void setup() {
+		Module module = new Parser(new Scanner(program.getBytes(StandardCharsets.UTF_8)).scanCompact()).parse();
+		module.accept(new ContextualAnalysis(new ModuleEnvironment()));
+		executable = engine.prepare(module);
+	}
+	
+	@Benchmark
+	public ByteArrayOutputStream execute() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		executable.execute(new ByteArrayInputStream(new byte[0]), out, Paths.get("."), 0);
+		return out;
+	}
+}
@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc;
+
+import mavlc.context_analysis.AnalysisCache;
+import mavlc.execution.Engine;
+import mavlc.optimization.Optimizer;
+import mavlc.parsing.ParseCache;
+import mavlc.util.Ansi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs the selected tasks on a single source file in a pipeline of its own.
+ * Jobs share no mutable state, so several of them can run concurrently.
+ */
+public class CompilationJob implements Callable<CompilationJob> {
+	
+	/**
+	 * Determines the output path of a dump task for the given source file.
+	 */
+	@FunctionalInterface
+	public interface DumpPathResolver {
+		Path resolve(Path sourcePath, String option, String extension);
+	}
+	
+	public final Path sourcePath;
+	
+	protected final Set<Task> tasks;
+	protected final DumpPathResolver dumpPaths;
+	protected final Pipeline pipeline = new Pipeline();
+	protected final Map<Task, Long> timings = new EnumMap<>(Task.class);
+	
+	protected final ByteArrayOutputStream logBuffer;
+	protected final PrintStream log;
+	
+	protected Task failedTask;
+	protected Exception error;
+	
+	protected int maxCycles;
+	protected boolean verbose;
+	
+	/**
+	 * Creates a job whose log output, including the output of an executed program, is buffered until {@link #getLog()} is called.
+	 */
+	public CompilationJob(Path sourcePath, Set<Task> tasks, DumpPathResolver dumpPaths) {
+		this.sourcePath = sourcePath;
+		this.tasks = tasks;
+		this.dumpPaths = dumpPaths;
+		this.logBuffer = new ByteArrayOutputStream();
+		this.log = new PrintStream(logBuffer, true, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Creates a job which writes its log output and the output of an executed program directly to the given stream.
+	 */
+	public CompilationJob(Path sourcePath, Set<Task> tasks, DumpPathResolver dumpPaths, PrintStream log) {
+		this.sourcePath = sourcePath;
+		this.tasks = tasks;
+		this.dumpPaths = dumpPaths;
+		this.logBuffer = null;
+		this.log = log;
+	}
+	
+	/**
+	 * Runs the selected tasks in dependency order. Execution stops at the first task that fails.
+	 *
+	 * @return This job
+	 */
+	@Override
+	public CompilationJob call() {
+		for(Task task : Task.values()) {
+			if(!tasks.contains(task)) continue;
+			if(verbose) log.println("- Running task: " + Ansi.brightMagenta + task + Ansi.reset);
+			long start = System.nanoTime();
+			boolean success;
+			try {
+				success = runTask(task);
+			} catch(RuntimeException e) {
+				pipeline.error = e;
+				success = false;
+			}
+			timings.put(task, System.nanoTime() - start);
+			if(!success) {
+				failedTask = task;
+				error = pipeline.getError();
+				break;
+			}
+		}
+		return this;
+	}
+	
+	protected boolean runTask(Task task) {
+		switch(task) {
+			case parse:
+				return pipeline.parseProgram(sourcePath);
+			case dumpSource:
+				pipeline.dumpSource(dumpPath("dump-source", "_dump.mavl"));
+				return true;
+			case dumpHtml:
+				pipeline.dumpHtml(dumpPath("dump-html", "_dump.html"));
+				return true;
+			case dumpXmlAst:
+				pipeline.dumpAstXml(dumpPath("dump-xml-ast", ".syn.xml"));
+				return true;
+			case dumpDotAst:
+				pipeline.dumpDot(dumpPath("dump-dot-ast", ".syn.dot"), false);
+				return true;
+			case analyze:
+				if(!pipeline.analyzeProgram()) return false;
+				Optimizer.Result optimization = pipeline.getOptimization();
+				if(verbose && optimization != null)
+					log.println("  Optimization changed " + optimization.nodesBefore + " to " + optimization.nodesAfter + " nodes, inlined " + optimization.inlinedCalls
+							+ " calls, removed " + optimization.removedChecks + " index checks");
+				// also without verbose output, as these accesses fail when they are executed
+				if(optimization != null)
+					for(String warning : optimization.warnings)
+						log.println(Ansi.yellow + "Warning: " + sourcePath.getFileName() + ":" + warning + Ansi.reset);
+				return true;
+			case dumpXmlDast:
+				pipeline.dumpDastXml(dumpPath("dump-xml-dast", ".ctx.xml"));
+				return true;
+			case dumpDotDast:
+				pipeline.dumpDot(dumpPath("dump-dot-dast", ".ctx.dot"), true);
+				return true;
+			case dumpOptimization:
+				pipeline.dumpOptimization(dumpPath("dump-opt", "_opt.mavl"));
+				return true;
+			case compile:
+				return pipeline.compileProgram();
+			case dumpImage:
+				pipeline.dumpImage(dumpPath("dump-image", ".tam"));
+				return true;
+			case dumpDisasm:
+				pipeline.dumpDisasm(dumpPath("dump-disasm", "_disasm.txt"));
+				return true;
+			case dumpSymbols:
+				pipeline.dumpSymbols(dumpPath("dump-symbols", ".sym"));
+				return true;
+			case dumpClass:
+				pipeline.dumpClass(dumpPath("dump-class", ".class"));
+				return true;
+			case execute:
+				// a buffered job keeps the program output in its log, so concurrent jobs do not interleave it
+				return pipeline.executeProgram(log, maxCycles);
+			case dumpOutput:
+				pipeline.dumpOutput(dumpPath("dump-output", ".txt"));
+				return true;
+			case dumpProfile:
+				pipeline.dumpProfile(dumpPath("dump-profile", "_profile.txt"));
+				return true;
+			default:
+				throw new IllegalArgumentException("Unknown task " + task);
+		}
+	}
+	
+	/**
+	 * @param verbose Whether to log the running tasks and the optimization results
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+	
+	/**
+	 * Enables the given parse cache.
+	 *
+	 * @see Pipeline#setParseCache(ParseCache)
+	 */
+	public void setParseCache(ParseCache parseCache) {
+		pipeline.setParseCache(parseCache);
+	}
+	
+	/**
+	 * Enables incremental analysis using the given cache.
+	 *
+	 * @see Pipeline#setAnalysisCache(AnalysisCache)
+	 */
+	public void setAnalysisCache(AnalysisCache analysisCache) {
+		pipeline.setAnalysisCache(analysisCache);
+	}
+	
+	/**
+	 * Limits the number of statements executed by the execute task.
+	 *
+	 * @param maxCycles The maximum number of statements, or 0 for no limit
+	 */
+	public void setMaxCycles(int maxCycles) {
+		this.maxCycles = maxCycles;
+	}
+	
+	/**
+	 * @see Pipeline#setOptimizer(Optimizer)
+	 */
+	public void setOptimizer(Optimizer optimizer) {
+		pipeline.setOptimizer(optimizer);
+	}
+	
+	/**
+	 * @see Pipeline#setEngine(Engine)
+	 */
+	public void setEngine(Engine engine) {
+		pipeline.setEngine(engine);
+	}
+	
+	/**
+	 * @see Pipeline#setParallelThreshold(int)
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		pipeline.setParallelThreshold(parallelThreshold);
+	}
+	
+	/**
+	 * Enables per-stage statistics for this job.
+	 *
+	 * @see Pipeline#setStatistics(PipelineStatistics)
+	 */
+	public void enableStatistics() {
+		pipeline.setStatistics(new PipelineStatistics());
+	}
+	
+	/**
+	 * @return The per-stage statistics, or null if they were not enabled
+	 */
+	public PipelineStatistics getStatistics() {
+		return pipeline.getStatistics();
+	}
+	
+	private Path dumpPath(String option, String extension) {
+		return dumpPaths.resolve(sourcePath, option, extension);
+	}
+	
+	public Pipeline getPipeline() {
+		return pipeline;
+	}
+	
+	public boolean succeeded() {
+		return error == null;
+	}
+	
+	/**
+	 * @return The task that failed, or null if all tasks completed successfully
+	 */
+	public Task getFailedTask() {
+		return failedTask;
+	}
+	
+	public Exception getError() {
+		return error;
+	}
+	
+	/**
+	 * @return The wall-clock time in nanoseconds spent in each task that was run
+	 */
+	public Map<Task, Long> getTimings() {
+		return timings;
+	}
+	
+	/**
+	 * @return The buffered log output, or an empty string if the log was written directly to a stream
+	 */
+	public String getLog() {
+		return logBuffer == null ? "" : new String(logBuffer.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -11,33 +11,66 @@
  ******************************************************************************/
 package mavlc;
 
+import mavlc.context_analysis.AnalysisCache;
+import mavlc.errors.CompilationError;
+import mavlc.errors.InternalCompilerError;
+import mavlc.execution.Engine;
+import mavlc.parsing.ParseCache;
+import mavlc.optimization.Optimizer;
 import mavlc.util.Ansi;
+import mavlc.util.TextUtil;
 import org.apache.commons.cli.*;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 /**
  * The MAVL compiler driver.
  */
 public class Driver {
 	
-	public static boolean verbose;
-	
 	public static void main(String[] args) {
+		int status = run(args, Paths.get(""));
+		if(status != 0)
+			System.exit(status);
+	}
+	
+	/**
+	 * Runs the compiler driver in the current JVM, writing to {@link System#out} and {@link System#err}.
+	 *
+	 * @param args The command line arguments
+	 * @param workingDirectory The directory against which relative input and error dump paths are resolved
+	 * @return The exit status
+	 */
+	public static int run(String[] args, Path workingDirectory) {
+		return run(args, workingDirectory, null);
+	}
+	
+	/**
+	 * Runs the compiler driver in the current JVM, writing to {@link System#out} and {@link System#err}.
+	 *
+	 * @param args The command line arguments
+	 * @param workingDirectory The directory against which relative input and error dump paths are resolved
+	 * @param analysisCaches Supplies the caches for incremental analysis, or null to analyze whole programs
+	 * @return The exit status
+	 */
+	public static int run(String[] args, Path workingDirectory, AnalysisCache.Provider analysisCaches) {
 		try {
-			Options options = setupOptions();
+			TaskCollection stageOptions = new TaskCollection();
+			TaskCollection dumpOptions = new TaskCollection();
+			Options options = setupOptions(stageOptions, dumpOptions);
 			CommandLine cmd = new DefaultParser().parse(options, args);
-			boolean dumpErrors = cmd.hasOption("dump-errors");
-			Path errorPath = dumpErrors ? Paths.get(cmd.getOptionValue("dump-errors")) : null;
 			
-			verbose = !cmd.hasOption("quiet");
+			boolean verbose = !cmd.hasOption("quiet");
 			if(!cmd.hasOption("color") && System.getProperty("os.name").toLowerCase().contains("win") && System.getenv("MAVL_COLOR") == null) {
 				Ansi.disable();
 				// System.out.println("================================================================");
@@ -51,19 +84,25 @@ public class Driver {
 			}
 			
 			if(cmd.hasOption("help")) {
-				printHelp(options);
-				System.exit(0);
+				printHelp(options, stageOptions, dumpOptions);
+				return 0;
 			}
 			
 			if(cmd.getArgList().isEmpty()) {
 				System.err.println(Ansi.red + "No input file specified." + Ansi.reset);
-				System.exit(1);
+				return 1;
 			}
 			
-			Path sourcePath = Paths.get(cmd.getArgList().get(0));
-			if(!Files.exists(sourcePath) || !Files.isReadable(sourcePath)) {
-				System.err.println(Ansi.red + "The specified input file " + sourcePath.toAbsolutePath() + " is not accessible!" + Ansi.reset);
-				System.exit(1);
+			List<Path> sourcePaths = collectSourceFiles(cmd.getArgList(), workingDirectory);
+			if(sourcePaths.isEmpty()) {
+				System.err.println(Ansi.red + "No MAVL source files found in the specified directories." + Ansi.reset);
+				return 1;
+			}
+			for(Path sourcePath : sourcePaths) {
+				if(!Files.exists(sourcePath) || !Files.isReadable(sourcePath)) {
+					System.err.println(Ansi.red + "The specified input file " + sourcePath.toAbsolutePath() + " is not accessible!" + Ansi.reset);
+					return 1;
+				}
 			}
 			
 			Set<Task> tasks = parseTasks(cmd);
@@ -74,102 +113,305 @@ public class Driver {
 				tasks.add(task);
 			}
 			
-			Task.resolveDependencies(tasks);
-			
-			Pipeline pipeline = new Pipeline();
-			
-			////////////////////////////////////////
-			//////// execute selected tasks ////////
-			////////////////////////////////////////
-			
-			if(tasks.contains(Task.parse)) {
-				logTask(Task.parse);
-				if(!pipeline.parseProgram(sourcePath))
-					handleError(pipeline, errorPath);
-			}
-			
-			if(tasks.contains(Task.dumpSource)) {
-				logTask(Task.dumpSource);
-				pipeline.dumpSource(getDumpPath(cmd, "dump-source", sourcePath, "_dump.mavl"));
-			}
-			
-			if(tasks.contains(Task.dumpHtml)) {
-				logTask(Task.dumpHtml);
-				pipeline.dumpHtml(getDumpPath(cmd, "dump-html", sourcePath, "_dump.html"));
-			}
-			
-			if(tasks.contains(Task.dumpXmlAst)) {
-				logTask(Task.dumpXmlAst);
-				pipeline.dumpAstXml(getDumpPath(cmd, "dump-xml-ast", sourcePath, ".syn.xml"));
-			}
-			
-			if(tasks.contains(Task.dumpDotAst)) {
-				logTask(Task.dumpDotAst);
-				pipeline.dumpDot(getDumpPath(cmd, "dump-dot-ast", sourcePath, ".syn.dot"), false);
-			}
-			
-			if(tasks.contains(Task.analyze)) {
-				logTask(Task.analyze);
-				if(!pipeline.analyzeProgram())
-					handleError(pipeline, errorPath);
-			}
-			
-			if(tasks.contains(Task.dumpXmlDast)) {
-				logTask(Task.dumpXmlDast);
-				pipeline.dumpDastXml(getDumpPath(cmd, "dump-xml-dast", sourcePath, ".ctx.xml"));
-			}
+			Task.resolveDependencies(tasks, verbose);
 			
-			if(tasks.contains(Task.dumpDotDast)) {
-				logTask(Task.dumpDotDast);
-				pipeline.dumpDot(getDumpPath(cmd, "dump-dot-dast", sourcePath, ".ctx.dot"), true);
+			RunOptions runOptions = new RunOptions(cmd, workingDirectory, dumpOptions, tasks, verbose, analysisCaches);
+			if(sourcePaths.size() == 1) {
+				compileSingle(runOptions, sourcePaths.get(0));
+			} else {
+				int workers = parseWorkerCount(cmd, sourcePaths.size());
+				if(!compileBatch(runOptions, sourcePaths, workers))
+					return 1;
 			}
-			
-			if(tasks.contains(Task.compile)) {
-				logTask(Task.compile);
-				if(!pipeline.compileProgram())
-					handleError(pipeline, errorPath);
+			return 0;
+		} catch(IOException e) {
+			System.err.println(Ansi.red + "Failed to collect input files: " + e.getMessage() + Ansi.reset);
+			return 1;
+		} catch(ParseException e) {
+			e.printStackTrace();
+			return 1;
+		} catch(RuntimeException e) {
+			e.printStackTrace();
+			return 1;
+		}
+	}
+	
+	private static void compileSingle(RunOptions runOptions, Path sourcePath) {
+		CompilationJob job = runOptions.configure(new CompilationJob(sourcePath, runOptions.tasks, (source, option, extension) -> getDumpPath(runOptions.cmd, option, source, extension, false), System.out));
+		job.call();
+		if(runOptions.statistics)
+			reportStatistics(runOptions, Collections.singletonList(job));
+		if(!job.succeeded())
+			handleError(job.getPipeline(), runOptions.errorPath);
+	}
+	
+	/**
+	 * Compiles the given files concurrently, one pipeline per file. The log and errors of each
+	 * file are reported in input order, independent of the order in which the jobs finish.
+	 *
+	 * @return Whether all files were processed successfully
+	 */
+	private static boolean compileBatch(RunOptions runOptions, List<Path> sourcePaths, int workers) {
+		if(runOptions.verbose && hasExplicitDumpPath(runOptions.cmd, runOptions.dumpOptions))
+			System.err.println(Ansi.yellow + "Explicit dump paths are ignored when compiling multiple files." + Ansi.reset);
+		
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+			Thread thread = new Thread(runnable, "mavlc-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		List<Future<CompilationJob>> futures = new ArrayList<>(sourcePaths.size());
+		for(Path sourcePath : sourcePaths) {
+			CompilationJob job = new CompilationJob(sourcePath, runOptions.tasks, (source, option, extension) -> getDumpPath(runOptions.cmd, option, source, extension, true));
+			futures.add(executor.submit(runOptions.configure(job)));
+		}
+		
+		List<CompilationJob> jobs = new ArrayList<>(sourcePaths.size());
+		try {
+			for(Future<CompilationJob> future : futures) {
+				CompilationJob job = future.get();
+				jobs.add(job);
+				reportJob(runOptions, job);
 			}
-			
-			if(tasks.contains(Task.dumpImage)) {
-				logTask(Task.dumpImage);
-				pipeline.dumpImage(getDumpPath(cmd, "dump-image", sourcePath, ".tam"));
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InternalCompilerError("Interrupted while waiting for compilation jobs");
+		} catch(ExecutionException e) {
+			throw new InternalCompilerError("Compilation job failed unexpectedly: " + e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		printSummary(jobs, System.nanoTime() - start, workers);
+		if(runOptions.parseCache != null)
+			System.out.println("  parse cache: " + runOptions.parseCache.getHitCount() + " hits, " + runOptions.parseCache.getMissCount() + " misses");
+		if(runOptions.statistics)
+			reportStatistics(runOptions, jobs);
+		return jobs.stream().allMatch(CompilationJob::succeeded);
+	}
+	
+	private static void reportJob(RunOptions runOptions, CompilationJob job) {
+		if(runOptions.verbose)
+			System.out.println(Ansi.brightBlue + job.sourcePath.toString() + Ansi.reset);
+		// without verbose output the log only holds the output of the executed program
+		System.out.print(job.getLog());
+		if(job.succeeded()) return;
+		
+		System.err.println(Ansi.red + job.sourcePath.toString() + ": " + job.getFailedTask() + " failed" + Ansi.reset);
+		String message = job.getError() instanceof CompilationError ? job.getError().getMessage() : job.getError().toString();
+		System.err.println(message);
+		if(runOptions.errorPath != null) {
+			try {
+				Files.write(getDumpPath(runOptions.cmd, "dump-errors", job.sourcePath, "_errors.txt", true), message.getBytes());
+			} catch(IOException e) {
+				e.printStackTrace();
 			}
-			
-			if(tasks.contains(Task.dumpSymbols)) {
-				logTask(Task.dumpSymbols);
-				pipeline.dumpSymbols(getDumpPath(cmd, "dump-symbols", sourcePath, ".sym"));
+		}
+	}
+	
+	private static void printSummary(List<CompilationJob> jobs, long wallTime, int workers) {
+		long failed = jobs.stream().filter(job -> !job.succeeded()).count();
+		System.out.println();
+		System.out.println("Processed " + jobs.size() + " files" +
+				(failed == 0 ? "" : " (" + Ansi.red + failed + " failed" + Ansi.reset + ")") +
+				" in " + formatMillis(wallTime) + " on " + workers + (workers == 1 ? " worker" : " workers"));
+		
+		Map<Task, Long> totals = new EnumMap<>(Task.class);
+		Map<Task, Integer> counts = new EnumMap<>(Task.class);
+		for(CompilationJob job : jobs) {
+			for(Map.Entry<Task, Long> entry : job.getTimings().entrySet()) {
+				totals.merge(entry.getKey(), entry.getValue(), Long::sum);
+				counts.merge(entry.getKey(), 1, Integer::sum);
 			}
-			
-			if(tasks.contains(Task.dumpDisasm)) {
-				logTask(Task.dumpDisasm);
-				pipeline.dumpDisasm(getDumpPath(cmd, "dump-disasm", sourcePath, "_disasm.txt"));
+		}
+		for(Map.Entry<Task, Long> entry : totals.entrySet()) {
+			int count = counts.get(entry.getKey());
+			System.out.println("  " + TextUtil.padRight(entry.getKey().toString(), 12) +
+					TextUtil.padLeft(count + " files", 10) +
+					TextUtil.padLeft(formatMillis(entry.getValue()), 14) + " total" +
+					TextUtil.padLeft(formatMillis(entry.getValue() / count), 14) + " avg");
+		}
+	}
+	
+	/**
+	 * Prints the per-stage statistics summed over all jobs if --stats is given, and writes
+	 * the statistics of each job as JSON to the path given by --stats-json ("-" for stdout).
+	 */
+	private static void reportStatistics(RunOptions runOptions, List<CompilationJob> jobs) {
+		CommandLine cmd = runOptions.cmd;
+		if(cmd.hasOption("stats")) printStatistics(jobs);
+		if(!cmd.hasOption("stats-json")) return;
+		
+		StringBuilder sb = new StringBuilder("{\n\t\"files\": [");
+		for(int i = 0; i < jobs.size(); i++) {
+			CompilationJob job = jobs.get(i);
+			sb.append(i == 0 ? "\n" : ",\n");
+			sb.append("\t\t{\n\t\t\t\"file\": ").append(TextUtil.quoteJson(job.sourcePath.toString())).append(",\n");
+			sb.append("\t\t\t\"succeeded\": ").append(job.succeeded()).append(",\n");
+			sb.append("\t\t\t\"stages\": ");
+			job.getStatistics().appendJson(sb, "\t\t\t");
+			sb.append("\n\t\t}");
+		}
+		sb.append(jobs.isEmpty() ? "]\n}\n" : "\n\t]\n}\n");
+		
+		String path = cmd.getOptionValue("stats-json");
+		if(path.equals("-")) {
+			System.out.print(sb);
+			return;
+		}
+		try {
+			Files.write(runOptions.workingDirectory.resolve(path), sb.toString().getBytes(StandardCharsets.UTF_8));
+		} catch(IOException e) {
+			System.err.println(Ansi.red + "Failed to write statistics: " + e.getMessage() + Ansi.reset);
+		}
+	}
+	
+	private static void printStatistics(List<CompilationJob> jobs) {
+		Map<Pipeline.Stage, long[]> totals = new EnumMap<>(Pipeline.Stage.class);
+		for(CompilationJob job : jobs) {
+			for(PipelineStatistics.Entry entry : job.getStatistics().getEntries()) {
+				long[] total = totals.computeIfAbsent(entry.stage, stage -> new long[6]);
+				long[] values = {1, entry.wallTime, entry.cpuTime, entry.allocatedBytes, entry.tokens, entry.nodes};
+				for(int i = 0; i < values.length; i++)
+					total[i] = total[i] < 0 || values[i] < 0 ? -1 : total[i] + values[i];
 			}
-			
-			if(tasks.contains(Task.execute)) {
-				logTask(Task.execute);
-				if(!pipeline.executeProgram())
-					handleError(pipeline, errorPath);
+		}
+		System.out.println();
+		System.out.println("  " + TextUtil.padRight("stage", 10) + TextUtil.padLeft("files", 8) +
+				TextUtil.padLeft("wall time", 14) + TextUtil.padLeft("cpu time", 14) + TextUtil.padLeft("allocated", 14) +
+				TextUtil.padLeft("tokens", 12) + TextUtil.padLeft("nodes", 12));
+		for(Map.Entry<Pipeline.Stage, long[]> entry : totals.entrySet()) {
+			long[] total = entry.getValue();
+			System.out.println("  " + TextUtil.padRight(entry.getKey().toString(), 10) +
+					TextUtil.padLeft(Long.toString(total[0]), 8) +
+					TextUtil.padLeft(formatMillis(total[1]), 14) +
+					TextUtil.padLeft(total[2] < 0 ? "-" : formatMillis(total[2]), 14) +
+					TextUtil.padLeft(total[3] < 0 ? "-" : String.format(Locale.ROOT, "%.1f KB", total[3] / 1024.0), 14) +
+					TextUtil.padLeft(total[4] < 0 ? "-" : Long.toString(total[4]), 12) +
+					TextUtil.padLeft(total[5] < 0 ? "-" : Long.toString(total[5]), 12));
+		}
+	}
+	
+	/**
+	 * @return The parse cache selected on the command line, or null if caching is disabled
+	 */
+	private static ParseCache createParseCache(CommandLine cmd, Path workingDirectory) throws ParseException {
+		if(!cmd.hasOption("parse-cache") && !cmd.hasOption("cache-dir")) return null;
+		Path directory = cmd.hasOption("cache-dir") ? workingDirectory.resolve(cmd.getOptionValue("cache-dir")) : ParseCache.defaultDirectory();
+		long maxSize = ParseCache.defaultMaxSize;
+		if(cmd.hasOption("cache-size")) {
+			try {
+				maxSize = Long.parseLong(cmd.getOptionValue("cache-size")) * 1024 * 1024;
+			} catch(NumberFormatException e) {
+				maxSize = -1;
 			}
-			
-			if(tasks.contains(Task.dumpOutput)) {
-				logTask(Task.dumpOutput);
-				pipeline.dumpOutput(getDumpPath(cmd, "dump-output", sourcePath, ".txt"));
+			if(maxSize <= 0)
+				throw new ParseException("Invalid cache size: " + cmd.getOptionValue("cache-size"));
+		}
+		return new ParseCache(directory, maxSize);
+	}
+	
+	private static String formatMillis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f ms", nanos / 1e6);
+	}
+	
+	/**
+	 * Expands the command line arguments into a list of source files. Directories are searched
+	 * recursively for .mavl files, which are added in lexicographic order. Duplicates are removed.
+	 */
+	private static List<Path> collectSourceFiles(List<String> args, Path workingDirectory) throws IOException {
+		Set<Path> sources = new LinkedHashSet<>();
+		for(String arg : args) {
+			Path path = workingDirectory.resolve(arg);
+			if(Files.isDirectory(path)) {
+				try(Stream<Path> files = Files.walk(path)) {
+					files.filter(file -> file.getFileName().toString().endsWith(".mavl") && Files.isRegularFile(file))
+							.sorted()
+							.forEach(file -> sources.add(file.normalize()));
+				}
+			} else {
+				sources.add(path.normalize());
 			}
-			
-			if(tasks.contains(Task.dumpProfile)) {
-				logTask(Task.dumpProfile);
-				pipeline.dumpProfile(getDumpPath(cmd, "dump-profile", sourcePath, "_profile.txt"));
+		}
+		return new ArrayList<>(sources);
+	}
+	
+	private static int parseWorkerCount(CommandLine cmd, int fileCount) throws ParseException {
+		int workers = Runtime.getRuntime().availableProcessors();
+		if(cmd.hasOption("jobs")) {
+			try {
+				workers = Integer.parseInt(cmd.getOptionValue("jobs"));
+			} catch(NumberFormatException e) {
+				workers = 0;
 			}
-			
-		} catch(ParseException e) {
-			e.printStackTrace();
-			System.exit(1);
+			if(workers < 1)
+				throw new ParseException("Invalid number of jobs: " + cmd.getOptionValue("jobs"));
+		}
+		return Math.min(workers, fileCount);
+	}
+	
+	private static int parseMaxCycles(CommandLine cmd) throws ParseException {
+		if(!cmd.hasOption("max-cycles")) return 0;
+		int maxCycles;
+		try {
+			maxCycles = Integer.parseInt(cmd.getOptionValue("max-cycles"));
+		} catch(NumberFormatException e) {
+			maxCycles = 0;
+		}
+		if(maxCycles < 1)
+			throw new ParseException("Invalid number of cycles: " + cmd.getOptionValue("max-cycles"));
+		return maxCycles;
+	}
+	
+	private static Engine parseEngine(CommandLine cmd) throws ParseException {
+		if(!cmd.hasOption("engine")) return Engine.closure;
+		try {
+			return Engine.valueOf(cmd.getOptionValue("engine"));
+		} catch(IllegalArgumentException e) {
+			throw new ParseException("Invalid engine: " + cmd.getOptionValue("engine"));
+		}
+	}
+	
+	private static int parseParallelThreshold(CommandLine cmd) throws ParseException {
+		if(!cmd.hasOption("parallel")) return 0;
+		String value = cmd.getOptionValue("parallel");
+		int threshold;
+		try {
+			threshold = Integer.parseInt(value);
+		} catch(NumberFormatException e) {
+			threshold = 0;
+		}
+		if(threshold < 1)
+			throw new ParseException("Invalid parallel threshold: " + value);
+		return threshold;
+	}
+	
+	private static int parseInlineThreshold(CommandLine cmd) throws ParseException {
+		if(!cmd.hasOption("inline-threshold")) return Optimizer.DEFAULT_INLINE_THRESHOLD;
+		String value = cmd.getOptionValue("inline-threshold");
+		int threshold;
+		try {
+			threshold = Integer.parseInt(value);
+		} catch(NumberFormatException e) {
+			threshold = -1;
+		}
+		if(threshold < 0)
+			throw new ParseException("Invalid inline threshold: " + value);
+		return threshold;
+	}
+	
+	private static boolean hasExplicitDumpPath(CommandLine cmd, TaskCollection dumpOptions) {
+		for(TaskCollection.Entry entry : dumpOptions) {
+			String[] values = cmd.getOptionValues(entry.option.getLongOpt());
+			if(entry.task != null && values != null && values.length == 1) return true;
 		}
+		return false;
 	}
 	
-	private static Path getDumpPath(CommandLine cmd, String option, Path sourcePath, String extension) {
+	private static Path getDumpPath(CommandLine cmd, String option, Path sourcePath, String extension, boolean batch) {
 		String[] values = cmd.getOptionValues(option);
-		if(values != null && values.length == 1) return sourcePath.toAbsolutePath().getParent().resolve(values[0]);
+		if(!batch && values != null && values.length == 1) return sourcePath.toAbsolutePath().getParent().resolve(values[0]);
 		String name = sourcePath.getFileName().toString();
 		return sourcePath.resolveSibling(name.substring(0, name.lastIndexOf('.')) + extension);
 	}
@@ -190,11 +432,7 @@ public class Driver {
 		}
 	}
 	
-	private static void logTask(Task task) {
-		if(verbose) System.out.println("- Running task: " + Ansi.brightMagenta + task + Ansi.reset);
-	}
-	
-	private static void printHelp(Options options) {
+	private static void printHelp(Options options, TaskCollection stageOptions, TaskCollection dumpOptions) {
 		List<Option> general = new ArrayList<>(options.getOptions());
 		
 		System.out.println("Basic usage: ");
@@ -237,9 +475,13 @@ public class Driver {
 	}
 	
 	private static void printOption(Option option, Ansi color) {
-		System.out.print("  " + color + "-" + option.getOpt() + Ansi.reset);
-		if(option.hasLongOpt()) {
-			System.out.print(", " + color + "--" + option.getLongOpt() + Ansi.reset);
+		if(option.getOpt() == null) {
+			System.out.print("  " + color + "--" + option.getLongOpt() + Ansi.reset);
+		} else {
+			System.out.print("  " + color + "-" + option.getOpt() + Ansi.reset);
+			if(option.hasLongOpt()) {
+				System.out.print(", " + color + "--" + option.getLongOpt() + Ansi.reset);
+			}
 		}
 		if(option.hasArg()) {
 			System.out.print(" " + Ansi.brightRed + "[" + option.getArgName() + "]" + Ansi.reset);
@@ -261,47 +503,113 @@ public class Driver {
 		if(cmd.hasOption("dxd")) tasks.add(Task.dumpXmlDast);
 		if(cmd.hasOption("dda")) tasks.add(Task.dumpDotAst);
 		if(cmd.hasOption("ddd")) tasks.add(Task.dumpDotDast);
+		if(cmd.hasOption("dop")) tasks.add(Task.dumpOptimization);
 		if(cmd.hasOption("di")) tasks.add(Task.dumpImage);
 		if(cmd.hasOption("dd")) tasks.add(Task.dumpDisasm);
 		if(cmd.hasOption("dds")) tasks.add(Task.dumpSymbols);
+		if(cmd.hasOption("dc")) tasks.add(Task.dumpClass);
 		if(cmd.hasOption("do")) tasks.add(Task.dumpOutput);
 		if(cmd.hasOption("dp")) tasks.add(Task.dumpProfile);
 		
 		return tasks;
 	}
 	
-	private static TaskCollection stageOptions = new TaskCollection();
-	private static TaskCollection dumpOptions = new TaskCollection();
-	
-	private static Options setupOptions() {
+	/**
+	 * @param stageOptions Receives the options selecting a stage
+	 * @param dumpOptions Receives the options selecting a dump
+	 */
+	private static Options setupOptions(TaskCollection stageOptions, TaskCollection dumpOptions) {
 		Options options = new Options();
 		
 		options.addOption("h", "help", false, "Print this help text");
 		options.addOption("q", "quiet", false, "Less verbose output");
 		options.addOption("col", "color", false, "Enable color output");
+		options.addOption(Option.builder("j")
+				.longOpt("jobs")
+				.desc("Number of files compiled concurrently when multiple inputs are given (default: number of processors)")
+				.hasArg(true)
+				.argName("count")
+				.build());
+		options.addOption(Option.builder()
+				.longOpt("stats")
+				.desc("Print the time, cpu time, allocated memory, tokens and syntax tree nodes of each stage")
+				.build());
+		options.addOption(Option.builder()
+				.longOpt("stats-json")
+				.desc("Write the statistics of each stage and file as JSON to the given path, or to stdout for \"-\"")
+				.hasArg(true)
+				.argName("path")
+				.build());
+		options.addOption(Option.builder()
+				.longOpt("parse-cache")
+				.desc("Reuse the syntax trees of unchanged sources from the cache directory ($" + ParseCache.directoryVariable + " or ~/.cache/mavlc)")
+				.build());
+		options.addOption(Option.builder()
+				.longOpt("cache-dir")
+				.desc("Use the given parse cache directory, implies --parse-cache")
+				.hasArg(true)
+				.argName("path")
+				.build());
+		options.addOption(Option.builder()
+				.longOpt("cache-size")
+				.desc("Maximum size of the parse cache in megabytes (default: " + ParseCache.defaultMaxSize / 1024 / 1024 + ")")
+				.hasArg(true)
+				.argName("MB")
+				.build());
 		
-		options.addOption(buildStageOption("p", "parse", Task.parse));
-		options.addOption(buildStageOption("a", "analyze", Task.analyze));
-		options.addOption(buildStageOption("c", "compile", Task.compile));
-		options.addOption(buildStageOption("e", "execute", Task.execute));
+		options.addOption(Option.builder("O")
+				.longOpt("optimize")
+				.desc("Optimize the analyzed program before it is dumped, compiled or executed")
+				.build());
+		options.addOption(Option.builder()
+				.longOpt("inline-threshold")
+				.desc("Inline functions with at most the given number of syntax tree nodes when optimizing, 0 disables inlining (default: " + Optimizer.DEFAULT_INLINE_THRESHOLD + ")")
+				.hasArg(true)
+				.argName("nodes")
+				.build());
+		options.addOption(Option.builder()
+				.longOpt("max-cycles")
+				.desc("Abort the execution after the given number of statements")
+				.hasArg(true)
+				.argName("count")
+				.build());
+		options.addOption(Option.builder()
+				.longOpt("engine")
+				.desc("Execute programs with the given engine, one of " + Arrays.toString(Engine.values()) + " (default: closure)")
+				.hasArg(true)
+				.argName("name")
+				.build());
+		options.addOption(Option.builder()
+				.longOpt("parallel")
+				.desc("Execute structure operations and independent foreach loops on at least the given number of elements in parallel, e.g. 65536")
+				.hasArg(true)
+				.argName("elements")
+				.build());
 		
-		options.addOption(buildDumpOption("ds", "dump-source", "Dumps the formatted mavl source code", Task.dumpSource));
-		options.addOption(buildDumpOption("dh", "dump-html", "Dumps the source code as highlighted html", Task.dumpHtml));
-		options.addOption(buildDumpOption("dxa", "dump-xml-ast", "Dumps the ast as xml", Task.dumpXmlAst));
-		options.addOption(buildDumpOption("dxd", "dump-xml-dast", "Dumps the dast as xml", Task.dumpXmlDast));
-		options.addOption(buildDumpOption("dda", "dump-dot-ast", "Dumps the ast as dot graph", Task.dumpDotAst));
-		options.addOption(buildDumpOption("ddd", "dump-dot-dast", "Dumps the dast as dot graph", Task.dumpDotDast));
-		options.addOption(buildDumpOption("di", "dump-image", "Dumps the program image", Task.dumpImage));
-		options.addOption(buildDumpOption("dd", "dump-disasm", "Dumps the program disassembly", Task.dumpDisasm));
-		options.addOption(buildDumpOption("dds", "dump-symbols", "Dumps debug symbols", Task.dumpSymbols));
-		options.addOption(buildDumpOption("do", "dump-output", "Dumps the execution output", Task.dumpOutput));
-		options.addOption(buildDumpOption("dp", "dump-profile", "Dumps the execution profile", Task.dumpProfile));
-		options.addOption(buildDumpOption("de", "dump-errors", "Dumps any errors thrown by one of the pipeline stages", null));
+		options.addOption(buildStageOption(stageOptions, "p", "parse", Task.parse));
+		options.addOption(buildStageOption(stageOptions, "a", "analyze", Task.analyze));
+		options.addOption(buildStageOption(stageOptions, "c", "compile", Task.compile));
+		options.addOption(buildStageOption(stageOptions, "e", "execute", Task.execute));
+		
+		options.addOption(buildDumpOption(dumpOptions, "ds", "dump-source", "Dumps the formatted mavl source code", Task.dumpSource));
+		options.addOption(buildDumpOption(dumpOptions, "dh", "dump-html", "Dumps the source code as highlighted html", Task.dumpHtml));
+		options.addOption(buildDumpOption(dumpOptions, "dxa", "dump-xml-ast", "Dumps the ast as xml", Task.dumpXmlAst));
+		options.addOption(buildDumpOption(dumpOptions, "dxd", "dump-xml-dast", "Dumps the dast as xml", Task.dumpXmlDast));
+		options.addOption(buildDumpOption(dumpOptions, "dda", "dump-dot-ast", "Dumps the ast as dot graph", Task.dumpDotAst));
+		options.addOption(buildDumpOption(dumpOptions, "ddd", "dump-dot-dast", "Dumps the dast as dot graph", Task.dumpDotDast));
+		options.addOption(buildDumpOption(dumpOptions, "dop", "dump-opt", "Dumps the removed index checks, fused and optimized loops, merged subexpressions and the optimized source code, implies --optimize", Task.dumpOptimization));
+		options.addOption(buildDumpOption(dumpOptions, "di", "dump-image", "Dumps the program image", Task.dumpImage));
+		options.addOption(buildDumpOption(dumpOptions, "dd", "dump-disasm", "Dumps the program disassembly", Task.dumpDisasm));
+		options.addOption(buildDumpOption(dumpOptions, "dds", "dump-symbols", "Dumps debug symbols", Task.dumpSymbols));
+		options.addOption(buildDumpOption(dumpOptions, "dc", "dump-class", "Dumps the class file generated by the bytecode engine", Task.dumpClass));
+		options.addOption(buildDumpOption(dumpOptions, "do", "dump-output", "Dumps the execution output", Task.dumpOutput));
+		options.addOption(buildDumpOption(dumpOptions, "dp", "dump-profile", "Dumps the engine, number of executed statements and execution time", Task.dumpProfile));
+		options.addOption(buildDumpOption(dumpOptions, "de", "dump-errors", "Dumps any errors thrown by one of the pipeline stages", null));
 		
 		return options;
 	}
 	
-	private static Option buildStageOption(String shortForm, String longForm, Task task) {
+	private static Option buildStageOption(TaskCollection stageOptions, String shortForm, String longForm, Task task) {
 		Option option = Option.builder(shortForm)
 				.longOpt(longForm)
 				.build();
@@ -309,7 +617,7 @@ public class Driver {
 		return option;
 	}
 	
-	private static Option buildDumpOption(String shortForm, String longForm, String description, Task task) {
+	private static Option buildDumpOption(TaskCollection dumpOptions, String shortForm, String longForm, String description, Task task) {
 		Option option = Option.builder(shortForm)
 				.longOpt(longForm)
 				.desc(description)
@@ -322,6 +630,60 @@ public class Driver {
 		return option;
 	}
 	
+	/**
+	 * The settings of one driver run, parsed once from the command line and applied to each of its jobs.
+	 */
+	private static class RunOptions {
+		public final CommandLine cmd;
+		public final Path workingDirectory;
+		public final TaskCollection dumpOptions;
+		public final Set<Task> tasks;
+		public final boolean verbose;
+		/** The path given by --dump-errors, or null if errors are not dumped */
+		public final Path errorPath;
+		public final ParseCache parseCache;
+		/** Supplies the caches for incremental analysis, or null to analyze whole programs */
+		public final AnalysisCache.Provider analysisCaches;
+		public final int maxCycles;
+		public final Optimizer optimizer;
+		public final Engine engine;
+		public final int parallelThreshold;
+		public final boolean statistics;
+		
+		public RunOptions(CommandLine cmd, Path workingDirectory, TaskCollection dumpOptions, Set<Task> tasks, boolean verbose, AnalysisCache.Provider analysisCaches) throws ParseException {
+			this.cmd = cmd;
+			this.workingDirectory = workingDirectory;
+			this.dumpOptions = dumpOptions;
+			this.tasks = tasks;
+			this.verbose = verbose;
+			this.errorPath = cmd.hasOption("dump-errors") ? workingDirectory.resolve(cmd.getOptionValue("dump-errors")) : null;
+			this.parseCache = createParseCache(cmd, workingDirectory);
+			this.analysisCaches = analysisCaches;
+			this.maxCycles = parseMaxCycles(cmd);
+			this.engine = parseEngine(cmd);
+			this.parallelThreshold = parseParallelThreshold(cmd);
+			this.optimizer = cmd.hasOption("optimize") || cmd.hasOption("dump-opt") ? new Optimizer(parseInlineThreshold(cmd)) : null;
+			this.statistics = cmd.hasOption("stats") || cmd.hasOption("stats-json");
+		}
+		
+		/**
+		 * Applies these settings to the given job.
+		 *
+		 * @return The given job
+		 */
+		public CompilationJob configure(CompilationJob job) {
+			job.setVerbose(verbose);
+			job.setParseCache(parseCache);
+			if(analysisCaches != null) job.setAnalysisCache(analysisCaches.forSource(job.sourcePath));
+			job.setMaxCycles(maxCycles);
+			job.setOptimizer(optimizer);
+			job.setEngine(engine);
+			job.setParallelThreshold(parallelThreshold);
+			if(statistics) job.enableStatistics();
+			return job;
+		}
+	}
+	
 	private static class TaskCollection extends ArrayList<TaskCollection.Entry> {
 		private static final long serialVersionUID = 3788086025777767107L;
 		
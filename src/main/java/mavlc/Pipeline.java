@@ -12,8 +12,16 @@
 package mavlc;
 
 import mavlc.errors.InternalCompilerError;
+import mavlc.execution.Engine;
+import mavlc.execution.Executable;
+import mavlc.execution.bytecode.BytecodeProgram;
+import mavlc.optimization.Optimizer;
+import mavlc.parsing.ParseCache;
 import mavlc.parsing.Parser;
 import mavlc.parsing.Scanner;
+import mavlc.parsing.Token;
+import mavlc.parsing.TokenSource;
+import mavlc.services.NodeCounter;
 import mavlc.services.serialization.XmlSerialization;
 import mavlc.services.visualization.Dumper;
 import mavlc.services.visualization.HtmlDumper;
@@ -21,7 +29,10 @@ import mavlc.services.visualization.VisualGraph;
 import mavlc.services.visualization.Visualizer;
 import mavlc.services.visualization.dot.DotBuilder;
 import mavlc.syntax.AstNode;
+import mavlc.syntax.module.Module;
+import mavlc.context_analysis.AnalysisCache;
 import mavlc.context_analysis.ContextualAnalysis;
+import mavlc.context_analysis.IncrementalAnalysis;
 import mavlc.context_analysis.ModuleEnvironment;
 
 import org.apache.commons.io.FileUtils;
@@ -29,9 +40,11 @@ import org.apache.commons.io.output.TeeOutputStream;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.*;
 import java.security.cert.Certificate;
+import java.util.Locale;
 
 @SuppressWarnings({"UnusedReturnValue", "BooleanMethodIsAlwaysInverted"})
 public class Pipeline {
@@ -43,6 +56,21 @@ public class Pipeline {
 	protected String output;
 	protected Exception error;
 	
+	protected ParseCache parseCache;
+	protected AnalysisCache analysisCache;
+	
+	protected PipelineStatistics statistics;
+	protected long tokenCount = -1;
+	
+	protected Optimizer optimizer;
+	protected Optimizer.Result optimization;
+	
+	protected Engine engine = Engine.closure;
+	protected int parallelThreshold;
+	protected Executable executable;
+	protected long cycles = -1;
+	protected long executionTime = -1;
+	
 	protected AccessControlContext sandbox;
 	
 	public Stage currentStage() {
@@ -61,6 +89,13 @@ public class Pipeline {
 		return output;
 	}
 	
+	/**
+	 * @return The number of cycles the program ran, or -1 if it has not been executed
+	 */
+	public long getCycles() {
+		return cycles;
+	}
+	
 	public Exception getError() {
 		return error;
 	}
@@ -73,6 +108,78 @@ public class Pipeline {
 		if(error != null) throw getRuntimeError();
 	}
 	
+	/**
+	 * Enables the parse cache: modules parsed from identical sources before
+	 * are read from the cache instead of being parsed again.
+	 *
+	 * @param parseCache The cache to use, or null to always parse
+	 */
+	public void setParseCache(ParseCache parseCache) {
+		this.parseCache = parseCache;
+	}
+	
+	/**
+	 * Enables incremental analysis: functions that did not change since the
+	 * analysis stored in the given cache are not checked again.
+	 *
+	 * @param analysisCache The cache of the source file, or null to analyze the whole program
+	 */
+	public void setAnalysisCache(AnalysisCache analysisCache) {
+		this.analysisCache = analysisCache;
+	}
+	
+	/**
+	 * Enables per-stage statistics, see {@link PipelineStatistics}.
+	 *
+	 * @param statistics The statistics to record the stages into, or null to disable recording
+	 */
+	public void setStatistics(PipelineStatistics statistics) {
+		this.statistics = statistics;
+	}
+	
+	/**
+	 * Enables the optimization of analyzed programs. The optimized module replaces the
+	 * syntax tree at the end of the context stage, so it is what later dumps and stages see.
+	 *
+	 * @param optimizer The optimizer to use, or null to keep the program as analyzed (default)
+	 */
+	public void setOptimizer(Optimizer optimizer) {
+		this.optimizer = optimizer;
+	}
+	
+	/**
+	 * @return The result of the optimization, or null if the program has not been optimized
+	 */
+	public Optimizer.Result getOptimization() {
+		return optimization;
+	}
+	
+	/**
+	 * Selects the engine used by the codegen and execute stages.
+	 *
+	 * @param engine The engine, {@link Engine#closure} by default
+	 */
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+	
+	/**
+	 * Enables the parallel execution of large structure operations and independent foreach loops.
+	 *
+	 * @param parallelThreshold The minimum number of elements of operations executed in parallel, or 0 to execute sequentially (default)
+	 * @see Engine#prepare(Module, int)
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+	
+	/**
+	 * @return The recorded statistics, or null if recording is disabled
+	 */
+	public PipelineStatistics getStatistics() {
+		return statistics;
+	}
+	
 	public Pipeline() {
 		Permissions perms = new Permissions(); /* empty, i.e. no permissions will be granted */
 		CodeSource source = new CodeSource(null /* all locations */, (Certificate[]) null /* unsigned code */);
@@ -93,6 +200,7 @@ public class Pipeline {
 		if(stage != Stage.uninitialized)
 			throw new InternalCompilerError("Cannot parse program: A program has already been parsed in this pipeline");
 		this.sourcePath = sourcePath;
+		if(statistics != null) statistics.begin();
 		try {
 			parseProgramImpl(sourcePath);
 			stage = Stage.syntax;
@@ -100,11 +208,14 @@ public class Pipeline {
 		} catch(Exception e) {
 			error = e;
 			return false;
+		} finally {
+			if(statistics != null)
+				statistics.end(Stage.syntax, stage == Stage.syntax, tokenCount, () -> NodeCounter.count(ast));
 		}
 	}
 	
 	/**
-	 * Analyzes a parsed program.<br>
+	 * Analyzes a parsed program and optimizes it if an {@link Optimizer} is set.<br>
 	 * <br>
 	 * Requires (stage == Stage.syntax)<br>
 	 * Ensures (stage == Stage.context)<br>
@@ -116,18 +227,23 @@ public class Pipeline {
 			throw new InternalCompilerError("Cannot analyze program: No program has been parsed yet");
 		if(stage.value > Stage.syntax.value)
 			throw new InternalCompilerError("Cannot analyze program: A program has already been analyzed in this pipeline");
+		if(statistics != null) statistics.begin();
 		try {
 			analyzeProgramImpl();
+			if(optimizer != null) optimizeProgramImpl();
 			stage = Stage.context;
 			return true;
 		} catch(Exception e) {
 			error = e;
 			return false;
+		} finally {
+			if(statistics != null)
+				statistics.end(Stage.context, stage == Stage.context, -1, () -> NodeCounter.count(ast));
 		}
 	}
 	
 	/**
-	 * Compiles an analyzed program to a sequence of instructions.<br>
+	 * Prepares an analyzed program for execution with the selected {@link Engine}.<br>
 	 * <br>
 	 * Requires (stage == Stage.context)<br>
 	 * Ensures (stage == Stage.codegen)<br>
@@ -139,6 +255,7 @@ public class Pipeline {
 			throw new InternalCompilerError("Cannot compile program: No program has been analyzed yet");
 		if(stage.value > Stage.context.value)
 			throw new InternalCompilerError("Cannot compile program: A program has already been compiled in this pipeline");
+		if(statistics != null) statistics.begin();
 		try {
 			compileProgramImpl();
 			stage = Stage.codegen;
@@ -146,11 +263,14 @@ public class Pipeline {
 		} catch(Exception e) {
 			error = e;
 			return false;
+		} finally {
+			if(statistics != null)
+				statistics.end(Stage.codegen, stage == Stage.codegen, -1, null);
 		}
 	}
 	
 	/**
-	 * Executes a compiled program using the mtam interpreter.<br>
+	 * Executes a compiled program with the selected {@link Engine}.<br>
 	 * <br>
 	 * Requires (stage == Stage.codegen)<br>
 	 * Ensures (stage == Stage.execute)<br>
@@ -162,22 +282,37 @@ public class Pipeline {
 	}
 	
 	/**
-	 * Executes a compiled program using the mtam interpreter.<br>
+	 * Executes a compiled program with the selected {@link Engine}.<br>
 	 * <br>
 	 * Requires (stage == Stage.codegen)<br>
 	 * Ensures (stage == Stage.execute)<br>
 	 *
-	 * @param maxCycles The maximum number of cycles to simulate
+	 * @param maxCycles The maximum number of statements to execute, or 0 for no limit
 	 * @return Whether the stage completed successfully
 	 */
 	public boolean executeProgram(int maxCycles) {
+		return executeProgram(System.out, maxCycles);
+	}
+	
+	/**
+	 * Executes a compiled program with the selected {@link Engine}.<br>
+	 * <br>
+	 * Requires (stage == Stage.codegen)<br>
+	 * Ensures (stage == Stage.execute)<br>
+	 *
+	 * @param console Receives the program output while the program runs; the output is also kept for {@link #getOutput()}
+	 * @param maxCycles The maximum number of statements to execute, or 0 for no limit
+	 * @return Whether the stage completed successfully
+	 */
+	public boolean executeProgram(OutputStream console, int maxCycles) {
 		if(stage.value < Stage.codegen.value)
 			throw new InternalCompilerError("Cannot execute program: No program has been compiled yet");
 		if(stage.value > Stage.codegen.value)
 			throw new InternalCompilerError("Cannot execute program: A program has already been executed in this pipeline");
+		if(statistics != null) statistics.begin();
 		try {
 			ByteArrayOutputStream buf = new ByteArrayOutputStream();
-			OutputStream out = new TeeOutputStream(System.out, buf);
+			OutputStream out = new TeeOutputStream(console, buf);
 			executeProgramImpl(new ByteArrayInputStream(new byte[0]), out, maxCycles);
 			output = buf.toString("UTF-8");
 			stage = Stage.execute;
@@ -185,18 +320,21 @@ public class Pipeline {
 		} catch(Exception e) {
 			error = e;
 			return false;
+		} finally {
+			if(statistics != null)
+				statistics.end(Stage.execute, stage == Stage.execute, -1, null);
 		}
 	}
 	
 	/**
-	 * Executes a compiled program using the mtam interpreter.<br>
+	 * Executes a compiled program with the selected {@link Engine}.<br>
 	 * <br>
 	 * Requires (stage == Stage.codegen)<br>
 	 * Ensures (stage == Stage.execute)<br>
 	 *
 	 * @param in The input stream
 	 * @param out The output stream
-	 * @param maxCycles The maximum number of cycles to simulate
+	 * @param maxCycles The maximum number of statements to execute, or 0 for no limit
 	 * @return Whether the stage completed successfully
 	 */
 	public boolean executeProgram(InputStream in, OutputStream out, int maxCycles) {
@@ -204,6 +342,7 @@ public class Pipeline {
 			throw new InternalCompilerError("Cannot execute program: No program has been compiled yet");
 		if(stage.value > Stage.codegen.value)
 			throw new InternalCompilerError("Cannot execute program: A program has already been executed in this pipeline");
+		if(statistics != null) statistics.begin();
 		try {
 			executeProgramImpl(in, out, maxCycles);
 			output = "<output redirected>";
@@ -212,19 +351,53 @@ public class Pipeline {
 		} catch(Exception e) {
 			error = e;
 			return false;
+		} finally {
+			if(statistics != null)
+				statistics.end(Stage.execute, stage == Stage.execute, -1, null);
 		}
 	}
 	
 	protected void parseProgramImpl(Path sourcePath) throws IOException {
-		Scanner scanner = new Scanner(sourcePath.toFile());
+		if(parseCache != null) {
+			byte[] source = Files.readAllBytes(sourcePath);
+			ast = parseCache.get(source);
+			if(ast == null) {
+				parse(new Scanner(source));
+				parseCache.put(source, (Module) ast);
+			}
+			return;
+		}
+		parse(new Scanner(sourcePath.toFile()));
+	}
+	
+	private void parse(Scanner scanner) {
+		TokenSource tokens = statistics == null ? scanner : countTokens(scanner);
 		AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
-			Parser parser = new Parser(scanner.scan());
+			Parser parser = new Parser(tokens);
 			ast = parser.parse();
 			return null;
 		}, sandbox);
 	}
 	
+	private TokenSource countTokens(TokenSource source) {
+		tokenCount = 0;
+		return () -> {
+			Token token = source.nextToken();
+			if(token != null) tokenCount++;
+			return token;
+		};
+	}
+	
 	protected void analyzeProgramImpl() {
+		if(analysisCache != null) {
+			IncrementalAnalysis analysis = new IncrementalAnalysis(analysisCache);
+			env = analysis.getEnvironment();
+			AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
+				analysis.analyze((Module) ast);
+				return null;
+			}, sandbox);
+			return;
+		}
 		env = new ModuleEnvironment();
 		AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
 			ContextualAnalysis analysis = new ContextualAnalysis(env);
@@ -233,12 +406,21 @@ public class Pipeline {
 		}, sandbox);
 	}
 	
+	protected void optimizeProgramImpl() {
+		optimization = optimizer.optimize((Module) ast);
+		ast = optimization.module;
+	}
+	
 	protected void compileProgramImpl() {
-		throw new InternalCompilerError("Code generation is not available in this build");
+		executable = engine.prepare((Module) ast, parallelThreshold);
 	}
 	
 	protected void executeProgramImpl(InputStream in, OutputStream out, int maxCycles) {
-		throw new InternalCompilerError("Interpreter is not available in this build");
+		// file names passed to the runtime functions are relative to the source file
+		Path directory = sourcePath.toAbsolutePath().getParent();
+		long start = System.nanoTime();
+		cycles = executable.execute(in, out, directory, maxCycles);
+		executionTime = System.nanoTime() - start;
 	}
 	
 	public String getSource() {
@@ -313,6 +495,30 @@ public class Pipeline {
 		}
 	}
 	
+	/**
+	 * @return The report of the optimizer as line comments, followed by the optimized program.
+	 */
+	public String getOptimizationReport() {
+		if(stage.value < Stage.context.value)
+			throw new InternalCompilerError("Cannot dump optimization: No program has been analyzed yet");
+		if(optimization == null)
+			throw new InternalCompilerError("Cannot dump optimization: The program has not been optimized");
+		StringBuilder report = new StringBuilder();
+		for(String line : optimization.report)
+			report.append("// ").append(line).append('\n');
+		return report.append('\n').append(Dumper.dump(ast)).toString();
+	}
+	
+	public boolean dumpOptimization(Path outPath) {
+		try {
+			FileUtils.write(outPath.toFile(), getOptimizationReport(), StandardCharsets.UTF_8);
+			return true;
+		} catch(IOException e) {
+			error = e;
+			return false;
+		}
+	}
+	
 	public String getDot(boolean decorate) {
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		dumpDot(out, decorate);
@@ -368,24 +574,87 @@ public class Pipeline {
 		throw new InternalCompilerError("Code generation is not available in this build");
 	}
 	
+	public boolean dumpClass(Path outPath) {
+		try {
+			return dumpClass(new FileOutputStream(outPath.toFile()));
+		} catch(FileNotFoundException e) {
+			error = e;
+			return false;
+		}
+	}
+	
+	/**
+	 * Writes the class generated by the {@link Engine#bytecode} engine, which can be inspected with {@code javap -c}.
+	 */
+	public boolean dumpClass(OutputStream out) {
+		if(stage.value < Stage.codegen.value)
+			throw new InternalCompilerError("Cannot dump class file: No program has been compiled yet");
+		if(!(executable instanceof BytecodeProgram))
+			throw new InternalCompilerError("Cannot dump class file: The program was not compiled with the bytecode engine");
+		try(OutputStream stream = out) {
+			stream.write(((BytecodeProgram) executable).getClassFile());
+			return true;
+		} catch(IOException e) {
+			error = e;
+			return false;
+		}
+	}
+	
 	public boolean dumpOutput(Path outPath) {
-		throw new InternalCompilerError("Interpreter is not available in this build");
+		if(stage.value < Stage.execute.value)
+			throw new InternalCompilerError("Cannot dump output: No program has been executed yet");
+		try {
+			FileUtils.write(outPath.toFile(), output, StandardCharsets.UTF_8);
+			return true;
+		} catch(IOException e) {
+			error = e;
+			return false;
+		}
 	}
 	
 	public boolean dumpOutput(OutputStream out) {
-		throw new InternalCompilerError("Interpreter is not available in this build");
+		if(stage.value < Stage.execute.value)
+			throw new InternalCompilerError("Cannot dump output: No program has been executed yet");
+		try {
+			out.write(output.getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			return true;
+		} catch(IOException e) {
+			error = e;
+			return false;
+		}
 	}
 	
 	public boolean dumpProfile(Path outPath) {
-		throw new InternalCompilerError("Interpreter is not available in this build");
+		try {
+			FileUtils.write(outPath.toFile(), getProfile(), StandardCharsets.UTF_8);
+			return true;
+		} catch(IOException e) {
+			error = e;
+			return false;
+		}
 	}
 	
 	public boolean dumpProfile(OutputStream out) {
-		throw new InternalCompilerError("Interpreter is not available in this build");
+		try {
+			out.write(getProfile().getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			return true;
+		} catch(IOException e) {
+			error = e;
+			return false;
+		}
 	}
 	
+	/**
+	 * @return The engine, the number of executed statements and the execution time of the executed program
+	 */
 	private String getProfile() {
-		throw new InternalCompilerError("Interpreter is not available in this build");
+		if(stage.value < Stage.execute.value)
+			throw new InternalCompilerError("Cannot dump profile: No program has been executed yet");
+		return "engine: " + engine + "\n" +
+				"cycles: " + cycles + "\n" +
+				String.format(Locale.ROOT, "time: %.3f ms%n", executionTime / 1e6);
 	}
 	
 	public enum Stage {
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc;
+
+import mavlc.util.TextUtil;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Records the resources used by each stage of a {@link Pipeline}: wall-clock time, CPU time and heap
+ * allocation of the thread running the stage, as well as the number of tokens and syntax tree nodes
+ * the stage produced. Values that are not available are reported as -1.
+ */
+public class PipelineStatistics {
+	
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private static final com.sun.management.ThreadMXBean allocations =
+			threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+					? (com.sun.management.ThreadMXBean) threads : null;
+	
+	/**
+	 * The resources used by a single stage.
+	 */
+	public static final class Entry {
+		public final Pipeline.Stage stage;
+		public final boolean success;
+		public final long wallTime;
+		public final long cpuTime;
+		public final long allocatedBytes;
+		public final long tokens;
+		public final long nodes;
+		
+		public Entry(Pipeline.Stage stage, boolean success, long wallTime, long cpuTime, long allocatedBytes, long tokens, long nodes) {
+			this.stage = stage;
+			this.success = success;
+			this.wallTime = wallTime;
+			this.cpuTime = cpuTime;
+			this.allocatedBytes = allocatedBytes;
+			this.tokens = tokens;
+			this.nodes = nodes;
+		}
+		
+		public void appendJson(StringBuilder sb) {
+			sb.append("{\"stage\": ").append(TextUtil.quoteJson(stage.name()));
+			sb.append(", \"success\": ").append(success);
+			appendJsonValue(sb, "wallTimeNanos", wallTime);
+			appendJsonValue(sb, "cpuTimeNanos", cpuTime);
+			appendJsonValue(sb, "allocatedBytes", allocatedBytes);
+			appendJsonValue(sb, "tokens", tokens);
+			appendJsonValue(sb, "nodes", nodes);
+			sb.append('}');
+		}
+		
+		private static void appendJsonValue(StringBuilder sb, String name, long value) {
+			sb.append(", ").append(TextUtil.quoteJson(name)).append(": ");
+			if(value < 0) sb.append("null");
+			else sb.append(value);
+		}
+	}
+	
+	private final List<Entry> entries = new ArrayList<>();
+	
+	private long wallStart;
+	private long cpuStart;
+	private long allocationStart;
+	
+	/**
+	 * Starts measuring a stage on the current thread.
+	 */
+	public void begin() {
+		allocationStart = allocatedBytes();
+		cpuStart = cpuTime();
+		wallStart = System.nanoTime();
+	}
+	
+	/**
+	 * Finishes measuring the stage started by {@link #begin()} on the same thread. The node count is
+	 * only computed after the counters have been read, so counting is not attributed to the stage.
+	 *
+	 * @param stage The stage that was run
+	 * @param success Whether the stage completed successfully
+	 * @param tokens The number of tokens read by the stage, or -1
+	 * @param nodes Computes the number of syntax tree nodes after the stage, or null
+	 * @return The recorded entry
+	 */
+	public Entry end(Pipeline.Stage stage, boolean success, long tokens, LongSupplier nodes) {
+		long wallTime = System.nanoTime() - wallStart;
+		long cpuTime = cpuTime();
+		long allocated = allocatedBytes();
+		Entry entry = new Entry(stage, success, wallTime,
+				cpuTime < 0 || cpuStart < 0 ? -1 : cpuTime - cpuStart,
+				allocated < 0 || allocationStart < 0 ? -1 : allocated - allocationStart,
+				tokens, success && nodes != null ? nodes.getAsLong() : -1);
+		entries.add(entry);
+		return entry;
+	}
+	
+	/**
+	 * @return The recorded stages in the order they were run
+	 */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+	
+	/**
+	 * Appends the recorded stages as a JSON array.
+	 */
+	public void appendJson(StringBuilder sb, String indent) {
+		sb.append('[');
+		for(int i = 0; i < entries.size(); i++) {
+			sb.append(i == 0 ? "\n" : ",\n").append(indent).append('\t');
+			entries.get(i).appendJson(sb);
+		}
+		if(!entries.isEmpty()) sb.append('\n').append(indent);
+		sb.append(']');
+	}
+	
+	private static long cpuTime() {
+		try {
+			return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+		} catch(UnsupportedOperationException e) {
+			return -1;
+		}
+	}
+	
+	private static long allocatedBytes() {
+		if(allocations == null) return -1;
+		return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
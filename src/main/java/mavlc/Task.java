@@ -26,11 +26,13 @@ public enum Task {
 	analyze(parse),
 	dumpXmlDast(analyze),
 	dumpDotDast(analyze),
+	dumpOptimization(analyze),
 	
 	compile(analyze),
 	dumpImage(compile),
 	dumpDisasm(compile),
 	dumpSymbols(compile),
+	dumpClass(compile),
 	
 	execute(compile),
 	dumpOutput(execute),
@@ -42,10 +44,10 @@ public enum Task {
 		this.prerequisite = prerequisite;
 	}
 	
-	public static void resolveDependencies(Set<Task> tasks) {
+	public static void resolveDependencies(Set<Task> tasks, boolean verbose) {
 		for(Task task : new ArrayList<>(tasks)) {
 			while(task.prerequisite != null && tasks.add(task.prerequisite)) {
-				if(Driver.verbose) System.out.println("Task " + Ansi.brightMagenta + task + Ansi.reset + " depends on task " + Ansi.brightMagenta + task.prerequisite + Ansi.reset + ".");
+				if(verbose) System.out.println("Task " + Ansi.brightMagenta + task + Ansi.reset + " depends on task " + Ansi.brightMagenta + task.prerequisite + Ansi.reset + ".");
 				task = task.prerequisite;
 			}
 		}
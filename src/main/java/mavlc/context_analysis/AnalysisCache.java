@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.context_analysis;
+
+import mavlc.syntax.function.Function;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Results of the previous analysis of one module, used by the {@link IncrementalAnalysis}
+ * to skip functions that did not change since then.<br>
+ * <br>
+ * A cache belongs to a single source file and must not be used by two analyses at the same time.
+ */
+public class AnalysisCache {
+	
+	/**
+	 * Supplies the analysis cache for a source file.
+	 */
+	@FunctionalInterface
+	public interface Provider {
+		AnalysisCache forSource(Path sourcePath);
+	}
+	
+	/**
+	 * The analysis result of a single function.
+	 */
+	static final class Entry {
+		/** Signature keys of all functions looked up during the analysis, by name. */
+		final Map<String, String> functions;
+		/** Content hashes of all record types looked up during the analysis, by name. */
+		final Map<String, String> records;
+		/** The decorated function, compared against the next version of the function. */
+		final Function function;
+		
+		Entry(Map<String, String> functions, Map<String, String> records, Function function) {
+			this.functions = functions;
+			this.records = records;
+			this.function = function;
+		}
+		
+		Entry withFunction(Function function) {
+			return new Entry(functions, records, function);
+		}
+	}
+	
+	private Map<String, Entry> entries = Collections.emptyMap();
+	
+	private int reused;
+	private int analyzed;
+	
+	Entry get(String functionName) {
+		return entries.get(functionName);
+	}
+	
+	/**
+	 * Replaces the cached results with those of a successfully analyzed module.
+	 */
+	void update(Map<String, Entry> entries, int reused, int analyzed) {
+		this.entries = new HashMap<>(entries);
+		this.reused = reused;
+		this.analyzed = analyzed;
+	}
+	
+	public int size() {
+		return entries.size();
+	}
+	
+	public void clear() {
+		entries = Collections.emptyMap();
+	}
+	
+	/**
+	 * @return The number of functions whose decorations were reused in the last successful analysis
+	 */
+	public int getReusedCount() {
+		return reused;
+	}
+	
+	/**
+	 * @return The number of functions that were checked again in the last successful analysis
+	 */
+	public int getAnalyzedCount() {
+		return analyzed;
+	}
+}
@@ -0,0 +1,434 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.context_analysis;
+
+import mavlc.errors.InternalCompilerError;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.AstNodeBaseVisitor;
+import mavlc.syntax.HasDeclaration;
+import mavlc.syntax.HasType;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.statement.*;
+import mavlc.syntax.type.MatrixTypeSpecifier;
+import mavlc.syntax.type.RecordTypeSpecifier;
+import mavlc.syntax.type.TypeSpecifier;
+import mavlc.syntax.type.VectorTypeSpecifier;
+import mavlc.type.RecordType;
+import mavlc.type.Type;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two functions for structural identity and copies the decorations of an analyzed function onto
+ * a structurally identical, undecorated one. Source locations are ignored. The visited node is the target,
+ * the argument is the corresponding node of the analyzed source.<br>
+ * <br>
+ * References to local declarations are redirected to the matching declarations of the target. References
+ * to functions and record types are resolved by name in the module environment of the target.
+ */
+class DecorationTransfer extends AstNodeBaseVisitor<Void, AstNode> {
+	
+	/** Thrown to abort the traversal at the first difference; carries no stack trace. */
+	private static final RuntimeException mismatch = new RuntimeException(null, null, false, false) {
+		private static final long serialVersionUID = 2871304129370917862L;
+	};
+	
+	/** The environment to resolve references in, or null to only compare the trees. */
+	private final ModuleEnvironment env;
+	private final Map<Declaration, Declaration> declarations = new IdentityHashMap<>();
+	
+	private DecorationTransfer(ModuleEnvironment env) {
+		this.env = env;
+	}
+	
+	/**
+	 * @return Whether both functions consist of the same nodes with the same names and values
+	 */
+	static boolean matches(Function source, Function target) {
+		try {
+			new DecorationTransfer(null).transfer(source, (AstNode) target);
+			return true;
+		} catch(RuntimeException e) {
+			if(e == mismatch) return false;
+			throw e;
+		}
+	}
+	
+	/**
+	 * @param source The analyzed function
+	 * @param target The function to decorate, which must {@link #matches match} the source
+	 * @param env The module environment of the target
+	 */
+	static void transfer(Function source, Function target, ModuleEnvironment env) {
+		try {
+			new DecorationTransfer(env).transfer(source, (AstNode) target);
+		} catch(RuntimeException e) {
+			if(e == mismatch) throw new InternalCompilerError(target, "Cannot transfer decorations between different trees");
+			throw e;
+		}
+	}
+	
+	private void transfer(AstNode source, AstNode target) {
+		if(source == null && target == null) return;
+		if(source == null || target == null || source.getClass() != target.getClass()) throw mismatch;
+		// checks against the abstract node classes instead of HasType, interface checks are considerably slower
+		if(env != null && (source instanceof Expression || source instanceof TypeSpecifier || source instanceof Declaration))
+			transferType((HasType) source, (HasType) target);
+		target.accept(this, source);
+	}
+	
+	private void transferType(HasType source, HasType target) {
+		if(source.isTypeSet() && !target.isTypeSet())
+			target.setType(mapType(source.getType()));
+	}
+	
+	private void transferDeclaration(HasDeclaration source, HasDeclaration target) {
+		if(env != null && source.isDeclarationSet())
+			target.setDeclaration(mapDeclaration((AstNode) target, source.getDeclaration()));
+	}
+	
+	private <T extends AstNode> void transfer(List<T> sources, List<T> targets) {
+		if(sources.size() != targets.size()) throw mismatch;
+		for(int i = 0; i < sources.size(); i++)
+			transfer(sources.get(i), targets.get(i));
+	}
+	
+	private static void check(boolean equal) {
+		if(!equal) throw mismatch;
+	}
+	
+	private Type mapType(Type type) {
+		if(type instanceof RecordType) {
+			String name = ((RecordType) type).name;
+			return new RecordType(name, env.getRecordTypeDeclaration(name));
+		}
+		return type;
+	}
+	
+	private Declaration mapDeclaration(AstNode node, Declaration declaration) {
+		Declaration mapped = declarations.get(declaration);
+		if(mapped == null) throw new InternalCompilerError(node, "Referenced declaration is not part of the transferred function");
+		return mapped;
+	}
+	
+	@Override
+	protected Void defaultOperation(AstNode node, AstNode source) {
+		throw new InternalCompilerError(node, "Cannot transfer decorations of " + node.getClass().getSimpleName());
+	}
+	
+	@Override
+	public Void visitFunction(Function function, AstNode sourceNode) {
+		Function source = (Function) sourceNode;
+		check(source.name.equals(function.name));
+		transfer(source.returnTypeSpecifier, function.returnTypeSpecifier);
+		transfer(source.parameters, function.parameters);
+		transfer(source.body, function.body);
+		if(env != null && source.isReturnTypeSet() && !function.isReturnTypeSet())
+			function.setReturnType(mapType(source.getReturnType()));
+		return null;
+	}
+	
+	// raw, like the visitor method it overrides
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Void visitTypeSpecifier(TypeSpecifier typeSpecifier, AstNode source) {
+		return null;
+	}
+	
+	@Override
+	public Void visitVectorTypeSpecifier(VectorTypeSpecifier typeSpecifier, AstNode sourceNode) {
+		VectorTypeSpecifier source = (VectorTypeSpecifier) sourceNode;
+		transfer(source.elementTypeSpecifier, typeSpecifier.elementTypeSpecifier);
+		transfer(source.dimensionExpression, typeSpecifier.dimensionExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixTypeSpecifier(MatrixTypeSpecifier typeSpecifier, AstNode sourceNode) {
+		MatrixTypeSpecifier source = (MatrixTypeSpecifier) sourceNode;
+		transfer(source.elementTypeSpecifier, typeSpecifier.elementTypeSpecifier);
+		transfer(source.rowsExpression, typeSpecifier.rowsExpression);
+		transfer(source.colsExpression, typeSpecifier.colsExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitVariableAssignment(VariableAssignment assignment, AstNode sourceNode) {
+		VariableAssignment source = (VariableAssignment) sourceNode;
+		transfer(source.identifier, assignment.identifier);
+		transfer(source.value, assignment.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordTypeSpecifier(RecordTypeSpecifier typeSpecifier, AstNode source) {
+		check(((RecordTypeSpecifier) source).recordTypeName.equals(typeSpecifier.recordTypeName));
+		return null;
+	}
+	
+	@Override
+	public Void visitLeftHandIdentifier(LeftHandIdentifier identifier, AstNode source) {
+		check(((LeftHandIdentifier) source).name.equals(identifier.name));
+		transferDeclaration((LeftHandIdentifier) source, identifier);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixLhsIdentifier(MatrixLhsIdentifier identifier, AstNode sourceNode) {
+		MatrixLhsIdentifier source = (MatrixLhsIdentifier) sourceNode;
+		visitLeftHandIdentifier(identifier, source);
+		transfer(source.rowIndexExpression, identifier.rowIndexExpression);
+		transfer(source.colIndexExpression, identifier.colIndexExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitVectorLhsIdentifier(VectorLhsIdentifier identifier, AstNode sourceNode) {
+		VectorLhsIdentifier source = (VectorLhsIdentifier) sourceNode;
+		visitLeftHandIdentifier(identifier, source);
+		transfer(source.indexExpression, identifier.indexExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordLhsIdentifier(RecordLhsIdentifier identifier, AstNode sourceNode) {
+		RecordLhsIdentifier source = (RecordLhsIdentifier) sourceNode;
+		visitLeftHandIdentifier(identifier, source);
+		check(source.elementName.equals(identifier.elementName));
+		return null;
+	}
+	
+	@Override
+	public Void visitDeclaration(Declaration declaration, AstNode sourceNode) {
+		Declaration source = (Declaration) sourceNode;
+		check(source.name.equals(declaration.name));
+		transfer(source.typeSpecifier, declaration.typeSpecifier);
+		declarations.put(source, declaration);
+		return null;
+	}
+	
+	@Override
+	public Void visitValueDefinition(ValueDefinition definition, AstNode sourceNode) {
+		ValueDefinition source = (ValueDefinition) sourceNode;
+		visitDeclaration(definition, source);
+		transfer(source.value, definition.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitForLoop(ForLoop forLoop, AstNode sourceNode) {
+		ForLoop source = (ForLoop) sourceNode;
+		check(source.initVarName.equals(forLoop.initVarName) && source.incrVarName.equals(forLoop.incrVarName));
+		transfer(source.initExpression, forLoop.initExpression);
+		if(env != null && source.isInitVarDeclarationSet())
+			forLoop.setInitVarDeclaration(mapDeclaration(forLoop, source.getInitVarDeclaration()));
+		transfer(source.loopCondition, forLoop.loopCondition);
+		transfer(source.incrExpression, forLoop.incrExpression);
+		if(env != null && source.isIncrVarDeclarationSet())
+			forLoop.setIncrVarDeclaration(mapDeclaration(forLoop, source.getIncrVarDeclaration()));
+		transfer(source.body, forLoop.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitForEachLoop(ForEachLoop forEachLoop, AstNode sourceNode) {
+		ForEachLoop source = (ForEachLoop) sourceNode;
+		transfer(source.iteratorDeclaration, forEachLoop.iteratorDeclaration);
+		transfer(source.structExpression, forEachLoop.structExpression);
+		transfer(source.body, forEachLoop.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitIfStatement(IfStatement ifStatement, AstNode sourceNode) {
+		IfStatement source = (IfStatement) sourceNode;
+		transfer(source.condition, ifStatement.condition);
+		transfer(source.thenStatement, ifStatement.thenStatement);
+		transfer(source.elseStatement, ifStatement.elseStatement);
+		return null;
+	}
+	
+	@Override
+	public Void visitCallStatement(CallStatement callStatement, AstNode sourceNode) {
+		transfer(((CallStatement) sourceNode).callExpression, callStatement.callExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitReturnStatement(ReturnStatement returnStatement, AstNode sourceNode) {
+		transfer(((ReturnStatement) sourceNode).returnValue, returnStatement.returnValue);
+		return null;
+	}
+	
+	@Override
+	public Void visitCompoundStatement(CompoundStatement compoundStatement, AstNode sourceNode) {
+		transfer(((CompoundStatement) sourceNode).statements, compoundStatement.statements);
+		return null;
+	}
+	
+	@Override
+	public Void visitSwitchStatement(SwitchStatement switchStatement, AstNode sourceNode) {
+		SwitchStatement source = (SwitchStatement) sourceNode;
+		transfer(source.condition, switchStatement.condition);
+		transfer(source.cases, switchStatement.cases);
+		transfer(source.defaults, switchStatement.defaults);
+		return null;
+	}
+	
+	@Override
+	public Void visitCase(Case aCase, AstNode sourceNode) {
+		Case source = (Case) sourceNode;
+		transfer(source.conditionExpression, aCase.conditionExpression);
+		if(env != null && source.isConditionSet())
+			aCase.setCondition(source.getCondition());
+		transfer(source.body, aCase.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitDefault(Default defCase, AstNode sourceNode) {
+		transfer(((Default) sourceNode).body, defCase.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitIdentifierReference(IdentifierReference reference, AstNode source) {
+		check(((IdentifierReference) source).name.equals(reference.name));
+		transferDeclaration((IdentifierReference) source, reference);
+		return null;
+	}
+	
+	@Override
+	public Void visitBoolValue(BoolValue value, AstNode source) {
+		check(((BoolValue) source).value == value.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitIntValue(IntValue value, AstNode source) {
+		check(((IntValue) source).value == value.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitFloatValue(FloatValue value, AstNode source) {
+		check(Float.compare(((FloatValue) source).value, value.value) == 0);
+		return null;
+	}
+	
+	@Override
+	public Void visitStringValue(StringValue value, AstNode source) {
+		check(((StringValue) source).value.equals(value.value));
+		return null;
+	}
+	
+	@Override
+	public Void visitSelectExpression(SelectExpression select, AstNode sourceNode) {
+		SelectExpression source = (SelectExpression) sourceNode;
+		transfer(source.condition, select.condition);
+		transfer(source.trueCase, select.trueCase);
+		transfer(source.falseCase, select.falseCase);
+		return null;
+	}
+	
+	@Override
+	public Void visitBinaryExpression(BinaryExpression binaryExpression, AstNode sourceNode) {
+		BinaryExpression source = (BinaryExpression) sourceNode;
+		transfer(source.leftOperand, binaryExpression.leftOperand);
+		transfer(source.rightOperand, binaryExpression.rightOperand);
+		return null;
+	}
+	
+	@Override
+	public Void visitCompare(Compare compare, AstNode source) {
+		check(((Compare) source).comparator == compare.comparator);
+		return visitBinaryExpression(compare, source);
+	}
+	
+	@Override
+	public Void visitUnaryExpression(UnaryExpression unaryExpression, AstNode sourceNode) {
+		transfer(((UnaryExpression) sourceNode).operand, unaryExpression.operand);
+		return null;
+	}
+	
+	@Override
+	public Void visitStructureInit(StructureInit structureInit, AstNode sourceNode) {
+		transfer(((StructureInit) sourceNode).elements, structureInit.elements);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordInit(RecordInit recordInit, AstNode source) {
+		check(((RecordInit) source).typeName.equals(recordInit.typeName));
+		return visitStructureInit(recordInit, source);
+	}
+	
+	@Override
+	public Void visitCallExpression(CallExpression callExpression, AstNode sourceNode) {
+		CallExpression source = (CallExpression) sourceNode;
+		check(source.functionName.equals(callExpression.functionName));
+		transfer(source.actualParameters, callExpression.actualParameters);
+		if(env != null && source.isCalleeDefinitionSet())
+			callExpression.setCalleeDefinition(env.getFunctionDeclaration(callExpression.functionName));
+		return null;
+	}
+	
+	@Override
+	public Void visitElementSelect(ElementSelect elementSelect, AstNode sourceNode) {
+		ElementSelect source = (ElementSelect) sourceNode;
+		transfer(source.structExpression, elementSelect.structExpression);
+		transfer(source.indexExpression, elementSelect.indexExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordElementSelect(RecordElementSelect elementSelect, AstNode sourceNode) {
+		RecordElementSelect source = (RecordElementSelect) sourceNode;
+		check(source.elementName.equals(elementSelect.elementName));
+		transfer(source.recordExpression, elementSelect.recordExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitSubMatrix(SubMatrix subMatrix, AstNode sourceNode) {
+		SubMatrix source = (SubMatrix) sourceNode;
+		transfer(source.structExpression, subMatrix.structExpression);
+		transfer(source.rowStartOffsetExpression, subMatrix.rowStartOffsetExpression);
+		transfer(source.rowBaseIndexExpression, subMatrix.rowBaseIndexExpression);
+		transfer(source.rowEndOffsetExpression, subMatrix.rowEndOffsetExpression);
+		transfer(source.colStartOffsetExpression, subMatrix.colStartOffsetExpression);
+		transfer(source.colBaseIndexExpression, subMatrix.colBaseIndexExpression);
+		transfer(source.colEndOffsetExpression, subMatrix.colEndOffsetExpression);
+		if(env == null) return null;
+		if(source.isRowStartOffsetSet()) subMatrix.setRowStartOffset(source.getRowStartOffset());
+		if(source.isRowEndOffsetSet()) subMatrix.setRowEndOffset(source.getRowEndOffset());
+		if(source.isColStartOffsetSet()) subMatrix.setColStartOffset(source.getColStartOffset());
+		if(source.isColEndOffsetSet()) subMatrix.setColEndOffset(source.getColEndOffset());
+		return null;
+	}
+	
+	@Override
+	public Void visitSubVector(SubVector subVector, AstNode sourceNode) {
+		SubVector source = (SubVector) sourceNode;
+		transfer(source.structExpression, subVector.structExpression);
+		transfer(source.startOffsetExpression, subVector.startOffsetExpression);
+		transfer(source.baseIndexExpression, subVector.baseIndexExpression);
+		transfer(source.endOffsetExpression, subVector.endOffsetExpression);
+		if(env == null) return null;
+		if(source.isStartOffsetSet()) subVector.setStartOffset(source.getStartOffset());
+		if(source.isEndOffsetSet()) subVector.setEndOffset(source.getEndOffset());
+		return null;
+	}
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.context_analysis;
+
+import mavlc.errors.InternalCompilerError;
+import mavlc.errors.MissingMainFunctionError;
+import mavlc.services.visualization.Dumper;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.function.FormalParameter;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.module.Module;
+import mavlc.syntax.record.RecordTypeDeclaration;
+import mavlc.syntax.type.RecordTypeSpecifier;
+import mavlc.type.VoidType;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Contextual analysis that only checks functions which changed since the previous analysis of the same module.<br>
+ * <br>
+ * Record types are always checked. A function is reused if it is structurally identical to the previously
+ * analyzed function of the same name (ignoring source locations) and every function and record type the
+ * previous analysis looked up in the module environment still has the same signature and content hash,
+ * respectively. Since the {@link ContextualAnalysis} of a function only depends on the function
+ * itself and on these lookups, the decorations of the previous analysis can be copied onto the new function.
+ * All other functions are checked by a regular {@link ContextualAnalysis}, recording their lookups.<br>
+ * <br>
+ * The cache is only updated if the whole module was analyzed successfully.
+ */
+public class IncrementalAnalysis {
+	
+	protected final AnalysisCache cache;
+	protected final RecordingEnvironment env = new RecordingEnvironment();
+	
+	private final MessageDigest digest;
+	private final Map<RecordTypeDeclaration, String> recordHashes = new IdentityHashMap<>();
+	private final Map<Function, String> signatureKeys = new IdentityHashMap<>();
+	
+	public IncrementalAnalysis(AnalysisCache cache) {
+		this.cache = cache;
+		try {
+			this.digest = MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			throw new InternalCompilerError("SHA-256 is not available");
+		}
+	}
+	
+	public ModuleEnvironment getEnvironment() {
+		return env;
+	}
+	
+	public void analyze(Module module) {
+		ContextualAnalysis analysis = new ContextualAnalysis(env);
+		
+		for(RecordTypeDeclaration record : module.records) {
+			env.addRecordTypeDeclaration(record);
+			record.accept(analysis);
+		}
+		for(Function function : module.functions) {
+			env.addFunction(function);
+		}
+		
+		Map<String, AnalysisCache.Entry> entries = new HashMap<>();
+		int reused = 0;
+		boolean hasMain = false;
+		for(Function function : module.functions) {
+			AnalysisCache.Entry cached = cache.get(function.name);
+			if(cached != null && dependenciesUnchanged(cached) && DecorationTransfer.matches(cached.function, function)) {
+				DecorationTransfer.transfer(cached.function, function, env);
+				entries.put(function.name, cached.withFunction(function));
+				reused++;
+			} else {
+				env.startRecording();
+				analysis.currentFunction = function;
+				function.accept(analysis);
+				entries.put(function.name, new AnalysisCache.Entry(functionKeys(env.functionLookups), recordKeys(env.recordLookups), function));
+			}
+			if(isMainFunction(function)) hasMain = true;
+		}
+		if(!hasMain) {
+			throw new MissingMainFunctionError();
+		}
+		
+		cache.update(entries, reused, entries.size() - reused);
+	}
+	
+	private static boolean isMainFunction(Function func) {
+		// signature of the main method must be "void main()"
+		return func.name.equals("main")
+				&& func.parameters.isEmpty()
+				&& func.getReturnType() == VoidType.instance;
+	}
+	
+	private boolean dependenciesUnchanged(AnalysisCache.Entry entry) {
+		for(Map.Entry<String, String> dependency : entry.functions.entrySet()) {
+			Function function = env.functions.get(dependency.getKey());
+			if(function == null || !signatureKey(function).equals(dependency.getValue())) return false;
+		}
+		for(Map.Entry<String, String> dependency : entry.records.entrySet()) {
+			RecordTypeDeclaration record = env.records.get(dependency.getKey());
+			if(record == null || !recordHash(record).equals(dependency.getValue())) return false;
+		}
+		return true;
+	}
+	
+	private Map<String, String> functionKeys(Set<String> names) {
+		Map<String, String> keys = new HashMap<>();
+		for(String name : names)
+			keys.put(name, signatureKey(env.functions.get(name)));
+		return keys;
+	}
+	
+	private Map<String, String> recordKeys(Set<String> names) {
+		Map<String, String> keys = new HashMap<>();
+		for(String name : names)
+			keys.put(name, recordHash(env.records.get(name)));
+		return keys;
+	}
+	
+	/**
+	 * The signature of a function, including the content of record types it mentions,
+	 * since callers may access the elements of records returned by it.
+	 */
+	private String signatureKey(Function function) {
+		String key = signatureKeys.get(function);
+		if(key == null) {
+			key = buildSignatureKey(function);
+			signatureKeys.put(function, key);
+		}
+		return key;
+	}
+	
+	private String buildSignatureKey(Function function) {
+		StringBuilder key = new StringBuilder(function.getSignature());
+		appendRecordHash(key, function.returnTypeSpecifier);
+		for(FormalParameter parameter : function.parameters)
+			appendRecordHash(key, parameter.typeSpecifier);
+		return key.toString();
+	}
+	
+	private void appendRecordHash(StringBuilder key, AstNode typeSpecifier) {
+		if(!(typeSpecifier instanceof RecordTypeSpecifier)) return;
+		RecordTypeDeclaration record = env.records.get(((RecordTypeSpecifier) typeSpecifier).recordTypeName);
+		key.append('|').append(record == null ? "?" : recordHash(record));
+	}
+	
+	private String recordHash(RecordTypeDeclaration record) {
+		return recordHashes.computeIfAbsent(record, this::contentHash);
+	}
+	
+	private String contentHash(AstNode node) {
+		byte[] hash = digest.digest(Dumper.dump(node).getBytes(StandardCharsets.UTF_8));
+		return Base64.getEncoder().encodeToString(hash);
+	}
+	
+	/**
+	 * Module environment that records the names of all functions and record types looked up since the last
+	 * call to {@link #startRecording()}.
+	 */
+	protected static class RecordingEnvironment extends ModuleEnvironment {
+		private final Set<String> functionLookups = new HashSet<>();
+		private final Set<String> recordLookups = new HashSet<>();
+		
+		void startRecording() {
+			functionLookups.clear();
+			recordLookups.clear();
+		}
+		
+		@Override
+		public Function getFunctionDeclaration(String name) {
+			Function function = super.getFunctionDeclaration(name);
+			functionLookups.add(name);
+			return function;
+		}
+		
+		@Override
+		public RecordTypeDeclaration getRecordTypeDeclaration(String name) {
+			RecordTypeDeclaration record = super.getRecordTypeDeclaration(name);
+			recordLookups.add(name);
+			return record;
+		}
+	}
+}
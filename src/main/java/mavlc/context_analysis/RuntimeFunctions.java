@@ -18,6 +18,7 @@ import mavlc.type.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -27,7 +28,21 @@ import java.util.Map;
  */
 public class RuntimeFunctions {
 	
+	/**
+	 * The declarations are built once and shared by all module environments.
+	 * They are fully decorated on construction and never modified afterwards,
+	 * so concurrently running pipelines can safely read them.
+	 */
+	private static final Map<String, Function> runtimeFunctions = Collections.unmodifiableMap(buildRuntimeFunctions());
+	
+	/**
+	 * @return An unmodifiable view of the shared runtime function declarations.
+	 */
 	public static Map<String, Function> getRuntimeFunctions() {
+		return runtimeFunctions;
+	}
+	
+	private static Map<String, Function> buildRuntimeFunctions() {
 		Map<String, Function> runtimeFunctions = new HashMap<>();
 		
 		IntType $int = IntType.instance;
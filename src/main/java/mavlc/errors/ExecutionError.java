@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.errors;
+
+import mavlc.syntax.AstNode;
+
+import static java.lang.String.format;
+import static mavlc.errors.FormattingHelpers.highlight;
+
+/**
+ * Error class to signal an error during the execution of a program,
+ * e.g. a division by zero or an index out of bounds.
+ */
+public class ExecutionError extends CompilationError {
+	
+	private static final long serialVersionUID = -3641865915473214523L;
+	
+	public final AstNode errorNode;
+	
+	/**
+	 * @param errorNode The AST node whose execution failed.
+	 * @param description A description of the error.
+	 */
+	public ExecutionError(AstNode errorNode, String description) {
+		this.errorNode = errorNode;
+		message = format("\nRuntime error in %s: %s\n" +
+						"\nFaulty node:\n%s\n",
+				errorNode.sourceLocation,
+				description,
+				highlight(errorNode.dump())
+		);
+	}
+	
+	/**
+	 * @param description A description of the error.
+	 */
+	public ExecutionError(String description) {
+		this.errorNode = null;
+		message = format("\nRuntime error: %s\n", description);
+	}
+}
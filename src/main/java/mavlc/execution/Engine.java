@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution;
+
+import mavlc.execution.bytecode.BytecodeCompiler;
+import mavlc.execution.closure.ClosureCompiler;
+import mavlc.syntax.module.Module;
+
+/**
+ * The available ways to execute a decorated module. All engines produce the
+ * same output and count the same number of cycles.
+ */
+public enum Engine {
+	/** Walks the syntax tree, see {@link Interpreter}. Always executes sequentially. */
+	interpreter {
+		@Override
+		public Executable prepare(Module module, int parallelThreshold) {
+			return new Interpreter(module);
+		}
+	},
+	/** Compiles each function to a tree of specialized closures, see {@link ClosureCompiler}. */
+	closure {
+		@Override
+		public Executable prepare(Module module, int parallelThreshold) {
+			return ClosureCompiler.compile(module, parallelThreshold);
+		}
+	},
+	/** Compiles the module to a JVM class, see {@link BytecodeCompiler}. */
+	bytecode {
+		@Override
+		public Executable prepare(Module module, int parallelThreshold) {
+			return BytecodeCompiler.compile(module, parallelThreshold);
+		}
+	};
+	
+	/**
+	 * @param module The decorated module.
+	 * @return The module prepared for sequential execution.
+	 */
+	public Executable prepare(Module module) {
+		return prepare(module, 0);
+	}
+	
+	/**
+	 * @param module The decorated module.
+	 * @param parallelThreshold The minimum number of elements for which structure operations and
+	 *                          independent foreach loops are executed in parallel, or 0 to execute sequentially.
+	 * @return The module prepared for execution.
+	 */
+	public abstract Executable prepare(Module module, int parallelThreshold);
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution;
+
+import mavlc.errors.ExecutionError;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * A module prepared for execution by one of the {@link Engine}s.
+ */
+public interface Executable {
+	
+	/**
+	 * Executes the main function of the module. Each executed statement takes one cycle.
+	 *
+	 * @param in The input of the program.
+	 * @param out The output of the program.
+	 * @param directory The directory to resolve the file names passed to runtime functions against.
+	 * @param maxCycles The maximum number of cycles to execute, or 0 for no limit.
+	 * @return The number of executed cycles.
+	 * @throws ExecutionError If the program fails or exceeds the cycle limit.
+	 */
+	long execute(InputStream in, OutputStream out, Path directory, int maxCycles);
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution;
+
+import mavlc.syntax.AstNode;
+import mavlc.syntax.AstNodeBaseVisitor;
+import mavlc.syntax.function.FormalParameter;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.statement.*;
+
+/**
+ * Assigns a frame slot to every parameter and local declaration of a function
+ * and stores it as the local base offset of the declaration. Declarations in
+ * sibling blocks share slots, as their lifetimes do not overlap.
+ */
+public class FrameLayout extends AstNodeBaseVisitor<Void, Void> {
+	
+	private int nextSlot;
+	private int frameSize;
+	
+	private FrameLayout() { }
+	
+	/**
+	 * @param function The function to lay out.
+	 * @return The number of slots required by a frame of the function.
+	 */
+	public static int layout(Function function) {
+		FrameLayout layout = new FrameLayout();
+		for(FormalParameter parameter : function.parameters)
+			layout.allocate(parameter);
+		for(Statement statement : function.body)
+			statement.accept(layout);
+		return layout.frameSize;
+	}
+	
+	private void allocate(Declaration declaration) {
+		declaration.setLocalBaseOffset(nextSlot++);
+		frameSize = Math.max(frameSize, nextSlot);
+	}
+	
+	private void visitBlock(Statement statement) {
+		int blockStart = nextSlot;
+		statement.accept(this);
+		nextSlot = blockStart;
+	}
+	
+	@Override
+	protected Void defaultOperation(AstNode node, Void __) {
+		return null;
+	}
+	
+	@Override
+	public Void visitDeclaration(Declaration declaration, Void __) {
+		allocate(declaration);
+		return null;
+	}
+	
+	@Override
+	public Void visitCompoundStatement(CompoundStatement compoundStatement, Void __) {
+		int blockStart = nextSlot;
+		for(Statement statement : compoundStatement.statements)
+			statement.accept(this);
+		nextSlot = blockStart;
+		return null;
+	}
+	
+	@Override
+	public Void visitIfStatement(IfStatement ifStatement, Void __) {
+		visitBlock(ifStatement.thenStatement);
+		if(ifStatement.hasElseStatement())
+			visitBlock(ifStatement.elseStatement);
+		return null;
+	}
+	
+	@Override
+	public Void visitForLoop(ForLoop forLoop, Void __) {
+		visitBlock(forLoop.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitForEachLoop(ForEachLoop forEachLoop, Void __) {
+		int blockStart = nextSlot;
+		allocate(forEachLoop.iteratorDeclaration);
+		forEachLoop.body.accept(this);
+		nextSlot = blockStart;
+		return null;
+	}
+	
+	@Override
+	public Void visitSwitchStatement(SwitchStatement switchStatement, Void __) {
+		for(Case aCase : switchStatement.cases)
+			visitBlock(aCase.body);
+		for(Default defCase : switchStatement.defaults)
+			visitBlock(defCase.body);
+		return null;
+	}
+}
@@ -0,0 +1,425 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution;
+
+import mavlc.errors.ExecutionError;
+import mavlc.errors.InternalCompilerError;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.AstNodeBaseVisitor;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.module.Module;
+import mavlc.syntax.statement.*;
+import mavlc.type.MatrixType;
+import mavlc.type.RecordType;
+import mavlc.type.StructType;
+import mavlc.type.VectorType;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes a decorated module by walking its syntax tree. Each function call
+ * gets a frame with one slot per local declaration, as assigned by {@link FrameLayout}.
+ * The frame is passed as argument to the visit methods. Values are represented
+ * as described in {@link Values}.
+ */
+public class Interpreter extends AstNodeBaseVisitor<Object, Object[]> implements Executable {
+	
+	protected final Function main;
+	protected final Map<Function, Integer> frameSizes = new IdentityHashMap<>();
+	
+	protected RuntimeLibrary library;
+	protected long cycles;
+	protected long cycleLimit;
+	
+	/**
+	 * Lays out the frames of all functions of the module.
+	 *
+	 * @param module The decorated module to execute.
+	 */
+	public Interpreter(Module module) {
+		Function main = null;
+		for(Function function : module.functions) {
+			frameSizes.put(function, FrameLayout.layout(function));
+			if(function.name.equals("main")) main = function;
+		}
+		if(main == null) throw new InternalCompilerError("Cannot execute a module without main function");
+		this.main = main;
+	}
+	
+	@Override
+	public long execute(InputStream in, OutputStream out, Path directory, int maxCycles) {
+		library = new RuntimeLibrary(in, out, directory);
+		cycles = 0;
+		cycleLimit = maxCycles > 0 ? maxCycles : Long.MAX_VALUE;
+		try {
+			call(main, new Object[frameSizes.get(main)]);
+		} catch(StackOverflowError e) {
+			throw new ExecutionError("Stack overflow");
+		} finally {
+			library.flush();
+		}
+		return cycles;
+	}
+	
+	protected Object call(Function function, Object[] frame) {
+		// the return statement is the last statement of a function, its value is the result
+		Object result = null;
+		for(Statement statement : function.body)
+			result = execute(statement, frame);
+		return result;
+	}
+	
+	protected Object execute(Statement statement, Object[] frame) {
+		if(++cycles > cycleLimit)
+			throw new ExecutionError(statement, "Exceeded the limit of " + cycleLimit + " cycles");
+		return statement.accept(this, frame);
+	}
+	
+	/**
+	 * Evaluates an expression whose value is stored. Vectors, matrices and records
+	 * read from a variable are copied, as MAVL has value semantics.
+	 */
+	protected Object valueOf(Expression expression, Object[] frame) {
+		Object value = expression.accept(this, frame);
+		if(expression instanceof IdentifierReference || expression instanceof RecordElementSelect || expression instanceof SelectExpression)
+			return Values.copy(value);
+		return value;
+	}
+	
+	@Override
+	protected Object defaultOperation(AstNode node, Object[] frame) {
+		throw new InternalCompilerError(node, "Cannot execute " + node.getClass().getSimpleName());
+	}
+	
+	@Override
+	public Object visitValueDefinition(ValueDefinition valueDefinition, Object[] frame) {
+		frame[valueDefinition.getLocalBaseOffset()] = valueOf(valueDefinition.value, frame);
+		return null;
+	}
+	
+	@Override
+	public Object visitVariableDeclaration(VariableDeclaration variableDeclaration, Object[] frame) {
+		frame[variableDeclaration.getLocalBaseOffset()] = Values.zero(variableDeclaration.getType());
+		return null;
+	}
+	
+	@Override
+	public Object visitVariableAssignment(VariableAssignment variableAssignment, Object[] frame) {
+		Object value = valueOf(variableAssignment.value, frame);
+		LeftHandIdentifier identifier = variableAssignment.identifier;
+		Declaration declaration = identifier.getDeclaration();
+		int slot = declaration.getLocalBaseOffset();
+		if(identifier instanceof VectorLhsIdentifier) {
+			int index = (int) ((VectorLhsIdentifier) identifier).indexExpression.accept(this, frame);
+			if(!((VectorLhsIdentifier) identifier).isInBounds())
+				Values.checkIndex(identifier, index, ((VectorType) declaration.getType()).dimension);
+			Values.set(frame[slot], index, value);
+		} else if(identifier instanceof MatrixLhsIdentifier) {
+			MatrixType type = (MatrixType) declaration.getType();
+			int row = (int) ((MatrixLhsIdentifier) identifier).rowIndexExpression.accept(this, frame);
+			int col = (int) ((MatrixLhsIdentifier) identifier).colIndexExpression.accept(this, frame);
+			if(!((MatrixLhsIdentifier) identifier).isInBounds()) {
+				Values.checkIndex(identifier, row, type.rows);
+				Values.checkIndex(identifier, col, type.cols);
+			}
+			Values.set(frame[slot], row * type.cols + col, value);
+		} else if(identifier instanceof RecordLhsIdentifier) {
+			RecordType type = (RecordType) declaration.getType();
+			((Object[]) frame[slot])[Values.elementIndex(type.typeDeclaration, ((RecordLhsIdentifier) identifier).elementName)] = value;
+		} else {
+			frame[slot] = value;
+		}
+		return null;
+	}
+	
+	@Override
+	public Object visitForLoop(ForLoop forLoop, Object[] frame) {
+		frame[forLoop.getInitVarDeclaration().getLocalBaseOffset()] = valueOf(forLoop.initExpression, frame);
+		int incrSlot = forLoop.getIncrVarDeclaration().getLocalBaseOffset();
+		while((boolean) forLoop.loopCondition.accept(this, frame)) {
+			execute(forLoop.body, frame);
+			frame[incrSlot] = valueOf(forLoop.incrExpression, frame);
+		}
+		return null;
+	}
+	
+	@Override
+	public Object visitForEachLoop(ForEachLoop forEachLoop, Object[] frame) {
+		IteratorDeclaration iterator = forEachLoop.iteratorDeclaration;
+		int slot = iterator.getLocalBaseOffset();
+		if(iterator.isVariable()) {
+			// the elements are written back to the variable after each iteration
+			int structSlot = ((IdentifierReference) forEachLoop.structExpression).getDeclaration().getLocalBaseOffset();
+			int size = Values.length(frame[structSlot]);
+			for(int i = 0; i < size; i++) {
+				frame[slot] = Values.get(frame[structSlot], i);
+				execute(forEachLoop.body, frame);
+				Values.set(frame[structSlot], i, frame[slot]);
+			}
+		} else {
+			Object struct = valueOf(forEachLoop.structExpression, frame);
+			int size = Values.length(struct);
+			for(int i = 0; i < size; i++) {
+				frame[slot] = Values.get(struct, i);
+				execute(forEachLoop.body, frame);
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	public Object visitIfStatement(IfStatement ifStatement, Object[] frame) {
+		if((boolean) ifStatement.condition.accept(this, frame))
+			execute(ifStatement.thenStatement, frame);
+		else if(ifStatement.hasElseStatement())
+			execute(ifStatement.elseStatement, frame);
+		return null;
+	}
+	
+	@Override
+	public Object visitCallStatement(CallStatement callStatement, Object[] frame) {
+		callStatement.callExpression.accept(this, frame);
+		return null;
+	}
+	
+	@Override
+	public Object visitReturnStatement(ReturnStatement returnStatement, Object[] frame) {
+		return returnStatement.returnValue.accept(this, frame);
+	}
+	
+	@Override
+	public Object visitCompoundStatement(CompoundStatement compoundStatement, Object[] frame) {
+		for(Statement statement : compoundStatement.statements)
+			execute(statement, frame);
+		return null;
+	}
+	
+	@Override
+	public Object visitSwitchStatement(SwitchStatement switchStatement, Object[] frame) {
+		int value = (int) switchStatement.condition.accept(this, frame);
+		for(Case aCase : switchStatement.cases) {
+			if(aCase.getCondition() == value) {
+				execute(aCase.body, frame);
+				return null;
+			}
+		}
+		for(Default defCase : switchStatement.defaults)
+			execute(defCase.body, frame);
+		return null;
+	}
+	
+	@Override
+	public Object visitIdentifierReference(IdentifierReference identifierReference, Object[] frame) {
+		return frame[identifierReference.getDeclaration().getLocalBaseOffset()];
+	}
+	
+	@Override
+	public Object visitSelectExpression(SelectExpression exp, Object[] frame) {
+		return (boolean) exp.condition.accept(this, frame) ? exp.trueCase.accept(this, frame) : exp.falseCase.accept(this, frame);
+	}
+	
+	@Override
+	public Object visitMatrixMultiplication(MatrixMultiplication matrixMultiplication, Object[] frame) {
+		MatrixType left = (MatrixType) matrixMultiplication.leftOperand.getType();
+		MatrixType right = (MatrixType) matrixMultiplication.rightOperand.getType();
+		return Operations.matrixMultiply(
+				matrixMultiplication.leftOperand.accept(this, frame),
+				matrixMultiplication.rightOperand.accept(this, frame),
+				left.rows, left.cols, right.cols);
+	}
+	
+	@Override
+	public Object visitDotProduct(DotProduct dotProduct, Object[] frame) {
+		return Operations.dotProduct(dotProduct.leftOperand.accept(this, frame), dotProduct.rightOperand.accept(this, frame));
+	}
+	
+	@Override
+	public Object visitExponentiation(Exponentiation exponentiation, Object[] frame) {
+		return Operations.power(exponentiation.leftOperand.accept(this, frame), exponentiation.rightOperand.accept(this, frame));
+	}
+	
+	@Override
+	public Object visitMultiplication(Multiplication multiplication, Object[] frame) {
+		return Operations.multiply(multiplication.leftOperand.accept(this, frame), multiplication.rightOperand.accept(this, frame));
+	}
+	
+	@Override
+	public Object visitDivision(Division division, Object[] frame) {
+		return Operations.divide(division, division.leftOperand.accept(this, frame), division.rightOperand.accept(this, frame));
+	}
+	
+	@Override
+	public Object visitAddition(Addition addition, Object[] frame) {
+		return Operations.add(addition.leftOperand.accept(this, frame), addition.rightOperand.accept(this, frame));
+	}
+	
+	@Override
+	public Object visitSubtraction(Subtraction subtraction, Object[] frame) {
+		return Operations.subtract(subtraction.leftOperand.accept(this, frame), subtraction.rightOperand.accept(this, frame));
+	}
+	
+	@Override
+	public Object visitCompare(Compare compare, Object[] frame) {
+		return Operations.compare(compare.comparator, compare.leftOperand.accept(this, frame), compare.rightOperand.accept(this, frame));
+	}
+	
+	@Override
+	public Object visitAnd(And and, Object[] frame) {
+		// both operands are always evaluated
+		boolean left = (boolean) and.leftOperand.accept(this, frame);
+		boolean right = (boolean) and.rightOperand.accept(this, frame);
+		return left && right;
+	}
+	
+	@Override
+	public Object visitOr(Or or, Object[] frame) {
+		boolean left = (boolean) or.leftOperand.accept(this, frame);
+		boolean right = (boolean) or.rightOperand.accept(this, frame);
+		return left || right;
+	}
+	
+	@Override
+	public Object visitMatrixTranspose(MatrixTranspose matrixTranspose, Object[] frame) {
+		MatrixType type = (MatrixType) matrixTranspose.operand.getType();
+		return Operations.transpose(matrixTranspose.operand.accept(this, frame), type.rows, type.cols);
+	}
+	
+	@Override
+	public Object visitMatrixRows(MatrixRows rows, Object[] frame) {
+		return ((MatrixType) rows.operand.getType()).rows;
+	}
+	
+	@Override
+	public Object visitMatrixCols(MatrixCols cols, Object[] frame) {
+		return ((MatrixType) cols.operand.getType()).cols;
+	}
+	
+	@Override
+	public Object visitVectorDimension(VectorDimension vectorDimension, Object[] frame) {
+		return ((VectorType) vectorDimension.operand.getType()).dimension;
+	}
+	
+	@Override
+	public Object visitUnaryMinus(UnaryMinus unaryMinus, Object[] frame) {
+		return Operations.negate(unaryMinus.operand.accept(this, frame));
+	}
+	
+	@Override
+	public Object visitNot(Not not, Object[] frame) {
+		return !(boolean) not.operand.accept(this, frame);
+	}
+	
+	@Override
+	public Object visitCallExpression(CallExpression callExpression, Object[] frame) {
+		Function callee = callExpression.getCalleeDefinition();
+		List<Expression> arguments = callExpression.actualParameters;
+		Integer frameSize = frameSizes.get(callee);
+		if(frameSize == null) {
+			// not part of the module, so it is a runtime function
+			Object[] values = new Object[arguments.size()];
+			for(int i = 0; i < values.length; i++)
+				values[i] = arguments.get(i).accept(this, frame);
+			return library.call(callExpression, values);
+		}
+		Object[] calleeFrame = new Object[frameSize];
+		for(int i = 0; i < arguments.size(); i++)
+			calleeFrame[callee.parameters.get(i).getLocalBaseOffset()] = valueOf(arguments.get(i), frame);
+		return call(callee, calleeFrame);
+	}
+	
+	@Override
+	public Object visitElementSelect(ElementSelect elementSelect, Object[] frame) {
+		Object struct = elementSelect.structExpression.accept(this, frame);
+		int index = (int) elementSelect.indexExpression.accept(this, frame);
+		StructType type = (StructType) elementSelect.structExpression.getType();
+		if(type instanceof VectorType) {
+			if(!elementSelect.isInBounds()) Values.checkIndex(elementSelect, index, ((VectorType) type).dimension);
+			return Values.get(struct, index);
+		}
+		MatrixType matrix = (MatrixType) type;
+		if(!elementSelect.isInBounds()) Values.checkIndex(elementSelect, index, matrix.rows);
+		return Values.slice(struct, index * matrix.cols, matrix.cols);
+	}
+	
+	@Override
+	public Object visitRecordElementSelect(RecordElementSelect recordElementSelect, Object[] frame) {
+		Object[] record = (Object[]) recordElementSelect.recordExpression.accept(this, frame);
+		RecordType type = (RecordType) recordElementSelect.recordExpression.getType();
+		return record[Values.elementIndex(type.typeDeclaration, recordElementSelect.elementName)];
+	}
+	
+	@Override
+	public Object visitSubMatrix(SubMatrix subMatrix, Object[] frame) {
+		Object matrix = subMatrix.structExpression.accept(this, frame);
+		int rowBase = (int) subMatrix.rowBaseIndexExpression.accept(this, frame);
+		int colBase = (int) subMatrix.colBaseIndexExpression.accept(this, frame);
+		return Operations.subMatrix(subMatrix, matrix, rowBase, colBase);
+	}
+	
+	@Override
+	public Object visitSubVector(SubVector subVector, Object[] frame) {
+		Object vector = subVector.structExpression.accept(this, frame);
+		int base = (int) subVector.baseIndexExpression.accept(this, frame);
+		return Operations.subVector(subVector, vector, base);
+	}
+	
+	@Override
+	public Object visitStructureInit(StructureInit structureInit, Object[] frame) {
+		List<Expression> elements = structureInit.elements;
+		StructType type = (StructType) structureInit.getType();
+		if(type instanceof VectorType) {
+			Object vector = Values.zero(type.elementType, elements.size());
+			for(int i = 0; i < elements.size(); i++)
+				Values.set(vector, i, elements.get(i).accept(this, frame));
+			return vector;
+		}
+		int cols = ((MatrixType) type).cols;
+		Object matrix = Values.zero(type.elementType, elements.size() * cols);
+		for(int row = 0; row < elements.size(); row++)
+			System.arraycopy(elements.get(row).accept(this, frame), 0, matrix, row * cols, cols);
+		return matrix;
+	}
+	
+	@Override
+	public Object visitRecordInit(RecordInit recordInit, Object[] frame) {
+		Object[] record = new Object[recordInit.elements.size()];
+		for(int i = 0; i < record.length; i++)
+			record[i] = valueOf(recordInit.elements.get(i), frame);
+		return record;
+	}
+	
+	@Override
+	public Object visitBoolValue(BoolValue boolValue, Object[] frame) {
+		return boolValue.value;
+	}
+	
+	@Override
+	public Object visitIntValue(IntValue intValue, Object[] frame) {
+		return intValue.value;
+	}
+	
+	@Override
+	public Object visitFloatValue(FloatValue floatValue, Object[] frame) {
+		return floatValue.value;
+	}
+	
+	@Override
+	public Object visitStringValue(StringValue stringValue, Object[] frame) {
+		return stringValue.value;
+	}
+}
@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution;
+
+import java.util.Arrays;
+
+/**
+ * Typed kernels for the structure operations of MAVL on the flat, row-major
+ * arrays described in {@link Values}.
+ * <p>
+ * The loops are kept to the plain counted form over arrays that the JIT compiler
+ * vectorizes, and large matrices are processed in tiles so the operands stay in the
+ * cache. Floating-point sums are always accumulated in index order, so every kernel
+ * computes the same result as the naive loop.
+ * <p>
+ * The execution engines select the kernel from the static types of the operands.
+ * The variants taking a result array let them reuse a buffer for temporaries, see
+ * {@link Temporaries}.
+ */
+public final class Kernels {
+	private Kernels() { }
+	
+	/** Edge length of the tiles and bands used for large matrices. */
+	public static final int TILE = 64;
+	
+	public static int[] add(int[] left, int[] right) {
+		return add(left, right, new int[left.length]);
+	}
+	
+	public static int[] add(int[] left, int[] right, int[] result) {
+		for(int i = 0; i < result.length; i++) result[i] = left[i] + right[i];
+		return result;
+	}
+	
+	public static float[] add(float[] left, float[] right) {
+		return add(left, right, new float[left.length]);
+	}
+	
+	public static float[] add(float[] left, float[] right, float[] result) {
+		for(int i = 0; i < result.length; i++) result[i] = left[i] + right[i];
+		return result;
+	}
+	
+	public static int[] subtract(int[] left, int[] right) {
+		return subtract(left, right, new int[left.length]);
+	}
+	
+	public static int[] subtract(int[] left, int[] right, int[] result) {
+		for(int i = 0; i < result.length; i++) result[i] = left[i] - right[i];
+		return result;
+	}
+	
+	public static float[] subtract(float[] left, float[] right) {
+		return subtract(left, right, new float[left.length]);
+	}
+	
+	public static float[] subtract(float[] left, float[] right, float[] result) {
+		for(int i = 0; i < result.length; i++) result[i] = left[i] - right[i];
+		return result;
+	}
+	
+	/**
+	 * Multiplies two structures element-wise.
+	 */
+	public static int[] multiply(int[] left, int[] right) {
+		return multiply(left, right, new int[left.length]);
+	}
+	
+	public static int[] multiply(int[] left, int[] right, int[] result) {
+		for(int i = 0; i < result.length; i++) result[i] = left[i] * right[i];
+		return result;
+	}
+	
+	/**
+	 * Multiplies two structures element-wise.
+	 */
+	public static float[] multiply(float[] left, float[] right) {
+		return multiply(left, right, new float[left.length]);
+	}
+	
+	public static float[] multiply(float[] left, float[] right, float[] result) {
+		for(int i = 0; i < result.length; i++) result[i] = left[i] * right[i];
+		return result;
+	}
+	
+	public static int[] scale(int factor, int[] struct) {
+		return scale(factor, struct, new int[struct.length]);
+	}
+	
+	public static int[] scale(int factor, int[] struct, int[] result) {
+		for(int i = 0; i < result.length; i++) result[i] = factor * struct[i];
+		return result;
+	}
+	
+	public static float[] scale(float factor, float[] struct) {
+		return scale(factor, struct, new float[struct.length]);
+	}
+	
+	public static float[] scale(float factor, float[] struct, float[] result) {
+		for(int i = 0; i < result.length; i++) result[i] = factor * struct[i];
+		return result;
+	}
+	
+	public static int dotProduct(int[] left, int[] right) {
+		int sum = 0;
+		for(int i = 0; i < left.length; i++) sum += left[i] * right[i];
+		return sum;
+	}
+	
+	public static float dotProduct(float[] left, float[] right) {
+		float sum = 0;
+		for(int i = 0; i < left.length; i++) sum += left[i] * right[i];
+		return sum;
+	}
+	
+	/**
+	 * Multiplies a rows x inner with an inner x cols matrix.
+	 * The right matrix is walked row by row. If it is larger than a single tile, it is processed in
+	 * bands of {@link #TILE} rows, and four rows of the result are computed at once.
+	 */
+	public static int[] matrixMultiply(int[] left, int[] right, int rows, int inner, int cols) {
+		int[] result = new int[rows * cols];
+		multiplyRows(left, right, result, 0, rows, inner, cols);
+		return result;
+	}
+	
+	/**
+	 * Multiplies a rows x inner with an inner x cols matrix into result, which is overwritten.
+	 */
+	public static int[] matrixMultiply(int[] left, int[] right, int rows, int inner, int cols, int[] result) {
+		// the rows are accumulated
+		Arrays.fill(result, 0);
+		multiplyRows(left, right, result, 0, rows, inner, cols);
+		return result;
+	}
+	
+	/**
+	 * Computes the rows [firstRow, endRow) of a matrix multiplication into result.
+	 */
+	static void multiplyRows(int[] left, int[] right, int[] result, int firstRow, int endRow, int inner, int cols) {
+		if(inner <= TILE && cols <= TILE) {
+			for(int i = firstRow; i < endRow; i++)
+				for(int k = 0; k < inner; k++)
+					axpy(left[i * inner + k], right, k * cols, result, i * cols, cols);
+			return;
+		}
+		// the bands are visited in order, which keeps the summation order
+		for(int kk = 0; kk < inner; kk += TILE) {
+			int kEnd = Math.min(kk + TILE, inner);
+			int i = firstRow;
+			// four rows of the result share every load of the right matrix
+			for(; i + 4 <= endRow; i += 4) {
+				for(int k = kk; k < kEnd; k++) {
+					int a0 = left[i * inner + k], a1 = left[(i + 1) * inner + k];
+					int a2 = left[(i + 2) * inner + k], a3 = left[(i + 3) * inner + k];
+					int source = k * cols, target = i * cols;
+					for(int j = 0; j < cols; j++) {
+						int value = right[source + j];
+						result[target + j] += a0 * value;
+						result[target + cols + j] += a1 * value;
+						result[target + 2 * cols + j] += a2 * value;
+						result[target + 3 * cols + j] += a3 * value;
+					}
+				}
+			}
+			for(; i < endRow; i++)
+				for(int k = kk; k < kEnd; k++)
+					axpy(left[i * inner + k], right, k * cols, result, i * cols, cols);
+		}
+	}
+	
+	/**
+	 * Multiplies a rows x inner with an inner x cols matrix.
+	 * The right matrix is walked row by row. If it is larger than a single tile, it is processed in
+	 * bands of {@link #TILE} rows, and four rows of the result are computed at once.
+	 */
+	public static float[] matrixMultiply(float[] left, float[] right, int rows, int inner, int cols) {
+		float[] result = new float[rows * cols];
+		multiplyRows(left, right, result, 0, rows, inner, cols);
+		return result;
+	}
+	
+	/**
+	 * Multiplies a rows x inner with an inner x cols matrix into result, which is overwritten.
+	 */
+	public static float[] matrixMultiply(float[] left, float[] right, int rows, int inner, int cols, float[] result) {
+		// the rows are accumulated
+		Arrays.fill(result, 0);
+		multiplyRows(left, right, result, 0, rows, inner, cols);
+		return result;
+	}
+	
+	/**
+	 * Computes the rows [firstRow, endRow) of a matrix multiplication into result.
+	 */
+	static void multiplyRows(float[] left, float[] right, float[] result, int firstRow, int endRow, int inner, int cols) {
+		if(inner <= TILE && cols <= TILE) {
+			for(int i = firstRow; i < endRow; i++)
+				for(int k = 0; k < inner; k++)
+					axpy(left[i * inner + k], right, k * cols, result, i * cols, cols);
+			return;
+		}
+		for(int kk = 0; kk < inner; kk += TILE) {
+			int kEnd = Math.min(kk + TILE, inner);
+			int i = firstRow;
+			// four rows of the result share every load of the right matrix
+			for(; i + 4 <= endRow; i += 4) {
+				for(int k = kk; k < kEnd; k++) {
+					float a0 = left[i * inner + k], a1 = left[(i + 1) * inner + k];
+					float a2 = left[(i + 2) * inner + k], a3 = left[(i + 3) * inner + k];
+					int source = k * cols, target = i * cols;
+					for(int j = 0; j < cols; j++) {
+						float value = right[source + j];
+						result[target + j] += a0 * value;
+						result[target + cols + j] += a1 * value;
+						result[target + 2 * cols + j] += a2 * value;
+						result[target + 3 * cols + j] += a3 * value;
+					}
+				}
+			}
+			for(; i < endRow; i++)
+				for(int k = kk; k < kEnd; k++)
+					axpy(left[i * inner + k], right, k * cols, result, i * cols, cols);
+		}
+	}
+	
+	private static void axpy(int factor, int[] source, int sourceOffset, int[] target, int targetOffset, int length) {
+		for(int j = 0; j < length; j++) target[targetOffset + j] += factor * source[sourceOffset + j];
+	}
+	
+	private static void axpy(float factor, float[] source, int sourceOffset, float[] target, int targetOffset, int length) {
+		for(int j = 0; j < length; j++) target[targetOffset + j] += factor * source[sourceOffset + j];
+	}
+	
+	/**
+	 * Transposes a rows x cols matrix, tile by tile for matrices larger than a single tile.
+	 */
+	public static int[] transpose(int[] matrix, int rows, int cols) {
+		return transpose(matrix, rows, cols, new int[matrix.length]);
+	}
+	
+	/**
+	 * Transposes a rows x cols matrix into result, which must not be the matrix itself.
+	 */
+	public static int[] transpose(int[] matrix, int rows, int cols, int[] result) {
+		transposeRows(matrix, result, 0, rows, rows, cols);
+		return result;
+	}
+	
+	/**
+	 * Transposes the rows [firstRow, endRow) of a rows x cols matrix into result.
+	 */
+	static void transposeRows(int[] matrix, int[] result, int firstRow, int endRow, int rows, int cols) {
+		for(int ii = firstRow; ii < endRow; ii += TILE) {
+			int iEnd = Math.min(ii + TILE, endRow);
+			for(int jj = 0; jj < cols; jj += TILE) {
+				int jEnd = Math.min(jj + TILE, cols);
+				for(int i = ii; i < iEnd; i++)
+					for(int j = jj; j < jEnd; j++) result[j * rows + i] = matrix[i * cols + j];
+			}
+		}
+	}
+	
+	/**
+	 * Transposes a rows x cols matrix, tile by tile for matrices larger than a single tile.
+	 */
+	public static float[] transpose(float[] matrix, int rows, int cols) {
+		return transpose(matrix, rows, cols, new float[matrix.length]);
+	}
+	
+	/**
+	 * Transposes a rows x cols matrix into result, which must not be the matrix itself.
+	 */
+	public static float[] transpose(float[] matrix, int rows, int cols, float[] result) {
+		transposeRows(matrix, result, 0, rows, rows, cols);
+		return result;
+	}
+	
+	/**
+	 * Transposes the rows [firstRow, endRow) of a rows x cols matrix into result.
+	 */
+	static void transposeRows(float[] matrix, float[] result, int firstRow, int endRow, int rows, int cols) {
+		for(int ii = firstRow; ii < endRow; ii += TILE) {
+			int iEnd = Math.min(ii + TILE, endRow);
+			for(int jj = 0; jj < cols; jj += TILE) {
+				int jEnd = Math.min(jj + TILE, cols);
+				for(int i = ii; i < iEnd; i++)
+					for(int j = jj; j < jEnd; j++) result[j * rows + i] = matrix[i * cols + j];
+			}
+		}
+	}
+}
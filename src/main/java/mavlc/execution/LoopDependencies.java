@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution;
+
+import mavlc.syntax.AstNode;
+import mavlc.syntax.AstNodeBaseVisitor;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.statement.*;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides on the decorated syntax tree whether the iterations of a foreach loop are
+ * independent of each other, so they can be executed in any order and in parallel.
+ * <p>
+ * This is the case if the body only assigns to the iterator and to variables declared
+ * within the body, calls no functions (which might perform I/O) and, for a variable
+ * iterator, does not refer to the iterated structure, whose elements are written back
+ * by the other iterations.
+ */
+public final class LoopDependencies extends AstNodeBaseVisitor<Void, Void> {
+	
+	private final Declaration writtenStruct;
+	private final Set<Declaration> locals = Collections.newSetFromMap(new IdentityHashMap<>());
+	private boolean independent = true;
+	
+	private LoopDependencies(ForEachLoop loop) {
+		IteratorDeclaration iterator = loop.iteratorDeclaration;
+		writtenStruct = iterator.isVariable() ? ((IdentifierReference) loop.structExpression).getDeclaration() : null;
+		locals.add(iterator);
+	}
+	
+	/**
+	 * @param loop A foreach loop of a decorated module.
+	 * @return Whether the iterations of the loop are independent of each other.
+	 */
+	public static boolean isIndependent(ForEachLoop loop) {
+		LoopDependencies dependencies = new LoopDependencies(loop);
+		dependencies.visit(loop.body);
+		return dependencies.independent;
+	}
+	
+	private void check(AstNode node) {
+		if(node != null && independent) node.accept(this);
+	}
+	
+	private void checkAll(List<? extends AstNode> nodes) {
+		for(AstNode node : nodes) check(node);
+	}
+	
+	private void write(Declaration declaration) {
+		if(!locals.contains(declaration)) independent = false;
+	}
+	
+	@Override
+	protected Void defaultOperation(AstNode node, Void __) {
+		return null;
+	}
+	
+	@Override
+	public Void visitDeclaration(Declaration declaration, Void __) {
+		locals.add(declaration);
+		return null;
+	}
+	
+	@Override
+	public Void visitValueDefinition(ValueDefinition valueDefinition, Void __) {
+		check(valueDefinition.value);
+		locals.add(valueDefinition);
+		return null;
+	}
+	
+	@Override
+	public Void visitVariableAssignment(VariableAssignment variableAssignment, Void __) {
+		write(variableAssignment.identifier.getDeclaration());
+		check(variableAssignment.identifier);
+		check(variableAssignment.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixLhsIdentifier(MatrixLhsIdentifier matrixLhsIdentifier, Void __) {
+		check(matrixLhsIdentifier.rowIndexExpression);
+		check(matrixLhsIdentifier.colIndexExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitVectorLhsIdentifier(VectorLhsIdentifier vectorLhsIdentifier, Void __) {
+		check(vectorLhsIdentifier.indexExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitForLoop(ForLoop forLoop, Void __) {
+		write(forLoop.getInitVarDeclaration());
+		write(forLoop.getIncrVarDeclaration());
+		check(forLoop.initExpression);
+		check(forLoop.loopCondition);
+		check(forLoop.incrExpression);
+		check(forLoop.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitForEachLoop(ForEachLoop forEachLoop, Void __) {
+		// a variable iterator writes the elements back to the structure
+		if(forEachLoop.iteratorDeclaration.isVariable())
+			write(((IdentifierReference) forEachLoop.structExpression).getDeclaration());
+		check(forEachLoop.structExpression);
+		locals.add(forEachLoop.iteratorDeclaration);
+		check(forEachLoop.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitIfStatement(IfStatement ifStatement, Void __) {
+		check(ifStatement.condition);
+		check(ifStatement.thenStatement);
+		check(ifStatement.elseStatement);
+		return null;
+	}
+	
+	@Override
+	public Void visitCallStatement(CallStatement callStatement, Void __) {
+		independent = false;
+		return null;
+	}
+	
+	@Override
+	public Void visitCompoundStatement(CompoundStatement compoundStatement, Void __) {
+		checkAll(compoundStatement.statements);
+		return null;
+	}
+	
+	@Override
+	public Void visitSwitchStatement(SwitchStatement switchStatement, Void __) {
+		check(switchStatement.condition);
+		checkAll(switchStatement.cases);
+		checkAll(switchStatement.defaults);
+		return null;
+	}
+	
+	@Override
+	public Void visitCase(Case aCase, Void __) {
+		check(aCase.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitDefault(Default defCase, Void __) {
+		check(defCase.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitIdentifierReference(IdentifierReference identifierReference, Void __) {
+		if(identifierReference.getDeclaration() == writtenStruct) independent = false;
+		return null;
+	}
+	
+	@Override
+	public Void visitSelectExpression(SelectExpression expr, Void __) {
+		check(expr.condition);
+		check(expr.trueCase);
+		check(expr.falseCase);
+		return null;
+	}
+	
+	@Override
+	public Void visitBinaryExpression(BinaryExpression binaryExpression, Void __) {
+		check(binaryExpression.leftOperand);
+		check(binaryExpression.rightOperand);
+		return null;
+	}
+	
+	@Override
+	public Void visitUnaryExpression(UnaryExpression unaryExpression, Void __) {
+		check(unaryExpression.operand);
+		return null;
+	}
+	
+	@Override
+	public Void visitStructureInit(StructureInit structureInit, Void __) {
+		checkAll(structureInit.elements);
+		return null;
+	}
+	
+	@Override
+	public Void visitCallExpression(CallExpression callExpression, Void __) {
+		independent = false;
+		return null;
+	}
+	
+	@Override
+	public Void visitElementSelect(ElementSelect elementSelect, Void __) {
+		check(elementSelect.structExpression);
+		check(elementSelect.indexExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordElementSelect(RecordElementSelect recordElementSelect, Void __) {
+		check(recordElementSelect.recordExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitSubMatrix(SubMatrix subMatrix, Void __) {
+		check(subMatrix.structExpression);
+		check(subMatrix.rowBaseIndexExpression);
+		check(subMatrix.colBaseIndexExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitSubVector(SubVector subVector, Void __) {
+		check(subVector.structExpression);
+		check(subVector.baseIndexExpression);
+		return null;
+	}
+}
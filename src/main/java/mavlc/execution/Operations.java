@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution;
+
+import mavlc.errors.ExecutionError;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.expression.Compare.Comparison;
+import mavlc.syntax.expression.SubMatrix;
+import mavlc.syntax.expression.SubVector;
+import mavlc.type.MatrixType;
+import mavlc.type.VectorType;
+
+/**
+ * The arithmetic operations of MAVL on values as described in {@link Values}.
+ * The operands are expected to have passed the contextual analysis, so their
+ * types match and structures have the same dimensions.
+ * Operations on structures are delegated to the typed {@link Kernels}.
+ */
+public class Operations {
+	private Operations() { }
+	
+	public static Object add(Object left, Object right) {
+		if(left instanceof Integer) return (int) left + (int) right;
+		if(left instanceof Float) return (float) left + (float) right;
+		if(left instanceof int[]) return Kernels.add((int[]) left, (int[]) right);
+		return Kernels.add((float[]) left, (float[]) right);
+	}
+	
+	public static Object subtract(Object left, Object right) {
+		if(left instanceof Integer) return (int) left - (int) right;
+		if(left instanceof Float) return (float) left - (float) right;
+		if(left instanceof int[]) return Kernels.subtract((int[]) left, (int[]) right);
+		return Kernels.subtract((float[]) left, (float[]) right);
+	}
+	
+	/**
+	 * Multiplies two scalars, a structure with a scalar or two structures element-wise.
+	 */
+	public static Object multiply(Object left, Object right) {
+		if(left instanceof Integer) {
+			if(right instanceof Integer) return (int) left * (int) right;
+			return Kernels.scale((int) left, (int[]) right);
+		}
+		if(left instanceof Float) {
+			if(right instanceof Float) return (float) left * (float) right;
+			return Kernels.scale((float) left, (float[]) right);
+		}
+		if(right instanceof Integer) return Kernels.scale((int) right, (int[]) left);
+		if(right instanceof Float) return Kernels.scale((float) right, (float[]) left);
+		if(left instanceof int[]) return Kernels.multiply((int[]) left, (int[]) right);
+		return Kernels.multiply((float[]) left, (float[]) right);
+	}
+	
+	/**
+	 * @param node The division, used to report a division by zero.
+	 */
+	public static Object divide(AstNode node, Object left, Object right) {
+		if(left instanceof Integer) {
+			if((int) right == 0) throw new ExecutionError(node, "Division by zero");
+			return (int) left / (int) right;
+		}
+		return (float) left / (float) right;
+	}
+	
+	public static Object power(Object base, Object exponent) {
+		if(base instanceof Integer) return (int) Math.pow((int) base, (int) exponent);
+		return (float) Math.pow((float) base, (float) exponent);
+	}
+	
+	public static Object negate(Object operand) {
+		if(operand instanceof Integer) return -(int) operand;
+		return -(float) operand;
+	}
+	
+	public static boolean compare(Comparison comparison, Object left, Object right) {
+		if(left instanceof Integer) return compare(comparison, (int) left, (int) right);
+		return compare(comparison, (float) left, (float) right);
+	}
+	
+	private static boolean compare(Comparison comparison, int left, int right) {
+		switch(comparison) {
+			case LESS:
+				return left < right;
+			case GREATER:
+				return left > right;
+			case LESS_EQUAL:
+				return left <= right;
+			case GREATER_EQUAL:
+				return left >= right;
+			case NOT_EQUAL:
+				return left != right;
+			default:
+				return left == right;
+		}
+	}
+	
+	private static boolean compare(Comparison comparison, float left, float right) {
+		switch(comparison) {
+			case LESS:
+				return left < right;
+			case GREATER:
+				return left > right;
+			case LESS_EQUAL:
+				return left <= right;
+			case GREATER_EQUAL:
+				return left >= right;
+			case NOT_EQUAL:
+				return left != right;
+			default:
+				return left == right;
+		}
+	}
+	
+	public static Object dotProduct(Object left, Object right) {
+		if(left instanceof int[]) return Kernels.dotProduct((int[]) left, (int[]) right);
+		return Kernels.dotProduct((float[]) left, (float[]) right);
+	}
+	
+	/**
+	 * Multiplies a rows x inner with an inner x cols matrix.
+	 */
+	public static Object matrixMultiply(Object left, Object right, int rows, int inner, int cols) {
+		if(left instanceof int[]) return Kernels.matrixMultiply((int[]) left, (int[]) right, rows, inner, cols);
+		return Kernels.matrixMultiply((float[]) left, (float[]) right, rows, inner, cols);
+	}
+	
+	/**
+	 * Transposes a rows x cols matrix.
+	 */
+	public static Object transpose(Object matrix, int rows, int cols) {
+		if(matrix instanceof int[]) return Kernels.transpose((int[]) matrix, rows, cols);
+		return Kernels.transpose((float[]) matrix, rows, cols);
+	}
+	
+	/**
+	 * @param node The sub-matrix expression, which provides the offsets and is used to report invalid indices.
+	 */
+	public static Object subMatrix(SubMatrix node, Object matrix, int rowBase, int colBase) {
+		MatrixType type = (MatrixType) node.structExpression.getType();
+		int firstRow = rowBase + node.getRowStartOffset(), lastRow = rowBase + node.getRowEndOffset();
+		int firstCol = colBase + node.getColStartOffset(), lastCol = colBase + node.getColEndOffset();
+		Values.checkIndex(node, firstRow, type.rows);
+		Values.checkIndex(node, lastRow, type.rows);
+		Values.checkIndex(node, firstCol, type.cols);
+		Values.checkIndex(node, lastCol, type.cols);
+		int rows = lastRow - firstRow + 1, cols = lastCol - firstCol + 1;
+		Object result = Values.zero(type.elementType, rows * cols);
+		for(int row = 0; row < rows; row++)
+			System.arraycopy(matrix, (firstRow + row) * type.cols + firstCol, result, row * cols, cols);
+		return result;
+	}
+	
+	/**
+	 * @param node The sub-vector expression, which provides the offsets and is used to report invalid indices.
+	 */
+	public static Object subVector(SubVector node, Object vector, int base) {
+		VectorType type = (VectorType) node.structExpression.getType();
+		int first = base + node.getStartOffset(), last = base + node.getEndOffset();
+		Values.checkIndex(node, first, type.dimension);
+		Values.checkIndex(node, last, type.dimension);
+		return Values.slice(vector, first, last - first + 1);
+	}
+}
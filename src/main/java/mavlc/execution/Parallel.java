@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits an index range into chunks that are executed as fork-join tasks in the common pool.
+ */
+public final class Parallel {
+	private Parallel() { }
+	
+	/**
+	 * The part of an index range executed by a single task.
+	 */
+	@FunctionalInterface
+	public interface Chunk {
+		void run(int from, int to);
+	}
+	
+	/** Chunks per worker thread, so unevenly expensive chunks are balanced by work stealing. */
+	private static final int chunksPerThread = 4;
+	
+	/**
+	 * Runs the chunks of the range [0, size) in parallel and waits for all of them.
+	 * If chunks fail, the exception of the first failing chunk in index order is rethrown,
+	 * which is the one a sequential execution would have encountered first.
+	 *
+	 * @param size The size of the range.
+	 * @param granularity The chunk boundaries are multiples of this number, except for the end of the range.
+	 * @param chunk The operation executed on each chunk.
+	 */
+	public static void forEachChunk(int size, int granularity, Chunk chunk) {
+		int units = (size + granularity - 1) / granularity;
+		int count = Math.min(units, ForkJoinPool.getCommonPoolParallelism() * chunksPerThread);
+		if(count <= 1) {
+			chunk.run(0, size);
+			return;
+		}
+		ChunkTask[] tasks = new ChunkTask[count];
+		for(int i = 0; i < count; i++) {
+			int from = Math.min(size, (int) ((long) units * i / count) * granularity);
+			int to = Math.min(size, (int) ((long) units * (i + 1) / count) * granularity);
+			tasks[i] = new ChunkTask(chunk, from, to);
+		}
+		ForkJoinTask.invokeAll(tasks);
+		for(ChunkTask task : tasks) {
+			if(task.failure instanceof RuntimeException) throw (RuntimeException) task.failure;
+			if(task.failure instanceof Error) throw (Error) task.failure;
+		}
+	}
+	
+	private static final class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = -9021804056640932322L;
+		
+		private final Chunk chunk;
+		private final int from, to;
+		private Throwable failure;
+		
+		ChunkTask(Chunk chunk, int from, int to) {
+			this.chunk = chunk;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			try {
+				chunk.run(from, to);
+			} catch(RuntimeException | Error e) {
+				// kept instead of propagated, so the caller can pick the first failure in index order
+				failure = e;
+			}
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution;
+
+/**
+ * Parallel versions of the {@link Kernels}, which split the result into chunks computed
+ * as fork-join tasks. Every element is computed exactly as by the sequential kernel,
+ * so the results are the same.
+ * <p>
+ * The execution engines use them in parallel mode for operations whose amount of work,
+ * known from the static types, reaches the configured threshold.
+ * The dot product is not parallelized, as splitting the sum would change the rounding.
+ */
+public final class ParallelKernels {
+	private ParallelKernels() { }
+	
+	public static int[] add(int[] left, int[] right) {
+		int[] result = new int[left.length];
+		Parallel.forEachChunk(result.length, 1, (from, to) -> {
+			for(int i = from; i < to; i++) result[i] = left[i] + right[i];
+		});
+		return result;
+	}
+	
+	public static int[] subtract(int[] left, int[] right) {
+		int[] result = new int[left.length];
+		Parallel.forEachChunk(result.length, 1, (from, to) -> {
+			for(int i = from; i < to; i++) result[i] = left[i] - right[i];
+		});
+		return result;
+	}
+	
+	/**
+	 * Multiplies two structures element-wise.
+	 */
+	public static int[] multiply(int[] left, int[] right) {
+		int[] result = new int[left.length];
+		Parallel.forEachChunk(result.length, 1, (from, to) -> {
+			for(int i = from; i < to; i++) result[i] = left[i] * right[i];
+		});
+		return result;
+	}
+	
+	public static int[] scale(int factor, int[] struct) {
+		int[] result = new int[struct.length];
+		Parallel.forEachChunk(result.length, 1, (from, to) -> {
+			for(int i = from; i < to; i++) result[i] = factor * struct[i];
+		});
+		return result;
+	}
+	
+	public static float[] add(float[] left, float[] right) {
+		float[] result = new float[left.length];
+		Parallel.forEachChunk(result.length, 1, (from, to) -> {
+			for(int i = from; i < to; i++) result[i] = left[i] + right[i];
+		});
+		return result;
+	}
+	
+	public static float[] subtract(float[] left, float[] right) {
+		float[] result = new float[left.length];
+		Parallel.forEachChunk(result.length, 1, (from, to) -> {
+			for(int i = from; i < to; i++) result[i] = left[i] - right[i];
+		});
+		return result;
+	}
+	
+	/**
+	 * Multiplies two structures element-wise.
+	 */
+	public static float[] multiply(float[] left, float[] right) {
+		float[] result = new float[left.length];
+		Parallel.forEachChunk(result.length, 1, (from, to) -> {
+			for(int i = from; i < to; i++) result[i] = left[i] * right[i];
+		});
+		return result;
+	}
+	
+	public static float[] scale(float factor, float[] struct) {
+		float[] result = new float[struct.length];
+		Parallel.forEachChunk(result.length, 1, (from, to) -> {
+			for(int i = from; i < to; i++) result[i] = factor * struct[i];
+		});
+		return result;
+	}
+	
+	/**
+	 * Multiplies a rows x inner with an inner x cols matrix, split into bands of rows.
+	 */
+	public static int[] matrixMultiply(int[] left, int[] right, int rows, int inner, int cols) {
+		int[] result = new int[rows * cols];
+		Parallel.forEachChunk(rows, 4, (from, to) -> Kernels.multiplyRows(left, right, result, from, to, inner, cols));
+		return result;
+	}
+	
+	/**
+	 * Multiplies a rows x inner with an inner x cols matrix, split into bands of rows.
+	 */
+	public static float[] matrixMultiply(float[] left, float[] right, int rows, int inner, int cols) {
+		float[] result = new float[rows * cols];
+		Parallel.forEachChunk(rows, 4, (from, to) -> Kernels.multiplyRows(left, right, result, from, to, inner, cols));
+		return result;
+	}
+	
+	/**
+	 * Transposes a rows x cols matrix, split into bands of rows.
+	 */
+	public static int[] transpose(int[] matrix, int rows, int cols) {
+		int[] result = new int[matrix.length];
+		Parallel.forEachChunk(rows, Kernels.TILE, (from, to) -> Kernels.transposeRows(matrix, result, from, to, rows, cols));
+		return result;
+	}
+	
+	/**
+	 * Transposes a rows x cols matrix, split into bands of rows.
+	 */
+	public static float[] transpose(float[] matrix, int rows, int cols) {
+		float[] result = new float[matrix.length];
+		Parallel.forEachChunk(rows, Kernels.TILE, (from, to) -> Kernels.transposeRows(matrix, result, from, to, rows, cols));
+		return result;
+	}
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution;
+
+import mavlc.errors.ExecutionError;
+import mavlc.syntax.expression.CallExpression;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Java implementations of the functions of the standard runtime environment,
+ * see {@link mavlc.context_analysis.RuntimeFunctions}. File names passed to the
+ * matrix and image functions are resolved against the given directory.
+ */
+public class RuntimeLibrary {
+	
+	protected final Reader in;
+	protected final PrintStream out;
+	protected final Path directory;
+	
+	/**
+	 * @param in The stream read by readInt, readFloat and readBool.
+	 * @param out The stream written by the print functions. It is buffered, call {@link #flush()} when done.
+	 * @param directory The directory to resolve relative file names against.
+	 */
+	public RuntimeLibrary(InputStream in, OutputStream out, Path directory) {
+		this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		this.out = new PrintStream(new BufferedOutputStream(out), false, StandardCharsets.UTF_8);
+		this.directory = directory;
+	}
+	
+	public void flush() {
+		out.flush();
+	}
+	
+	/**
+	 * Calls a runtime function.
+	 *
+	 * @param call The call of the function, used to report errors.
+	 * @param args The evaluated arguments.
+	 * @return The result of the function, or null for void functions.
+	 */
+	public Object call(CallExpression call, Object[] args) {
+		switch(call.functionName) {
+			case "printInt":
+				out.print((int) args[0]);
+				return null;
+			case "printFloat":
+				out.print((float) args[0]);
+				return null;
+			case "printBool":
+				out.print((boolean) args[0]);
+				return null;
+			case "printString":
+				out.print((String) args[0]);
+				return null;
+			case "printLine":
+				out.print('\n');
+				return null;
+			case "readInt":
+				try {
+					return Integer.parseInt(readToken(call));
+				} catch(NumberFormatException e) {
+					throw new ExecutionError(call, "Invalid integer input: " + e.getMessage());
+				}
+			case "readFloat":
+				try {
+					return Float.parseFloat(readToken(call));
+				} catch(NumberFormatException e) {
+					throw new ExecutionError(call, "Invalid float input: " + e.getMessage());
+				}
+			case "readBool":
+				return Boolean.parseBoolean(readToken(call));
+			case "powInt":
+				return (int) Math.pow((int) args[0], (int) args[1]);
+			case "powFloat":
+				return (float) Math.pow((float) args[0], (float) args[1]);
+			case "sqrtInt":
+				return (int) Math.sqrt((int) args[0]);
+			case "sqrtFloat":
+				return (float) Math.sqrt((float) args[0]);
+			case "modulo":
+				if((int) args[1] == 0) throw new ExecutionError(call, "Division by zero");
+				return (int) args[0] % (int) args[1];
+			case "int2float":
+				return (float) (int) args[0];
+			case "float2int":
+				return (int) (float) args[0];
+			case "readIntMatrix64":
+				return readMatrix(call, (String) args[0], new int[64 * 64]);
+			case "readIntMatrix16":
+				return readMatrix(call, (String) args[0], new int[16 * 16]);
+			case "readIntMatrix9":
+				return readMatrix(call, (String) args[0], new int[9 * 9]);
+			case "readFloatMatrix64":
+				return readMatrix(call, (String) args[0], new float[64 * 64]);
+			case "readFloatMatrix16":
+				return readMatrix(call, (String) args[0], new float[16 * 16]);
+			case "readFloatMatrix9":
+				return readMatrix(call, (String) args[0], new float[9 * 9]);
+			case "writeIntMatrix64":
+			case "writeFloatMatrix64":
+				writeMatrix(call, (String) args[0], args[1], 64);
+				return null;
+			case "writeIntMatrix16":
+			case "writeFloatMatrix16":
+				writeMatrix(call, (String) args[0], args[1], 16);
+				return null;
+			case "writeIntMatrix9":
+			case "writeFloatMatrix9":
+				writeMatrix(call, (String) args[0], args[1], 9);
+				return null;
+			case "readImage":
+				return readImage(call, (String) args[0]);
+			case "writeImage":
+				writeImage(call, (String) args[0], (int[]) args[1]);
+				return null;
+			case "error":
+				throw new ExecutionError(call, (String) args[0]);
+			default:
+				throw new ExecutionError(call, "Unknown runtime function " + call.functionName);
+		}
+	}
+	
+	private String readToken(CallExpression call) {
+		try {
+			StringBuilder token = new StringBuilder();
+			int ch = in.read();
+			while(ch != -1 && Character.isWhitespace(ch)) ch = in.read();
+			while(ch != -1 && !Character.isWhitespace(ch)) {
+				token.append((char) ch);
+				ch = in.read();
+			}
+			if(token.length() == 0) throw new ExecutionError(call, "Unexpected end of input");
+			return token.toString();
+		} catch(IOException e) {
+			throw new ExecutionError(call, "Cannot read input: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Reads a matrix stored as whitespace separated numbers in row-major order.
+	 */
+	private Object readMatrix(CallExpression call, String filename, Object matrix) {
+		String[] numbers;
+		try {
+			numbers = new String(Files.readAllBytes(directory.resolve(filename)), StandardCharsets.UTF_8).trim().split("\\s+");
+		} catch(IOException e) {
+			throw new ExecutionError(call, "Cannot read matrix file " + filename + ": " + e);
+		}
+		int size = matrix instanceof int[] ? ((int[]) matrix).length : ((float[]) matrix).length;
+		if(numbers.length != size)
+			throw new ExecutionError(call, "Matrix file " + filename + " contains " + numbers.length + " instead of " + size + " elements");
+		try {
+			for(int i = 0; i < size; i++) {
+				if(matrix instanceof int[]) ((int[]) matrix)[i] = Integer.parseInt(numbers[i]);
+				else ((float[]) matrix)[i] = Float.parseFloat(numbers[i]);
+			}
+		} catch(NumberFormatException e) {
+			throw new ExecutionError(call, "Matrix file " + filename + " contains an invalid number: " + e.getMessage());
+		}
+		return matrix;
+	}
+	
+	private void writeMatrix(CallExpression call, String filename, Object matrix, int size) {
+		StringBuilder sb = new StringBuilder();
+		for(int row = 0; row < size; row++) {
+			for(int col = 0; col < size; col++) {
+				if(col > 0) sb.append(' ');
+				if(matrix instanceof int[]) sb.append(((int[]) matrix)[row * size + col]);
+				else sb.append(((float[]) matrix)[row * size + col]);
+			}
+			sb.append('\n');
+		}
+		try {
+			Files.write(directory.resolve(filename), sb.toString().getBytes(StandardCharsets.UTF_8));
+		} catch(IOException e) {
+			throw new ExecutionError(call, "Cannot write matrix file " + filename + ": " + e);
+		}
+	}
+	
+	/**
+	 * Reads an image as 512x512 matrix of gray values between 0 and 255.
+	 * Smaller images are padded with black, larger ones are cropped.
+	 */
+	private int[] readImage(CallExpression call, String filename) {
+		BufferedImage image;
+		try {
+			image = ImageIO.read(directory.resolve(filename).toFile());
+		} catch(IOException e) {
+			throw new ExecutionError(call, "Cannot read image " + filename + ": " + e);
+		}
+		if(image == null) throw new ExecutionError(call, "Unsupported image format: " + filename);
+		int[] matrix = new int[512 * 512];
+		for(int y = 0; y < Math.min(512, image.getHeight()); y++) {
+			for(int x = 0; x < Math.min(512, image.getWidth()); x++) {
+				int rgb = image.getRGB(x, y);
+				matrix[y * 512 + x] = (299 * (rgb >> 16 & 0xff) + 587 * (rgb >> 8 & 0xff) + 114 * (rgb & 0xff)) / 1000;
+			}
+		}
+		return matrix;
+	}
+	
+	/**
+	 * Writes a 512x512 matrix of gray values as image. Values are clamped to [0, 255].
+	 * The format is chosen by the file extension and defaults to png.
+	 */
+	private void writeImage(CallExpression call, String filename, int[] matrix) {
+		BufferedImage image = new BufferedImage(512, 512, BufferedImage.TYPE_BYTE_GRAY);
+		for(int y = 0; y < 512; y++) {
+			for(int x = 0; x < 512; x++) {
+				int gray = Math.max(0, Math.min(255, matrix[y * 512 + x]));
+				image.setRGB(x, y, gray << 16 | gray << 8 | gray);
+			}
+		}
+		String format = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+		if(!ImageIO.getImageWritersBySuffix(format).hasNext()) format = "png";
+		try {
+			ImageIO.write(image, format, directory.resolve(filename).toFile());
+		} catch(IOException e) {
+			throw new ExecutionError(call, "Cannot write image " + filename + ": " + e);
+		}
+	}
+}
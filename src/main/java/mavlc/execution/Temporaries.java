@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution;
+
+import mavlc.optimization.AstWalker;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.module.Module;
+import mavlc.type.MatrixType;
+import mavlc.type.StructType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the temporaries of a decorated module: the results of structure operations
+ * (+, -, *, # and ~) that are only read by the enclosing operation, such as
+ * {@code a # b} and {@code ~c} in {@code (a # b) + ~c}. They do not escape the
+ * expression, since they are neither stored, passed to a function nor returned, so
+ * an execution engine may write them to a scratch buffer sized from their static
+ * type instead of allocating a new array every time.
+ * <p>
+ * Every temporary gets a slot of its own, and no function is called between writing
+ * and reading a temporary. Hence a single buffer per slot suffices for all calls of
+ * a function, including recursive ones, as long as each thread uses buffers of its own.
+ */
+public final class Temporaries extends AstWalker {
+	
+	private final List<Expression> candidates = new ArrayList<>();
+	private final Set<Expression> producers = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Set<Expression> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Map<Expression, Integer> slots = new IdentityHashMap<>();
+	
+	private Temporaries() { }
+	
+	/**
+	 * @param module A decorated module.
+	 * @return The temporaries of the module.
+	 */
+	public static Temporaries of(Module module) {
+		Temporaries temporaries = new Temporaries();
+		temporaries.walk(module);
+		for(Expression candidate : temporaries.candidates)
+			if(!temporaries.shared.contains(candidate)) temporaries.slots.put(candidate, temporaries.slots.size());
+		return temporaries;
+	}
+	
+	/**
+	 * @param expression An expression of the module.
+	 * @return The slot of the expression if it is a temporary, -1 otherwise.
+	 */
+	public int slot(Expression expression) {
+		Integer slot = slots.get(expression);
+		return slot == null ? -1 : slot;
+	}
+	
+	/**
+	 * @return The number of slots, which are numbered from 0.
+	 */
+	public int count() {
+		return slots.size();
+	}
+	
+	private static boolean isStructOperation(Expression expression) {
+		if(!(expression.getType() instanceof StructType)) return false;
+		return expression instanceof Addition || expression instanceof Subtraction || expression instanceof Multiplication
+				|| expression instanceof MatrixMultiplication || expression instanceof MatrixTranspose;
+	}
+	
+	/**
+	 * Records an operand that is only read by its operation. It is a temporary unless
+	 * evaluating the other operands calls a function, which might overwrite the buffer.
+	 */
+	private void operand(Expression operand, Expression... others) {
+		if(!isStructOperation(operand)) return;
+		for(Expression other : others)
+			if(Calls.in(other)) return;
+		candidates.add(operand);
+	}
+	
+	/**
+	 * Records a structure operation, a node which is part of the tree several times is never a temporary.
+	 */
+	private void produce(Expression expression) {
+		if(isStructOperation(expression) && !producers.add(expression)) shared.add(expression);
+	}
+	
+	@Override
+	public Void visitBinaryExpression(BinaryExpression binaryExpression, Void obj) {
+		// only the arithmetic operations take structures as operands
+		produce(binaryExpression);
+		operand(binaryExpression.leftOperand, binaryExpression.rightOperand);
+		operand(binaryExpression.rightOperand, binaryExpression.leftOperand);
+		return super.visitBinaryExpression(binaryExpression, obj);
+	}
+	
+	@Override
+	public Void visitMatrixTranspose(MatrixTranspose matrixTranspose, Void obj) {
+		produce(matrixTranspose);
+		operand(matrixTranspose.operand);
+		return super.visitUnaryExpression(matrixTranspose, obj);
+	}
+	
+	@Override
+	public Void visitElementSelect(ElementSelect elementSelect, Void obj) {
+		Expression structExpression = elementSelect.structExpression;
+		if(structExpression instanceof ElementSelect && ((ElementSelect) structExpression).structExpression.getType() instanceof MatrixType) {
+			// a single element of a matrix, both indices are evaluated before it is read
+			ElementSelect rowSelect = (ElementSelect) structExpression;
+			operand(rowSelect.structExpression, rowSelect.indexExpression, elementSelect.indexExpression);
+			walk(rowSelect.structExpression);
+			walk(rowSelect.indexExpression);
+			walk(elementSelect.indexExpression);
+			return null;
+		}
+		operand(structExpression, elementSelect.indexExpression);
+		return super.visitElementSelect(elementSelect, obj);
+	}
+	
+	@Override
+	public Void visitSubMatrix(SubMatrix subMatrix, Void obj) {
+		operand(subMatrix.structExpression, subMatrix.rowBaseIndexExpression, subMatrix.colBaseIndexExpression);
+		return super.visitSubMatrix(subMatrix, obj);
+	}
+	
+	@Override
+	public Void visitSubVector(SubVector subVector, Void obj) {
+		operand(subVector.structExpression, subVector.baseIndexExpression);
+		return super.visitSubVector(subVector, obj);
+	}
+	
+	/**
+	 * Checks whether a subtree contains a call.
+	 */
+	private static final class Calls extends AstWalker {
+		private boolean found;
+		
+		static boolean in(Expression expression) {
+			Calls calls = new Calls();
+			calls.walk(expression);
+			return calls.found;
+		}
+		
+		@Override
+		public Void visitCallExpression(CallExpression callExpression, Void obj) {
+			found = true;
+			return null;
+		}
+	}
+}
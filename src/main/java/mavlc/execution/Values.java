@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution;
+
+import mavlc.errors.ExecutionError;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.record.RecordElementDeclaration;
+import mavlc.syntax.record.RecordTypeDeclaration;
+import mavlc.type.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Representation of MAVL values during execution. Integers, floats, booleans and strings
+ * are represented by their boxed Java counterparts. Vectors and matrices are stored in
+ * primitive int[] or float[] arrays, matrices in row-major order. Records are stored as
+ * Object[] holding their elements in declaration order.
+ */
+public class Values {
+	private Values() { }
+	
+	/**
+	 * @param type The type of the value.
+	 * @return The value of a variable that has been declared but not assigned yet.
+	 */
+	public static Object zero(Type type) {
+		if(type instanceof IntType) return 0;
+		if(type instanceof FloatType) return 0f;
+		if(type instanceof BoolType) return false;
+		if(type instanceof StringType) return "";
+		if(type instanceof VectorType) {
+			VectorType vector = (VectorType) type;
+			return zero(vector.elementType, vector.dimension);
+		}
+		if(type instanceof MatrixType) {
+			MatrixType matrix = (MatrixType) type;
+			return zero(matrix.elementType, matrix.rows * matrix.cols);
+		}
+		if(type instanceof RecordType) {
+			List<RecordElementDeclaration> elements = ((RecordType) type).typeDeclaration.elements;
+			Object[] record = new Object[elements.size()];
+			for(int i = 0; i < record.length; i++)
+				record[i] = zero(elements.get(i).getType());
+			return record;
+		}
+		throw new IllegalArgumentException("No values of type " + type);
+	}
+	
+	/**
+	 * @return A new array for the elements of a vector or matrix.
+	 */
+	public static Object zero(NumericType elementType, int size) {
+		return elementType instanceof IntType ? new int[size] : new float[size];
+	}
+	
+	/**
+	 * Copies a vector, matrix or record. MAVL has value semantics, so a value
+	 * read from a variable has to be copied before it is stored elsewhere.
+	 *
+	 * @param value The value to copy.
+	 * @return A copy of the value, or the value itself if it is immutable.
+	 */
+	public static Object copy(Object value) {
+		if(value instanceof int[]) return ((int[]) value).clone();
+		if(value instanceof float[]) return ((float[]) value).clone();
+		if(value instanceof Object[]) {
+			Object[] record = ((Object[]) value).clone();
+			for(int i = 0; i < record.length; i++)
+				record[i] = copy(record[i]);
+			return record;
+		}
+		return value;
+	}
+	
+	/**
+	 * @return The number of elements of a vector or matrix.
+	 */
+	public static int length(Object struct) {
+		return struct instanceof int[] ? ((int[]) struct).length : ((float[]) struct).length;
+	}
+	
+	/**
+	 * @return The element at the given index of a vector or matrix.
+	 */
+	public static Object get(Object struct, int index) {
+		if(struct instanceof int[]) return ((int[]) struct)[index];
+		return ((float[]) struct)[index];
+	}
+	
+	/**
+	 * Replaces the element at the given index of a vector or matrix.
+	 */
+	public static void set(Object struct, int index, Object value) {
+		if(struct instanceof int[]) ((int[]) struct)[index] = (int) value;
+		else ((float[]) struct)[index] = (float) value;
+	}
+	
+	/**
+	 * @return A new array holding the given range of elements of a vector or matrix.
+	 */
+	public static Object slice(Object struct, int from, int length) {
+		if(struct instanceof int[]) return Arrays.copyOfRange((int[]) struct, from, from + length);
+		return Arrays.copyOfRange((float[]) struct, from, from + length);
+	}
+	
+	/**
+	 * @param node The node accessing the element, used to report an invalid index.
+	 * @throws ExecutionError If the index is not within [0, size).
+	 */
+	public static void checkIndex(AstNode node, int index, int size) {
+		if(index < 0 || index >= size)
+			throw new ExecutionError(node, "Index " + index + " out of bounds for dimension " + size);
+	}
+	
+	/**
+	 * @param record The declaration of the record type.
+	 * @param name The name of the element.
+	 * @return The index of the element within the Object[] of a record.
+	 */
+	public static int elementIndex(RecordTypeDeclaration record, String name) {
+		List<RecordElementDeclaration> elements = record.elements;
+		for(int i = 0; i < elements.size(); i++) {
+			if(elements.get(i).name.equals(name)) return i;
+		}
+		throw new IllegalArgumentException("Record " + record.name + " has no element " + name);
+	}
+}
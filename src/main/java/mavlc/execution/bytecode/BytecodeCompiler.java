@@ -0,0 +1,891 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution.bytecode;
+
+import mavlc.errors.InternalCompilerError;
+import mavlc.execution.Executable;
+import mavlc.execution.FrameLayout;
+import mavlc.execution.Values;
+import mavlc.execution.bytecode.CodeBuilder.Label;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.AstNodeBaseVisitor;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.function.FormalParameter;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.module.Module;
+import mavlc.syntax.statement.*;
+import mavlc.type.*;
+
+import java.util.*;
+
+import static mavlc.execution.bytecode.CodeBuilder.*;
+
+/**
+ * Compiles a decorated module to a class with one static method per function,
+ * so the functions are compiled further by the JIT of the JVM. The first
+ * parameter of every method is the {@link BytecodeRuntime} of the execution,
+ * followed by the parameters of the function. Each variable lives in the local
+ * variable at its frame slot assigned by {@link FrameLayout} plus one.
+ * <p>
+ * int, float, bool and string values are mapped to the corresponding JVM types,
+ * vectors and matrices to flat primitive arrays and records to object arrays,
+ * just as described in {@link Values}. The compiled module counts the same
+ * cycles and reports the same runtime errors as the other engines.
+ * <p>
+ * In parallel mode, structure operations on at least the given number of elements
+ * call the {@link mavlc.execution.ParallelKernels}. Foreach loops are always executed
+ * sequentially by this engine.
+ */
+public class BytecodeCompiler extends AstNodeBaseVisitor<Void, Void> {
+	
+	private static final String className = "mavlc.generated.Program";
+	private static final String classInternalName = className.replace('.', '/');
+	private static final String runtime = BytecodeRuntime.internalName;
+	private static final String object = "Ljava/lang/Object;";
+	private static final String kernels = "mavlc/execution/Kernels";
+	private static final String parallelKernels = "mavlc/execution/ParallelKernels";
+	
+	private final ClassFileWriter classFile = new ClassFileWriter(classInternalName);
+	private final Set<Function> functions = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final List<Object> constants = new ArrayList<>();
+	private final Map<Object, Integer> constantIndices = new IdentityHashMap<>();
+	
+	private final int parallelThreshold;
+	
+	private CodeBuilder code;
+	private int nextTemp;
+	
+	private BytecodeCompiler(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+	
+	/**
+	 * @param module The decorated module to compile.
+	 * @param parallelThreshold The minimum number of elements of operations executed in parallel, or 0 to execute sequentially.
+	 * @return The compiled module.
+	 */
+	public static BytecodeProgram compile(Module module, int parallelThreshold) {
+		BytecodeCompiler compiler = new BytecodeCompiler(parallelThreshold);
+		compiler.functions.addAll(module.functions);
+		if(module.functions.stream().noneMatch(function -> function.name.equals("main")))
+			throw new InternalCompilerError("Cannot execute a module without main function");
+		for(Function function : module.functions)
+			compiler.compileFunction(function);
+		return new BytecodeProgram(className, compiler.classFile.toByteArray(), compiler.constants.toArray());
+	}
+	
+	private void compileFunction(Function function) {
+		nextTemp = 1 + FrameLayout.layout(function);
+		code = new CodeBuilder(classFile, nextTemp);
+		List<Statement> body = function.body;
+		Statement last = body.isEmpty() ? null : body.get(body.size() - 1);
+		for(Statement statement : body)
+			if(statement != last || !(last instanceof ReturnStatement)) statement.accept(this);
+		Type returnType = function.getReturnType();
+		if(last instanceof ReturnStatement) {
+			// the return statement is the last statement of a function
+			tick(last);
+			expression(((ReturnStatement) last).returnValue);
+			code.exit(isIntLike(returnType) ? IRETURN : returnType instanceof FloatType ? FRETURN : ARETURN);
+		} else {
+			if(!(returnType instanceof VoidType))
+				throw new InternalCompilerError(function, "Missing return statement");
+			code.exit(RETURN);
+		}
+		classFile.addStaticMethod(function.name, descriptor(function), code);
+	}
+	
+	private static String descriptor(Function function) {
+		StringBuilder descriptor = new StringBuilder("(L").append(runtime).append(';');
+		for(FormalParameter parameter : function.parameters)
+			descriptor.append(descriptor(parameter.getType()));
+		return descriptor.append(')').append(descriptor(function.getReturnType())).toString();
+	}
+	
+	private static String descriptor(Type type) {
+		if(type instanceof IntType) return "I";
+		if(type instanceof FloatType) return "F";
+		if(type instanceof BoolType) return "Z";
+		if(type instanceof StringType) return "Ljava/lang/String;";
+		if(type instanceof VoidType) return "V";
+		if(type instanceof StructType) return ((StructType) type).elementType instanceof IntType ? "[I" : "[F";
+		return "[" + object;
+	}
+	
+	/**
+	 * @return The name of the class representing values of the type, as used by checkcast.
+	 */
+	private static String internalName(Type type) {
+		String descriptor = descriptor(type);
+		return descriptor.startsWith("L") ? descriptor.substring(1, descriptor.length() - 1) : descriptor;
+	}
+	
+	private static boolean isIntLike(Type type) {
+		return type instanceof IntType || type instanceof BoolType;
+	}
+	
+	private static int local(Declaration declaration) {
+		return 1 + declaration.getLocalBaseOffset();
+	}
+	
+	/**
+	 * @return The index of the object in the constant table of the runtime.
+	 */
+	private int constant(Object value) {
+		return constantIndices.computeIfAbsent(value, v -> {
+			constants.add(v);
+			return constants.size() - 1;
+		});
+	}
+	
+	private void load(Type type, int index) {
+		code.local(isIntLike(type) ? ILOAD : type instanceof FloatType ? FLOAD : ALOAD, index);
+	}
+	
+	private void store(Type type, int index) {
+		code.local(isIntLike(type) ? ISTORE : type instanceof FloatType ? FSTORE : ASTORE, index);
+	}
+	
+	private void loadRuntime() {
+		code.local(ALOAD, 0);
+	}
+	
+	private void box(Type type) {
+		if(type instanceof IntType) code.invoke(INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;");
+		else if(type instanceof FloatType) code.invoke(INVOKESTATIC, "java/lang/Float", "valueOf", "(F)Ljava/lang/Float;");
+		else if(type instanceof BoolType) code.invoke(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+	}
+	
+	private void unbox(Type type) {
+		if(type instanceof IntType) {
+			code.typeOp(CHECKCAST, "java/lang/Integer");
+			code.invoke(INVOKEVIRTUAL, "java/lang/Integer", "intValue", "()I");
+		} else if(type instanceof FloatType) {
+			code.typeOp(CHECKCAST, "java/lang/Float");
+			code.invoke(INVOKEVIRTUAL, "java/lang/Float", "floatValue", "()F");
+		} else if(type instanceof BoolType) {
+			code.typeOp(CHECKCAST, "java/lang/Boolean");
+			code.invoke(INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue", "()Z");
+		} else if(type instanceof VoidType) {
+			code.op(POP);
+		} else {
+			code.typeOp(CHECKCAST, internalName(type));
+		}
+	}
+	
+	private void tick(Statement statement) {
+		code.line(statement.sourceLocation.line);
+		loadRuntime();
+		code.iconst(constant(statement));
+		code.invoke(INVOKEVIRTUAL, runtime, "tick", "(I)V");
+	}
+	
+	/**
+	 * Checks the index on top of the stack, below which the runtime has to be pushed.
+	 */
+	private void checkIndex(int size, AstNode node) {
+		code.iconst(size);
+		code.iconst(constant(node));
+		code.invoke(INVOKEVIRTUAL, runtime, "checkIndex", "(III)I");
+	}
+	
+	/**
+	 * Pushes an index, which is checked unless it has been proven to be in bounds.
+	 */
+	private void index(Expression index, int size, AstNode node, boolean inBounds) {
+		if(!inBounds) loadRuntime();
+		expression(index);
+		if(!inBounds) checkIndex(size, node);
+	}
+	
+	private void expression(Expression expression) {
+		expression.accept(this);
+	}
+	
+	/**
+	 * Pushes the value of an expression which is stored. Vectors, matrices and records
+	 * read from a variable are copied, as MAVL has value semantics.
+	 */
+	private void value(Expression expression) {
+		expression(expression);
+		Type type = expression.getType();
+		boolean aliasing = expression instanceof IdentifierReference || expression instanceof RecordElementSelect || expression instanceof SelectExpression;
+		if(aliasing && (type instanceof StructType || type instanceof RecordType)) {
+			code.invoke(INVOKESTATIC, "mavlc/execution/Values", "copy", "(" + object + ")" + object);
+			code.typeOp(CHECKCAST, internalName(type));
+		}
+	}
+	
+	private void zero(Type type) {
+		if(isIntLike(type)) {
+			code.iconst(0);
+		} else if(type instanceof FloatType) {
+			code.fconst(0);
+		} else if(type instanceof StringType) {
+			code.sconst("");
+		} else if(type instanceof VectorType) {
+			code.iconst(((VectorType) type).dimension);
+			code.newArray(((VectorType) type).elementType instanceof IntType ? T_INT : T_FLOAT);
+		} else if(type instanceof MatrixType) {
+			code.iconst(((MatrixType) type).rows * ((MatrixType) type).cols);
+			code.newArray(((MatrixType) type).elementType instanceof IntType ? T_INT : T_FLOAT);
+		} else {
+			loadRuntime();
+			code.iconst(constant(type));
+			code.invoke(INVOKEVIRTUAL, runtime, "zero", "(I)" + object);
+			code.typeOp(CHECKCAST, internalName(type));
+		}
+	}
+	
+	private static int arrayLoad(NumericType elementType) {
+		return elementType instanceof IntType ? IALOAD : FALOAD;
+	}
+	
+	private static int arrayStore(NumericType elementType) {
+		return elementType instanceof IntType ? IASTORE : FASTORE;
+	}
+	
+	@Override
+	protected Void defaultOperation(AstNode node, Void __) {
+		throw new InternalCompilerError(node, "Cannot compile " + node.getClass().getSimpleName());
+	}
+	
+	@Override
+	public Void visitValueDefinition(ValueDefinition valueDefinition, Void __) {
+		tick(valueDefinition);
+		value(valueDefinition.value);
+		store(valueDefinition.getType(), local(valueDefinition));
+		return null;
+	}
+	
+	@Override
+	public Void visitVariableDeclaration(VariableDeclaration variableDeclaration, Void __) {
+		tick(variableDeclaration);
+		zero(variableDeclaration.getType());
+		store(variableDeclaration.getType(), local(variableDeclaration));
+		return null;
+	}
+	
+	@Override
+	public Void visitVariableAssignment(VariableAssignment variableAssignment, Void __) {
+		tick(variableAssignment);
+		LeftHandIdentifier identifier = variableAssignment.identifier;
+		Declaration declaration = identifier.getDeclaration();
+		int variable = local(declaration);
+		int mark = nextTemp;
+		// the value is evaluated before the indices
+		if(identifier instanceof VectorLhsIdentifier) {
+			VectorType type = (VectorType) declaration.getType();
+			int value = nextTemp++;
+			value(variableAssignment.value);
+			store(type.elementType, value);
+			code.local(ALOAD, variable);
+			index(((VectorLhsIdentifier) identifier).indexExpression, type.dimension, identifier, ((VectorLhsIdentifier) identifier).isInBounds());
+			load(type.elementType, value);
+			code.op(arrayStore(type.elementType));
+		} else if(identifier instanceof MatrixLhsIdentifier) {
+			MatrixType type = (MatrixType) declaration.getType();
+			int value = nextTemp++, row = nextTemp++, col = nextTemp++;
+			value(variableAssignment.value);
+			store(type.elementType, value);
+			expression(((MatrixLhsIdentifier) identifier).rowIndexExpression);
+			code.local(ISTORE, row);
+			expression(((MatrixLhsIdentifier) identifier).colIndexExpression);
+			code.local(ISTORE, col);
+			boolean inBounds = ((MatrixLhsIdentifier) identifier).isInBounds();
+			code.local(ALOAD, variable);
+			if(!inBounds) loadRuntime();
+			code.local(ILOAD, row);
+			if(!inBounds) checkIndex(type.rows, identifier);
+			code.iconst(type.cols);
+			code.op(IMUL);
+			if(!inBounds) loadRuntime();
+			code.local(ILOAD, col);
+			if(!inBounds) checkIndex(type.cols, identifier);
+			code.op(IADD);
+			load(type.elementType, value);
+			code.op(arrayStore(type.elementType));
+		} else if(identifier instanceof RecordLhsIdentifier) {
+			RecordType type = (RecordType) declaration.getType();
+			int value = nextTemp++;
+			value(variableAssignment.value);
+			box(variableAssignment.value.getType());
+			code.local(ASTORE, value);
+			code.local(ALOAD, variable);
+			code.iconst(Values.elementIndex(type.typeDeclaration, ((RecordLhsIdentifier) identifier).elementName));
+			code.local(ALOAD, value);
+			code.op(AASTORE);
+		} else {
+			value(variableAssignment.value);
+			store(declaration.getType(), variable);
+		}
+		nextTemp = mark;
+		return null;
+	}
+	
+	@Override
+	public Void visitForLoop(ForLoop forLoop, Void __) {
+		tick(forLoop);
+		value(forLoop.initExpression);
+		store(forLoop.getInitVarDeclaration().getType(), local(forLoop.getInitVarDeclaration()));
+		Label condition = new Label(), end = new Label();
+		code.place(condition);
+		expression(forLoop.loopCondition);
+		code.jump(IFEQ, end);
+		forLoop.body.accept(this);
+		value(forLoop.incrExpression);
+		store(forLoop.getIncrVarDeclaration().getType(), local(forLoop.getIncrVarDeclaration()));
+		code.jump(GOTO, condition);
+		code.place(end);
+		return null;
+	}
+	
+	@Override
+	public Void visitForEachLoop(ForEachLoop forEachLoop, Void __) {
+		tick(forEachLoop);
+		IteratorDeclaration iterator = forEachLoop.iteratorDeclaration;
+		NumericType elementType = ((StructType) forEachLoop.structExpression.getType()).elementType;
+		int mark = nextTemp;
+		int index = nextTemp++, size = nextTemp++;
+		// the elements of a variable are written back to it after each iteration
+		int struct = iterator.isVariable()
+				? local(((IdentifierReference) forEachLoop.structExpression).getDeclaration())
+				: nextTemp++;
+		if(!iterator.isVariable()) {
+			value(forEachLoop.structExpression);
+			code.local(ASTORE, struct);
+		}
+		code.local(ALOAD, struct);
+		code.arrayLength();
+		code.local(ISTORE, size);
+		code.iconst(0);
+		code.local(ISTORE, index);
+		Label condition = new Label(), end = new Label();
+		code.place(condition);
+		code.local(ILOAD, index);
+		code.local(ILOAD, size);
+		code.jump(IF_ICMPGE, end);
+		code.local(ALOAD, struct);
+		code.local(ILOAD, index);
+		code.op(arrayLoad(elementType));
+		store(elementType, local(iterator));
+		forEachLoop.body.accept(this);
+		if(iterator.isVariable()) {
+			code.local(ALOAD, struct);
+			code.local(ILOAD, index);
+			load(elementType, local(iterator));
+			code.op(arrayStore(elementType));
+		}
+		code.iinc(index, 1);
+		code.jump(GOTO, condition);
+		code.place(end);
+		nextTemp = mark;
+		return null;
+	}
+	
+	@Override
+	public Void visitIfStatement(IfStatement ifStatement, Void __) {
+		tick(ifStatement);
+		Label elseLabel = new Label(), end = new Label();
+		expression(ifStatement.condition);
+		code.jump(IFEQ, elseLabel);
+		ifStatement.thenStatement.accept(this);
+		if(ifStatement.hasElseStatement()) {
+			code.jump(GOTO, end);
+			code.place(elseLabel);
+			ifStatement.elseStatement.accept(this);
+			code.place(end);
+		} else {
+			code.place(elseLabel);
+		}
+		return null;
+	}
+	
+	@Override
+	public Void visitCallStatement(CallStatement callStatement, Void __) {
+		tick(callStatement);
+		expression(callStatement.callExpression);
+		if(!(callStatement.callExpression.getType() instanceof VoidType))
+			code.op(POP);
+		return null;
+	}
+	
+	@Override
+	public Void visitCompoundStatement(CompoundStatement compoundStatement, Void __) {
+		tick(compoundStatement);
+		for(Statement statement : compoundStatement.statements)
+			statement.accept(this);
+		return null;
+	}
+	
+	@Override
+	public Void visitSwitchStatement(SwitchStatement switchStatement, Void __) {
+		tick(switchStatement);
+		int mark = nextTemp;
+		int value = nextTemp++;
+		expression(switchStatement.condition);
+		code.local(ISTORE, value);
+		Label end = new Label();
+		for(Case aCase : switchStatement.cases) {
+			Label next = new Label();
+			code.local(ILOAD, value);
+			code.iconst(aCase.getCondition());
+			code.jump(IF_ICMPNE, next);
+			aCase.body.accept(this);
+			code.jump(GOTO, end);
+			code.place(next);
+		}
+		for(Default defCase : switchStatement.defaults)
+			defCase.body.accept(this);
+		code.place(end);
+		nextTemp = mark;
+		return null;
+	}
+	
+	@Override
+	public Void visitIdentifierReference(IdentifierReference identifierReference, Void __) {
+		load(identifierReference.getType(), local(identifierReference.getDeclaration()));
+		return null;
+	}
+	
+	@Override
+	public Void visitSelectExpression(SelectExpression exp, Void __) {
+		Label falseCase = new Label(), end = new Label();
+		expression(exp.condition);
+		code.jump(IFEQ, falseCase);
+		expression(exp.trueCase);
+		code.jump(GOTO, end);
+		code.place(falseCase);
+		expression(exp.falseCase);
+		code.place(end);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixMultiplication(MatrixMultiplication matrixMultiplication, Void __) {
+		MatrixType left = (MatrixType) matrixMultiplication.leftOperand.getType();
+		MatrixType right = (MatrixType) matrixMultiplication.rightOperand.getType();
+		String array = descriptor(matrixMultiplication.getType());
+		expression(matrixMultiplication.leftOperand);
+		expression(matrixMultiplication.rightOperand);
+		code.iconst(left.rows);
+		code.iconst(left.cols);
+		code.iconst(right.cols);
+		code.invoke(INVOKESTATIC, kernels((long) left.rows * left.cols * right.cols), "matrixMultiply", "(" + array + array + "III)" + array);
+		return null;
+	}
+	
+	@Override
+	public Void visitDotProduct(DotProduct dotProduct, Void __) {
+		expression(dotProduct.leftOperand);
+		expression(dotProduct.rightOperand);
+		if(dotProduct.getType() instanceof IntType)
+			code.invoke(INVOKESTATIC, kernels, "dotProduct", "([I[I)I");
+		else
+			code.invoke(INVOKESTATIC, kernels, "dotProduct", "([F[F)F");
+		return null;
+	}
+	
+	@Override
+	public Void visitExponentiation(Exponentiation exponentiation, Void __) {
+		boolean isInt = exponentiation.getType() instanceof IntType;
+		expression(exponentiation.leftOperand);
+		code.op(isInt ? I2D : F2D);
+		expression(exponentiation.rightOperand);
+		code.op(isInt ? I2D : F2D);
+		code.invoke(INVOKESTATIC, "java/lang/Math", "pow", "(DD)D");
+		code.op(isInt ? D2I : D2F);
+		return null;
+	}
+	
+	private static int elementCount(Type type) {
+		if(type instanceof MatrixType) return ((MatrixType) type).rows * ((MatrixType) type).cols;
+		return ((VectorType) type).dimension;
+	}
+	
+	/**
+	 * @param work The number of elements processed by an operation.
+	 * @return The internal name of the class providing the kernel for the operation.
+	 */
+	private String kernels(long work) {
+		return parallelThreshold > 0 && work >= parallelThreshold ? parallelKernels : kernels;
+	}
+	
+	/**
+	 * Emits an arithmetic operation, which is delegated to the typed {@link mavlc.execution.Kernels}
+	 * for vectors and matrices.
+	 */
+	private void arithmetic(BinaryExpression expression, int intOpcode, int floatOpcode, String operation) {
+		Type type = expression.getType();
+		expression(expression.leftOperand);
+		expression(expression.rightOperand);
+		if(type instanceof IntType || type instanceof FloatType) {
+			code.op(type instanceof IntType ? intOpcode : floatOpcode);
+			return;
+		}
+		String array = descriptor(type);
+		String kernelClass = kernels(elementCount(type));
+		Type leftType = expression.leftOperand.getType(), rightType = expression.rightOperand.getType();
+		// either operand of a multiplication may be a scalar, which the kernel expects first
+		if(rightType instanceof NumericType) {
+			code.op(SWAP);
+			code.invoke(INVOKESTATIC, kernelClass, "scale", "(" + descriptor(rightType) + array + ")" + array);
+		} else if(leftType instanceof NumericType) {
+			code.invoke(INVOKESTATIC, kernelClass, "scale", "(" + descriptor(leftType) + array + ")" + array);
+		} else {
+			code.invoke(INVOKESTATIC, kernelClass, operation, "(" + array + array + ")" + array);
+		}
+	}
+	
+	@Override
+	public Void visitMultiplication(Multiplication multiplication, Void __) {
+		arithmetic(multiplication, IMUL, FMUL, "multiply");
+		return null;
+	}
+	
+	@Override
+	public Void visitDivision(Division division, Void __) {
+		if(division.getType() instanceof IntType) {
+			loadRuntime();
+			expression(division.leftOperand);
+			expression(division.rightOperand);
+			code.iconst(constant(division));
+			code.invoke(INVOKEVIRTUAL, runtime, "divide", "(III)I");
+		} else {
+			expression(division.leftOperand);
+			expression(division.rightOperand);
+			code.op(FDIV);
+		}
+		return null;
+	}
+	
+	@Override
+	public Void visitAddition(Addition addition, Void __) {
+		arithmetic(addition, IADD, FADD, "add");
+		return null;
+	}
+	
+	@Override
+	public Void visitSubtraction(Subtraction subtraction, Void __) {
+		arithmetic(subtraction, ISUB, FSUB, "subtract");
+		return null;
+	}
+	
+	@Override
+	public Void visitCompare(Compare compare, Void __) {
+		expression(compare.leftOperand);
+		expression(compare.rightOperand);
+		int opcode;
+		if(compare.leftOperand.getType() instanceof IntType) {
+			switch(compare.comparator) {
+				case LESS: opcode = IF_ICMPLT; break;
+				case GREATER: opcode = IF_ICMPGT; break;
+				case LESS_EQUAL: opcode = IF_ICMPLE; break;
+				case GREATER_EQUAL: opcode = IF_ICMPGE; break;
+				case NOT_EQUAL: opcode = IF_ICMPNE; break;
+				default: opcode = IF_ICMPEQ;
+			}
+		} else {
+			// fcmpg for < and <=, fcmpl otherwise, so comparisons with NaN are false as in Java
+			switch(compare.comparator) {
+				case LESS: code.op(FCMPG); opcode = IFLT; break;
+				case GREATER: code.op(FCMPL); opcode = IFGT; break;
+				case LESS_EQUAL: code.op(FCMPG); opcode = IFLE; break;
+				case GREATER_EQUAL: code.op(FCMPL); opcode = IFGE; break;
+				case NOT_EQUAL: code.op(FCMPL); opcode = IFNE; break;
+				default: code.op(FCMPL); opcode = IFEQ;
+			}
+		}
+		Label isTrue = new Label(), end = new Label();
+		code.jump(opcode, isTrue);
+		code.iconst(0);
+		code.jump(GOTO, end);
+		code.place(isTrue);
+		code.iconst(1);
+		code.place(end);
+		return null;
+	}
+	
+	@Override
+	public Void visitAnd(And and, Void __) {
+		// both operands are always evaluated
+		expression(and.leftOperand);
+		expression(and.rightOperand);
+		code.op(IAND);
+		return null;
+	}
+	
+	@Override
+	public Void visitOr(Or or, Void __) {
+		expression(or.leftOperand);
+		expression(or.rightOperand);
+		code.op(IOR);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixTranspose(MatrixTranspose matrixTranspose, Void __) {
+		MatrixType type = (MatrixType) matrixTranspose.operand.getType();
+		String array = descriptor(type);
+		expression(matrixTranspose.operand);
+		code.iconst(type.rows);
+		code.iconst(type.cols);
+		code.invoke(INVOKESTATIC, kernels((long) type.rows * type.cols), "transpose", "(" + array + "II)" + array);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixRows(MatrixRows rows, Void __) {
+		code.iconst(((MatrixType) rows.operand.getType()).rows);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixCols(MatrixCols cols, Void __) {
+		code.iconst(((MatrixType) cols.operand.getType()).cols);
+		return null;
+	}
+	
+	@Override
+	public Void visitVectorDimension(VectorDimension vectorDimension, Void __) {
+		code.iconst(((VectorType) vectorDimension.operand.getType()).dimension);
+		return null;
+	}
+	
+	@Override
+	public Void visitUnaryMinus(UnaryMinus unaryMinus, Void __) {
+		expression(unaryMinus.operand);
+		code.op(unaryMinus.getType() instanceof IntType ? INEG : FNEG);
+		return null;
+	}
+	
+	@Override
+	public Void visitNot(Not not, Void __) {
+		expression(not.operand);
+		code.iconst(1);
+		code.op(IXOR);
+		return null;
+	}
+	
+	@Override
+	public Void visitCallExpression(CallExpression callExpression, Void __) {
+		Function callee = callExpression.getCalleeDefinition();
+		if(!functions.contains(callee)) {
+			// not part of the module, so it is a runtime function
+			runtimeCall(callExpression);
+			return null;
+		}
+		loadRuntime();
+		for(Expression argument : callExpression.actualParameters)
+			value(argument);
+		code.invoke(INVOKESTATIC, classInternalName, callee.name, descriptor(callee));
+		return null;
+	}
+	
+	/**
+	 * Calls the arithmetic runtime functions directly, and all others through the
+	 * {@link mavlc.execution.RuntimeLibrary} with boxed arguments.
+	 */
+	private void runtimeCall(CallExpression callExpression) {
+		List<Expression> arguments = callExpression.actualParameters;
+		switch(callExpression.functionName) {
+			case "int2float":
+				expression(arguments.get(0));
+				code.op(I2F);
+				return;
+			case "float2int":
+				expression(arguments.get(0));
+				code.op(F2I);
+				return;
+			case "sqrtInt":
+			case "sqrtFloat": {
+				boolean isInt = callExpression.functionName.equals("sqrtInt");
+				expression(arguments.get(0));
+				code.op(isInt ? I2D : F2D);
+				code.invoke(INVOKESTATIC, "java/lang/Math", "sqrt", "(D)D");
+				code.op(isInt ? D2I : D2F);
+				return;
+			}
+			case "powInt":
+			case "powFloat": {
+				boolean isInt = callExpression.functionName.equals("powInt");
+				expression(arguments.get(0));
+				code.op(isInt ? I2D : F2D);
+				expression(arguments.get(1));
+				code.op(isInt ? I2D : F2D);
+				code.invoke(INVOKESTATIC, "java/lang/Math", "pow", "(DD)D");
+				code.op(isInt ? D2I : D2F);
+				return;
+			}
+			case "modulo":
+				loadRuntime();
+				expression(arguments.get(0));
+				expression(arguments.get(1));
+				code.iconst(constant(callExpression));
+				code.invoke(INVOKEVIRTUAL, runtime, "modulo", "(III)I");
+				return;
+		}
+		loadRuntime();
+		code.iconst(constant(callExpression));
+		code.iconst(arguments.size());
+		code.typeOp(ANEWARRAY, "java/lang/Object");
+		for(int i = 0; i < arguments.size(); i++) {
+			code.op(DUP);
+			code.iconst(i);
+			expression(arguments.get(i));
+			box(arguments.get(i).getType());
+			code.op(AASTORE);
+		}
+		code.invoke(INVOKEVIRTUAL, runtime, "call", "(I[" + object + ")" + object);
+		unbox(callExpression.getType());
+	}
+	
+	@Override
+	public Void visitElementSelect(ElementSelect elementSelect, Void __) {
+		Expression structExpression = elementSelect.structExpression;
+		StructType type = (StructType) structExpression.getType();
+		if(type instanceof MatrixType) {
+			MatrixType matrix = (MatrixType) type;
+			expression(structExpression);
+			index(elementSelect.indexExpression, matrix.rows, elementSelect, elementSelect.isInBounds());
+			code.iconst(matrix.cols);
+			code.op(IMUL);
+			code.iconst(matrix.cols);
+			code.invoke(INVOKESTATIC, "mavlc/execution/Values", "slice", "(" + object + "II)" + object);
+			code.typeOp(CHECKCAST, internalName(elementSelect.getType()));
+			return null;
+		}
+		if(structExpression instanceof ElementSelect && ((ElementSelect) structExpression).structExpression.getType() instanceof MatrixType) {
+			// a single element of a matrix, read in place instead of copying its row
+			ElementSelect rowSelect = (ElementSelect) structExpression;
+			MatrixType matrix = (MatrixType) rowSelect.structExpression.getType();
+			expression(rowSelect.structExpression);
+			index(rowSelect.indexExpression, matrix.rows, rowSelect, rowSelect.isInBounds());
+			code.iconst(matrix.cols);
+			code.op(IMUL);
+			index(elementSelect.indexExpression, matrix.cols, elementSelect, elementSelect.isInBounds());
+			code.op(IADD);
+		} else {
+			expression(structExpression);
+			index(elementSelect.indexExpression, ((VectorType) type).dimension, elementSelect, elementSelect.isInBounds());
+		}
+		code.op(arrayLoad(type.elementType));
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordElementSelect(RecordElementSelect recordElementSelect, Void __) {
+		RecordType type = (RecordType) recordElementSelect.recordExpression.getType();
+		expression(recordElementSelect.recordExpression);
+		code.iconst(Values.elementIndex(type.typeDeclaration, recordElementSelect.elementName));
+		code.op(AALOAD);
+		unbox(recordElementSelect.getType());
+		return null;
+	}
+	
+	@Override
+	public Void visitSubMatrix(SubMatrix subMatrix, Void __) {
+		loadRuntime();
+		expression(subMatrix.structExpression);
+		expression(subMatrix.rowBaseIndexExpression);
+		expression(subMatrix.colBaseIndexExpression);
+		code.iconst(constant(subMatrix));
+		code.invoke(INVOKEVIRTUAL, runtime, "subMatrix", "(" + object + "III)" + object);
+		code.typeOp(CHECKCAST, internalName(subMatrix.getType()));
+		return null;
+	}
+	
+	@Override
+	public Void visitSubVector(SubVector subVector, Void __) {
+		loadRuntime();
+		expression(subVector.structExpression);
+		expression(subVector.baseIndexExpression);
+		code.iconst(constant(subVector));
+		code.invoke(INVOKEVIRTUAL, runtime, "subVector", "(" + object + "II)" + object);
+		code.typeOp(CHECKCAST, internalName(subVector.getType()));
+		return null;
+	}
+	
+	@Override
+	public Void visitStructureInit(StructureInit structureInit, Void __) {
+		List<Expression> elements = structureInit.elements;
+		StructType type = (StructType) structureInit.getType();
+		int arrayType = type.elementType instanceof IntType ? T_INT : T_FLOAT;
+		if(type instanceof VectorType) {
+			code.iconst(elements.size());
+			code.newArray(arrayType);
+			for(int i = 0; i < elements.size(); i++) {
+				code.op(DUP);
+				code.iconst(i);
+				expression(elements.get(i));
+				code.op(arrayStore(type.elementType));
+			}
+			return null;
+		}
+		int cols = ((MatrixType) type).cols;
+		int mark = nextTemp;
+		int matrix = nextTemp++;
+		code.iconst(elements.size() * cols);
+		code.newArray(arrayType);
+		code.local(ASTORE, matrix);
+		for(int row = 0; row < elements.size(); row++) {
+			expression(elements.get(row));
+			code.iconst(0);
+			code.local(ALOAD, matrix);
+			code.iconst(row * cols);
+			code.iconst(cols);
+			code.invoke(INVOKESTATIC, "java/lang/System", "arraycopy", "(" + object + "I" + object + "II)V");
+		}
+		code.local(ALOAD, matrix);
+		nextTemp = mark;
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordInit(RecordInit recordInit, Void __) {
+		List<Expression> elements = recordInit.elements;
+		code.iconst(elements.size());
+		code.typeOp(ANEWARRAY, "java/lang/Object");
+		for(int i = 0; i < elements.size(); i++) {
+			code.op(DUP);
+			code.iconst(i);
+			value(elements.get(i));
+			box(elements.get(i).getType());
+			code.op(AASTORE);
+		}
+		return null;
+	}
+	
+	@Override
+	public Void visitBoolValue(BoolValue boolValue, Void __) {
+		code.iconst(boolValue.value ? 1 : 0);
+		return null;
+	}
+	
+	@Override
+	public Void visitIntValue(IntValue intValue, Void __) {
+		code.iconst(intValue.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitFloatValue(FloatValue floatValue, Void __) {
+		code.fconst(floatValue.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitStringValue(StringValue stringValue, Void __) {
+		code.sconst(stringValue.value);
+		return null;
+	}
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution.bytecode;
+
+import mavlc.errors.ExecutionError;
+import mavlc.errors.InternalCompilerError;
+import mavlc.execution.Executable;
+import mavlc.execution.RuntimeLibrary;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+
+/**
+ * A module compiled to a class by the {@link BytecodeCompiler}. The class is
+ * defined by a class loader of its own, so it can be unloaded with the program.
+ */
+public final class BytecodeProgram implements Executable {
+	
+	private final byte[] classFile;
+	private final Object[] constants;
+	private final Method main;
+	
+	private static final class ProgramClassLoader extends ClassLoader {
+		ProgramClassLoader() {
+			super(BytecodeProgram.class.getClassLoader());
+		}
+		
+		Class<?> define(String name, byte[] classFile) {
+			return defineClass(name, classFile, 0, classFile.length);
+		}
+	}
+	
+	BytecodeProgram(String className, byte[] classFile, Object[] constants) {
+		this.classFile = classFile;
+		this.constants = constants;
+		try {
+			ProgramClassLoader loader = new ProgramClassLoader();
+			loader.define(className, classFile);
+			// initializing the class verifies it, so invalid code is reported here instead of during execution
+			Class<?> programClass = Class.forName(className, true, loader);
+			main = programClass.getMethod("main", BytecodeRuntime.class);
+		} catch(LinkageError | ReflectiveOperationException e) {
+			throw new InternalCompilerError("Generated invalid class file: " + e);
+		}
+	}
+	
+	/**
+	 * @return The generated class file, e.g. for inspection with {@code javap -c}.
+	 */
+	public byte[] getClassFile() {
+		return classFile.clone();
+	}
+	
+	@Override
+	public long execute(InputStream in, OutputStream out, Path directory, int maxCycles) {
+		RuntimeLibrary library = new RuntimeLibrary(in, out, directory);
+		BytecodeRuntime runtime = new BytecodeRuntime(library, constants, maxCycles > 0 ? maxCycles : Long.MAX_VALUE);
+		try {
+			main.invoke(null, runtime);
+		} catch(InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof StackOverflowError) throw new ExecutionError("Stack overflow");
+			if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if(cause instanceof Error) throw (Error) cause;
+			throw new InternalCompilerError(cause.toString());
+		} catch(IllegalAccessException e) {
+			throw new InternalCompilerError(e.toString());
+		} finally {
+			library.flush();
+		}
+		return runtime.getCycles();
+	}
+}
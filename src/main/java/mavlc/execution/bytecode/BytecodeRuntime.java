@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution.bytecode;
+
+import mavlc.errors.ExecutionError;
+import mavlc.execution.Operations;
+import mavlc.execution.RuntimeLibrary;
+import mavlc.execution.Values;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.expression.CallExpression;
+import mavlc.syntax.expression.SubMatrix;
+import mavlc.syntax.expression.SubVector;
+import mavlc.syntax.statement.Statement;
+import mavlc.type.Type;
+
+/**
+ * The state of a single execution of a compiled module, passed as first
+ * argument to every generated method. Syntax tree nodes and types are referred
+ * to by their index in the constant table of the {@link BytecodeProgram}, so the
+ * generated code only needs int constants to report errors.
+ * <p>
+ * The methods are public as the generated class is defined by its own class loader.
+ */
+public final class BytecodeRuntime {
+	
+	static final String internalName = "mavlc/execution/bytecode/BytecodeRuntime";
+	
+	private final RuntimeLibrary library;
+	private final Object[] constants;
+	private final long cycleLimit;
+	private long cycles;
+	
+	BytecodeRuntime(RuntimeLibrary library, Object[] constants, long cycleLimit) {
+		this.library = library;
+		this.constants = constants;
+		this.cycleLimit = cycleLimit;
+	}
+	
+	long getCycles() {
+		return cycles;
+	}
+	
+	/**
+	 * Counts the execution of a statement.
+	 */
+	public void tick(int statement) {
+		if(++cycles > cycleLimit)
+			throw new ExecutionError((Statement) constants[statement], "Exceeded the limit of " + cycleLimit + " cycles");
+	}
+	
+	/**
+	 * @return The index, if it is within [0, size).
+	 */
+	public int checkIndex(int index, int size, int node) {
+		if(index < 0 || index >= size) Values.checkIndex((AstNode) constants[node], index, size);
+		return index;
+	}
+	
+	public int divide(int dividend, int divisor, int node) {
+		if(divisor == 0) throw new ExecutionError((AstNode) constants[node], "Division by zero");
+		return dividend / divisor;
+	}
+	
+	public int modulo(int dividend, int divisor, int node) {
+		if(divisor == 0) throw new ExecutionError((AstNode) constants[node], "Division by zero");
+		return dividend % divisor;
+	}
+	
+	public Object zero(int type) {
+		return Values.zero((Type) constants[type]);
+	}
+	
+	public Object call(int call, Object[] args) {
+		return library.call((CallExpression) constants[call], args);
+	}
+	
+	public Object subMatrix(Object matrix, int rowBase, int colBase, int node) {
+		return Operations.subMatrix((SubMatrix) constants[node], matrix, rowBase, colBase);
+	}
+	
+	public Object subVector(Object vector, int base, int node) {
+		return Operations.subVector((SubVector) constants[node], vector, base);
+	}
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution.bytecode;
+
+import mavlc.errors.InternalCompilerError;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes a class file containing static methods only. The class file version
+ * is 49 (Java 5), the last version verified by type inference, so no stack map
+ * frames have to be computed for the methods.
+ */
+final class ClassFileWriter {
+	
+	private static final int version = 49;
+	
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_STATIC = 0x0008;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+	
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolOut = new DataOutputStream(pool);
+	private final Map<String, Integer> poolEntries = new HashMap<>();
+	private int poolCount = 1;
+	
+	private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+	private final DataOutputStream methodsOut = new DataOutputStream(methods);
+	private int methodCount;
+	
+	private final int thisClass;
+	private final int superClass;
+	
+	/**
+	 * @param name The internal name of the class, e.g. {@code mavlc/generated/Program}.
+	 */
+	ClassFileWriter(String name) {
+		thisClass = classRef(name);
+		superClass = classRef("java/lang/Object");
+	}
+	
+	private interface EntryWriter {
+		void write(DataOutputStream out) throws IOException;
+	}
+	
+	private int entry(String key, EntryWriter writer) {
+		Integer index = poolEntries.get(key);
+		if(index != null) return index;
+		try {
+			writer.write(poolOut);
+		} catch(IOException e) {
+			throw new InternalCompilerError(e.getMessage());
+		}
+		if(poolCount > 0xFFFF) throw new InternalCompilerError("Too many constants in class file");
+		poolEntries.put(key, poolCount);
+		return poolCount++;
+	}
+	
+	int utf8(String value) {
+		return entry("Utf8:" + value, out -> {
+			out.writeByte(1);
+			out.writeUTF(value);
+		});
+	}
+	
+	int integer(int value) {
+		return entry("Integer:" + value, out -> {
+			out.writeByte(3);
+			out.writeInt(value);
+		});
+	}
+	
+	int floatConstant(float value) {
+		int bits = Float.floatToRawIntBits(value);
+		return entry("Float:" + bits, out -> {
+			out.writeByte(4);
+			out.writeInt(bits);
+		});
+	}
+	
+	int classRef(String name) {
+		int nameIndex = utf8(name);
+		return entry("Class:" + name, out -> {
+			out.writeByte(7);
+			out.writeShort(nameIndex);
+		});
+	}
+	
+	int string(String value) {
+		int valueIndex = utf8(value);
+		return entry("String:" + value, out -> {
+			out.writeByte(8);
+			out.writeShort(valueIndex);
+		});
+	}
+	
+	private int nameAndType(String name, String descriptor) {
+		int nameIndex = utf8(name), descriptorIndex = utf8(descriptor);
+		return entry("NameAndType:" + name + ":" + descriptor, out -> {
+			out.writeByte(12);
+			out.writeShort(nameIndex);
+			out.writeShort(descriptorIndex);
+		});
+	}
+	
+	int methodRef(String owner, String name, String descriptor) {
+		int classIndex = classRef(owner), nameAndTypeIndex = nameAndType(name, descriptor);
+		return entry("Methodref:" + owner + "." + name + ":" + descriptor, out -> {
+			out.writeByte(10);
+			out.writeShort(classIndex);
+			out.writeShort(nameAndTypeIndex);
+		});
+	}
+	
+	/**
+	 * Adds a public static method with the given code.
+	 */
+	void addStaticMethod(String name, String descriptor, CodeBuilder code) {
+		try {
+			int nameIndex = utf8(name), descriptorIndex = utf8(descriptor);
+			int codeIndex = utf8("Code"), lineNumbersIndex = utf8("LineNumberTable");
+			byte[] bytecode = code.toByteArray();
+			int[] lineNumbers = code.lineNumbers();
+			
+			methodsOut.writeShort(ACC_PUBLIC | ACC_STATIC);
+			methodsOut.writeShort(nameIndex);
+			methodsOut.writeShort(descriptorIndex);
+			methodsOut.writeShort(1);
+			
+			int lineNumbersLength = 2 + lineNumbers.length * 2;
+			methodsOut.writeShort(codeIndex);
+			methodsOut.writeInt(12 + bytecode.length + 6 + lineNumbersLength);
+			methodsOut.writeShort(code.maxStack());
+			methodsOut.writeShort(code.maxLocals());
+			methodsOut.writeInt(bytecode.length);
+			methodsOut.write(bytecode);
+			methodsOut.writeShort(0); // exception table
+			methodsOut.writeShort(1); // attributes
+			methodsOut.writeShort(lineNumbersIndex);
+			methodsOut.writeInt(lineNumbersLength);
+			methodsOut.writeShort(lineNumbers.length / 2);
+			for(int value : lineNumbers)
+				methodsOut.writeShort(value);
+			methodCount++;
+		} catch(IOException e) {
+			throw new InternalCompilerError(e.getMessage());
+		}
+	}
+	
+	byte[] toByteArray() {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(buffer)) {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(version);
+			out.writeShort(poolCount);
+			pool.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0); // interfaces
+			out.writeShort(0); // fields
+			out.writeShort(methodCount);
+			methods.writeTo(out);
+			out.writeShort(0); // attributes
+		} catch(IOException e) {
+			throw new InternalCompilerError(e.getMessage());
+		}
+		return buffer.toByteArray();
+	}
+}
@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution.bytecode;
+
+import mavlc.errors.InternalCompilerError;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assembles the code of a single method. The builder tracks the depth of the
+ * operand stack to compute the maximum stack size, which requires the code to
+ * be structured: every label is either the target of a jump emitted before it
+ * is placed or follows an instruction that falls through.
+ */
+final class CodeBuilder {
+	
+	static final int ICONST_0 = 0x03, FCONST_0 = 0x0b, BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12, LDC_W = 0x13;
+	static final int ILOAD = 0x15, FLOAD = 0x17, ALOAD = 0x19, IALOAD = 0x2e, FALOAD = 0x30, AALOAD = 0x32;
+	static final int ISTORE = 0x36, FSTORE = 0x38, ASTORE = 0x3a, IASTORE = 0x4f, FASTORE = 0x51, AASTORE = 0x53;
+	static final int POP = 0x57, DUP = 0x59, SWAP = 0x5f;
+	static final int IADD = 0x60, FADD = 0x62, ISUB = 0x64, FSUB = 0x66, IMUL = 0x68, FMUL = 0x6a, FDIV = 0x6e;
+	static final int INEG = 0x74, FNEG = 0x76, IAND = 0x7e, IOR = 0x80, IXOR = 0x82, IINC = 0x84;
+	static final int I2F = 0x86, I2D = 0x87, F2I = 0x8b, F2D = 0x8d, D2I = 0x8e, D2F = 0x90, FCMPL = 0x95, FCMPG = 0x96;
+	static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+	static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2, IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4;
+	static final int GOTO = 0xa7, IRETURN = 0xac, FRETURN = 0xae, ARETURN = 0xb0, RETURN = 0xb1;
+	static final int INVOKEVIRTUAL = 0xb6, INVOKESTATIC = 0xb8;
+	static final int NEWARRAY = 0xbc, ANEWARRAY = 0xbd, ARRAYLENGTH = 0xbe, CHECKCAST = 0xc0, WIDE = 0xc4;
+	static final int T_FLOAT = 6, T_INT = 10;
+	
+	/** The stack effect of the instructions without operands, indexed by opcode. */
+	private static final int[] stackEffect = new int[256];
+	
+	static {
+		stackEffect[IALOAD] = stackEffect[FALOAD] = stackEffect[AALOAD] = -1;
+		stackEffect[IASTORE] = stackEffect[FASTORE] = stackEffect[AASTORE] = -3;
+		stackEffect[POP] = -1;
+		stackEffect[DUP] = 1;
+		stackEffect[IADD] = stackEffect[FADD] = stackEffect[ISUB] = stackEffect[FSUB] = -1;
+		stackEffect[IMUL] = stackEffect[FMUL] = stackEffect[FDIV] = -1;
+		stackEffect[IAND] = stackEffect[IOR] = stackEffect[IXOR] = -1;
+		stackEffect[I2D] = stackEffect[F2D] = 1;
+		stackEffect[D2I] = stackEffect[D2F] = -1;
+		stackEffect[FCMPL] = stackEffect[FCMPG] = -1;
+		stackEffect[IRETURN] = stackEffect[FRETURN] = stackEffect[ARETURN] = -1;
+	}
+	
+	static final class Label {
+		private int position = -1;
+		private int stack = -1;
+		private final List<Integer> jumps = new ArrayList<>();
+	}
+	
+	private final ClassFileWriter classFile;
+	private byte[] code = new byte[256];
+	private int length;
+	private int stack, maxStack, maxLocals;
+	private final List<Integer> lineNumbers = new ArrayList<>();
+	
+	CodeBuilder(ClassFileWriter classFile, int maxLocals) {
+		this.classFile = classFile;
+		this.maxLocals = maxLocals;
+	}
+	
+	private void write(int value) {
+		if(length == code.length) code = Arrays.copyOf(code, length * 2);
+		code[length++] = (byte) value;
+	}
+	
+	private void writeShort(int value) {
+		write(value >> 8);
+		write(value);
+	}
+	
+	private void adjust(int delta) {
+		stack += delta;
+		maxStack = Math.max(maxStack, stack);
+	}
+	
+	/**
+	 * Emits an instruction without operands.
+	 */
+	void op(int opcode) {
+		write(opcode);
+		adjust(stackEffect[opcode]);
+	}
+	
+	void iconst(int value) {
+		if(value >= -1 && value <= 5) write(ICONST_0 + value);
+		else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			write(BIPUSH);
+			write(value);
+		} else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			write(SIPUSH);
+			writeShort(value);
+		} else {
+			ldc(classFile.integer(value));
+			return;
+		}
+		adjust(1);
+	}
+	
+	void fconst(float value) {
+		int bits = Float.floatToRawIntBits(value);
+		if(bits == 0 || value == 1f || value == 2f) {
+			write(FCONST_0 + (int) value);
+			adjust(1);
+		} else {
+			ldc(classFile.floatConstant(value));
+		}
+	}
+	
+	void sconst(String value) {
+		ldc(classFile.string(value));
+	}
+	
+	private void ldc(int index) {
+		if(index <= 0xFF) {
+			write(LDC);
+			write(index);
+		} else {
+			write(LDC_W);
+			writeShort(index);
+		}
+		adjust(1);
+	}
+	
+	/**
+	 * Emits a load or store instruction of a local variable.
+	 */
+	void local(int opcode, int index) {
+		if(index > 0xFF) {
+			write(WIDE);
+			write(opcode);
+			writeShort(index);
+		} else {
+			write(opcode);
+			write(index);
+		}
+		adjust(opcode >= ISTORE ? -1 : 1);
+		maxLocals = Math.max(maxLocals, index + 1);
+	}
+	
+	void iinc(int index, int increment) {
+		if(index > 0xFF || increment < Byte.MIN_VALUE || increment > Byte.MAX_VALUE) {
+			write(WIDE);
+			write(IINC);
+			writeShort(index);
+			writeShort(increment);
+		} else {
+			write(IINC);
+			write(index);
+			write(increment);
+		}
+		maxLocals = Math.max(maxLocals, index + 1);
+	}
+	
+	void newArray(int elementType) {
+		write(NEWARRAY);
+		write(elementType);
+	}
+	
+	/**
+	 * Emits an {@code anewarray} or {@code checkcast} instruction.
+	 */
+	void typeOp(int opcode, String internalName) {
+		write(opcode);
+		writeShort(classFile.classRef(internalName));
+	}
+	
+	void arrayLength() {
+		write(ARRAYLENGTH);
+	}
+	
+	void invoke(int opcode, String owner, String name, String descriptor) {
+		write(opcode);
+		writeShort(classFile.methodRef(owner, name, descriptor));
+		adjust(stackDelta(descriptor) - (opcode == INVOKESTATIC ? 0 : 1));
+	}
+	
+	/**
+	 * @return The number of stack slots pushed minus the number of slots popped by a static call.
+	 */
+	private static int stackDelta(String descriptor) {
+		int delta = 0, i = 1;
+		while(descriptor.charAt(i) != ')') {
+			char c = descriptor.charAt(i);
+			delta -= c == 'J' || c == 'D' ? 2 : 1;
+			while(descriptor.charAt(i) == '[') i++;
+			if(descriptor.charAt(i) == 'L') i = descriptor.indexOf(';', i);
+			i++;
+		}
+		char result = descriptor.charAt(i + 1);
+		return delta + (result == 'V' ? 0 : result == 'J' || result == 'D' ? 2 : 1);
+	}
+	
+	/**
+	 * Emits a conditional or unconditional jump to the given label.
+	 */
+	void jump(int opcode, Label target) {
+		adjust(opcode == GOTO ? 0 : opcode >= IF_ICMPEQ && opcode <= IF_ICMPLE ? -2 : -1);
+		if(target.stack < 0) target.stack = stack;
+		int position = length;
+		write(opcode);
+		if(target.position >= 0) {
+			writeShort(target.position - position);
+		} else {
+			target.jumps.add(position);
+			writeShort(0);
+		}
+	}
+	
+	/**
+	 * Emits a return or an exception throw, after which the code is only reachable through a label.
+	 */
+	void exit(int opcode) {
+		op(opcode);
+		stack = 0;
+	}
+	
+	void place(Label label) {
+		label.position = length;
+		if(label.stack >= 0) stack = label.stack;
+		else label.stack = stack;
+		for(int jump : label.jumps) {
+			int offset = length - jump;
+			code[jump + 1] = (byte) (offset >> 8);
+			code[jump + 2] = (byte) offset;
+		}
+	}
+	
+	/**
+	 * Maps the following instructions to a line of the source file.
+	 */
+	void line(int line) {
+		if(line < 0) return;
+		lineNumbers.add(length);
+		lineNumbers.add(line);
+	}
+	
+	int maxStack() {
+		return maxStack;
+	}
+	
+	int maxLocals() {
+		return maxLocals;
+	}
+	
+	int[] lineNumbers() {
+		return lineNumbers.stream().mapToInt(Integer::intValue).toArray();
+	}
+	
+	byte[] toByteArray() {
+		if(length > Short.MAX_VALUE)
+			throw new InternalCompilerError("Function too large for a single method");
+		return Arrays.copyOf(code, length);
+	}
+}
@@ -0,0 +1,1119 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution.closure;
+
+import mavlc.errors.ExecutionError;
+import mavlc.errors.InternalCompilerError;
+import mavlc.execution.Executable;
+import mavlc.execution.FrameLayout;
+import mavlc.execution.Interpreter;
+import mavlc.execution.Kernels;
+import mavlc.execution.LoopDependencies;
+import mavlc.execution.Parallel;
+import mavlc.execution.ParallelKernels;
+import mavlc.execution.Temporaries;
+import mavlc.execution.Values;
+import mavlc.execution.closure.Nodes.*;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.AstNodeBaseVisitor;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.function.FormalParameter;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.module.Module;
+import mavlc.syntax.statement.*;
+import mavlc.type.*;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compiles the functions of a decorated module to trees of closures once, which
+ * are then executed instead of walking the syntax tree. Every node is
+ * specialized for the static types of its operands: int, float and bool values
+ * are neither boxed nor dispatched on at runtime, the indices of record elements
+ * are resolved ahead of time and single matrix elements are read in place
+ * instead of copying the selected row first. Variables live in the frame slots
+ * assigned by {@link FrameLayout}.
+ * <p>
+ * A compiled module behaves exactly like the {@link Interpreter}, including the
+ * number of cycles and the runtime errors.
+ * <p>
+ * In parallel mode, structure operations and independent foreach loops (see
+ * {@link LoopDependencies}) on at least the given number of elements are split into
+ * fork-join tasks. Only a cycle limit exceeded within a parallel loop is reported
+ * at the loop instead of the statement that exceeded it.
+ * <p>
+ * Structure operations executed sequentially write their result to a buffer of the
+ * {@link ExecutionContext} if it is a temporary (see {@link Temporaries}), which is
+ * reused every time the operation is executed.
+ * <p>
+ * Each visit method returns an {@link IntNode}, {@link FloatNode},
+ * {@link BoolNode} or {@link RefNode} for expressions of the respective type,
+ * and a {@link StatementNode} for statements.
+ */
+public class ClosureCompiler extends AstNodeBaseVisitor<Object, Void> {
+	
+	private final Map<Function, CompiledFunction> functions = new IdentityHashMap<>();
+	private final int parallelThreshold;
+	private final Temporaries temporaries;
+	
+	private ClosureCompiler(int parallelThreshold, Temporaries temporaries) {
+		this.parallelThreshold = parallelThreshold;
+		this.temporaries = temporaries;
+	}
+	
+	/**
+	 * @param module The decorated module to compile.
+	 * @param parallelThreshold The minimum number of elements of operations executed in parallel, or 0 to execute sequentially.
+	 * @return The compiled module.
+	 */
+	public static Executable compile(Module module, int parallelThreshold) {
+		ClosureCompiler compiler = new ClosureCompiler(parallelThreshold, Temporaries.of(module));
+		CompiledFunction main = null;
+		for(Function function : module.functions) {
+			CompiledFunction compiled = new CompiledFunction(function, FrameLayout.layout(function));
+			compiler.functions.put(function, compiled);
+			if(function.name.equals("main")) main = compiled;
+		}
+		if(main == null) throw new InternalCompilerError("Cannot execute a module without main function");
+		for(CompiledFunction function : compiler.functions.values())
+			compiler.compileFunction(function);
+		return new ClosureProgram(main, compiler.temporaries.count());
+	}
+	
+	private void compileFunction(CompiledFunction compiled) {
+		List<Statement> body = compiled.function.body;
+		Statement last = body.isEmpty() ? null : body.get(body.size() - 1);
+		// the return statement is the last statement of a function, its value is the result
+		int count = last instanceof ReturnStatement ? body.size() - 1 : body.size();
+		compiled.body = new StatementNode[count];
+		for(int i = 0; i < count; i++)
+			compiled.body[i] = statement(body.get(i));
+		if(!(last instanceof ReturnStatement)) return;
+		
+		ReturnStatement returnStatement = (ReturnStatement) last;
+		Object value = returnStatement.returnValue.accept(this);
+		if(value instanceof IntNode) {
+			IntNode node = (IntNode) value;
+			compiled.intResult = f -> { f.context.tick(returnStatement); return node.evalInt(f); };
+		} else if(value instanceof FloatNode) {
+			FloatNode node = (FloatNode) value;
+			compiled.floatResult = f -> { f.context.tick(returnStatement); return node.evalFloat(f); };
+		} else if(value instanceof BoolNode) {
+			BoolNode node = (BoolNode) value;
+			compiled.boolResult = f -> { f.context.tick(returnStatement); return node.evalBool(f); };
+		} else {
+			RefNode node = (RefNode) value;
+			compiled.refResult = f -> { f.context.tick(returnStatement); return node.eval(f); };
+		}
+	}
+	
+	private StatementNode statement(Statement statement) {
+		return (StatementNode) statement.accept(this);
+	}
+	
+	private IntNode intNode(Expression expression) {
+		return (IntNode) expression.accept(this);
+	}
+	
+	private FloatNode floatNode(Expression expression) {
+		return (FloatNode) expression.accept(this);
+	}
+	
+	private BoolNode boolNode(Expression expression) {
+		return (BoolNode) expression.accept(this);
+	}
+	
+	private RefNode refNode(Expression expression) {
+		return (RefNode) expression.accept(this);
+	}
+	
+	private static boolean isIntStruct(Type type) {
+		return ((StructType) type).elementType instanceof IntType;
+	}
+	
+	private static int elementCount(Type type) {
+		if(type instanceof MatrixType) return ((MatrixType) type).rows * ((MatrixType) type).cols;
+		return ((VectorType) type).dimension;
+	}
+	
+	/**
+	 * @param work The number of elements processed by an operation.
+	 * @return Whether the operation is executed in parallel.
+	 */
+	private boolean parallel(long work) {
+		return parallelThreshold > 0 && work >= parallelThreshold;
+	}
+	
+	/**
+	 * @return The slot of the buffer a structure operation writes its result to, or -1 if it allocates a new array.
+	 */
+	private int slot(Expression operation, boolean parallel) {
+		// the parallel kernels always allocate their result
+		return parallel ? -1 : temporaries.slot(operation);
+	}
+	
+	/**
+	 * Compiles an expression of any type, boxing int, float and bool values.
+	 */
+	private RefNode objectNode(Expression expression) {
+		Object node = expression.accept(this);
+		if(node instanceof IntNode) {
+			IntNode value = (IntNode) node;
+			return f -> value.evalInt(f);
+		}
+		if(node instanceof FloatNode) {
+			FloatNode value = (FloatNode) node;
+			return f -> value.evalFloat(f);
+		}
+		if(node instanceof BoolNode) {
+			BoolNode value = (BoolNode) node;
+			return f -> value.evalBool(f);
+		}
+		return (RefNode) node;
+	}
+	
+	/**
+	 * Vectors, matrices and records read from a variable are copied before they
+	 * are stored, as MAVL has value semantics. See {@link Interpreter#valueOf}.
+	 */
+	private static RefNode copying(Expression expression, RefNode node) {
+		boolean aliasing = expression instanceof IdentifierReference || expression instanceof RecordElementSelect || expression instanceof SelectExpression;
+		if(aliasing && (expression.getType() instanceof StructType || expression.getType() instanceof RecordType))
+			return f -> Values.copy(node.eval(f));
+		return node;
+	}
+	
+	private RefNode valueNode(Expression expression) {
+		return copying(expression, objectNode(expression));
+	}
+	
+	/**
+	 * @return A node storing the value of the expression in the slot of the declaration.
+	 */
+	private StatementNode store(Declaration declaration, Expression value) {
+		int slot = declaration.getLocalBaseOffset();
+		Object node = value.accept(this);
+		if(node instanceof IntNode) {
+			IntNode v = (IntNode) node;
+			return f -> f.ints[slot] = v.evalInt(f);
+		}
+		if(node instanceof FloatNode) {
+			FloatNode v = (FloatNode) node;
+			return f -> f.floats[slot] = v.evalFloat(f);
+		}
+		if(node instanceof BoolNode) {
+			BoolNode v = (BoolNode) node;
+			return f -> f.ints[slot] = v.evalBool(f) ? 1 : 0;
+		}
+		RefNode v = copying(value, (RefNode) node);
+		return f -> f.refs[slot] = v.eval(f);
+	}
+	
+	/**
+	 * @return A node storing the value of the argument in the slot of the parameter.
+	 */
+	private ArgumentNode argument(FormalParameter parameter, Expression value) {
+		int slot = parameter.getLocalBaseOffset();
+		Object node = value.accept(this);
+		if(node instanceof IntNode) {
+			IntNode v = (IntNode) node;
+			return (caller, callee) -> callee.ints[slot] = v.evalInt(caller);
+		}
+		if(node instanceof FloatNode) {
+			FloatNode v = (FloatNode) node;
+			return (caller, callee) -> callee.floats[slot] = v.evalFloat(caller);
+		}
+		if(node instanceof BoolNode) {
+			BoolNode v = (BoolNode) node;
+			return (caller, callee) -> callee.ints[slot] = v.evalBool(caller) ? 1 : 0;
+		}
+		RefNode v = copying(value, (RefNode) node);
+		return (caller, callee) -> callee.refs[slot] = v.eval(caller);
+	}
+	
+	/**
+	 * Unboxes the result of a node working on objects.
+	 */
+	private static Object unboxed(Type type, RefNode node) {
+		if(type instanceof IntType) return (IntNode) f -> (int) node.eval(f);
+		if(type instanceof FloatType) return (FloatNode) f -> (float) node.eval(f);
+		if(type instanceof BoolType) return (BoolNode) f -> (boolean) node.eval(f);
+		return node;
+	}
+	
+	@Override
+	protected Object defaultOperation(AstNode node, Void __) {
+		throw new InternalCompilerError(node, "Cannot compile " + node.getClass().getSimpleName());
+	}
+	
+	@Override
+	public Object visitValueDefinition(ValueDefinition valueDefinition, Void __) {
+		StatementNode store = store(valueDefinition, valueDefinition.value);
+		return (StatementNode) f -> {
+			f.context.tick(valueDefinition);
+			store.execute(f);
+		};
+	}
+	
+	@Override
+	public Object visitVariableDeclaration(VariableDeclaration variableDeclaration, Void __) {
+		int slot = variableDeclaration.getLocalBaseOffset();
+		Type type = variableDeclaration.getType();
+		if(type instanceof IntType || type instanceof BoolType)
+			return (StatementNode) f -> { f.context.tick(variableDeclaration); f.ints[slot] = 0; };
+		if(type instanceof FloatType)
+			return (StatementNode) f -> { f.context.tick(variableDeclaration); f.floats[slot] = 0; };
+		return (StatementNode) f -> { f.context.tick(variableDeclaration); f.refs[slot] = Values.zero(type); };
+	}
+	
+	@Override
+	public Object visitVariableAssignment(VariableAssignment variableAssignment, Void __) {
+		LeftHandIdentifier identifier = variableAssignment.identifier;
+		Declaration declaration = identifier.getDeclaration();
+		int slot = declaration.getLocalBaseOffset();
+		if(identifier instanceof VectorLhsIdentifier) {
+			VectorType type = (VectorType) declaration.getType();
+			int dimension = type.dimension;
+			IntNode index = intNode(((VectorLhsIdentifier) identifier).indexExpression);
+			boolean checked = !((VectorLhsIdentifier) identifier).isInBounds();
+			if(type.elementType instanceof IntType) {
+				IntNode value = intNode(variableAssignment.value);
+				return (StatementNode) f -> {
+					f.context.tick(variableAssignment);
+					int v = value.evalInt(f), i = index.evalInt(f);
+					if(checked) Values.checkIndex(identifier, i, dimension);
+					((int[]) f.refs[slot])[i] = v;
+				};
+			}
+			FloatNode value = floatNode(variableAssignment.value);
+			return (StatementNode) f -> {
+				f.context.tick(variableAssignment);
+				float v = value.evalFloat(f);
+				int i = index.evalInt(f);
+				if(checked) Values.checkIndex(identifier, i, dimension);
+				((float[]) f.refs[slot])[i] = v;
+			};
+		}
+		if(identifier instanceof MatrixLhsIdentifier) {
+			MatrixType type = (MatrixType) declaration.getType();
+			int rows = type.rows, cols = type.cols;
+			IntNode rowIndex = intNode(((MatrixLhsIdentifier) identifier).rowIndexExpression);
+			IntNode colIndex = intNode(((MatrixLhsIdentifier) identifier).colIndexExpression);
+			boolean checked = !((MatrixLhsIdentifier) identifier).isInBounds();
+			if(type.elementType instanceof IntType) {
+				IntNode value = intNode(variableAssignment.value);
+				return (StatementNode) f -> {
+					f.context.tick(variableAssignment);
+					int v = value.evalInt(f), row = rowIndex.evalInt(f), col = colIndex.evalInt(f);
+					if(checked) {
+						Values.checkIndex(identifier, row, rows);
+						Values.checkIndex(identifier, col, cols);
+					}
+					((int[]) f.refs[slot])[row * cols + col] = v;
+				};
+			}
+			FloatNode value = floatNode(variableAssignment.value);
+			return (StatementNode) f -> {
+				f.context.tick(variableAssignment);
+				float v = value.evalFloat(f);
+				int row = rowIndex.evalInt(f), col = colIndex.evalInt(f);
+				if(checked) {
+					Values.checkIndex(identifier, row, rows);
+					Values.checkIndex(identifier, col, cols);
+				}
+				((float[]) f.refs[slot])[row * cols + col] = v;
+			};
+		}
+		if(identifier instanceof RecordLhsIdentifier) {
+			RecordType type = (RecordType) declaration.getType();
+			int index = Values.elementIndex(type.typeDeclaration, ((RecordLhsIdentifier) identifier).elementName);
+			RefNode value = valueNode(variableAssignment.value);
+			return (StatementNode) f -> {
+				f.context.tick(variableAssignment);
+				Object v = value.eval(f);
+				((Object[]) f.refs[slot])[index] = v;
+			};
+		}
+		StatementNode store = store(declaration, variableAssignment.value);
+		return (StatementNode) f -> {
+			f.context.tick(variableAssignment);
+			store.execute(f);
+		};
+	}
+	
+	@Override
+	public Object visitForLoop(ForLoop forLoop, Void __) {
+		StatementNode init = store(forLoop.getInitVarDeclaration(), forLoop.initExpression);
+		BoolNode condition = boolNode(forLoop.loopCondition);
+		StatementNode body = statement(forLoop.body);
+		StatementNode increment = store(forLoop.getIncrVarDeclaration(), forLoop.incrExpression);
+		return (StatementNode) f -> {
+			f.context.tick(forLoop);
+			init.execute(f);
+			while(condition.evalBool(f)) {
+				body.execute(f);
+				increment.execute(f);
+			}
+		};
+	}
+	
+	@Override
+	public Object visitForEachLoop(ForEachLoop forEachLoop, Void __) {
+		IteratorDeclaration iterator = forEachLoop.iteratorDeclaration;
+		int slot = iterator.getLocalBaseOffset();
+		StatementNode body = statement(forEachLoop.body);
+		boolean isInt = iterator.getType() instanceof IntType;
+		boolean parallel = parallel(elementCount(forEachLoop.structExpression.getType())) && LoopDependencies.isIndependent(forEachLoop);
+		if(iterator.isVariable()) {
+			// the elements are written back to the variable after each iteration
+			int structSlot = ((IdentifierReference) forEachLoop.structExpression).getDeclaration().getLocalBaseOffset();
+			if(isInt) {
+				if(parallel) {
+					return (StatementNode) f -> {
+						f.context.tick(forEachLoop);
+						int[] elements = (int[]) f.refs[structSlot];
+						runParallel(forEachLoop, f, elements.length, (frame, i) -> {
+							frame.ints[slot] = elements[i];
+							body.execute(frame);
+							elements[i] = frame.ints[slot];
+						});
+					};
+				}
+				return (StatementNode) f -> {
+					f.context.tick(forEachLoop);
+					int size = ((int[]) f.refs[structSlot]).length;
+					for(int i = 0; i < size; i++) {
+						f.ints[slot] = ((int[]) f.refs[structSlot])[i];
+						body.execute(f);
+						((int[]) f.refs[structSlot])[i] = f.ints[slot];
+					}
+				};
+			}
+			if(parallel) {
+				return (StatementNode) f -> {
+					f.context.tick(forEachLoop);
+					float[] elements = (float[]) f.refs[structSlot];
+					runParallel(forEachLoop, f, elements.length, (frame, i) -> {
+						frame.floats[slot] = elements[i];
+						body.execute(frame);
+						elements[i] = frame.floats[slot];
+					});
+				};
+			}
+			return (StatementNode) f -> {
+				f.context.tick(forEachLoop);
+				int size = ((float[]) f.refs[structSlot]).length;
+				for(int i = 0; i < size; i++) {
+					f.floats[slot] = ((float[]) f.refs[structSlot])[i];
+					body.execute(f);
+					((float[]) f.refs[structSlot])[i] = f.floats[slot];
+				}
+			};
+		}
+		RefNode struct = valueNode(forEachLoop.structExpression);
+		if(isInt) {
+			if(parallel) {
+				return (StatementNode) f -> {
+					f.context.tick(forEachLoop);
+					int[] elements = (int[]) struct.eval(f);
+					runParallel(forEachLoop, f, elements.length, (frame, i) -> {
+						frame.ints[slot] = elements[i];
+						body.execute(frame);
+					});
+				};
+			}
+			return (StatementNode) f -> {
+				f.context.tick(forEachLoop);
+				for(int element : (int[]) struct.eval(f)) {
+					f.ints[slot] = element;
+					body.execute(f);
+				}
+			};
+		}
+		if(parallel) {
+			return (StatementNode) f -> {
+				f.context.tick(forEachLoop);
+				float[] elements = (float[]) struct.eval(f);
+				runParallel(forEachLoop, f, elements.length, (frame, i) -> {
+					frame.floats[slot] = elements[i];
+					body.execute(frame);
+				});
+			};
+		}
+		return (StatementNode) f -> {
+			f.context.tick(forEachLoop);
+			for(float element : (float[]) struct.eval(f)) {
+				f.floats[slot] = element;
+				body.execute(f);
+			}
+		};
+	}
+	
+	@FunctionalInterface
+	private interface Iteration {
+		void run(Frame frame, int index);
+	}
+	
+	/**
+	 * Executes the iterations of an independent loop in parallel. Each chunk runs in a copy
+	 * of the frame and counts its cycles in a forked context, which are added up afterwards.
+	 */
+	private static void runParallel(ForEachLoop loop, Frame f, int size, Iteration iteration) {
+		ExecutionContext context = f.context;
+		long start = context.cycles;
+		LongAdder cycles = new LongAdder();
+		Parallel.forEachChunk(size, 1, (from, to) -> {
+			ExecutionContext chunkContext = context.fork();
+			Frame frame = new Frame(f, chunkContext);
+			try {
+				for(int i = from; i < to; i++)
+					iteration.run(frame, i);
+			} finally {
+				cycles.add(chunkContext.cycles - start);
+			}
+		});
+		context.join(loop, cycles.sum());
+	}
+	
+	@Override
+	public Object visitIfStatement(IfStatement ifStatement, Void __) {
+		BoolNode condition = boolNode(ifStatement.condition);
+		StatementNode thenStatement = statement(ifStatement.thenStatement);
+		if(!ifStatement.hasElseStatement()) {
+			return (StatementNode) f -> {
+				f.context.tick(ifStatement);
+				if(condition.evalBool(f)) thenStatement.execute(f);
+			};
+		}
+		StatementNode elseStatement = statement(ifStatement.elseStatement);
+		return (StatementNode) f -> {
+			f.context.tick(ifStatement);
+			if(condition.evalBool(f)) thenStatement.execute(f);
+			else elseStatement.execute(f);
+		};
+	}
+	
+	@Override
+	public Object visitCallStatement(CallStatement callStatement, Void __) {
+		Object call = callStatement.callExpression.accept(this);
+		if(call instanceof IntNode) {
+			IntNode node = (IntNode) call;
+			return (StatementNode) f -> { f.context.tick(callStatement); node.evalInt(f); };
+		}
+		if(call instanceof FloatNode) {
+			FloatNode node = (FloatNode) call;
+			return (StatementNode) f -> { f.context.tick(callStatement); node.evalFloat(f); };
+		}
+		if(call instanceof BoolNode) {
+			BoolNode node = (BoolNode) call;
+			return (StatementNode) f -> { f.context.tick(callStatement); node.evalBool(f); };
+		}
+		RefNode node = (RefNode) call;
+		return (StatementNode) f -> { f.context.tick(callStatement); node.eval(f); };
+	}
+	
+	@Override
+	public Object visitCompoundStatement(CompoundStatement compoundStatement, Void __) {
+		StatementNode[] statements = compoundStatement.statements.stream().map(this::statement).toArray(StatementNode[]::new);
+		return (StatementNode) f -> {
+			f.context.tick(compoundStatement);
+			for(StatementNode statement : statements)
+				statement.execute(f);
+		};
+	}
+	
+	@Override
+	public Object visitSwitchStatement(SwitchStatement switchStatement, Void __) {
+		IntNode condition = intNode(switchStatement.condition);
+		int[] values = switchStatement.cases.stream().mapToInt(Case::getCondition).toArray();
+		StatementNode[] cases = switchStatement.cases.stream().map(c -> statement(c.body)).toArray(StatementNode[]::new);
+		StatementNode[] defaults = switchStatement.defaults.stream().map(d -> statement(d.body)).toArray(StatementNode[]::new);
+		return (StatementNode) f -> {
+			f.context.tick(switchStatement);
+			int value = condition.evalInt(f);
+			for(int i = 0; i < values.length; i++) {
+				if(values[i] == value) {
+					cases[i].execute(f);
+					return;
+				}
+			}
+			for(StatementNode defCase : defaults)
+				defCase.execute(f);
+		};
+	}
+	
+	@Override
+	public Object visitIdentifierReference(IdentifierReference identifierReference, Void __) {
+		int slot = identifierReference.getDeclaration().getLocalBaseOffset();
+		Type type = identifierReference.getType();
+		if(type instanceof IntType) return (IntNode) f -> f.ints[slot];
+		if(type instanceof FloatType) return (FloatNode) f -> f.floats[slot];
+		if(type instanceof BoolType) return (BoolNode) f -> f.ints[slot] != 0;
+		return (RefNode) f -> f.refs[slot];
+	}
+	
+	@Override
+	public Object visitSelectExpression(SelectExpression exp, Void __) {
+		BoolNode condition = boolNode(exp.condition);
+		Object trueCase = exp.trueCase.accept(this), falseCase = exp.falseCase.accept(this);
+		if(trueCase instanceof IntNode) {
+			IntNode t = (IntNode) trueCase, e = (IntNode) falseCase;
+			return (IntNode) f -> condition.evalBool(f) ? t.evalInt(f) : e.evalInt(f);
+		}
+		if(trueCase instanceof FloatNode) {
+			FloatNode t = (FloatNode) trueCase, e = (FloatNode) falseCase;
+			return (FloatNode) f -> condition.evalBool(f) ? t.evalFloat(f) : e.evalFloat(f);
+		}
+		if(trueCase instanceof BoolNode) {
+			BoolNode t = (BoolNode) trueCase, e = (BoolNode) falseCase;
+			return (BoolNode) f -> condition.evalBool(f) ? t.evalBool(f) : e.evalBool(f);
+		}
+		RefNode t = (RefNode) trueCase, e = (RefNode) falseCase;
+		return (RefNode) f -> condition.evalBool(f) ? t.eval(f) : e.eval(f);
+	}
+	
+	@Override
+	public Object visitMatrixMultiplication(MatrixMultiplication matrixMultiplication, Void __) {
+		MatrixType left = (MatrixType) matrixMultiplication.leftOperand.getType();
+		MatrixType right = (MatrixType) matrixMultiplication.rightOperand.getType();
+		int rows = left.rows, inner = left.cols, cols = right.cols;
+		RefNode l = refNode(matrixMultiplication.leftOperand), r = refNode(matrixMultiplication.rightOperand);
+		boolean parallel = parallel((long) rows * inner * cols);
+		int slot = slot(matrixMultiplication, parallel);
+		if(left.elementType instanceof IntType) {
+			return (RefNode) f -> {
+				int[] a = (int[]) l.eval(f), b = (int[]) r.eval(f);
+				if(parallel) return ParallelKernels.matrixMultiply(a, b, rows, inner, cols);
+				return Kernels.matrixMultiply(a, b, rows, inner, cols, f.context.intBuffer(slot, rows * cols));
+			};
+		}
+		return (RefNode) f -> {
+			float[] a = (float[]) l.eval(f), b = (float[]) r.eval(f);
+			if(parallel) return ParallelKernels.matrixMultiply(a, b, rows, inner, cols);
+			return Kernels.matrixMultiply(a, b, rows, inner, cols, f.context.floatBuffer(slot, rows * cols));
+		};
+	}
+	
+	@Override
+	public Object visitDotProduct(DotProduct dotProduct, Void __) {
+		RefNode l = refNode(dotProduct.leftOperand), r = refNode(dotProduct.rightOperand);
+		if(dotProduct.getType() instanceof IntType)
+			return (IntNode) f -> Kernels.dotProduct((int[]) l.eval(f), (int[]) r.eval(f));
+		return (FloatNode) f -> Kernels.dotProduct((float[]) l.eval(f), (float[]) r.eval(f));
+	}
+	
+	@Override
+	public Object visitExponentiation(Exponentiation exponentiation, Void __) {
+		if(exponentiation.getType() instanceof IntType) {
+			IntNode l = intNode(exponentiation.leftOperand), r = intNode(exponentiation.rightOperand);
+			return (IntNode) f -> (int) Math.pow(l.evalInt(f), r.evalInt(f));
+		}
+		FloatNode l = floatNode(exponentiation.leftOperand), r = floatNode(exponentiation.rightOperand);
+		return (FloatNode) f -> (float) Math.pow(l.evalFloat(f), r.evalFloat(f));
+	}
+	
+	@Override
+	public Object visitMultiplication(Multiplication multiplication, Void __) {
+		Type type = multiplication.getType();
+		if(type instanceof IntType) {
+			IntNode l = intNode(multiplication.leftOperand), r = intNode(multiplication.rightOperand);
+			return (IntNode) f -> l.evalInt(f) * r.evalInt(f);
+		}
+		if(type instanceof FloatType) {
+			FloatNode l = floatNode(multiplication.leftOperand), r = floatNode(multiplication.rightOperand);
+			return (FloatNode) f -> l.evalFloat(f) * r.evalFloat(f);
+		}
+		// either operand may be a scalar
+		Type leftType = multiplication.leftOperand.getType(), rightType = multiplication.rightOperand.getType();
+		boolean parallel = parallel(elementCount(type));
+		int slot = slot(multiplication, parallel);
+		if(leftType instanceof IntType) {
+			IntNode l = intNode(multiplication.leftOperand);
+			RefNode r = refNode(multiplication.rightOperand);
+			return (RefNode) f -> {
+				int factor = l.evalInt(f);
+				int[] struct = (int[]) r.eval(f);
+				if(parallel) return ParallelKernels.scale(factor, struct);
+				return Kernels.scale(factor, struct, f.context.intBuffer(slot, struct.length));
+			};
+		}
+		if(leftType instanceof FloatType) {
+			FloatNode l = floatNode(multiplication.leftOperand);
+			RefNode r = refNode(multiplication.rightOperand);
+			return (RefNode) f -> {
+				float factor = l.evalFloat(f);
+				float[] struct = (float[]) r.eval(f);
+				if(parallel) return ParallelKernels.scale(factor, struct);
+				return Kernels.scale(factor, struct, f.context.floatBuffer(slot, struct.length));
+			};
+		}
+		RefNode l = refNode(multiplication.leftOperand);
+		if(rightType instanceof IntType) {
+			IntNode r = intNode(multiplication.rightOperand);
+			return (RefNode) f -> {
+				int[] struct = (int[]) l.eval(f);
+				int factor = r.evalInt(f);
+				if(parallel) return ParallelKernels.scale(factor, struct);
+				return Kernels.scale(factor, struct, f.context.intBuffer(slot, struct.length));
+			};
+		}
+		if(rightType instanceof FloatType) {
+			FloatNode r = floatNode(multiplication.rightOperand);
+			return (RefNode) f -> {
+				float[] struct = (float[]) l.eval(f);
+				float factor = r.evalFloat(f);
+				if(parallel) return ParallelKernels.scale(factor, struct);
+				return Kernels.scale(factor, struct, f.context.floatBuffer(slot, struct.length));
+			};
+		}
+		RefNode r = refNode(multiplication.rightOperand);
+		if(isIntStruct(type)) {
+			return (RefNode) f -> {
+				int[] a = (int[]) l.eval(f), b = (int[]) r.eval(f);
+				if(parallel) return ParallelKernels.multiply(a, b);
+				return Kernels.multiply(a, b, f.context.intBuffer(slot, a.length));
+			};
+		}
+		return (RefNode) f -> {
+			float[] a = (float[]) l.eval(f), b = (float[]) r.eval(f);
+			if(parallel) return ParallelKernels.multiply(a, b);
+			return Kernels.multiply(a, b, f.context.floatBuffer(slot, a.length));
+		};
+	}
+	
+	@Override
+	public Object visitDivision(Division division, Void __) {
+		if(division.getType() instanceof IntType) {
+			IntNode l = intNode(division.leftOperand), r = intNode(division.rightOperand);
+			return (IntNode) f -> {
+				int dividend = l.evalInt(f), divisor = r.evalInt(f);
+				if(divisor == 0) throw new ExecutionError(division, "Division by zero");
+				return dividend / divisor;
+			};
+		}
+		FloatNode l = floatNode(division.leftOperand), r = floatNode(division.rightOperand);
+		return (FloatNode) f -> l.evalFloat(f) / r.evalFloat(f);
+	}
+	
+	@Override
+	public Object visitAddition(Addition addition, Void __) {
+		Type type = addition.getType();
+		if(type instanceof IntType) {
+			IntNode l = intNode(addition.leftOperand), r = intNode(addition.rightOperand);
+			return (IntNode) f -> l.evalInt(f) + r.evalInt(f);
+		}
+		if(type instanceof FloatType) {
+			FloatNode l = floatNode(addition.leftOperand), r = floatNode(addition.rightOperand);
+			return (FloatNode) f -> l.evalFloat(f) + r.evalFloat(f);
+		}
+		RefNode l = refNode(addition.leftOperand), r = refNode(addition.rightOperand);
+		boolean parallel = parallel(elementCount(type));
+		int slot = slot(addition, parallel);
+		if(isIntStruct(type)) {
+			return (RefNode) f -> {
+				int[] a = (int[]) l.eval(f), b = (int[]) r.eval(f);
+				if(parallel) return ParallelKernels.add(a, b);
+				return Kernels.add(a, b, f.context.intBuffer(slot, a.length));
+			};
+		}
+		return (RefNode) f -> {
+			float[] a = (float[]) l.eval(f), b = (float[]) r.eval(f);
+			if(parallel) return ParallelKernels.add(a, b);
+			return Kernels.add(a, b, f.context.floatBuffer(slot, a.length));
+		};
+	}
+	
+	@Override
+	public Object visitSubtraction(Subtraction subtraction, Void __) {
+		Type type = subtraction.getType();
+		if(type instanceof IntType) {
+			IntNode l = intNode(subtraction.leftOperand), r = intNode(subtraction.rightOperand);
+			return (IntNode) f -> l.evalInt(f) - r.evalInt(f);
+		}
+		if(type instanceof FloatType) {
+			FloatNode l = floatNode(subtraction.leftOperand), r = floatNode(subtraction.rightOperand);
+			return (FloatNode) f -> l.evalFloat(f) - r.evalFloat(f);
+		}
+		RefNode l = refNode(subtraction.leftOperand), r = refNode(subtraction.rightOperand);
+		boolean parallel = parallel(elementCount(type));
+		int slot = slot(subtraction, parallel);
+		if(isIntStruct(type)) {
+			return (RefNode) f -> {
+				int[] a = (int[]) l.eval(f), b = (int[]) r.eval(f);
+				if(parallel) return ParallelKernels.subtract(a, b);
+				return Kernels.subtract(a, b, f.context.intBuffer(slot, a.length));
+			};
+		}
+		return (RefNode) f -> {
+			float[] a = (float[]) l.eval(f), b = (float[]) r.eval(f);
+			if(parallel) return ParallelKernels.subtract(a, b);
+			return Kernels.subtract(a, b, f.context.floatBuffer(slot, a.length));
+		};
+	}
+	
+	@Override
+	public Object visitCompare(Compare compare, Void __) {
+		if(compare.leftOperand.getType() instanceof IntType) {
+			IntNode l = intNode(compare.leftOperand), r = intNode(compare.rightOperand);
+			switch(compare.comparator) {
+				case LESS:
+					return (BoolNode) f -> l.evalInt(f) < r.evalInt(f);
+				case GREATER:
+					return (BoolNode) f -> l.evalInt(f) > r.evalInt(f);
+				case LESS_EQUAL:
+					return (BoolNode) f -> l.evalInt(f) <= r.evalInt(f);
+				case GREATER_EQUAL:
+					return (BoolNode) f -> l.evalInt(f) >= r.evalInt(f);
+				case NOT_EQUAL:
+					return (BoolNode) f -> l.evalInt(f) != r.evalInt(f);
+				default:
+					return (BoolNode) f -> l.evalInt(f) == r.evalInt(f);
+			}
+		}
+		FloatNode l = floatNode(compare.leftOperand), r = floatNode(compare.rightOperand);
+		switch(compare.comparator) {
+			case LESS:
+				return (BoolNode) f -> l.evalFloat(f) < r.evalFloat(f);
+			case GREATER:
+				return (BoolNode) f -> l.evalFloat(f) > r.evalFloat(f);
+			case LESS_EQUAL:
+				return (BoolNode) f -> l.evalFloat(f) <= r.evalFloat(f);
+			case GREATER_EQUAL:
+				return (BoolNode) f -> l.evalFloat(f) >= r.evalFloat(f);
+			case NOT_EQUAL:
+				return (BoolNode) f -> l.evalFloat(f) != r.evalFloat(f);
+			default:
+				return (BoolNode) f -> l.evalFloat(f) == r.evalFloat(f);
+		}
+	}
+	
+	@Override
+	public Object visitAnd(And and, Void __) {
+		// both operands are always evaluated
+		BoolNode l = boolNode(and.leftOperand), r = boolNode(and.rightOperand);
+		return (BoolNode) f -> l.evalBool(f) & r.evalBool(f);
+	}
+	
+	@Override
+	public Object visitOr(Or or, Void __) {
+		BoolNode l = boolNode(or.leftOperand), r = boolNode(or.rightOperand);
+		return (BoolNode) f -> l.evalBool(f) | r.evalBool(f);
+	}
+	
+	@Override
+	public Object visitMatrixTranspose(MatrixTranspose matrixTranspose, Void __) {
+		MatrixType type = (MatrixType) matrixTranspose.operand.getType();
+		int rows = type.rows, cols = type.cols;
+		RefNode operand = refNode(matrixTranspose.operand);
+		boolean parallel = parallel((long) rows * cols);
+		int slot = slot(matrixTranspose, parallel);
+		if(type.elementType instanceof IntType) {
+			return (RefNode) f -> {
+				int[] matrix = (int[]) operand.eval(f);
+				if(parallel) return ParallelKernels.transpose(matrix, rows, cols);
+				return Kernels.transpose(matrix, rows, cols, f.context.intBuffer(slot, matrix.length));
+			};
+		}
+		return (RefNode) f -> {
+			float[] matrix = (float[]) operand.eval(f);
+			if(parallel) return ParallelKernels.transpose(matrix, rows, cols);
+			return Kernels.transpose(matrix, rows, cols, f.context.floatBuffer(slot, matrix.length));
+		};
+	}
+	
+	@Override
+	public Object visitMatrixRows(MatrixRows rows, Void __) {
+		int value = ((MatrixType) rows.operand.getType()).rows;
+		return (IntNode) f -> value;
+	}
+	
+	@Override
+	public Object visitMatrixCols(MatrixCols cols, Void __) {
+		int value = ((MatrixType) cols.operand.getType()).cols;
+		return (IntNode) f -> value;
+	}
+	
+	@Override
+	public Object visitVectorDimension(VectorDimension vectorDimension, Void __) {
+		int value = ((VectorType) vectorDimension.operand.getType()).dimension;
+		return (IntNode) f -> value;
+	}
+	
+	@Override
+	public Object visitUnaryMinus(UnaryMinus unaryMinus, Void __) {
+		if(unaryMinus.getType() instanceof IntType) {
+			IntNode operand = intNode(unaryMinus.operand);
+			return (IntNode) f -> -operand.evalInt(f);
+		}
+		FloatNode operand = floatNode(unaryMinus.operand);
+		return (FloatNode) f -> -operand.evalFloat(f);
+	}
+	
+	@Override
+	public Object visitNot(Not not, Void __) {
+		BoolNode operand = boolNode(not.operand);
+		return (BoolNode) f -> !operand.evalBool(f);
+	}
+	
+	@Override
+	public Object visitCallExpression(CallExpression callExpression, Void __) {
+		Function callee = callExpression.getCalleeDefinition();
+		CompiledFunction target = functions.get(callee);
+		// not part of the module, so it is a runtime function
+		if(target == null) return runtimeCall(callExpression);
+		
+		List<Expression> actualParameters = callExpression.actualParameters;
+		ArgumentNode[] arguments = new ArgumentNode[actualParameters.size()];
+		for(int i = 0; i < arguments.length; i++)
+			arguments[i] = argument(callee.parameters.get(i), actualParameters.get(i));
+		Type type = callee.getReturnType();
+		if(type instanceof IntType) return (IntNode) f -> target.intResult.evalInt(target.invoke(f, arguments));
+		if(type instanceof FloatType) return (FloatNode) f -> target.floatResult.evalFloat(target.invoke(f, arguments));
+		if(type instanceof BoolType) return (BoolNode) f -> target.boolResult.evalBool(target.invoke(f, arguments));
+		if(type instanceof VoidType) return (RefNode) f -> { target.invoke(f, arguments); return null; };
+		return (RefNode) f -> target.refResult.eval(target.invoke(f, arguments));
+	}
+	
+	/**
+	 * Calls the arithmetic runtime functions directly on unboxed values, and all
+	 * others through the {@link mavlc.execution.RuntimeLibrary}.
+	 */
+	private Object runtimeCall(CallExpression callExpression) {
+		List<Expression> arguments = callExpression.actualParameters;
+		switch(callExpression.functionName) {
+			case "int2float": {
+				IntNode value = intNode(arguments.get(0));
+				return (FloatNode) f -> (float) value.evalInt(f);
+			}
+			case "float2int": {
+				FloatNode value = floatNode(arguments.get(0));
+				return (IntNode) f -> (int) value.evalFloat(f);
+			}
+			case "sqrtInt": {
+				IntNode value = intNode(arguments.get(0));
+				return (IntNode) f -> (int) Math.sqrt(value.evalInt(f));
+			}
+			case "sqrtFloat": {
+				FloatNode value = floatNode(arguments.get(0));
+				return (FloatNode) f -> (float) Math.sqrt(value.evalFloat(f));
+			}
+			case "powInt": {
+				IntNode base = intNode(arguments.get(0)), exponent = intNode(arguments.get(1));
+				return (IntNode) f -> (int) Math.pow(base.evalInt(f), exponent.evalInt(f));
+			}
+			case "powFloat": {
+				FloatNode base = floatNode(arguments.get(0)), exponent = floatNode(arguments.get(1));
+				return (FloatNode) f -> (float) Math.pow(base.evalFloat(f), exponent.evalFloat(f));
+			}
+			case "modulo": {
+				IntNode dividend = intNode(arguments.get(0)), divisor = intNode(arguments.get(1));
+				return (IntNode) f -> {
+					int l = dividend.evalInt(f), r = divisor.evalInt(f);
+					if(r == 0) throw new ExecutionError(callExpression, "Division by zero");
+					return l % r;
+				};
+			}
+		}
+		RefNode[] values = arguments.stream().map(this::objectNode).toArray(RefNode[]::new);
+		return unboxed(callExpression.getType(), f -> {
+			Object[] args = new Object[values.length];
+			for(int i = 0; i < args.length; i++)
+				args[i] = values[i].eval(f);
+			return f.context.library.call(callExpression, args);
+		});
+	}
+	
+	@Override
+	public Object visitElementSelect(ElementSelect elementSelect, Void __) {
+		Expression structExpression = elementSelect.structExpression;
+		IntNode index = intNode(elementSelect.indexExpression);
+		StructType type = (StructType) structExpression.getType();
+		if(type instanceof MatrixType) {
+			int rows = ((MatrixType) type).rows, cols = ((MatrixType) type).cols;
+			RefNode matrix = refNode(structExpression);
+			boolean checked = !elementSelect.isInBounds();
+			return (RefNode) f -> {
+				Object m = matrix.eval(f);
+				int row = index.evalInt(f);
+				if(checked) Values.checkIndex(elementSelect, row, rows);
+				return Values.slice(m, row * cols, cols);
+			};
+		}
+		boolean isInt = type.elementType instanceof IntType;
+		if(structExpression instanceof ElementSelect && ((ElementSelect) structExpression).structExpression.getType() instanceof MatrixType) {
+			// a single element of a matrix, read in place instead of copying its row
+			ElementSelect rowSelect = (ElementSelect) structExpression;
+			MatrixType matrixType = (MatrixType) rowSelect.structExpression.getType();
+			int rows = matrixType.rows, cols = matrixType.cols;
+			RefNode matrix = refNode(rowSelect.structExpression);
+			IntNode rowIndex = intNode(rowSelect.indexExpression);
+			if(rowSelect.isInBounds() && elementSelect.isInBounds()) {
+				// both indices have been proven to be in bounds
+				if(isInt) return (IntNode) f -> ((int[]) matrix.eval(f))[rowIndex.evalInt(f) * cols + index.evalInt(f)];
+				return (FloatNode) f -> ((float[]) matrix.eval(f))[rowIndex.evalInt(f) * cols + index.evalInt(f)];
+			}
+			if(isInt) {
+				return (IntNode) f -> {
+					int[] m = (int[]) matrix.eval(f);
+					int row = rowIndex.evalInt(f);
+					Values.checkIndex(rowSelect, row, rows);
+					int col = index.evalInt(f);
+					Values.checkIndex(elementSelect, col, cols);
+					return m[row * cols + col];
+				};
+			}
+			return (FloatNode) f -> {
+				float[] m = (float[]) matrix.eval(f);
+				int row = rowIndex.evalInt(f);
+				Values.checkIndex(rowSelect, row, rows);
+				int col = index.evalInt(f);
+				Values.checkIndex(elementSelect, col, cols);
+				return m[row * cols + col];
+			};
+		}
+		int dimension = ((VectorType) type).dimension;
+		RefNode vector = refNode(structExpression);
+		if(elementSelect.isInBounds()) {
+			if(isInt) return (IntNode) f -> ((int[]) vector.eval(f))[index.evalInt(f)];
+			return (FloatNode) f -> ((float[]) vector.eval(f))[index.evalInt(f)];
+		}
+		if(isInt) {
+			return (IntNode) f -> {
+				int[] v = (int[]) vector.eval(f);
+				int i = index.evalInt(f);
+				Values.checkIndex(elementSelect, i, dimension);
+				return v[i];
+			};
+		}
+		return (FloatNode) f -> {
+			float[] v = (float[]) vector.eval(f);
+			int i = index.evalInt(f);
+			Values.checkIndex(elementSelect, i, dimension);
+			return v[i];
+		};
+	}
+	
+	@Override
+	public Object visitRecordElementSelect(RecordElementSelect recordElementSelect, Void __) {
+		RecordType type = (RecordType) recordElementSelect.recordExpression.getType();
+		int index = Values.elementIndex(type.typeDeclaration, recordElementSelect.elementName);
+		RefNode record = refNode(recordElementSelect.recordExpression);
+		return unboxed(recordElementSelect.getType(), f -> ((Object[]) record.eval(f))[index]);
+	}
+	
+	@Override
+	public Object visitSubMatrix(SubMatrix subMatrix, Void __) {
+		MatrixType type = (MatrixType) subMatrix.structExpression.getType();
+		NumericType elementType = type.elementType;
+		int rows = type.rows, cols = type.cols;
+		int rowStart = subMatrix.getRowStartOffset(), rowEnd = subMatrix.getRowEndOffset();
+		int colStart = subMatrix.getColStartOffset(), colEnd = subMatrix.getColEndOffset();
+		int resultRows = rowEnd - rowStart + 1, resultCols = colEnd - colStart + 1;
+		RefNode matrix = refNode(subMatrix.structExpression);
+		IntNode rowBase = intNode(subMatrix.rowBaseIndexExpression), colBase = intNode(subMatrix.colBaseIndexExpression);
+		return (RefNode) f -> {
+			Object m = matrix.eval(f);
+			int firstRow = rowBase.evalInt(f) + rowStart, firstCol = colBase.evalInt(f) + colStart;
+			Values.checkIndex(subMatrix, firstRow, rows);
+			Values.checkIndex(subMatrix, firstRow + resultRows - 1, rows);
+			Values.checkIndex(subMatrix, firstCol, cols);
+			Values.checkIndex(subMatrix, firstCol + resultCols - 1, cols);
+			Object result = Values.zero(elementType, resultRows * resultCols);
+			for(int row = 0; row < resultRows; row++)
+				System.arraycopy(m, (firstRow + row) * cols + firstCol, result, row * resultCols, resultCols);
+			return result;
+		};
+	}
+	
+	@Override
+	public Object visitSubVector(SubVector subVector, Void __) {
+		int dimension = ((VectorType) subVector.structExpression.getType()).dimension;
+		int start = subVector.getStartOffset(), length = subVector.getEndOffset() - start + 1;
+		RefNode vector = refNode(subVector.structExpression);
+		IntNode base = intNode(subVector.baseIndexExpression);
+		return (RefNode) f -> {
+			Object v = vector.eval(f);
+			int first = base.evalInt(f) + start;
+			Values.checkIndex(subVector, first, dimension);
+			Values.checkIndex(subVector, first + length - 1, dimension);
+			return Values.slice(v, first, length);
+		};
+	}
+	
+	@Override
+	public Object visitStructureInit(StructureInit structureInit, Void __) {
+		List<Expression> elements = structureInit.elements;
+		StructType type = (StructType) structureInit.getType();
+		if(type instanceof VectorType) {
+			if(type.elementType instanceof IntType) {
+				IntNode[] values = elements.stream().map(this::intNode).toArray(IntNode[]::new);
+				return (RefNode) f -> {
+					int[] vector = new int[values.length];
+					for(int i = 0; i < vector.length; i++) vector[i] = values[i].evalInt(f);
+					return vector;
+				};
+			}
+			FloatNode[] values = elements.stream().map(this::floatNode).toArray(FloatNode[]::new);
+			return (RefNode) f -> {
+				float[] vector = new float[values.length];
+				for(int i = 0; i < vector.length; i++) vector[i] = values[i].evalFloat(f);
+				return vector;
+			};
+		}
+		NumericType elementType = type.elementType;
+		int cols = ((MatrixType) type).cols;
+		RefNode[] rows = elements.stream().map(this::refNode).toArray(RefNode[]::new);
+		return (RefNode) f -> {
+			Object matrix = Values.zero(elementType, rows.length * cols);
+			for(int row = 0; row < rows.length; row++)
+				System.arraycopy(rows[row].eval(f), 0, matrix, row * cols, cols);
+			return matrix;
+		};
+	}
+	
+	@Override
+	public Object visitRecordInit(RecordInit recordInit, Void __) {
+		RefNode[] values = recordInit.elements.stream().map(this::valueNode).toArray(RefNode[]::new);
+		return (RefNode) f -> {
+			Object[] record = new Object[values.length];
+			for(int i = 0; i < record.length; i++) record[i] = values[i].eval(f);
+			return record;
+		};
+	}
+	
+	@Override
+	public Object visitBoolValue(BoolValue boolValue, Void __) {
+		boolean value = boolValue.value;
+		return (BoolNode) f -> value;
+	}
+	
+	@Override
+	public Object visitIntValue(IntValue intValue, Void __) {
+		int value = intValue.value;
+		return (IntNode) f -> value;
+	}
+	
+	@Override
+	public Object visitFloatValue(FloatValue floatValue, Void __) {
+		float value = floatValue.value;
+		return (FloatNode) f -> value;
+	}
+	
+	@Override
+	public Object visitStringValue(StringValue stringValue, Void __) {
+		String value = stringValue.value;
+		return (RefNode) f -> value;
+	}
+}
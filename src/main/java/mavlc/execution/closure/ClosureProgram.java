@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution.closure;
+
+import mavlc.errors.ExecutionError;
+import mavlc.execution.Executable;
+import mavlc.execution.RuntimeLibrary;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * A module compiled by the {@link ClosureCompiler}.
+ */
+final class ClosureProgram implements Executable {
+	
+	private final CompiledFunction main;
+	private final int scratchSlots;
+	
+	ClosureProgram(CompiledFunction main, int scratchSlots) {
+		this.main = main;
+		this.scratchSlots = scratchSlots;
+	}
+	
+	@Override
+	public long execute(InputStream in, OutputStream out, Path directory, int maxCycles) {
+		RuntimeLibrary library = new RuntimeLibrary(in, out, directory);
+		ExecutionContext context = new ExecutionContext(library, maxCycles > 0 ? maxCycles : Long.MAX_VALUE, scratchSlots);
+		try {
+			main.run(new Frame(main.frameSize, context));
+		} catch(StackOverflowError e) {
+			throw new ExecutionError("Stack overflow");
+		} finally {
+			library.flush();
+		}
+		return context.cycles;
+	}
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution.closure;
+
+import mavlc.execution.closure.Nodes.*;
+import mavlc.syntax.function.Function;
+
+/**
+ * A function compiled to closures. The body and result are filled in after all
+ * functions have been created, so calls can refer to functions compiled later.
+ */
+final class CompiledFunction {
+	
+	final Function function;
+	final int frameSize;
+	
+	/** The statements of the body, excluding the final return statement. */
+	StatementNode[] body;
+	
+	/** The node evaluating the return value, matching the return type, or null for void functions. */
+	IntNode intResult;
+	FloatNode floatResult;
+	BoolNode boolResult;
+	RefNode refResult;
+	
+	CompiledFunction(Function function, int frameSize) {
+		this.function = function;
+		this.frameSize = frameSize;
+	}
+	
+	/**
+	 * Creates a frame for a call, binds the arguments and executes the body.
+	 *
+	 * @return The frame of the call, in which the result node is evaluated.
+	 */
+	Frame invoke(Frame caller, ArgumentNode[] arguments) {
+		Frame frame = new Frame(frameSize, caller.context);
+		for(ArgumentNode argument : arguments)
+			argument.bind(caller, frame);
+		run(frame);
+		return frame;
+	}
+	
+	void run(Frame frame) {
+		for(StatementNode statement : body)
+			statement.execute(frame);
+	}
+}
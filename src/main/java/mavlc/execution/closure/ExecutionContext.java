@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution.closure;
+
+import mavlc.errors.ExecutionError;
+import mavlc.execution.RuntimeLibrary;
+import mavlc.syntax.statement.Statement;
+
+/**
+ * The state of a single execution, shared by all frames. Each chunk of a loop
+ * executed in parallel counts its cycles and keeps its scratch buffers in a
+ * context of its own, see {@link #fork()}.
+ */
+final class ExecutionContext {
+	
+	final RuntimeLibrary library;
+	final long cycleLimit;
+	long cycles;
+	
+	/** The buffers of the temporaries, allocated on first use, see {@link mavlc.execution.Temporaries}. */
+	private final Object[] scratch;
+	
+	ExecutionContext(RuntimeLibrary library, long cycleLimit, int scratchSlots) {
+		this.library = library;
+		this.cycleLimit = cycleLimit;
+		this.scratch = new Object[scratchSlots];
+	}
+	
+	/**
+	 * Counts the execution of a statement.
+	 *
+	 * @throws ExecutionError If the cycle limit is exceeded.
+	 */
+	void tick(Statement statement) {
+		if(++cycles > cycleLimit)
+			throw limitExceeded(statement);
+	}
+	
+	/**
+	 * @return A context for a chunk of a parallel loop, which starts counting at the current cycles.
+	 */
+	ExecutionContext fork() {
+		ExecutionContext context = new ExecutionContext(library, cycleLimit, scratch.length);
+		context.cycles = cycles;
+		return context;
+	}
+	
+	/**
+	 * @param slot The slot of a temporary, or -1 for a value that may escape.
+	 * @param length The number of elements of the value.
+	 * @return The buffer of the slot, or a new array for -1.
+	 */
+	int[] intBuffer(int slot, int length) {
+		if(slot < 0) return new int[length];
+		int[] buffer = (int[]) scratch[slot];
+		if(buffer == null) scratch[slot] = buffer = new int[length];
+		return buffer;
+	}
+	
+	/**
+	 * @param slot The slot of a temporary, or -1 for a value that may escape.
+	 * @param length The number of elements of the value.
+	 * @return The buffer of the slot, or a new array for -1.
+	 */
+	float[] floatBuffer(int slot, int length) {
+		if(slot < 0) return new float[length];
+		float[] buffer = (float[]) scratch[slot];
+		if(buffer == null) scratch[slot] = buffer = new float[length];
+		return buffer;
+	}
+	
+	/**
+	 * Adds the cycles counted by the chunks of a parallel loop.
+	 *
+	 * @param statement The loop, to which an exceeded limit is attributed.
+	 * @param chunkCycles The sum of the cycles counted by the forked contexts, minus their start value.
+	 * @throws ExecutionError If the cycle limit is exceeded.
+	 */
+	void join(Statement statement, long chunkCycles) {
+		cycles += chunkCycles;
+		if(cycles > cycleLimit)
+			throw limitExceeded(statement);
+	}
+	
+	private ExecutionError limitExceeded(Statement statement) {
+		return new ExecutionError(statement, "Exceeded the limit of " + cycleLimit + " cycles");
+	}
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution.closure;
+
+/**
+ * The frame of a function call. Every slot assigned by
+ * {@link mavlc.execution.FrameLayout} exists once per kind of value, and a
+ * declaration only ever uses the slot matching its type: int and bool values
+ * (stored as 0 and 1) in {@link #ints}, float values in {@link #floats} and
+ * all other values in {@link #refs}.
+ */
+final class Frame {
+	
+	final int[] ints;
+	final float[] floats;
+	final Object[] refs;
+	final ExecutionContext context;
+	
+	Frame(int size, ExecutionContext context) {
+		this.ints = new int[size];
+		this.floats = new float[size];
+		this.refs = new Object[size];
+		this.context = context;
+	}
+	
+	/**
+	 * Copies a frame for a chunk of a parallel loop, which must not assign to variables
+	 * declared outside of the loop, so the copies do not have to be merged.
+	 */
+	Frame(Frame frame, ExecutionContext context) {
+		this.ints = frame.ints.clone();
+		this.floats = frame.floats.clone();
+		this.refs = frame.refs.clone();
+		this.context = context;
+	}
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.execution.closure;
+
+/**
+ * The node types of a compiled function. Expressions of type int, float and bool
+ * evaluate to unboxed values, all other expressions to the representation
+ * described in {@link mavlc.execution.Values}.
+ */
+final class Nodes {
+	
+	private Nodes() { }
+	
+	@FunctionalInterface
+	interface IntNode {
+		int evalInt(Frame frame);
+	}
+	
+	@FunctionalInterface
+	interface FloatNode {
+		float evalFloat(Frame frame);
+	}
+	
+	@FunctionalInterface
+	interface BoolNode {
+		boolean evalBool(Frame frame);
+	}
+	
+	@FunctionalInterface
+	interface RefNode {
+		Object eval(Frame frame);
+	}
+	
+	@FunctionalInterface
+	interface StatementNode {
+		void execute(Frame frame);
+	}
+	
+	/**
+	 * Evaluates an argument in the frame of the caller and stores it in the
+	 * slot of the corresponding parameter in the frame of the callee.
+	 */
+	@FunctionalInterface
+	interface ArgumentNode {
+		void bind(Frame caller, Frame callee);
+	}
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.optimization;
+
+import mavlc.syntax.AstNode;
+import mavlc.syntax.expression.IdentifierReference;
+import mavlc.syntax.statement.*;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Collects the declarations assigned within a subtree, including the structures iterated by
+ * variable foreach loops and the loop variables of for loops.
+ */
+final class Assignments extends AstWalker {
+	
+	private final Set<Declaration> declarations = Collections.newSetFromMap(new IdentityHashMap<>());
+	
+	private Assignments() {
+	}
+	
+	static Set<Declaration> of(AstNode node) {
+		Assignments assignments = new Assignments();
+		assignments.walk(node);
+		return assignments.declarations;
+	}
+	
+	@Override
+	public Void visitLeftHandIdentifier(LeftHandIdentifier leftHandIdentifier, Void obj) {
+		declarations.add(leftHandIdentifier.getDeclaration());
+		return null;
+	}
+	
+	@Override
+	public Void visitForLoop(ForLoop forLoop, Void obj) {
+		declarations.add(forLoop.getInitVarDeclaration());
+		declarations.add(forLoop.getIncrVarDeclaration());
+		return super.visitForLoop(forLoop, obj);
+	}
+	
+	@Override
+	public Void visitForEachLoop(ForEachLoop forEachLoop, Void obj) {
+		if(forEachLoop.iteratorDeclaration.isVariable())
+			declarations.add(((IdentifierReference) forEachLoop.structExpression).getDeclaration());
+		return super.visitForEachLoop(forEachLoop, obj);
+	}
+}
@@ -0,0 +1,499 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.optimization;
+
+import mavlc.errors.InternalCompilerError;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.AstNodeBaseVisitor;
+import mavlc.syntax.SourceLocation;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.function.FormalParameter;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.module.Module;
+import mavlc.syntax.statement.*;
+import mavlc.syntax.type.*;
+import mavlc.type.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class of the optimization passes. A pass rewrites a decorated module into a new one and
+ * never modifies the nodes of its input, as these may still be referenced by an analysis cache.
+ * Unchanged subtrees are shared with the input, every node that has a changed child is rebuilt
+ * and decorated like the node it replaces. Functions are always rebuilt, so calls are redirected
+ * to the rewritten callee; declarations that are rebuilt are registered with
+ * {@link #declare(Declaration, Declaration)} so the references to them are redirected as well.
+ */
+public abstract class AstRewriter extends AstNodeBaseVisitor<AstNode, Void> {
+	
+	protected final Map<Function, Function> functions = new IdentityHashMap<>();
+	protected final Map<Declaration, Declaration> declarations = new IdentityHashMap<>();
+	
+	/**
+	 * @param module The decorated module.
+	 * @return The rewritten, decorated module.
+	 */
+	public Module rewrite(Module module) {
+		List<Function> rewritten = new ArrayList<>(module.functions.size());
+		for(Function function : module.functions) {
+			List<FormalParameter> parameters = new ArrayList<>(function.parameters.size());
+			for(FormalParameter parameter : function.parameters)
+				parameters.add((FormalParameter) parameter.accept(this, null));
+			Function copy = new Function(function.sourceLocation, function.name, function.returnTypeSpecifier, parameters, new ArrayList<>());
+			copy.setReturnType(function.getReturnType());
+			functions.put(function, copy);
+			rewritten.add(copy);
+		}
+		for(Function function : rewriteOrder(module))
+			rewriteBody(function, functions.get(function));
+		return new Module(module.sourceLocation, rewritten, new ArrayList<>(module.records));
+	}
+	
+	/**
+	 * @return The functions of the module in the order in which their bodies are rewritten.
+	 */
+	protected List<Function> rewriteOrder(Module module) {
+		return module.functions;
+	}
+	
+	/**
+	 * Rewrites the body of a function into the body of its (initially empty) copy.
+	 */
+	protected void rewriteBody(Function function, Function copy) {
+		for(Statement statement : function.body)
+			statement(statement, copy.body);
+	}
+	
+	/**
+	 * Rewrites a statement and appends the result to the given list. Passes that remove
+	 * statements or replace them with several ones override this method.
+	 */
+	protected void statement(Statement statement, List<Statement> out) {
+		out.add((Statement) statement.accept(this, null));
+	}
+	
+	/**
+	 * Rewrites a statement in a position that holds exactly one statement, such as a loop body.
+	 */
+	protected Statement single(Statement statement) {
+		List<Statement> out = new ArrayList<>(1);
+		statement(statement, out);
+		if(out.size() == 1) return out.get(0);
+		return new CompoundStatement(statement.sourceLocation, out);
+	}
+	
+	protected Expression expression(Expression expression) {
+		return (Expression) expression.accept(this, null);
+	}
+	
+	/**
+	 * Redirects the references of a declaration to its replacement.
+	 *
+	 * @return The replacement, decorated with the type of the original declaration.
+	 */
+	protected <T extends Declaration> T declare(Declaration original, T replacement) {
+		replacement.setType(original.getType());
+		declarations.put(original, replacement);
+		return replacement;
+	}
+	
+	protected Declaration declaration(Declaration declaration) {
+		return declarations.getOrDefault(declaration, declaration);
+	}
+	
+	protected static <T extends Expression> T typed(T expression, Expression original) {
+		expression.setType(original.getType());
+		return expression;
+	}
+	
+	/**
+	 * @return A decorated type specifier denoting the given type, for declarations introduced by a pass.
+	 */
+	protected static TypeSpecifier<?> typeSpecifier(Type type, SourceLocation location) {
+		TypeSpecifier<?> specifier;
+		if(type instanceof IntType) return new IntTypeSpecifier(location);
+		if(type instanceof FloatType) return new FloatTypeSpecifier(location);
+		if(type instanceof BoolType) return new BoolTypeSpecifier(location);
+		if(type instanceof StringType) return new StringTypeSpecifier(location);
+		if(type instanceof VectorType) {
+			VectorType vectorType = (VectorType) type;
+			specifier = new VectorTypeSpecifier(location, typeSpecifier(vectorType.elementType, location),
+					new IntValue(location, vectorType.dimension));
+		} else if(type instanceof MatrixType) {
+			MatrixType matrixType = (MatrixType) type;
+			specifier = new MatrixTypeSpecifier(location, typeSpecifier(matrixType.elementType, location),
+					new IntValue(location, matrixType.rows), new IntValue(location, matrixType.cols));
+		} else if(type instanceof RecordType) {
+			specifier = new RecordTypeSpecifier(location, ((RecordType) type).name);
+		} else {
+			throw new InternalCompilerError("Cannot specify type " + type);
+		}
+		specifier.setType(type);
+		return specifier;
+	}
+	
+	@Override
+	protected AstNode defaultOperation(AstNode node, Void obj) {
+		throw new InternalCompilerError("Cannot rewrite " + node.getClass().getSimpleName());
+	}
+	
+	/* Declarations */
+	
+	@Override
+	public AstNode visitDeclaration(Declaration declaration, Void obj) {
+		return declaration;
+	}
+	
+	@Override
+	public AstNode visitValueDefinition(ValueDefinition valueDefinition, Void obj) {
+		Expression value = expression(valueDefinition.value);
+		if(value == valueDefinition.value) return valueDefinition;
+		return declare(valueDefinition, new ValueDefinition(valueDefinition.sourceLocation, valueDefinition.typeSpecifier, valueDefinition.name, value));
+	}
+	
+	/* Statements */
+	
+	@Override
+	public AstNode visitVariableAssignment(VariableAssignment variableAssignment, Void obj) {
+		LeftHandIdentifier identifier = (LeftHandIdentifier) variableAssignment.identifier.accept(this, null);
+		Expression value = expression(variableAssignment.value);
+		if(identifier == variableAssignment.identifier && value == variableAssignment.value) return variableAssignment;
+		return new VariableAssignment(variableAssignment.sourceLocation, identifier, value);
+	}
+	
+	@Override
+	public AstNode visitLeftHandIdentifier(LeftHandIdentifier leftHandIdentifier, Void obj) {
+		Declaration declaration = declaration(leftHandIdentifier.getDeclaration());
+		if(declaration == leftHandIdentifier.getDeclaration()) return leftHandIdentifier;
+		LeftHandIdentifier copy = new LeftHandIdentifier(leftHandIdentifier.sourceLocation, declaration.name);
+		copy.setDeclaration(declaration);
+		return copy;
+	}
+	
+	@Override
+	public AstNode visitMatrixLhsIdentifier(MatrixLhsIdentifier matrixLhsIdentifier, Void obj) {
+		Declaration declaration = declaration(matrixLhsIdentifier.getDeclaration());
+		Expression row = expression(matrixLhsIdentifier.rowIndexExpression);
+		Expression col = expression(matrixLhsIdentifier.colIndexExpression);
+		if(declaration == matrixLhsIdentifier.getDeclaration() && row == matrixLhsIdentifier.rowIndexExpression && col == matrixLhsIdentifier.colIndexExpression)
+			return matrixLhsIdentifier;
+		MatrixLhsIdentifier copy = new MatrixLhsIdentifier(matrixLhsIdentifier.sourceLocation, declaration.name, row, col);
+		copy.setDeclaration(declaration);
+		copy.setInBounds(matrixLhsIdentifier.isInBounds());
+		return copy;
+	}
+	
+	@Override
+	public AstNode visitVectorLhsIdentifier(VectorLhsIdentifier vectorLhsIdentifier, Void obj) {
+		Declaration declaration = declaration(vectorLhsIdentifier.getDeclaration());
+		Expression index = expression(vectorLhsIdentifier.indexExpression);
+		if(declaration == vectorLhsIdentifier.getDeclaration() && index == vectorLhsIdentifier.indexExpression)
+			return vectorLhsIdentifier;
+		VectorLhsIdentifier copy = new VectorLhsIdentifier(vectorLhsIdentifier.sourceLocation, declaration.name, index);
+		copy.setDeclaration(declaration);
+		copy.setInBounds(vectorLhsIdentifier.isInBounds());
+		return copy;
+	}
+	
+	@Override
+	public AstNode visitRecordLhsIdentifier(RecordLhsIdentifier recordLhsIdentifier, Void obj) {
+		Declaration declaration = declaration(recordLhsIdentifier.getDeclaration());
+		if(declaration == recordLhsIdentifier.getDeclaration()) return recordLhsIdentifier;
+		RecordLhsIdentifier copy = new RecordLhsIdentifier(recordLhsIdentifier.sourceLocation, declaration.name, recordLhsIdentifier.elementName);
+		copy.setDeclaration(declaration);
+		return copy;
+	}
+	
+	@Override
+	public AstNode visitForLoop(ForLoop forLoop, Void obj) {
+		Expression init = expression(forLoop.initExpression);
+		Expression condition = expression(forLoop.loopCondition);
+		Expression incr = expression(forLoop.incrExpression);
+		return rebuild(forLoop, init, condition, incr, single(forLoop.body));
+	}
+	
+	/**
+	 * @return The given loop if no part changed, otherwise a copy with the given parts.
+	 */
+	protected ForLoop rebuild(ForLoop forLoop, Expression init, Expression condition, Expression incr, Statement body) {
+		Declaration initVar = declaration(forLoop.getInitVarDeclaration());
+		Declaration incrVar = declaration(forLoop.getIncrVarDeclaration());
+		if(initVar == forLoop.getInitVarDeclaration() && incrVar == forLoop.getIncrVarDeclaration() && init == forLoop.initExpression
+				&& condition == forLoop.loopCondition && incr == forLoop.incrExpression && body == forLoop.body)
+			return forLoop;
+		ForLoop copy = new ForLoop(forLoop.sourceLocation, initVar.name, init, condition, incrVar.name, incr, body);
+		copy.setInitVarDeclaration(initVar);
+		copy.setIncrVarDeclaration(incrVar);
+		return copy;
+	}
+	
+	@Override
+	public AstNode visitForEachLoop(ForEachLoop forEachLoop, Void obj) {
+		IteratorDeclaration iterator = (IteratorDeclaration) forEachLoop.iteratorDeclaration.accept(this, null);
+		Expression struct = expression(forEachLoop.structExpression);
+		Statement body = single(forEachLoop.body);
+		if(iterator == forEachLoop.iteratorDeclaration && struct == forEachLoop.structExpression && body == forEachLoop.body)
+			return forEachLoop;
+		return new ForEachLoop(forEachLoop.sourceLocation, iterator, struct, body);
+	}
+	
+	@Override
+	public AstNode visitIfStatement(IfStatement ifStatement, Void obj) {
+		Expression condition = expression(ifStatement.condition);
+		Statement thenStatement = single(ifStatement.thenStatement);
+		Statement elseStatement = ifStatement.hasElseStatement() ? single(ifStatement.elseStatement) : null;
+		if(condition == ifStatement.condition && thenStatement == ifStatement.thenStatement && elseStatement == ifStatement.elseStatement)
+			return ifStatement;
+		return new IfStatement(ifStatement.sourceLocation, condition, thenStatement, elseStatement);
+	}
+	
+	@Override
+	public AstNode visitCallStatement(CallStatement callStatement, Void obj) {
+		CallExpression call = (CallExpression) expression(callStatement.callExpression);
+		if(call == callStatement.callExpression) return callStatement;
+		return new CallStatement(callStatement.sourceLocation, call);
+	}
+	
+	@Override
+	public AstNode visitReturnStatement(ReturnStatement returnStatement, Void obj) {
+		Expression value = expression(returnStatement.returnValue);
+		if(value == returnStatement.returnValue) return returnStatement;
+		return new ReturnStatement(returnStatement.sourceLocation, value);
+	}
+	
+	@Override
+	public AstNode visitCompoundStatement(CompoundStatement compoundStatement, Void obj) {
+		List<Statement> statements = new ArrayList<>(compoundStatement.statements.size());
+		for(Statement statement : compoundStatement.statements)
+			statement(statement, statements);
+		if(sameElements(statements, compoundStatement.statements))
+			return compoundStatement;
+		return new CompoundStatement(compoundStatement.sourceLocation, statements);
+	}
+	
+	@Override
+	public AstNode visitSwitchStatement(SwitchStatement switchStatement, Void obj) {
+		Expression condition = expression(switchStatement.condition);
+		List<Case> cases = new ArrayList<>(switchStatement.cases.size());
+		for(Case aCase : switchStatement.cases)
+			cases.add((Case) aCase.accept(this, null));
+		List<Default> defaults = new ArrayList<>(switchStatement.defaults.size());
+		for(Default aDefault : switchStatement.defaults)
+			defaults.add((Default) aDefault.accept(this, null));
+		if(condition == switchStatement.condition && sameElements(cases, switchStatement.cases) && sameElements(defaults, switchStatement.defaults))
+			return switchStatement;
+		return new SwitchStatement(switchStatement.sourceLocation, condition, cases, defaults);
+	}
+	
+	@Override
+	public AstNode visitCase(Case aCase, Void obj) {
+		Statement body = single(aCase.body);
+		if(body == aCase.body) return aCase;
+		Case copy = new Case(aCase.sourceLocation, aCase.conditionExpression, body);
+		copy.setCondition(aCase.getCondition());
+		return copy;
+	}
+	
+	@Override
+	public AstNode visitDefault(Default defCase, Void obj) {
+		Statement body = single(defCase.body);
+		if(body == defCase.body) return defCase;
+		return new Default(defCase.sourceLocation, body);
+	}
+	
+	/* Expressions */
+	
+	@Override
+	public AstNode visitIdentifierReference(IdentifierReference identifierReference, Void obj) {
+		Declaration declaration = declaration(identifierReference.getDeclaration());
+		if(declaration == identifierReference.getDeclaration()) return identifierReference;
+		IdentifierReference copy = typed(new IdentifierReference(identifierReference.sourceLocation, declaration.name), identifierReference);
+		copy.setDeclaration(declaration);
+		return copy;
+	}
+	
+	@Override
+	public AstNode visitSelectExpression(SelectExpression expr, Void obj) {
+		return rebuild(expr, expression(expr.condition), expression(expr.trueCase), expression(expr.falseCase));
+	}
+	
+	/**
+	 * @return The given expression if no operand changed, otherwise a copy with the given operands.
+	 */
+	protected static Expression rebuild(SelectExpression expr, Expression condition, Expression trueCase, Expression falseCase) {
+		if(condition == expr.condition && trueCase == expr.trueCase && falseCase == expr.falseCase) return expr;
+		return typed(new SelectExpression(expr.sourceLocation, condition, trueCase, falseCase), expr);
+	}
+	
+	@Override
+	public AstNode visitBinaryExpression(BinaryExpression binaryExpression, Void obj) {
+		return rebuild(binaryExpression, expression(binaryExpression.leftOperand), expression(binaryExpression.rightOperand));
+	}
+	
+	/**
+	 * @return The given expression if both operands are unchanged, otherwise a copy with the given operands.
+	 */
+	protected static Expression rebuild(BinaryExpression expression, Expression left, Expression right) {
+		if(left == expression.leftOperand && right == expression.rightOperand) return expression;
+		BinaryExpression copy;
+		if(expression instanceof Addition) copy = new Addition(expression.sourceLocation, left, right);
+		else if(expression instanceof Subtraction) copy = new Subtraction(expression.sourceLocation, left, right);
+		else if(expression instanceof Multiplication) copy = new Multiplication(expression.sourceLocation, left, right);
+		else if(expression instanceof Division) copy = new Division(expression.sourceLocation, left, right);
+		else if(expression instanceof Exponentiation) copy = new Exponentiation(expression.sourceLocation, left, right);
+		else if(expression instanceof MatrixMultiplication) copy = new MatrixMultiplication(expression.sourceLocation, left, right);
+		else if(expression instanceof DotProduct) copy = new DotProduct(expression.sourceLocation, left, right);
+		else if(expression instanceof Compare) copy = new Compare(expression.sourceLocation, left, right, ((Compare) expression).comparator);
+		else if(expression instanceof And) copy = new And(expression.sourceLocation, left, right);
+		else if(expression instanceof Or) copy = new Or(expression.sourceLocation, left, right);
+		else throw new InternalCompilerError("Cannot rebuild " + expression.getClass().getSimpleName());
+		return typed(copy, expression);
+	}
+	
+	@Override
+	public AstNode visitUnaryExpression(UnaryExpression unaryExpression, Void obj) {
+		return rebuild(unaryExpression, expression(unaryExpression.operand));
+	}
+	
+	/**
+	 * @return The given expression if the operand is unchanged, otherwise a copy with the given operand.
+	 */
+	protected static Expression rebuild(UnaryExpression expression, Expression operand) {
+		if(operand == expression.operand) return expression;
+		UnaryExpression copy;
+		if(expression instanceof UnaryMinus) copy = new UnaryMinus(expression.sourceLocation, operand);
+		else if(expression instanceof Not) copy = new Not(expression.sourceLocation, operand);
+		else if(expression instanceof MatrixTranspose) copy = new MatrixTranspose(expression.sourceLocation, operand);
+		else if(expression instanceof MatrixRows) copy = new MatrixRows(expression.sourceLocation, operand);
+		else if(expression instanceof MatrixCols) copy = new MatrixCols(expression.sourceLocation, operand);
+		else if(expression instanceof VectorDimension) copy = new VectorDimension(expression.sourceLocation, operand);
+		else throw new InternalCompilerError("Cannot rebuild " + expression.getClass().getSimpleName());
+		return typed(copy, expression);
+	}
+	
+	@Override
+	public AstNode visitBoolValue(BoolValue boolValue, Void obj) {
+		return boolValue;
+	}
+	
+	@Override
+	public AstNode visitIntValue(IntValue intValue, Void obj) {
+		return intValue;
+	}
+	
+	@Override
+	public AstNode visitFloatValue(FloatValue floatValue, Void obj) {
+		return floatValue;
+	}
+	
+	@Override
+	public AstNode visitStringValue(StringValue stringValue, Void obj) {
+		return stringValue;
+	}
+	
+	@Override
+	public AstNode visitStructureInit(StructureInit structureInit, Void obj) {
+		List<Expression> elements = expressions(structureInit.elements);
+		if(elements == structureInit.elements) return structureInit;
+		return typed(new StructureInit(structureInit.sourceLocation, elements), structureInit);
+	}
+	
+	@Override
+	public AstNode visitRecordInit(RecordInit recordInit, Void obj) {
+		List<Expression> elements = expressions(recordInit.elements);
+		if(elements == recordInit.elements) return recordInit;
+		return typed(new RecordInit(recordInit.sourceLocation, recordInit.typeName, elements), recordInit);
+	}
+	
+	@Override
+	public AstNode visitCallExpression(CallExpression callExpression, Void obj) {
+		return rebuild(callExpression, expressions(callExpression.actualParameters));
+	}
+	
+	/**
+	 * @return The given call if neither the arguments nor the callee changed, otherwise a copy calling the rewritten callee.
+	 */
+	protected Expression rebuild(CallExpression callExpression, List<Expression> arguments) {
+		Function callee = callExpression.getCalleeDefinition();
+		Function target = functions.getOrDefault(callee, callee);
+		if(target == callee && arguments == callExpression.actualParameters) return callExpression;
+		CallExpression copy = typed(new CallExpression(callExpression.sourceLocation, callExpression.functionName, arguments), callExpression);
+		copy.setCalleeDefinition(target);
+		return copy;
+	}
+	
+	@Override
+	public AstNode visitElementSelect(ElementSelect elementSelect, Void obj) {
+		Expression struct = expression(elementSelect.structExpression);
+		Expression index = expression(elementSelect.indexExpression);
+		if(struct == elementSelect.structExpression && index == elementSelect.indexExpression) return elementSelect;
+		// the rewritten parts evaluate to the same values, so a proven index stays in bounds
+		ElementSelect copy = typed(new ElementSelect(elementSelect.sourceLocation, struct, index), elementSelect);
+		copy.setInBounds(elementSelect.isInBounds());
+		return copy;
+	}
+	
+	@Override
+	public AstNode visitRecordElementSelect(RecordElementSelect recordElementSelect, Void obj) {
+		Expression record = expression(recordElementSelect.recordExpression);
+		if(record == recordElementSelect.recordExpression) return recordElementSelect;
+		return typed(new RecordElementSelect(recordElementSelect.sourceLocation, record, recordElementSelect.elementName), recordElementSelect);
+	}
+	
+	@Override
+	public AstNode visitSubMatrix(SubMatrix subSelect, Void obj) {
+		Expression struct = expression(subSelect.structExpression);
+		Expression rowBase = expression(subSelect.rowBaseIndexExpression);
+		Expression colBase = expression(subSelect.colBaseIndexExpression);
+		if(struct == subSelect.structExpression && rowBase == subSelect.rowBaseIndexExpression && colBase == subSelect.colBaseIndexExpression)
+			return subSelect;
+		SubMatrix copy = typed(new SubMatrix(subSelect.sourceLocation, struct,
+				rowBase, subSelect.rowStartOffsetExpression, subSelect.rowEndOffsetExpression,
+				colBase, subSelect.colStartOffsetExpression, subSelect.colEndOffsetExpression), subSelect);
+		copy.setRowStartOffset(subSelect.getRowStartOffset());
+		copy.setRowEndOffset(subSelect.getRowEndOffset());
+		copy.setColStartOffset(subSelect.getColStartOffset());
+		copy.setColEndOffset(subSelect.getColEndOffset());
+		return copy;
+	}
+	
+	@Override
+	public AstNode visitSubVector(SubVector subVector, Void obj) {
+		Expression struct = expression(subVector.structExpression);
+		Expression base = expression(subVector.baseIndexExpression);
+		if(struct == subVector.structExpression && base == subVector.baseIndexExpression) return subVector;
+		SubVector copy = typed(new SubVector(subVector.sourceLocation, struct, base, subVector.startOffsetExpression, subVector.endOffsetExpression), subVector);
+		copy.setStartOffset(subVector.getStartOffset());
+		copy.setEndOffset(subVector.getEndOffset());
+		return copy;
+	}
+	
+	/**
+	 * @return The given list if no element changed, otherwise a new list of the rewritten elements.
+	 */
+	protected List<Expression> expressions(List<Expression> expressions) {
+		List<Expression> rewritten = new ArrayList<>(expressions.size());
+		for(Expression expression : expressions)
+			rewritten.add(expression(expression));
+		return sameElements(rewritten, expressions) ? expressions : rewritten;
+	}
+	
+	protected static boolean sameElements(List<?> left, List<?> right) {
+		if(left.size() != right.size()) return false;
+		for(int i = 0; i < left.size(); i++)
+			if(left.get(i) != right.get(i)) return false;
+		return true;
+	}
+}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.optimization;
+
+import mavlc.syntax.AstNode;
+import mavlc.syntax.AstNodeBaseVisitor;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.module.Module;
+import mavlc.syntax.statement.*;
+
+import java.util.List;
+
+/**
+ * Visits all statements and expressions of a subtree, type specifiers are not visited. Subclasses
+ * override the visit methods of the nodes they are interested in and call the super method to
+ * visit the children.
+ */
+public abstract class AstWalker extends AstNodeBaseVisitor<Void, Void> {
+	
+	protected void walk(AstNode node) {
+		if(node != null) node.accept(this, null);
+	}
+	
+	protected void walkAll(List<? extends AstNode> nodes) {
+		for(AstNode node : nodes) walk(node);
+	}
+	
+	@Override
+	protected Void defaultOperation(AstNode node, Void obj) {
+		return null;
+	}
+	
+	@Override
+	public Void visitModule(Module module, Void obj) {
+		walkAll(module.functions);
+		return null;
+	}
+	
+	@Override
+	public Void visitFunction(Function functionNode, Void obj) {
+		walkAll(functionNode.parameters);
+		walkAll(functionNode.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitValueDefinition(ValueDefinition valueDefinition, Void obj) {
+		walk(valueDefinition.value);
+		return visitDeclaration(valueDefinition, obj);
+	}
+	
+	@Override
+	public Void visitVariableAssignment(VariableAssignment variableAssignment, Void obj) {
+		walk(variableAssignment.identifier);
+		walk(variableAssignment.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixLhsIdentifier(MatrixLhsIdentifier matrixLhsIdentifier, Void obj) {
+		walk(matrixLhsIdentifier.rowIndexExpression);
+		walk(matrixLhsIdentifier.colIndexExpression);
+		return visitLeftHandIdentifier(matrixLhsIdentifier, obj);
+	}
+	
+	@Override
+	public Void visitVectorLhsIdentifier(VectorLhsIdentifier vectorLhsIdentifier, Void obj) {
+		walk(vectorLhsIdentifier.indexExpression);
+		return visitLeftHandIdentifier(vectorLhsIdentifier, obj);
+	}
+	
+	@Override
+	public Void visitForLoop(ForLoop forLoop, Void obj) {
+		walk(forLoop.initExpression);
+		walk(forLoop.loopCondition);
+		walk(forLoop.body);
+		walk(forLoop.incrExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitForEachLoop(ForEachLoop forEachLoop, Void obj) {
+		walk(forEachLoop.structExpression);
+		walk(forEachLoop.iteratorDeclaration);
+		walk(forEachLoop.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitIfStatement(IfStatement ifStatement, Void obj) {
+		walk(ifStatement.condition);
+		walk(ifStatement.thenStatement);
+		walk(ifStatement.elseStatement);
+		return null;
+	}
+	
+	@Override
+	public Void visitCallStatement(CallStatement callStatement, Void obj) {
+		walk(callStatement.callExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitReturnStatement(ReturnStatement returnStatement, Void obj) {
+		walk(returnStatement.returnValue);
+		return null;
+	}
+	
+	@Override
+	public Void visitCompoundStatement(CompoundStatement compoundStatement, Void obj) {
+		walkAll(compoundStatement.statements);
+		return null;
+	}
+	
+	@Override
+	public Void visitSwitchStatement(SwitchStatement switchCaseStatement, Void obj) {
+		walk(switchCaseStatement.condition);
+		walkAll(switchCaseStatement.cases);
+		walkAll(switchCaseStatement.defaults);
+		return null;
+	}
+	
+	@Override
+	public Void visitSwitchSection(SwitchSection switchSection, Void obj) {
+		walk(switchSection.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitSelectExpression(SelectExpression expr, Void obj) {
+		walk(expr.condition);
+		walk(expr.trueCase);
+		walk(expr.falseCase);
+		return null;
+	}
+	
+	@Override
+	public Void visitBinaryExpression(BinaryExpression binaryExpression, Void obj) {
+		walk(binaryExpression.leftOperand);
+		walk(binaryExpression.rightOperand);
+		return null;
+	}
+	
+	@Override
+	public Void visitUnaryExpression(UnaryExpression unaryExpression, Void obj) {
+		walk(unaryExpression.operand);
+		return null;
+	}
+	
+	@Override
+	public Void visitStructureInit(StructureInit structureInit, Void obj) {
+		walkAll(structureInit.elements);
+		return null;
+	}
+	
+	@Override
+	public Void visitCallExpression(CallExpression callExpression, Void obj) {
+		walkAll(callExpression.actualParameters);
+		return null;
+	}
+	
+	@Override
+	public Void visitElementSelect(ElementSelect elementSelect, Void obj) {
+		walk(elementSelect.structExpression);
+		walk(elementSelect.indexExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordElementSelect(RecordElementSelect recordElementSelect, Void obj) {
+		walk(recordElementSelect.recordExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitSubMatrix(SubMatrix subSelect, Void obj) {
+		walk(subSelect.structExpression);
+		walk(subSelect.rowBaseIndexExpression);
+		walk(subSelect.colBaseIndexExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitSubVector(SubVector subVector, Void obj) {
+		walk(subVector.structExpression);
+		walk(subVector.baseIndexExpression);
+		return null;
+	}
+}
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.optimization;
+
+import mavlc.syntax.AstNode;
+import mavlc.syntax.SourceLocation;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.statement.*;
+import mavlc.type.IntType;
+import mavlc.type.MatrixType;
+import mavlc.type.Type;
+import mavlc.type.VectorType;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Proves index accesses to lie within the dimensions of the accessed matrix or vector and marks
+ * them, so the execution engines skip their runtime checks.
+ * <p>
+ * The range of an integer expression is derived from the ranges of its operands, which are known
+ * for literals, value definitions and the variables of for loops. The variable of a for loop has
+ * a range within the body if it is only assigned by the increment, which adds a constant, and the
+ * loop condition compares it to a bound with a known range: the variable then lies between the
+ * initial value and the bound, provided that advancing it past the bound cannot overflow.
+ * <p>
+ * An access whose index range lies completely outside of the dimension fails whenever it is
+ * executed. It keeps its runtime check, as it may never be reached, and is listed in the report and the warnings.
+ */
+public class BoundsCheckElimination extends AstRewriter {
+	
+	private final List<String> report;
+	private final List<String> warnings = new ArrayList<>();
+	/** The ranges of the loop variables and integer values in scope, by their original declaration. */
+	private final Map<Declaration, Range> ranges = new IdentityHashMap<>();
+	private int checks, removedChecks, totalRemovedChecks;
+	
+	/**
+	 * @param report Receives a line for every function with removed index checks and every access that is always out of bounds.
+	 */
+	public BoundsCheckElimination(List<String> report) {
+		this.report = report;
+	}
+	
+	/**
+	 * @return The number of runtime index checks removed from the module.
+	 */
+	public int getRemovedChecks() {
+		return totalRemovedChecks;
+	}
+	
+	/**
+	 * @return One line per access that is always out of bounds, prefixed with its source location.
+	 */
+	public List<String> getWarnings() {
+		return warnings;
+	}
+	
+	@Override
+	protected void rewriteBody(Function function, Function copy) {
+		checks = removedChecks = 0;
+		super.rewriteBody(function, copy);
+		if(removedChecks > 0) {
+			SourceLocation location = function.sourceLocation;
+			report.add(location.line + ":" + location.column + ": removed " + removedChecks + " of " + checks + " index checks in " + function.name);
+		}
+		totalRemovedChecks += removedChecks;
+	}
+	
+	@Override
+	protected void statement(Statement statement, List<Statement> out) {
+		super.statement(statement, out);
+		if(statement instanceof ValueDefinition && ((ValueDefinition) statement).getType() instanceof IntType) {
+			Range range = range(((ValueDefinition) statement).value);
+			if(range != null) ranges.put((ValueDefinition) statement, range);
+		}
+	}
+	
+	@Override
+	public AstNode visitForLoop(ForLoop forLoop, Void obj) {
+		Expression init = expression(forLoop.initExpression);
+		Expression condition = expression(forLoop.loopCondition);
+		Expression incr = expression(forLoop.incrExpression);
+		// the range holds within the body only, the condition and the increment see the variable beyond the bound
+		Declaration variable = forLoop.getInitVarDeclaration();
+		Range range = variableRange(forLoop);
+		if(range != null) ranges.put(variable, range);
+		Statement body = single(forLoop.body);
+		ranges.remove(variable);
+		return rebuild(forLoop, init, condition, incr, body);
+	}
+	
+	@Override
+	public AstNode visitElementSelect(ElementSelect elementSelect, Void obj) {
+		ElementSelect rewritten = (ElementSelect) super.visitElementSelect(elementSelect, obj);
+		Type type = elementSelect.structExpression.getType();
+		int size = type instanceof VectorType ? ((VectorType) type).dimension : ((MatrixType) type).rows;
+		if(!inBounds(elementSelect, elementSelect.indexExpression, size)) return rewritten;
+		removedChecks++;
+		if(rewritten == elementSelect)
+			rewritten = typed(new ElementSelect(elementSelect.sourceLocation, elementSelect.structExpression, elementSelect.indexExpression), elementSelect);
+		rewritten.setInBounds(true);
+		return rewritten;
+	}
+	
+	@Override
+	public AstNode visitVectorLhsIdentifier(VectorLhsIdentifier vectorLhsIdentifier, Void obj) {
+		VectorLhsIdentifier rewritten = (VectorLhsIdentifier) super.visitVectorLhsIdentifier(vectorLhsIdentifier, obj);
+		int size = ((VectorType) vectorLhsIdentifier.getDeclaration().getType()).dimension;
+		if(!inBounds(vectorLhsIdentifier, vectorLhsIdentifier.indexExpression, size)) return rewritten;
+		removedChecks++;
+		if(rewritten == vectorLhsIdentifier) {
+			rewritten = new VectorLhsIdentifier(vectorLhsIdentifier.sourceLocation, vectorLhsIdentifier.name, vectorLhsIdentifier.indexExpression);
+			rewritten.setDeclaration(vectorLhsIdentifier.getDeclaration());
+		}
+		rewritten.setInBounds(true);
+		return rewritten;
+	}
+	
+	@Override
+	public AstNode visitMatrixLhsIdentifier(MatrixLhsIdentifier matrixLhsIdentifier, Void obj) {
+		MatrixLhsIdentifier rewritten = (MatrixLhsIdentifier) super.visitMatrixLhsIdentifier(matrixLhsIdentifier, obj);
+		MatrixType type = (MatrixType) matrixLhsIdentifier.getDeclaration().getType();
+		// both indices are checked for errors, but the checks are only skipped together
+		boolean rowInBounds = inBounds(matrixLhsIdentifier, matrixLhsIdentifier.rowIndexExpression, type.rows);
+		boolean colInBounds = inBounds(matrixLhsIdentifier, matrixLhsIdentifier.colIndexExpression, type.cols);
+		if(!rowInBounds || !colInBounds) return rewritten;
+		removedChecks += 2;
+		if(rewritten == matrixLhsIdentifier) {
+			rewritten = new MatrixLhsIdentifier(matrixLhsIdentifier.sourceLocation, matrixLhsIdentifier.name,
+					matrixLhsIdentifier.rowIndexExpression, matrixLhsIdentifier.colIndexExpression);
+			rewritten.setDeclaration(matrixLhsIdentifier.getDeclaration());
+		}
+		rewritten.setInBounds(true);
+		return rewritten;
+	}
+	
+	/**
+	 * @param access The node checking the index at runtime.
+	 * @param index The original index expression.
+	 * @return Whether the index always lies within the given dimension.
+	 */
+	private boolean inBounds(AstNode access, Expression index, int size) {
+		checks++;
+		Range range = range(index);
+		if(range == null) return false;
+		if(range.high < 0 || range.low >= size) {
+			SourceLocation location = access.sourceLocation;
+			String warning = location.line + ":" + location.column + ": index " + (range.low == range.high ? String.valueOf(range.low) : "range [" + range.low + ", " + range.high + "]")
+					+ " is always out of bounds for dimension " + size;
+			report.add(warning);
+			warnings.add(warning);
+		}
+		return range.low >= 0 && range.high < size;
+	}
+	
+	/**
+	 * @return The range of the loop variable within the body, or null if it is unknown.
+	 */
+	private Range variableRange(ForLoop forLoop) {
+		Declaration variable = forLoop.getInitVarDeclaration();
+		Integer step = LoopOptimization.step(forLoop.incrExpression, variable);
+		if(variable != forLoop.getIncrVarDeclaration() || step == null || step == 0 || Assignments.of(forLoop.body).contains(variable))
+			return null;
+		Range init = range(forLoop.initExpression);
+		// a bound with a known range only references literals, values and enclosing loop variables, so it is invariant
+		Range bound = bound(forLoop.loopCondition, variable, step > 0);
+		if(init == null || bound == null) return null;
+		if(step > 0) {
+			if(bound.high + step > Integer.MAX_VALUE) return null;
+			return Range.of(init.low, bound.high);
+		}
+		if(bound.low + step < Integer.MIN_VALUE) return null;
+		return Range.of(bound.low, init.high);
+	}
+	
+	/**
+	 * @param upper Whether the variable is counted upwards and has to be bounded from above.
+	 * @return The range of values of the variable for which the condition holds, or null if it is unknown.
+	 */
+	private Range bound(Expression condition, Declaration variable, boolean upper) {
+		if(condition instanceof And) {
+			Range left = bound(((And) condition).leftOperand, variable, upper);
+			Range right = bound(((And) condition).rightOperand, variable, upper);
+			if(left == null || right == null) return left != null ? left : right;
+			return Range.of(Math.max(left.low, right.low), Math.min(left.high, right.high));
+		}
+		if(!(condition instanceof Compare)) return null;
+		Compare compare = (Compare) condition;
+		Compare.Comparison comparator = compare.comparator;
+		Range range;
+		if(isReference(compare.leftOperand, variable)) {
+			range = range(compare.rightOperand);
+		} else if(isReference(compare.rightOperand, variable)) {
+			range = range(compare.leftOperand);
+			comparator = mirror(comparator);
+		} else {
+			return null;
+		}
+		if(range == null) return null;
+		if(upper && comparator == Compare.Comparison.LESS) return Range.of(Integer.MIN_VALUE, range.high - 1);
+		if(upper && comparator == Compare.Comparison.LESS_EQUAL) return Range.of(Integer.MIN_VALUE, range.high);
+		if(!upper && comparator == Compare.Comparison.GREATER) return Range.of(range.low + 1, Integer.MAX_VALUE);
+		if(!upper && comparator == Compare.Comparison.GREATER_EQUAL) return Range.of(range.low, Integer.MAX_VALUE);
+		return null;
+	}
+	
+	private static Compare.Comparison mirror(Compare.Comparison comparator) {
+		switch(comparator) {
+			case LESS: return Compare.Comparison.GREATER;
+			case GREATER: return Compare.Comparison.LESS;
+			case LESS_EQUAL: return Compare.Comparison.GREATER_EQUAL;
+			case GREATER_EQUAL: return Compare.Comparison.LESS_EQUAL;
+			default: return comparator;
+		}
+	}
+	
+	private static boolean isReference(Expression expression, Declaration declaration) {
+		return expression instanceof IdentifierReference && ((IdentifierReference) expression).getDeclaration() == declaration;
+	}
+	
+	/**
+	 * @param expression An original integer expression.
+	 * @return The range of values of the expression, or null if it is unknown.
+	 */
+	private Range range(Expression expression) {
+		if(expression instanceof IntValue)
+			return Range.of(((IntValue) expression).value, ((IntValue) expression).value);
+		if(expression instanceof IdentifierReference)
+			return ranges.get(((IdentifierReference) expression).getDeclaration());
+		if(expression instanceof UnaryMinus) {
+			Range operand = range(((UnaryMinus) expression).operand);
+			return operand == null ? null : Range.of(-operand.high, -operand.low);
+		}
+		if(expression instanceof SelectExpression) {
+			Range trueCase = range(((SelectExpression) expression).trueCase);
+			Range falseCase = range(((SelectExpression) expression).falseCase);
+			if(trueCase == null || falseCase == null) return null;
+			return Range.of(Math.min(trueCase.low, falseCase.low), Math.max(trueCase.high, falseCase.high));
+		}
+		if(!(expression instanceof BinaryExpression) || !(expression.getType() instanceof IntType)) return null;
+		Range left = range(((BinaryExpression) expression).leftOperand);
+		Range right = range(((BinaryExpression) expression).rightOperand);
+		if(left == null || right == null) return null;
+		if(expression instanceof Addition) return Range.of(left.low + right.low, left.high + right.high);
+		if(expression instanceof Subtraction) return Range.of(left.low - right.high, left.high - right.low);
+		if(expression instanceof Multiplication) {
+			long a = left.low * right.low, b = left.low * right.high, c = left.high * right.low, d = left.high * right.high;
+			return Range.of(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+		}
+		if(expression instanceof Division && right.low > 0) {
+			// truncating division by a positive divisor is monotonic in both operands
+			long a = left.low / right.low, b = left.low / right.high, c = left.high / right.low, d = left.high / right.high;
+			return Range.of(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+		}
+		return null;
+	}
+	
+	/**
+	 * A non-empty range of integers, bounds included.
+	 */
+	private static final class Range {
+		private final long low, high;
+		
+		private Range(long low, long high) {
+			this.low = low;
+			this.high = high;
+		}
+		
+		/**
+		 * @return The range, or null if it is empty or exceeds the integers, where the operations may overflow.
+		 */
+		private static Range of(long low, long high) {
+			if(low > high || low < Integer.MIN_VALUE || high > Integer.MAX_VALUE) return null;
+			return new Range(low, high);
+		}
+	}
+}
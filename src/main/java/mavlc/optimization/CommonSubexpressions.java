@@ -0,0 +1,361 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.optimization;
+
+import mavlc.services.NodeCounter;
+import mavlc.services.visualization.Dumper;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.statement.*;
+import mavlc.type.MatrixType;
+
+import java.util.*;
+
+/**
+ * Evaluates structurally equal expressions only once within a sequence of statements without
+ * control flow, that is a function body or compound statement up to the next loop, if or switch
+ * statement. Equal expressions which evaluate to the same value, as none of the declarations they
+ * reference is assigned in between, are bound to a fresh value definition before the statement
+ * containing the first of them.
+ * <p>
+ * Only expressions without side effects are merged, so calls are never merged. Expressions that
+ * may fail at runtime are only bound before their statement if nothing that has side effects or
+ * may fail is evaluated before them within the statement, and if they are not part of a case of a
+ * select expression. As the definition costs a statement, expressions are only merged if this
+ * saves at least {@value #minSavedNodes} evaluated nodes.
+ */
+public class CommonSubexpressions extends AstRewriter {
+	
+	private static final int minSavedNodes = 3;
+	
+	private final List<String> report;
+	private FreshNames names;
+	
+	/**
+	 * @param report Receives a line for every merged expression.
+	 */
+	public CommonSubexpressions(List<String> report) {
+		this.report = report;
+	}
+	
+	@Override
+	protected void rewriteBody(Function function, Function copy) {
+		names = new FreshNames(function);
+		block(function.body, copy.body);
+	}
+	
+	@Override
+	protected void statement(Statement statement, List<Statement> out) {
+		if(isStraight(statement)) merge(Collections.singletonList(statement), out);
+		else super.statement(statement, out);
+	}
+	
+	@Override
+	public AstNode visitCompoundStatement(CompoundStatement compoundStatement, Void obj) {
+		List<Statement> statements = new ArrayList<>(compoundStatement.statements.size());
+		block(compoundStatement.statements, statements);
+		if(sameElements(statements, compoundStatement.statements))
+			return compoundStatement;
+		return new CompoundStatement(compoundStatement.sourceLocation, statements);
+	}
+	
+	/**
+	 * Rewrites a list of statements, merging the expressions of each run of statements without control flow.
+	 */
+	private void block(List<Statement> statements, List<Statement> out) {
+		List<Statement> run = new ArrayList<>();
+		for(Statement statement : statements) {
+			if(isStraight(statement)) {
+				run.add(statement);
+			} else {
+				merge(run, out);
+				run.clear();
+				super.statement(statement, out);
+			}
+		}
+		merge(run, out);
+	}
+	
+	private static boolean isStraight(Statement statement) {
+		return statement instanceof VariableDeclaration || statement instanceof ValueDefinition || statement instanceof VariableAssignment
+				|| statement instanceof CallStatement || statement instanceof ReturnStatement;
+	}
+	
+	private void merge(List<Statement> run, List<Statement> out) {
+		if(run.isEmpty()) return;
+		Scan scan = new Scan();
+		for(int i = 0; i < run.size(); i++)
+			scan.statement(run.get(i), i);
+		
+		// merge larger expressions first, the occurrences within the replaced ones are gone
+		List<Group> groups = new ArrayList<>(scan.groups.values());
+		groups.sort(Comparator.comparingLong((Group group) -> group.size).reversed());
+		Set<Expression> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+		Map<Expression, Merge> replacements = new IdentityHashMap<>();
+		List<Merge> merges = new ArrayList<>();
+		for(Group group : groups) {
+			List<Occurrence> occurrences = new ArrayList<>();
+			for(Occurrence occurrence : group.occurrences)
+				if(!removed.contains(occurrence.expression) && !scan.shared.contains(occurrence.expression)
+						&& (occurrence.hoistable || !occurrences.isEmpty()))
+					occurrences.add(occurrence);
+			if((occurrences.size() - 1) * (group.size - 1) < minSavedNodes) continue;
+			Merge merge = new Merge(occurrences.get(0), occurrences.size());
+			merges.add(merge);
+			for(Occurrence occurrence : occurrences) {
+				replacements.put(occurrence.expression, merge);
+				if(occurrence != merge.first) removed.addAll(Subexpressions.of(occurrence.expression));
+			}
+		}
+		
+		// define the values in evaluation order, so the definitions of subexpressions come first
+		merges.sort(Comparator.comparingInt(merge -> merge.first.order));
+		List<List<Statement>> definitions = new ArrayList<>(run.size());
+		for(int i = 0; i < run.size(); i++) definitions.add(new ArrayList<>());
+		Replacement replacement = new Replacement(replacements);
+		for(Merge merge : merges) {
+			Expression first = merge.first.expression;
+			merge.definition = new ValueDefinition(first.sourceLocation, typeSpecifier(first.getType(), first.sourceLocation),
+					names.fresh("cse"), replacement.value(first));
+			merge.definition.setType(first.getType());
+			definitions.get(merge.first.statement).add(merge.definition);
+			report.add(first.sourceLocation.line + ":" + first.sourceLocation.column + ": merged " + merge.count
+					+ " occurrences of " + Dumper.dump(first) + " into " + merge.definition.name);
+		}
+		for(int i = 0; i < run.size(); i++) {
+			out.addAll(definitions.get(i));
+			out.add((Statement) run.get(i).accept(replacement, null));
+		}
+	}
+	
+	/**
+	 * Replaces the merged occurrences with references to their definitions.
+	 */
+	private final class Replacement extends AstRewriter {
+		private final Map<Expression, Merge> replacements;
+		private Expression root;
+		
+		private Replacement(Map<Expression, Merge> replacements) {
+			this.replacements = replacements;
+			// the statements of the run have not been rewritten yet, so calls must be redirected as well
+			functions.putAll(CommonSubexpressions.this.functions);
+		}
+		
+		/**
+		 * @return The value of the definition for the first occurrence of a merged expression.
+		 */
+		private Expression value(Expression first) {
+			root = first;
+			Expression value = expression(first);
+			root = null;
+			return value;
+		}
+		
+		@Override
+		protected Expression expression(Expression expression) {
+			Merge merge = replacements.get(expression);
+			if(merge == null || expression == root) return super.expression(expression);
+			IdentifierReference reference = typed(new IdentifierReference(expression.sourceLocation, merge.definition.name), expression);
+			reference.setDeclaration(merge.definition);
+			return reference;
+		}
+		
+		// declarations rebuilt in one run are referenced by the following statements
+		
+		@Override
+		protected <T extends Declaration> T declare(Declaration original, T replacement) {
+			return CommonSubexpressions.this.declare(original, replacement);
+		}
+		
+		@Override
+		protected Declaration declaration(Declaration declaration) {
+			return CommonSubexpressions.this.declaration(declaration);
+		}
+	}
+	
+	/**
+	 * An occurrence of a mergeable expression.
+	 */
+	private static final class Occurrence {
+		private final Expression expression;
+		/** The index of the containing statement within the run. */
+		private final int statement;
+		/** The position of the expression in evaluation order. */
+		private final int order;
+		/** Whether the expression can be evaluated before its statement. */
+		private final boolean hoistable;
+		
+		private Occurrence(Expression expression, int statement, int order, boolean hoistable) {
+			this.expression = expression;
+			this.statement = statement;
+			this.order = order;
+			this.hoistable = hoistable;
+		}
+	}
+	
+	/**
+	 * The occurrences of expressions which evaluate to the same value.
+	 */
+	private static final class Group {
+		private final long size;
+		private final List<Occurrence> occurrences = new ArrayList<>();
+		
+		private Group(long size) {
+			this.size = size;
+		}
+	}
+	
+	private static final class Merge {
+		private final Occurrence first;
+		private final int count;
+		private ValueDefinition definition;
+		
+		private Merge(Occurrence first, int count) {
+			this.first = first;
+			this.count = count;
+		}
+	}
+	
+	/**
+	 * Groups the expressions of a run of statements by a key that is equal for expressions which
+	 * are structurally equal and reference the same declarations, without an assignment to any of
+	 * them in between. Calls, structure and record initializers get no key, so no expression
+	 * containing them is merged.
+	 */
+	private static final class Scan {
+		private final Map<String, Group> groups = new LinkedHashMap<>();
+		/** The expressions which occur more than once in the syntax tree. */
+		private final Set<Expression> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final Set<Expression> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final Map<Declaration, Integer> ids = new IdentityHashMap<>();
+		/** The number of assignments to a declaration so far. */
+		private final Map<Declaration, Integer> generations = new IdentityHashMap<>();
+		private int statement;
+		private int order;
+		/** Whether everything evaluated so far in the current statement is free. */
+		private boolean clean;
+		
+		private void statement(Statement statement, int index) {
+			this.statement = index;
+			clean = true;
+			if(statement instanceof VariableAssignment) {
+				// the value is evaluated before the indices of the target
+				VariableAssignment assignment = (VariableAssignment) statement;
+				scan(assignment.value, true);
+				if(assignment.identifier instanceof MatrixLhsIdentifier) {
+					scan(((MatrixLhsIdentifier) assignment.identifier).rowIndexExpression, true);
+					scan(((MatrixLhsIdentifier) assignment.identifier).colIndexExpression, true);
+				} else if(assignment.identifier instanceof VectorLhsIdentifier) {
+					scan(((VectorLhsIdentifier) assignment.identifier).indexExpression, true);
+				}
+				generations.merge(assignment.identifier.getDeclaration(), 1, Integer::sum);
+			} else if(statement instanceof ValueDefinition) {
+				scan(((ValueDefinition) statement).value, true);
+			} else if(statement instanceof CallStatement) {
+				scan(((CallStatement) statement).callExpression, true);
+			} else if(statement instanceof ReturnStatement && ((ReturnStatement) statement).returnValue != null) {
+				scan(((ReturnStatement) statement).returnValue, true);
+			}
+		}
+		
+		/**
+		 * @param unconditional Whether the expression is evaluated whenever its statement is executed.
+		 * @return The key of the expression, or null if it cannot be merged.
+		 */
+		private String scan(Expression expression, boolean unconditional) {
+			if(!seen.add(expression)) shared.add(expression);
+			boolean hoistable = unconditional && clean;
+			String key;
+			if(expression instanceof IdentifierReference) {
+				Declaration declaration = ((IdentifierReference) expression).getDeclaration();
+				return "#" + ids.computeIfAbsent(declaration, d -> ids.size()) + "." + generations.getOrDefault(declaration, 0);
+			} else if(expression instanceof IntValue) {
+				return "i" + ((IntValue) expression).value;
+			} else if(expression instanceof FloatValue) {
+				return "f" + ((FloatValue) expression).value;
+			} else if(expression instanceof BoolValue) {
+				return "b" + ((BoolValue) expression).value;
+			} else if(expression instanceof BinaryExpression) {
+				BinaryExpression binary = (BinaryExpression) expression;
+				key = compose(expression, scan(binary.leftOperand, unconditional), scan(binary.rightOperand, unconditional));
+				// comparisons share a single node type, so their operator is part of the key
+				if(key != null && expression instanceof Compare) key += ((Compare) expression).comparator;
+			} else if(expression instanceof UnaryExpression) {
+				key = compose(expression, scan(((UnaryExpression) expression).operand, unconditional));
+			} else if(expression instanceof SelectExpression) {
+				SelectExpression select = (SelectExpression) expression;
+				key = compose(expression, scan(select.condition, unconditional), scan(select.trueCase, false), scan(select.falseCase, false));
+			} else if(expression instanceof ElementSelect) {
+				ElementSelect select = (ElementSelect) expression;
+				key = compose(expression, scan(select.structExpression, unconditional), scan(select.indexExpression, unconditional));
+			} else if(expression instanceof RecordElementSelect) {
+				RecordElementSelect select = (RecordElementSelect) expression;
+				key = compose(expression, scan(select.recordExpression, unconditional), select.elementName);
+			} else if(expression instanceof SubMatrix) {
+				SubMatrix subMatrix = (SubMatrix) expression;
+				key = compose(expression, scan(subMatrix.structExpression, unconditional),
+						scan(subMatrix.rowBaseIndexExpression, unconditional), scan(subMatrix.colBaseIndexExpression, unconditional),
+						subMatrix.getRowStartOffset() + ":" + subMatrix.getRowEndOffset() + ":" + subMatrix.getColStartOffset() + ":" + subMatrix.getColEndOffset());
+			} else if(expression instanceof SubVector) {
+				SubVector subVector = (SubVector) expression;
+				key = compose(expression, scan(subVector.structExpression, unconditional), scan(subVector.baseIndexExpression, unconditional),
+						subVector.getStartOffset() + ":" + subVector.getEndOffset());
+			} else {
+				key = null;
+				if(expression instanceof CallExpression)
+					for(Expression argument : ((CallExpression) expression).actualParameters) scan(argument, unconditional);
+				else if(expression instanceof StructureInit)
+					for(Expression element : ((StructureInit) expression).elements) scan(element, unconditional);
+				else if(expression instanceof RecordInit)
+					for(Expression element : ((RecordInit) expression).elements) scan(element, unconditional);
+			}
+			boolean free = SideEffects.isFree(expression);
+			// a row on its own is not merged, as the engines access matrix elements without copying the row
+			boolean row = expression instanceof ElementSelect && ((ElementSelect) expression).structExpression.getType() instanceof MatrixType;
+			if(key != null && !row)
+				groups.computeIfAbsent(key, k -> new Group(NodeCounter.count(expression)))
+						.occurrences.add(new Occurrence(expression, statement, order++, hoistable || free));
+			if(!free) clean = false;
+			return key;
+		}
+		
+		private static String compose(Expression expression, String... parts) {
+			StringBuilder key = new StringBuilder(expression.getClass().getSimpleName()).append('(');
+			for(String part : parts) {
+				if(part == null) return null;
+				key.append(part).append(',');
+			}
+			return key.append(')').toString();
+		}
+	}
+	
+	/**
+	 * Collects the expressions within an expression, excluding the expression itself.
+	 */
+	private static final class Subexpressions extends AstWalker {
+		private final Set<Expression> expressions = Collections.newSetFromMap(new IdentityHashMap<>());
+		
+		static Set<Expression> of(Expression expression) {
+			Subexpressions subexpressions = new Subexpressions();
+			subexpressions.walk(expression);
+			subexpressions.expressions.remove(expression);
+			return subexpressions.expressions;
+		}
+		
+		@Override
+		protected void walk(AstNode node) {
+			if(node instanceof Expression) expressions.add((Expression) node);
+			super.walk(node);
+		}
+	}
+}
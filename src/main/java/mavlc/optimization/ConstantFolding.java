@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.optimization;
+
+import mavlc.execution.Operations;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.SourceLocation;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.statement.Declaration;
+import mavlc.syntax.statement.ValueDefinition;
+import mavlc.type.IntType;
+import mavlc.type.MatrixType;
+import mavlc.type.VectorType;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Evaluates constant subexpressions of type int, float and bool at compile time, replaces the
+ * dimensions of structures by their static values and simplifies the identities {@code x * 1},
+ * {@code x / 1}, {@code x + 0}, {@code x - 0}, {@code --x}, {@code !!x} and {@code ~~m}.
+ * References to values defined as a constant are replaced by the constant.
+ * <p>
+ * The folded results are the same as those computed at runtime. Integer divisions by zero are
+ * kept so they still fail at runtime, float results are only folded if they are finite and can be
+ * written as a MAVL literal, and subexpressions are only dropped if they are free of side effects.
+ */
+public class ConstantFolding extends AstRewriter {
+	
+	private final Map<Declaration, Expression> constants = new IdentityHashMap<>();
+	
+	@Override
+	public AstNode visitValueDefinition(ValueDefinition valueDefinition, Void obj) {
+		ValueDefinition result = (ValueDefinition) super.visitValueDefinition(valueDefinition, obj);
+		if(isConstant(result.value)) constants.put(valueDefinition, result.value);
+		return result;
+	}
+	
+	@Override
+	public AstNode visitIdentifierReference(IdentifierReference identifierReference, Void obj) {
+		Expression constant = constants.get(identifierReference.getDeclaration());
+		if(constant == null) return super.visitIdentifierReference(identifierReference, obj);
+		SourceLocation location = identifierReference.sourceLocation;
+		if(constant instanceof IntValue) return new IntValue(location, ((IntValue) constant).value);
+		if(constant instanceof FloatValue) return new FloatValue(location, ((FloatValue) constant).value);
+		return new BoolValue(location, ((BoolValue) constant).value);
+	}
+	
+	@Override
+	public AstNode visitSelectExpression(SelectExpression expr, Void obj) {
+		Expression condition = expression(expr.condition);
+		if(condition instanceof BoolValue)
+			return expression(((BoolValue) condition).value ? expr.trueCase : expr.falseCase);
+		return rebuild(expr, condition, expression(expr.trueCase), expression(expr.falseCase));
+	}
+	
+	@Override
+	public AstNode visitAddition(Addition addition, Void obj) {
+		Expression left = expression(addition.leftOperand);
+		Expression right = expression(addition.rightOperand);
+		if(left instanceof IntValue && right instanceof IntValue)
+			return new IntValue(addition.sourceLocation, intValue(left) + intValue(right));
+		if(left instanceof FloatValue && right instanceof FloatValue)
+			return floatValue(addition, left, right, floatValue(left) + floatValue(right));
+		if(isInt(left, 0)) return right;
+		if(isInt(right, 0)) return left;
+		return rebuild(addition, left, right);
+	}
+	
+	@Override
+	public AstNode visitSubtraction(Subtraction subtraction, Void obj) {
+		Expression left = expression(subtraction.leftOperand);
+		Expression right = expression(subtraction.rightOperand);
+		if(left instanceof IntValue && right instanceof IntValue)
+			return new IntValue(subtraction.sourceLocation, intValue(left) - intValue(right));
+		if(left instanceof FloatValue && right instanceof FloatValue)
+			return floatValue(subtraction, left, right, floatValue(left) - floatValue(right));
+		// x - 0.0 is x for every float x, unlike x + 0.0 which turns -0.0 into 0.0
+		if(isInt(right, 0) || right instanceof FloatValue && Float.floatToIntBits(floatValue(right)) == 0) return left;
+		return rebuild(subtraction, left, right);
+	}
+	
+	@Override
+	public AstNode visitMultiplication(Multiplication multiplication, Void obj) {
+		Expression left = expression(multiplication.leftOperand);
+		Expression right = expression(multiplication.rightOperand);
+		if(left instanceof IntValue && right instanceof IntValue)
+			return new IntValue(multiplication.sourceLocation, intValue(left) * intValue(right));
+		if(left instanceof FloatValue && right instanceof FloatValue)
+			return floatValue(multiplication, left, right, floatValue(left) * floatValue(right));
+		// also applies to the scaling of a structure, whose type is the type of the product
+		if(isOne(left) && right.getType().equals(multiplication.getType())) return right;
+		if(isOne(right) && left.getType().equals(multiplication.getType())) return left;
+		return rebuild(multiplication, left, right);
+	}
+	
+	@Override
+	public AstNode visitDivision(Division division, Void obj) {
+		Expression left = expression(division.leftOperand);
+		Expression right = expression(division.rightOperand);
+		if(left instanceof IntValue && right instanceof IntValue && intValue(right) != 0)
+			return new IntValue(division.sourceLocation, intValue(left) / intValue(right));
+		if(left instanceof FloatValue && right instanceof FloatValue)
+			return floatValue(division, left, right, floatValue(left) / floatValue(right));
+		if(isOne(right)) return left;
+		return rebuild(division, left, right);
+	}
+	
+	@Override
+	public AstNode visitExponentiation(Exponentiation exponentiation, Void obj) {
+		Expression left = expression(exponentiation.leftOperand);
+		Expression right = expression(exponentiation.rightOperand);
+		if(left instanceof IntValue && right instanceof IntValue)
+			return new IntValue(exponentiation.sourceLocation, (int) Math.pow(intValue(left), intValue(right)));
+		if(left instanceof FloatValue && right instanceof FloatValue)
+			return floatValue(exponentiation, left, right, (float) Math.pow(floatValue(left), floatValue(right)));
+		return rebuild(exponentiation, left, right);
+	}
+	
+	@Override
+	public AstNode visitCompare(Compare compare, Void obj) {
+		Expression left = expression(compare.leftOperand);
+		Expression right = expression(compare.rightOperand);
+		// evaluated by the runtime operation, so that for example -0.0 == 0.0 holds as well
+		if(left instanceof IntValue && right instanceof IntValue)
+			return new BoolValue(compare.sourceLocation, Operations.compare(compare.comparator, intValue(left), intValue(right)));
+		if(left instanceof FloatValue && right instanceof FloatValue)
+			return new BoolValue(compare.sourceLocation, Operations.compare(compare.comparator, floatValue(left), floatValue(right)));
+		return rebuild(compare, left, right);
+	}
+	
+	@Override
+	public AstNode visitAnd(And and, Void obj) {
+		// both operands are always evaluated, so an operand may only be dropped if it is free of side effects
+		Expression left = expression(and.leftOperand);
+		Expression right = expression(and.rightOperand);
+		if(isBool(left, true)) return right;
+		if(isBool(right, true)) return left;
+		if(isBool(left, false) && SideEffects.isFree(right)) return left;
+		if(isBool(right, false) && SideEffects.isFree(left)) return right;
+		return rebuild(and, left, right);
+	}
+	
+	@Override
+	public AstNode visitOr(Or or, Void obj) {
+		Expression left = expression(or.leftOperand);
+		Expression right = expression(or.rightOperand);
+		if(isBool(left, false)) return right;
+		if(isBool(right, false)) return left;
+		if(isBool(left, true) && SideEffects.isFree(right)) return left;
+		if(isBool(right, true) && SideEffects.isFree(left)) return right;
+		return rebuild(or, left, right);
+	}
+	
+	@Override
+	public AstNode visitUnaryMinus(UnaryMinus unaryMinus, Void obj) {
+		Expression operand = expression(unaryMinus.operand);
+		if(operand instanceof IntValue) return new IntValue(unaryMinus.sourceLocation, -intValue(operand));
+		if(operand instanceof FloatValue) return new FloatValue(unaryMinus.sourceLocation, -floatValue(operand));
+		if(operand instanceof UnaryMinus) return ((UnaryMinus) operand).operand;
+		return rebuild(unaryMinus, operand);
+	}
+	
+	@Override
+	public AstNode visitNot(Not not, Void obj) {
+		Expression operand = expression(not.operand);
+		if(operand instanceof BoolValue) return new BoolValue(not.sourceLocation, !((BoolValue) operand).value);
+		if(operand instanceof Not) return ((Not) operand).operand;
+		return rebuild(not, operand);
+	}
+	
+	@Override
+	public AstNode visitMatrixTranspose(MatrixTranspose matrixTranspose, Void obj) {
+		Expression operand = expression(matrixTranspose.operand);
+		if(operand instanceof MatrixTranspose) return ((MatrixTranspose) operand).operand;
+		return rebuild(matrixTranspose, operand);
+	}
+	
+	@Override
+	public AstNode visitMatrixRows(MatrixRows rows, Void obj) {
+		Expression operand = expression(rows.operand);
+		if(SideEffects.isFree(operand)) return new IntValue(rows.sourceLocation, ((MatrixType) operand.getType()).rows);
+		return rebuild(rows, operand);
+	}
+	
+	@Override
+	public AstNode visitMatrixCols(MatrixCols cols, Void obj) {
+		Expression operand = expression(cols.operand);
+		if(SideEffects.isFree(operand)) return new IntValue(cols.sourceLocation, ((MatrixType) operand.getType()).cols);
+		return rebuild(cols, operand);
+	}
+	
+	@Override
+	public AstNode visitVectorDimension(VectorDimension vectorDimension, Void obj) {
+		Expression operand = expression(vectorDimension.operand);
+		if(SideEffects.isFree(operand)) return new IntValue(vectorDimension.sourceLocation, ((VectorType) operand.getType()).dimension);
+		return rebuild(vectorDimension, operand);
+	}
+	
+	private static boolean isConstant(Expression expression) {
+		return expression instanceof IntValue || expression instanceof FloatValue || expression instanceof BoolValue;
+	}
+	
+	private static boolean isInt(Expression expression, int value) {
+		return expression instanceof IntValue && intValue(expression) == value;
+	}
+	
+	private static boolean isBool(Expression expression, boolean value) {
+		return expression instanceof BoolValue && ((BoolValue) expression).value == value;
+	}
+	
+	private static boolean isOne(Expression expression) {
+		return isInt(expression, 1) || expression instanceof FloatValue && floatValue(expression) == 1;
+	}
+	
+	private static int intValue(Expression expression) {
+		return ((IntValue) expression).value;
+	}
+	
+	private static float floatValue(Expression expression) {
+		return ((FloatValue) expression).value;
+	}
+	
+	/**
+	 * @return A literal of the folded value, or the operation on the literals if the value cannot be written as a literal.
+	 */
+	private static Expression floatValue(BinaryExpression expression, Expression left, Expression right, float value) {
+		if(Float.isFinite(value) && Float.toString(value).indexOf('E') < 0)
+			return new FloatValue(expression.sourceLocation, value);
+		return rebuild(expression, left, right);
+	}
+}
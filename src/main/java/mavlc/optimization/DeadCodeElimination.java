@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.optimization;
+
+import mavlc.syntax.expression.BoolValue;
+import mavlc.syntax.expression.CallExpression;
+import mavlc.syntax.expression.RecordInit;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.module.Module;
+import mavlc.syntax.record.RecordElementDeclaration;
+import mavlc.syntax.record.RecordTypeDeclaration;
+import mavlc.syntax.statement.*;
+import mavlc.type.RecordType;
+import mavlc.type.Type;
+
+import java.util.*;
+
+/**
+ * Removes code that is never executed: the branches of if statements whose condition is constant,
+ * statements after a return statement, functions that cannot be called from main and record
+ * types that are not used by the remaining functions. Runs after {@link ConstantFolding}, which
+ * reduces constant conditions to literals.
+ */
+public class DeadCodeElimination extends AstRewriter {
+	
+	@Override
+	public Module rewrite(Module module) {
+		Module rewritten = super.rewrite(module);
+		Function main = null;
+		for(Function function : rewritten.functions)
+			if(function.name.equals("main")) main = function;
+		if(main == null) return rewritten;
+		
+		Usage usage = new Usage(rewritten.functions);
+		usage.call(main);
+		List<Function> functions = new ArrayList<>();
+		for(Function function : rewritten.functions)
+			if(usage.functions.contains(function)) functions.add(function);
+		List<RecordTypeDeclaration> records = new ArrayList<>();
+		for(RecordTypeDeclaration record : rewritten.records)
+			if(usage.records.contains(record)) records.add(record);
+		return new Module(rewritten.sourceLocation, functions, records);
+	}
+	
+	@Override
+	protected void statement(Statement statement, List<Statement> out) {
+		// a return statement ends the function
+		if(!out.isEmpty() && out.get(out.size() - 1) instanceof ReturnStatement) return;
+		if(statement instanceof IfStatement && ((IfStatement) statement).condition instanceof BoolValue) {
+			IfStatement ifStatement = (IfStatement) statement;
+			Statement branch = ((BoolValue) ifStatement.condition).value ? ifStatement.thenStatement : ifStatement.elseStatement;
+			if(branch == null) return;
+			Statement rewritten = single(branch);
+			// a declaration in a branch is local to the branch
+			if(rewritten instanceof Declaration)
+				rewritten = new CompoundStatement(rewritten.sourceLocation, new ArrayList<>(Collections.singletonList(rewritten)));
+			out.add(rewritten);
+			return;
+		}
+		super.statement(statement, out);
+	}
+	
+	/**
+	 * Collects the functions reachable from a function and the record types they use. Record types
+	 * are introduced by declarations, record initializers and return types, so values of all other
+	 * record types can never be created.
+	 */
+	private static final class Usage extends AstWalker {
+		private final Set<Function> module;
+		private final Set<Function> functions = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final Set<RecordTypeDeclaration> records = Collections.newSetFromMap(new IdentityHashMap<>());
+		
+		private Usage(List<Function> module) {
+			this.module = Collections.newSetFromMap(new IdentityHashMap<>());
+			this.module.addAll(module);
+		}
+		
+		private void call(Function function) {
+			// runtime functions are not part of the module
+			if(!module.contains(function) || !functions.add(function)) return;
+			use(function.getReturnType());
+			walk(function);
+		}
+		
+		private void use(Type type) {
+			if(!(type instanceof RecordType)) return;
+			RecordTypeDeclaration record = ((RecordType) type).typeDeclaration;
+			if(!records.add(record)) return;
+			for(RecordElementDeclaration element : record.elements)
+				use(element.getType());
+		}
+		
+		@Override
+		public Void visitDeclaration(Declaration declaration, Void obj) {
+			use(declaration.getType());
+			return null;
+		}
+		
+		@Override
+		public Void visitRecordInit(RecordInit recordInit, Void obj) {
+			use(recordInit.getType());
+			return super.visitRecordInit(recordInit, obj);
+		}
+		
+		@Override
+		public Void visitCallExpression(CallExpression callExpression, Void obj) {
+			call(callExpression.getCalleeDefinition());
+			return super.visitCallExpression(callExpression, obj);
+		}
+	}
+}
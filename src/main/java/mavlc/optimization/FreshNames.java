@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.optimization;
+
+import mavlc.syntax.function.Function;
+import mavlc.syntax.statement.Declaration;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Supplies names for declarations introduced into a function, which neither occur in the function
+ * nor have been supplied before. Declarations with such names can be moved between the scopes of
+ * the function without shadowing or being shadowed.
+ */
+final class FreshNames {
+	
+	private final Set<String> names = new HashSet<>();
+	
+	FreshNames(Function function) {
+		new AstWalker() {
+			@Override
+			public Void visitDeclaration(Declaration declaration, Void obj) {
+				names.add(declaration.name);
+				return null;
+			}
+		}.walk(function);
+	}
+	
+	/**
+	 * @return The given name followed by the first numeric suffix that yields an unused name.
+	 */
+	String fresh(String name) {
+		String candidate;
+		int suffix = 1;
+		do {
+			candidate = name + "_" + suffix++;
+		} while(!names.add(candidate));
+		return candidate;
+	}
+}
@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.optimization;
+
+import mavlc.services.NodeCounter;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.function.FormalParameter;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.module.Module;
+import mavlc.syntax.statement.*;
+
+import java.util.*;
+
+/**
+ * Replaces calls to small, non-recursive functions of the module by the body of the callee. The
+ * statements of the body are inserted before the statement containing the call, with fresh
+ * declarations whose names do not occur in the caller, and the call is replaced by the returned
+ * expression. Parameters that the callee never assigns are replaced by arguments that are
+ * literals or references, all other arguments are bound to fresh declarations.
+ * <p>
+ * Moving the body in front of the statement changes the order of evaluation. A call is therefore
+ * only inlined if its arguments and body are free of side effects, or if nothing with side effects
+ * is evaluated before it within the statement. Calls in loop conditions, loop increments and the
+ * cases of select expressions are never inlined, as they are not evaluated exactly once.
+ */
+public class Inliner extends AstRewriter {
+	
+	private final int threshold;
+	private final Map<Function, Set<Function>> callees = new IdentityHashMap<>();
+	private final Set<Function> inlinable = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Map<Function, Boolean> movable = new IdentityHashMap<>();
+	private int inlinedCalls;
+	
+	private FreshNames names;
+	/** The statements to insert before the current statement, or null where calls are not inlined. */
+	private List<Statement> hoisted;
+	/** Whether something with side effects has been evaluated in the current statement. */
+	private boolean effects;
+	
+	/**
+	 * @param threshold The maximum number of syntax tree nodes of an inlined function.
+	 */
+	public Inliner(int threshold) {
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * @return The number of calls replaced by the body of the callee.
+	 */
+	public int getInlinedCalls() {
+		return inlinedCalls;
+	}
+	
+	@Override
+	public Module rewrite(Module module) {
+		Set<Function> members = Collections.newSetFromMap(new IdentityHashMap<>());
+		members.addAll(module.functions);
+		for(Function function : module.functions) {
+			Calls calls = new Calls(members);
+			calls.walk(function);
+			callees.put(function, calls.callees);
+		}
+		for(Function function : module.functions)
+			if(NodeCounter.count(function) <= threshold && !reaches(function, function, Collections.newSetFromMap(new IdentityHashMap<>())))
+				inlinable.add(function);
+		return super.rewrite(module);
+	}
+	
+	private boolean reaches(Function from, Function to, Set<Function> visited) {
+		for(Function callee : callees.get(from))
+			if(callee == to || visited.add(callee) && reaches(callee, to, visited)) return true;
+		return false;
+	}
+	
+	/**
+	 * Rewrites callees before their callers, so that the inlined bodies are already optimized.
+	 */
+	@Override
+	protected List<Function> rewriteOrder(Module module) {
+		List<Function> order = new ArrayList<>(module.functions.size());
+		Set<Function> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		for(Function function : module.functions)
+			postOrder(function, visited, order);
+		return order;
+	}
+	
+	private void postOrder(Function function, Set<Function> visited, List<Function> order) {
+		if(!visited.add(function)) return;
+		for(Function callee : callees.get(function))
+			postOrder(callee, visited, order);
+		order.add(function);
+	}
+	
+	@Override
+	protected void rewriteBody(Function function, Function copy) {
+		names = new FreshNames(function);
+		super.rewriteBody(function, copy);
+	}
+	
+	@Override
+	protected void statement(Statement statement, List<Statement> out) {
+		List<Statement> outerHoisted = hoisted;
+		boolean outerEffects = effects;
+		hoisted = new ArrayList<>();
+		effects = false;
+		Statement rewritten = statement instanceof CallStatement
+				? callStatement((CallStatement) statement)
+				: (Statement) statement.accept(this, null);
+		out.addAll(hoisted);
+		if(rewritten != null) out.add(rewritten);
+		hoisted = outerHoisted;
+		effects = outerEffects;
+	}
+	
+	/**
+	 * @return The rewritten call statement, or null if the call has been inlined.
+	 */
+	private Statement callStatement(CallStatement callStatement) {
+		CallExpression call = callStatement.callExpression;
+		Function original = call.getCalleeDefinition();
+		List<Expression> arguments = expressions(call.actualParameters);
+		// the result is discarded, so it must be free of side effects
+		if(canInline(original, arguments, false) && SideEffects.isFree(result(functions.get(original)))) {
+			inline(original, call, arguments);
+			return null;
+		}
+		Expression rebuilt = rebuild(call, arguments);
+		return rebuilt == call ? callStatement : new CallStatement(callStatement.sourceLocation, (CallExpression) rebuilt);
+	}
+	
+	@Override
+	protected Expression expression(Expression expression) {
+		Expression result = super.expression(expression);
+		if(!SideEffects.isFree(result)) effects = true;
+		return result;
+	}
+	
+	@Override
+	public AstNode visitCallExpression(CallExpression callExpression, Void obj) {
+		boolean effectsBefore = effects;
+		List<Expression> arguments = expressions(callExpression.actualParameters);
+		Function original = callExpression.getCalleeDefinition();
+		if(canInline(original, arguments, effectsBefore))
+			return inline(original, callExpression, arguments);
+		return rebuild(callExpression, arguments);
+	}
+	
+	@Override
+	public AstNode visitForLoop(ForLoop forLoop, Void obj) {
+		Expression init = expression(forLoop.initExpression);
+		List<Statement> outerHoisted = hoisted;
+		hoisted = null;
+		Expression condition = expression(forLoop.loopCondition);
+		Expression incr = expression(forLoop.incrExpression);
+		hoisted = outerHoisted;
+		return rebuild(forLoop, init, condition, incr, single(forLoop.body));
+	}
+	
+	@Override
+	public AstNode visitSelectExpression(SelectExpression expr, Void obj) {
+		Expression condition = expression(expr.condition);
+		List<Statement> outerHoisted = hoisted;
+		hoisted = null;
+		Expression trueCase = expression(expr.trueCase);
+		Expression falseCase = expression(expr.falseCase);
+		hoisted = outerHoisted;
+		return rebuild(expr, condition, trueCase, falseCase);
+	}
+	
+	private boolean canInline(Function original, List<Expression> arguments, boolean effectsBefore) {
+		if(hoisted == null || !inlinable.contains(original)) return false;
+		if(!effectsBefore) return true;
+		for(Expression argument : arguments)
+			if(!SideEffects.isFree(argument)) return false;
+		return movable.computeIfAbsent(functions.get(original), function -> {
+			for(int i = 0; i < function.body.size() - (result(function) != null ? 1 : 0); i++)
+				if(!SideEffects.isFree(function.body.get(i))) return false;
+			return true;
+		});
+	}
+	
+	/**
+	 * @return The expression returned by the function, or null if it does not return a value.
+	 */
+	private static Expression result(Function function) {
+		if(function.body.isEmpty()) return null;
+		Statement last = function.body.get(function.body.size() - 1);
+		return last instanceof ReturnStatement ? ((ReturnStatement) last).returnValue : null;
+	}
+	
+	/**
+	 * Appends the parameter bindings and the body of the rewritten callee to the hoisted statements.
+	 *
+	 * @return The returned expression, or null if the callee does not return a value.
+	 */
+	private Expression inline(Function original, CallExpression call, List<Expression> arguments) {
+		Function callee = functions.get(original);
+		inlinedCalls++;
+		Renamer renamer = new Renamer();
+		Set<Declaration> assigned = Assignments.of(callee);
+		for(int i = 0; i < arguments.size(); i++) {
+			FormalParameter parameter = callee.parameters.get(i);
+			Expression argument = arguments.get(i);
+			if(!assigned.contains(parameter) && (argument instanceof IdentifierReference || argument instanceof IntValue
+					|| argument instanceof FloatValue || argument instanceof BoolValue || argument instanceof StringValue)) {
+				renamer.substitutions.put(parameter, argument);
+			} else if(!assigned.contains(parameter)) {
+				hoisted.add(renamer.declare(parameter, new ValueDefinition(call.sourceLocation, parameter.typeSpecifier, names.fresh(parameter.name), argument)));
+			} else {
+				VariableDeclaration variable = renamer.declare(parameter, new VariableDeclaration(call.sourceLocation, parameter.typeSpecifier, names.fresh(parameter.name)));
+				LeftHandIdentifier target = new LeftHandIdentifier(call.sourceLocation, variable.name);
+				target.setDeclaration(variable);
+				hoisted.add(variable);
+				hoisted.add(new VariableAssignment(call.sourceLocation, target, argument));
+			}
+		}
+		Expression result = result(callee);
+		for(int i = 0; i < callee.body.size() - (result != null ? 1 : 0); i++)
+			renamer.statement(callee.body.get(i), hoisted);
+		return result == null ? null : renamer.expression(result);
+	}
+	
+	/**
+	 * Copies the body of a callee with fresh declarations and the arguments substituted for the parameters.
+	 */
+	private final class Renamer extends AstRewriter {
+		private final Map<Declaration, Expression> substitutions = new IdentityHashMap<>();
+		
+		@Override
+		public AstNode visitIdentifierReference(IdentifierReference identifierReference, Void obj) {
+			Expression argument = substitutions.get(identifierReference.getDeclaration());
+			return argument != null ? argument : super.visitIdentifierReference(identifierReference, obj);
+		}
+		
+		@Override
+		public AstNode visitVariableDeclaration(VariableDeclaration variableDeclaration, Void obj) {
+			return declare(variableDeclaration, new VariableDeclaration(variableDeclaration.sourceLocation,
+					variableDeclaration.typeSpecifier, names.fresh(variableDeclaration.name)));
+		}
+		
+		@Override
+		public AstNode visitIteratorDeclaration(IteratorDeclaration iteratorDeclaration, Void obj) {
+			return declare(iteratorDeclaration, new IteratorDeclaration(iteratorDeclaration.sourceLocation,
+					names.fresh(iteratorDeclaration.name), iteratorDeclaration.typeSpecifier, iteratorDeclaration.isVariable()));
+		}
+		
+		@Override
+		public AstNode visitValueDefinition(ValueDefinition valueDefinition, Void obj) {
+			Expression value = expression(valueDefinition.value);
+			return declare(valueDefinition, new ValueDefinition(valueDefinition.sourceLocation,
+					valueDefinition.typeSpecifier, names.fresh(valueDefinition.name), value));
+		}
+	}
+	
+	/**
+	 * Collects the functions of the module called by a function.
+	 */
+	private static final class Calls extends AstWalker {
+		private final Set<Function> members;
+		private final Set<Function> callees = Collections.newSetFromMap(new IdentityHashMap<>());
+		
+		private Calls(Set<Function> members) {
+			this.members = members;
+		}
+		
+		@Override
+		public Void visitCallExpression(CallExpression callExpression, Void obj) {
+			if(members.contains(callExpression.getCalleeDefinition()))
+				callees.add(callExpression.getCalleeDefinition());
+			return super.visitCallExpression(callExpression, obj);
+		}
+	}
+}
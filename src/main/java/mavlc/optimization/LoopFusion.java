@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.optimization;
+
+import mavlc.execution.LoopDependencies;
+import mavlc.syntax.SourceLocation;
+import mavlc.syntax.expression.IdentifierReference;
+import mavlc.syntax.statement.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fuses adjacent foreach loops over the same matrix or vector into a single loop, so the
+ * elements are traversed once instead of once per loop.
+ * <p>
+ * The iterations of both loops have to be independent in the sense of {@link LoopDependencies}:
+ * a body only assigns to its iterator and its own locals, so the bodies cannot communicate
+ * except through the elements, and the body of the second loop sees every element after the
+ * body of the first loop has processed it, as before. If one of the iterators is a variable,
+ * the bodies must not refer to the structure, whose elements are then written back after every
+ * iteration. As the order in which elements of the two loops fail changes, at most one of the
+ * bodies may fail.
+ */
+public class LoopFusion extends AstRewriter {
+	
+	private final List<String> report;
+	
+	/**
+	 * @param report Receives a line for every fused loop.
+	 */
+	public LoopFusion(List<String> report) {
+		this.report = report;
+	}
+	
+	@Override
+	protected void statement(Statement statement, List<Statement> out) {
+		super.statement(statement, out);
+		int last = out.size() - 1;
+		if(last < 1 || !(out.get(last - 1) instanceof ForEachLoop) || !(out.get(last) instanceof ForEachLoop)) return;
+		ForEachLoop fused = fuse((ForEachLoop) out.get(last - 1), (ForEachLoop) out.get(last));
+		if(fused == null) return;
+		out.remove(last);
+		out.set(last - 1, fused);
+	}
+	
+	/**
+	 * @return The fused loop, or null if the loops cannot be fused.
+	 */
+	private ForEachLoop fuse(ForEachLoop first, ForEachLoop second) {
+		if(!(first.structExpression instanceof IdentifierReference) || !(second.structExpression instanceof IdentifierReference))
+			return null;
+		Declaration struct = ((IdentifierReference) first.structExpression).getDeclaration();
+		if(struct != ((IdentifierReference) second.structExpression).getDeclaration()) return null;
+		if(!LoopDependencies.isIndependent(first) || !LoopDependencies.isIndependent(second)) return null;
+		if(!SideEffects.isFree(first.body) && !SideEffects.isFree(second.body)) return null;
+		IteratorDeclaration firstIterator = first.iteratorDeclaration, secondIterator = second.iteratorDeclaration;
+		boolean variable = firstIterator.isVariable() || secondIterator.isVariable();
+		if(variable && (LoopOptimization.References.of(first.body).contains(struct) || LoopOptimization.References.of(second.body).contains(struct)))
+			return null;
+		// the second body must not refer to another declaration under the name of the fused iterator
+		if(!firstIterator.name.equals(secondIterator.name) && names(second.body, secondIterator).contains(firstIterator.name))
+			return null;
+		
+		IteratorDeclaration iterator = firstIterator;
+		if(firstIterator.isVariable() != variable) {
+			iterator = new IteratorDeclaration(firstIterator.sourceLocation, firstIterator.name, firstIterator.typeSpecifier, true);
+			iterator.setType(firstIterator.getType());
+		}
+		List<Statement> statements = new ArrayList<>();
+		append(rename(first.body, firstIterator, iterator), statements);
+		append(rename(second.body, secondIterator, iterator), statements);
+		SourceLocation location = first.sourceLocation;
+		report.add(location.line + ":" + location.column + ": fused the foreach loop in line " + second.sourceLocation.line
+				+ " over " + struct.name + " into this loop");
+		return new ForEachLoop(location, iterator, first.structExpression, new CompoundStatement(first.body.sourceLocation, statements));
+	}
+	
+	private static Statement rename(Statement body, IteratorDeclaration original, IteratorDeclaration replacement) {
+		if(original == replacement) return body;
+		AstRewriter renaming = new AstRewriter() { };
+		renaming.declare(original, replacement);
+		return renaming.single(body);
+	}
+	
+	/**
+	 * Appends the statements of a body, keeping compound statements with declarations as a scope
+	 * of their own, as the other body may use the same names.
+	 */
+	private static void append(Statement body, List<Statement> statements) {
+		if(body instanceof CompoundStatement && LoopOptimization.Declarations.of(body).isEmpty())
+			statements.addAll(((CompoundStatement) body).statements);
+		else
+			statements.add(body);
+	}
+	
+	/**
+	 * @return The names of the declarations declared or referenced within a body, except for the given one.
+	 */
+	private static Set<String> names(Statement body, Declaration except) {
+		Set<String> names = new HashSet<>();
+		Set<Declaration> declarations = LoopOptimization.References.of(body);
+		declarations.addAll(LoopOptimization.Declarations.of(body));
+		for(Declaration declaration : declarations)
+			if(declaration != except) names.add(declaration.name);
+		return names;
+	}
+}
@@ -0,0 +1,325 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.optimization;
+
+import mavlc.services.visualization.Dumper;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.SourceLocation;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.statement.*;
+import mavlc.syntax.type.IntTypeSpecifier;
+import mavlc.type.IntType;
+
+import java.util.*;
+
+/**
+ * Moves loop-invariant computations out of for loops and reduces multiplications by the loop
+ * variable to additions.
+ * <p>
+ * An expression within a for loop is invariant if it is free of side effects and none of the
+ * declarations it references is declared or assigned within the loop. Such an expression is
+ * computed once into a fresh value definition before the loop; loops are optimized from the
+ * innermost one outwards, so the definition is moved further out as long as it stays invariant.
+ * <p>
+ * If the loop variable is only assigned by the increment, which adds a constant, the products of
+ * the loop variable and an invariant integer are replaced by a variable that is computed before
+ * the loop and advanced at the end of the body. As advancing costs a statement per iteration,
+ * only products that occur at least twice in the body are reduced.
+ */
+public class LoopOptimization extends AstRewriter {
+	
+	private static final int minReducedProducts = 2;
+	
+	private final List<String> report;
+	/** The value definitions introduced for invariant expressions. */
+	private final Set<Declaration> introduced = Collections.newSetFromMap(new IdentityHashMap<>());
+	private FreshNames names;
+	
+	/**
+	 * @param report Receives a line for every hoisted expression and reduced product.
+	 */
+	public LoopOptimization(List<String> report) {
+		this.report = report;
+	}
+	
+	@Override
+	protected void rewriteBody(Function function, Function copy) {
+		names = new FreshNames(function);
+		super.rewriteBody(function, copy);
+	}
+	
+	@Override
+	protected void statement(Statement statement, List<Statement> out) {
+		if(!(statement instanceof ForLoop)) {
+			super.statement(statement, out);
+			return;
+		}
+		// nested loops are optimized first
+		ForLoop forLoop = (ForLoop) statement.accept(this, null);
+		forLoop = new Hoisting(forLoop, out).hoist();
+		out.add(reduce(forLoop, out));
+	}
+	
+	private void log(SourceLocation location, String message) {
+		report.add(location.line + ":" + location.column + ": " + message);
+	}
+	
+	/**
+	 * Replaces the invariant expressions of a loop with references to value definitions before the loop.
+	 */
+	private final class Hoisting extends AstRewriter {
+		private final ForLoop forLoop;
+		private final List<Statement> out;
+		private final Set<Declaration> variant;
+		
+		/**
+		 * @param out The statements before the loop, which receive the value definitions.
+		 */
+		private Hoisting(ForLoop forLoop, List<Statement> out) {
+			this.forLoop = forLoop;
+			this.out = out;
+			variant = Assignments.of(forLoop);
+			variant.addAll(Declarations.of(forLoop.body));
+		}
+		
+		private ForLoop hoist() {
+			Expression condition = expression(forLoop.loopCondition);
+			Statement body = single(forLoop.body);
+			Expression incr = expression(forLoop.incrExpression);
+			return rebuild(forLoop, forLoop.initExpression, condition, incr, body);
+		}
+		
+		@Override
+		protected void statement(Statement statement, List<Statement> list) {
+			if(introduced.contains(statement) && isInvariant(((ValueDefinition) statement).value)) {
+				log(statement.sourceLocation, "moved " + ((ValueDefinition) statement).name + " out of the loop in line " + forLoop.sourceLocation.line);
+				out.add(statement);
+				variant.remove(statement);
+			} else {
+				super.statement(statement, list);
+				// keep track of the rebuilt definition, it may become invariant in an enclosing loop
+				if(introduced.contains(statement)) introduced.add((Declaration) list.get(list.size() - 1));
+			}
+		}
+		
+		@Override
+		protected Expression expression(Expression expression) {
+			if(expression instanceof IdentifierReference || expression instanceof IntValue || expression instanceof FloatValue
+					|| expression instanceof BoolValue || expression instanceof StringValue || !isInvariant(expression))
+				return super.expression(expression);
+			ValueDefinition definition = new ValueDefinition(expression.sourceLocation,
+					typeSpecifier(expression.getType(), expression.sourceLocation), names.fresh("inv"), expression);
+			definition.setType(expression.getType());
+			introduced.add(definition);
+			out.add(definition);
+			log(expression.sourceLocation, "hoisted " + Dumper.dump(expression) + " out of the loop in line " + forLoop.sourceLocation.line + " as " + definition.name);
+			return reference(definition, expression.sourceLocation);
+		}
+		
+		private boolean isInvariant(Expression expression) {
+			return SideEffects.isFree(expression) && Collections.disjoint(References.of(expression), variant);
+		}
+	}
+	
+	/**
+	 * Replaces the products of the loop variable and an invariant integer with variables which
+	 * are advanced along with the loop variable.
+	 */
+	private ForLoop reduce(ForLoop forLoop, List<Statement> out) {
+		Declaration variable = forLoop.getInitVarDeclaration();
+		Integer step = step(forLoop.incrExpression, variable);
+		if(variable != forLoop.getIncrVarDeclaration() || step == null || !SideEffects.isFree(forLoop.initExpression))
+			return forLoop;
+		if(Assignments.of(forLoop.body).contains(variable)) return forLoop;
+		// the factors are multiplied with the initial value before the loop, so they must be invariant in the whole loop
+		Set<Declaration> variant = Assignments.of(forLoop);
+		variant.addAll(Declarations.of(forLoop.body));
+		Products products = new Products(variable, variant);
+		products.walk(forLoop.body);
+		
+		Map<Expression, Declaration> replacements = new IdentityHashMap<>();
+		List<Statement> updates = new ArrayList<>();
+		for(Product product : products.products) {
+			if(product.occurrences.size() < minReducedProducts) continue;
+			SourceLocation location = forLoop.sourceLocation;
+			VariableDeclaration reduced = new VariableDeclaration(location, new IntTypeSpecifier(location), names.fresh(variable.name));
+			reduced.setType(IntType.instance);
+			out.add(reduced);
+			out.add(new VariableAssignment(location, target(reduced, location), multiply(forLoop.initExpression, product.factor)));
+			Expression delta = step == 1 ? product.factor : multiply(new IntValue(location, step), product.factor);
+			if(delta instanceof Multiplication) {
+				ValueDefinition definition = new ValueDefinition(location, new IntTypeSpecifier(location), names.fresh("inv"), delta);
+				definition.setType(IntType.instance);
+				introduced.add(definition);
+				out.add(definition);
+				delta = reference(definition, location);
+			}
+			BinaryExpression advance = delta instanceof IntValue && ((IntValue) delta).value < 0 && ((IntValue) delta).value != Integer.MIN_VALUE
+					? new Subtraction(location, reference(reduced, location), new IntValue(location, -((IntValue) delta).value))
+					: new Addition(location, reference(reduced, location), delta);
+			advance.setType(IntType.instance);
+			updates.add(new VariableAssignment(location, target(reduced, location), advance));
+			for(Multiplication occurrence : product.occurrences)
+				replacements.put(occurrence, reduced);
+			log(location, "reduced " + product.occurrences.size() + " products " + Dumper.dump(product.occurrences.get(0))
+					+ " to additions to " + reduced.name);
+		}
+		if(replacements.isEmpty()) return forLoop;
+		
+		Statement body = new AstRewriter() {
+			@Override
+			protected Expression expression(Expression expression) {
+				Declaration reduced = replacements.get(expression);
+				return reduced != null ? reference(reduced, expression.sourceLocation) : super.expression(expression);
+			}
+		}.single(forLoop.body);
+		List<Statement> statements = new ArrayList<>();
+		if(body instanceof CompoundStatement) statements.addAll(((CompoundStatement) body).statements);
+		else statements.add(body);
+		statements.addAll(updates);
+		return rebuild(forLoop, forLoop.initExpression, forLoop.loopCondition, forLoop.incrExpression,
+				new CompoundStatement(body.sourceLocation, statements));
+	}
+	
+	/**
+	 * @return The constant added to the variable by the increment, or null if it is not of this form.
+	 */
+	static Integer step(Expression incr, Declaration variable) {
+		if(!(incr instanceof Addition || incr instanceof Subtraction)) return null;
+		BinaryExpression binary = (BinaryExpression) incr;
+		if(isReference(binary.leftOperand, variable) && binary.rightOperand instanceof IntValue)
+			return incr instanceof Addition ? ((IntValue) binary.rightOperand).value : -((IntValue) binary.rightOperand).value;
+		if(incr instanceof Addition && binary.leftOperand instanceof IntValue && isReference(binary.rightOperand, variable))
+			return ((IntValue) binary.leftOperand).value;
+		return null;
+	}
+	
+	private static boolean isReference(Expression expression, Declaration declaration) {
+		return expression instanceof IdentifierReference && ((IdentifierReference) expression).getDeclaration() == declaration;
+	}
+	
+	private static Expression multiply(Expression left, Expression right) {
+		if(left instanceof IntValue && right instanceof IntValue)
+			return new IntValue(left.sourceLocation, ((IntValue) left).value * ((IntValue) right).value);
+		Multiplication product = new Multiplication(left.sourceLocation, left, right);
+		product.setType(IntType.instance);
+		return product;
+	}
+	
+	private static IdentifierReference reference(Declaration declaration, SourceLocation location) {
+		IdentifierReference reference = new IdentifierReference(location, declaration.name);
+		reference.setDeclaration(declaration);
+		reference.setType(declaration.getType());
+		return reference;
+	}
+	
+	private static LeftHandIdentifier target(Declaration declaration, SourceLocation location) {
+		LeftHandIdentifier target = new LeftHandIdentifier(location, declaration.name);
+		target.setDeclaration(declaration);
+		return target;
+	}
+	
+	/**
+	 * The occurrences of the product of the loop variable and an invariant factor.
+	 */
+	private static final class Product {
+		private final Expression factor;
+		private final List<Multiplication> occurrences = new ArrayList<>();
+		
+		private Product(Expression factor) {
+			this.factor = factor;
+		}
+		
+		private boolean hasFactor(Expression expression) {
+			if(factor instanceof IntValue)
+				return expression instanceof IntValue && ((IntValue) expression).value == ((IntValue) factor).value;
+			return isReference(expression, ((IdentifierReference) factor).getDeclaration());
+		}
+	}
+	
+	/**
+	 * Collects the integer products of the loop variable and a literal or invariant reference.
+	 */
+	private static final class Products extends AstWalker {
+		private final Declaration variable;
+		private final Set<Declaration> variant;
+		private final List<Product> products = new ArrayList<>();
+		
+		private Products(Declaration variable, Set<Declaration> variant) {
+			this.variable = variable;
+			this.variant = variant;
+		}
+		
+		@Override
+		public Void visitMultiplication(Multiplication multiplication, Void obj) {
+			if(multiplication.getType() instanceof IntType) {
+				if(isReference(multiplication.leftOperand, variable) && add(multiplication, multiplication.rightOperand)) return null;
+				if(isReference(multiplication.rightOperand, variable) && add(multiplication, multiplication.leftOperand)) return null;
+			}
+			return super.visitMultiplication(multiplication, obj);
+		}
+		
+		private boolean add(Multiplication multiplication, Expression factor) {
+			if(!(factor instanceof IntValue || factor instanceof IdentifierReference && !variant.contains(((IdentifierReference) factor).getDeclaration())))
+				return false;
+			for(Product product : products) {
+				if(product.hasFactor(factor)) {
+					product.occurrences.add(multiplication);
+					return true;
+				}
+			}
+			Product product = new Product(factor);
+			product.occurrences.add(multiplication);
+			products.add(product);
+			return true;
+		}
+	}
+	
+	/**
+	 * Collects the declarations referenced by an expression.
+	 */
+	static final class References extends AstWalker {
+		private final Set<Declaration> declarations = Collections.newSetFromMap(new IdentityHashMap<>());
+		
+		static Set<Declaration> of(AstNode node) {
+			References references = new References();
+			references.walk(node);
+			return references.declarations;
+		}
+		
+		@Override
+		public Void visitIdentifierReference(IdentifierReference identifierReference, Void obj) {
+			declarations.add(identifierReference.getDeclaration());
+			return null;
+		}
+	}
+	
+	/**
+	 * Collects the declarations within a subtree.
+	 */
+	static final class Declarations extends AstWalker {
+		private final Set<Declaration> declarations = Collections.newSetFromMap(new IdentityHashMap<>());
+		
+		static Set<Declaration> of(AstNode node) {
+			Declarations collected = new Declarations();
+			collected.walk(node);
+			return collected.declarations;
+		}
+		
+		@Override
+		public Void visitDeclaration(Declaration declaration, Void obj) {
+			declarations.add(declaration);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.optimization;
+
+import mavlc.services.NodeCounter;
+import mavlc.syntax.module.Module;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the optimization passes on a decorated module. The passes never modify their input, so
+ * an optimizer can be shared by concurrent pipelines.
+ */
+public class Optimizer {
+	
+	/** The default maximum number of syntax tree nodes of an inlined function. */
+	public static final int DEFAULT_INLINE_THRESHOLD = 40;
+	
+	private final int inlineThreshold;
+	
+	public Optimizer() {
+		this(DEFAULT_INLINE_THRESHOLD);
+	}
+	
+	/**
+	 * @param inlineThreshold The maximum number of syntax tree nodes of an inlined function, 0 disables inlining.
+	 */
+	public Optimizer(int inlineThreshold) {
+		this.inlineThreshold = inlineThreshold;
+	}
+	
+	/**
+	 * The optimized module and what the passes achieved.
+	 */
+	public static final class Result {
+		public final Module module;
+		/** The number of syntax tree nodes before and after the optimization; inlining can make the module grow. */
+		public final long nodesBefore, nodesAfter;
+		public final int inlinedCalls;
+		public final int removedChecks;
+		/** One line per fused loop, hoisted, reduced or merged expression, per function with removed index checks and per access that is always out of bounds, prefixed with its source location. */
+		public final List<String> report;
+		/** One line per access that is always out of bounds, prefixed with its source location. These accesses fail at runtime if they are executed. */
+		public final List<String> warnings;
+		
+		public Result(Module module, long nodesBefore, long nodesAfter, int inlinedCalls, int removedChecks, List<String> report, List<String> warnings) {
+			this.module = module;
+			this.nodesBefore = nodesBefore;
+			this.nodesAfter = nodesAfter;
+			this.inlinedCalls = inlinedCalls;
+			this.removedChecks = removedChecks;
+			this.report = report;
+			this.warnings = warnings;
+		}
+	}
+	
+	/**
+	 * @param module The decorated module, which is left unchanged.
+	 * @return The optimized, decorated module.
+	 */
+	public Result optimize(Module module) {
+		Module optimized = new ConstantFolding().rewrite(module);
+		int inlinedCalls = 0;
+		if(inlineThreshold > 0) {
+			Inliner inliner = new Inliner(inlineThreshold);
+			optimized = inliner.rewrite(optimized);
+			inlinedCalls = inliner.getInlinedCalls();
+			// fold the arguments substituted into the inlined bodies
+			optimized = new ConstantFolding().rewrite(optimized);
+		}
+		// before the range analysis, which then never looks at removed code
+		optimized = new DeadCodeElimination().rewrite(optimized);
+		List<String> report = new ArrayList<>();
+		// before the loop optimization, which can then move the accesses proven to be in bounds
+		BoundsCheckElimination boundsChecks = new BoundsCheckElimination(report);
+		optimized = boundsChecks.rewrite(optimized);
+		optimized = new LoopFusion(report).rewrite(optimized);
+		optimized = new LoopOptimization(report).rewrite(optimized);
+		optimized = new CommonSubexpressions(report).rewrite(optimized);
+		return new Result(optimized, NodeCounter.count(module), NodeCounter.count(optimized), inlinedCalls, boundsChecks.getRemovedChecks(), report, boundsChecks.getWarnings());
+	}
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.optimization;
+
+import mavlc.syntax.AstNode;
+import mavlc.syntax.AstNodeBaseVisitor;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.statement.*;
+import mavlc.type.IntType;
+import mavlc.type.MatrixType;
+import mavlc.type.Type;
+import mavlc.type.VectorType;
+
+import java.util.List;
+
+/**
+ * Decides whether an expression can be removed or evaluated a different number of times, or
+ * whether a statement can be executed earlier, without changing the behavior of the program.
+ * This excludes calls, which may have side effects, operations that may fail at runtime, that is
+ * integer divisions by anything but a non-zero literal and index accesses which are not known to
+ * be in bounds, and loops, which may exceed the cycle limit.
+ * <p>
+ * Operations that may fail are accepted by {@link #isPure(AstNode)}: evaluating such a node
+ * again with the same operands yields the same value or fails in the same way, so it can be
+ * evaluated once instead of several times, as long as the first evaluation is not moved past
+ * a side effect.
+ */
+public final class SideEffects extends AstNodeBaseVisitor<Boolean, Void> {
+	
+	private static final SideEffects free = new SideEffects(false);
+	private static final SideEffects pure = new SideEffects(true);
+	
+	private final boolean mayFail;
+	
+	private SideEffects(boolean mayFail) {
+		this.mayFail = mayFail;
+	}
+	
+	/**
+	 * @param node A decorated expression or statement.
+	 * @return Whether the node neither has side effects nor may fail.
+	 */
+	public static boolean isFree(AstNode node) {
+		return free.check(node);
+	}
+	
+	/**
+	 * @param node A decorated expression or statement.
+	 * @return Whether the node has no side effects, though it may fail.
+	 */
+	public static boolean isPure(AstNode node) {
+		return pure.check(node);
+	}
+	
+	private boolean check(AstNode node) {
+		return node == null || node.accept(this, null);
+	}
+	
+	private boolean checkAll(List<? extends AstNode> nodes) {
+		for(AstNode node : nodes)
+			if(!check(node)) return false;
+		return true;
+	}
+	
+	@Override
+	protected Boolean defaultOperation(AstNode node, Void obj) {
+		return false;
+	}
+	
+	@Override
+	public Boolean visitDeclaration(Declaration declaration, Void obj) {
+		return true;
+	}
+	
+	@Override
+	public Boolean visitValueDefinition(ValueDefinition valueDefinition, Void obj) {
+		return check(valueDefinition.value);
+	}
+	
+	@Override
+	public Boolean visitVariableAssignment(VariableAssignment variableAssignment, Void obj) {
+		return check(variableAssignment.identifier) && check(variableAssignment.value);
+	}
+	
+	@Override
+	public Boolean visitLeftHandIdentifier(LeftHandIdentifier leftHandIdentifier, Void obj) {
+		return true;
+	}
+	
+	@Override
+	public Boolean visitVectorLhsIdentifier(VectorLhsIdentifier vectorLhsIdentifier, Void obj) {
+		return mayFail || vectorLhsIdentifier.isInBounds() || inBounds(vectorLhsIdentifier.indexExpression, ((VectorType) vectorLhsIdentifier.getDeclaration().getType()).dimension);
+	}
+	
+	@Override
+	public Boolean visitMatrixLhsIdentifier(MatrixLhsIdentifier matrixLhsIdentifier, Void obj) {
+		MatrixType type = (MatrixType) matrixLhsIdentifier.getDeclaration().getType();
+		return mayFail || matrixLhsIdentifier.isInBounds() || inBounds(matrixLhsIdentifier.rowIndexExpression, type.rows) && inBounds(matrixLhsIdentifier.colIndexExpression, type.cols);
+	}
+	
+	@Override
+	public Boolean visitIfStatement(IfStatement ifStatement, Void obj) {
+		return check(ifStatement.condition) && check(ifStatement.thenStatement) && check(ifStatement.elseStatement);
+	}
+	
+	@Override
+	public Boolean visitReturnStatement(ReturnStatement returnStatement, Void obj) {
+		return check(returnStatement.returnValue);
+	}
+	
+	@Override
+	public Boolean visitCompoundStatement(CompoundStatement compoundStatement, Void obj) {
+		return checkAll(compoundStatement.statements);
+	}
+	
+	@Override
+	public Boolean visitSwitchStatement(SwitchStatement switchCaseStatement, Void obj) {
+		return check(switchCaseStatement.condition) && checkAll(switchCaseStatement.cases) && checkAll(switchCaseStatement.defaults);
+	}
+	
+	@Override
+	public Boolean visitSwitchSection(SwitchSection switchSection, Void obj) {
+		return check(switchSection.body);
+	}
+	
+	@Override
+	public Boolean visitIdentifierReference(IdentifierReference identifierReference, Void obj) {
+		return true;
+	}
+	
+	@Override
+	public Boolean visitSelectExpression(SelectExpression expr, Void obj) {
+		return check(expr.condition) && check(expr.trueCase) && check(expr.falseCase);
+	}
+	
+	@Override
+	public Boolean visitBinaryExpression(BinaryExpression binaryExpression, Void obj) {
+		return check(binaryExpression.leftOperand) && check(binaryExpression.rightOperand);
+	}
+	
+	@Override
+	public Boolean visitDivision(Division division, Void obj) {
+		boolean nonZero = division.rightOperand instanceof IntValue && ((IntValue) division.rightOperand).value != 0;
+		return (mayFail || nonZero || !(division.getType() instanceof IntType)) && visitBinaryExpression(division, obj);
+	}
+	
+	@Override
+	public Boolean visitUnaryExpression(UnaryExpression unaryExpression, Void obj) {
+		return check(unaryExpression.operand);
+	}
+	
+	@Override
+	public Boolean visitBoolValue(BoolValue boolValue, Void obj) {
+		return true;
+	}
+	
+	@Override
+	public Boolean visitIntValue(IntValue intValue, Void obj) {
+		return true;
+	}
+	
+	@Override
+	public Boolean visitFloatValue(FloatValue floatValue, Void obj) {
+		return true;
+	}
+	
+	@Override
+	public Boolean visitStringValue(StringValue stringValue, Void obj) {
+		return true;
+	}
+	
+	@Override
+	public Boolean visitStructureInit(StructureInit structureInit, Void obj) {
+		return checkAll(structureInit.elements);
+	}
+	
+	@Override
+	public Boolean visitElementSelect(ElementSelect elementSelect, Void obj) {
+		Type type = elementSelect.structExpression.getType();
+		int size = type instanceof VectorType ? ((VectorType) type).dimension : ((MatrixType) type).rows;
+		return (mayFail || elementSelect.isInBounds() || inBounds(elementSelect.indexExpression, size)) && check(elementSelect.indexExpression) && check(elementSelect.structExpression);
+	}
+	
+	@Override
+	public Boolean visitRecordElementSelect(RecordElementSelect recordElementSelect, Void obj) {
+		return check(recordElementSelect.recordExpression);
+	}
+	
+	@Override
+	public Boolean visitSubMatrix(SubMatrix subMatrix, Void obj) {
+		return mayFail && check(subMatrix.structExpression) && check(subMatrix.rowBaseIndexExpression) && check(subMatrix.colBaseIndexExpression);
+	}
+	
+	@Override
+	public Boolean visitSubVector(SubVector subVector, Void obj) {
+		return mayFail && check(subVector.structExpression) && check(subVector.baseIndexExpression);
+	}
+	
+	private static boolean inBounds(Expression index, int size) {
+		return index instanceof IntValue && ((IntValue) index).value >= 0 && ((IntValue) index).value < size;
+	}
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.parsing;
+
+import java.util.List;
+
+/**
+ * A perfect hash table mapping keyword spellings to their token types.
+ * <p>
+ * The hash only depends on the length and the first and last character of a spelling, so a lookup
+ * neither allocates nor scans more than one candidate. The hash parameters are searched for when the
+ * table is built, such that no two keywords collide.
+ */
+public final class KeywordTable {
+	
+	private final String[] spellings;
+	private final Token.TokenType[] types;
+	private final int mask;
+	private final int firstFactor;
+	private final int lastFactor;
+	
+	/**
+	 * @param keywords The token types to recognize, each spelled like its pattern.
+	 * @param extraSpellings Additional spellings, e.g. "true" and "false" for boolean literals.
+	 * @param extraTypes The token types of the additional spellings.
+	 */
+	public KeywordTable(List<Token.TokenType> keywords, String[] extraSpellings, Token.TokenType[] extraTypes) {
+		int count = keywords.size() + extraSpellings.length;
+		String[] words = new String[count];
+		Token.TokenType[] wordTypes = new Token.TokenType[count];
+		for(int i = 0; i < keywords.size(); i++) {
+			words[i] = keywords.get(i).pattern;
+			wordTypes[i] = keywords.get(i);
+		}
+		System.arraycopy(extraSpellings, 0, words, keywords.size(), extraSpellings.length);
+		System.arraycopy(extraTypes, 0, wordTypes, keywords.size(), extraTypes.length);
+		
+		int[] parameters = findParameters(words);
+		mask = parameters[0] - 1;
+		firstFactor = parameters[1];
+		lastFactor = parameters[2];
+		spellings = new String[parameters[0]];
+		types = new Token.TokenType[parameters[0]];
+		for(int i = 0; i < count; i++) {
+			int slot = hash(words[i], words[i].length(), mask, firstFactor, lastFactor);
+			spellings[slot] = words[i];
+			types[slot] = wordTypes[i];
+		}
+	}
+	
+	/** @return The table size and the factors of the first and last character. */
+	private static int[] findParameters(String[] words) {
+		for(int size = Integer.highestOneBit(words.length) << 1; size <= 1 << 12; size <<= 1)
+			for(int first = 1; first < 64; first++)
+				for(int last = 1; last < 64; last++)
+					if(isCollisionFree(words, size, first, last))
+						return new int[]{size, first, last};
+		throw new IllegalArgumentException("No perfect hash function found for the given keywords");
+	}
+	
+	private static boolean isCollisionFree(String[] words, int size, int first, int last) {
+		boolean[] used = new boolean[size];
+		for(String word : words) {
+			int slot = hash(word, word.length(), size - 1, first, last);
+			if(used[slot]) return false;
+			used[slot] = true;
+		}
+		return true;
+	}
+	
+	private static int hash(CharSequence spelling, int length, int mask, int first, int last) {
+		return (length + first * spelling.charAt(0) + last * spelling.charAt(length - 1)) & mask;
+	}
+	
+	/**
+	 * Looks up the given spelling without allocating.
+	 *
+	 * @param spelling A non-empty spelling.
+	 * @return The slot of the keyword, or -1 if the spelling is not a keyword.
+	 */
+	public int find(CharSequence spelling) {
+		int length = spelling.length();
+		int slot = hash(spelling, length, mask, firstFactor, lastFactor);
+		String candidate = spellings[slot];
+		if(candidate == null || candidate.length() != length) return -1;
+		for(int i = 0; i < length; i++)
+			if(candidate.charAt(i) != spelling.charAt(i)) return -1;
+		return slot;
+	}
+	
+	/** @return The token type of the keyword in the given slot. */
+	public Token.TokenType type(int slot) {
+		return types[slot];
+	}
+	
+	/** @return The shared spelling of the keyword in the given slot. */
+	String spelling(int slot) {
+		return spellings[slot];
+	}
+}
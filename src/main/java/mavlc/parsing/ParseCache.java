@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.parsing;
+
+import mavlc.services.serialization.BinarySerialization;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.module.Module;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed on-disk cache of parsed modules.
+ * <p>
+ * Entries are keyed by the SHA-256 hash of the source bytes together with a stamp of the compiler build,
+ * so a rebuilt compiler never sees the entries of another build; those are eventually evicted. Entries
+ * are written to a temporary file first and then atomically moved into place, so concurrent compiler
+ * processes sharing the directory never read partially written entries. The modification time of an
+ * entry is updated on every hit; when the directory grows beyond its maximum size, the least recently
+ * used entries are deleted.
+ * <p>
+ * Failures to read or write the cache are not reported, the caller simply parses the source again.
+ * All methods are safe to call from multiple threads.
+ */
+public class ParseCache {
+	
+	/** Environment variable overriding the default cache directory. */
+	public static final String directoryVariable = "MAVL_CACHE_DIR";
+	
+	public static final long defaultMaxSize = 256L * 1024 * 1024;
+	
+	private static final String entrySuffix = ".ast";
+	private static final String tempSuffix = ".tmp";
+	
+	/** Temporary files older than this are left over from crashed processes. */
+	private static final long staleTempFileAge = TimeUnit.HOURS.toMillis(1);
+	
+	private final Path directory;
+	private final long maxSize;
+	
+	/** Approximate size of all entries; -1 until the directory has been scanned. */
+	private final AtomicLong size = new AtomicLong(-1);
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+	
+	/**
+	 * @param directory The cache directory, created on demand
+	 * @param maxSize The size in bytes beyond which entries are evicted
+	 */
+	public ParseCache(Path directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * @return The directory named by {@value #directoryVariable}, or else {@code mavlc} in the user's cache directory
+	 */
+	public static Path defaultDirectory() {
+		String override = System.getenv(directoryVariable);
+		if(override != null && !override.isEmpty()) return Paths.get(override);
+		String cacheHome = System.getenv("XDG_CACHE_HOME");
+		if(cacheHome != null && !cacheHome.isEmpty()) return Paths.get(cacheHome, "mavlc");
+		return Paths.get(System.getProperty("user.home"), ".cache", "mavlc");
+	}
+	
+	public Path getDirectory() {
+		return directory;
+	}
+	
+	public int getHitCount() {
+		return hits.get();
+	}
+	
+	public int getMissCount() {
+		return misses.get();
+	}
+	
+	/**
+	 * @param source The source bytes
+	 * @return The module previously stored for the source, or null if there is none
+	 */
+	public Module get(byte[] source) {
+		Path entry = entryPath(source);
+		if(entry != null) {
+			try {
+				byte[] data = Files.readAllBytes(entry);
+				AstNode node = BinarySerialization.deserialize(data);
+				if(node instanceof Module) {
+					touch(entry);
+					hits.incrementAndGet();
+					return (Module) node;
+				}
+				deleteQuietly(entry);
+			} catch(NoSuchFileException ignored) {
+				// not cached yet
+			} catch(IOException | RuntimeException e) {
+				// unreadable or corrupt entry
+				deleteQuietly(entry);
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+	
+	/**
+	 * Stores the module parsed from the given source.
+	 *
+	 * @param source The source bytes
+	 * @param module The undecorated module parsed from the source
+	 */
+	public void put(byte[] source, Module module) {
+		Path entry = entryPath(source);
+		if(entry == null) return;
+		Path temp = null;
+		try {
+			if(Files.exists(entry)) {
+				touch(entry);
+				return;
+			}
+			byte[] data = BinarySerialization.serialize(module);
+			Files.createDirectories(entry.getParent());
+			temp = Files.createTempFile(entry.getParent(), null, tempSuffix);
+			Files.write(temp, data);
+			Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+			temp = null;
+			grow(data.length);
+		} catch(IOException | RuntimeException ignored) {
+			// the cache is an optimization only, the module has been parsed anyway
+		} finally {
+			if(temp != null) deleteQuietly(temp);
+		}
+	}
+	
+	/**
+	 * Deletes the least recently used entries until the cache is well below its maximum size, as well
+	 * as temporary files left over by crashed processes.
+	 */
+	public synchronized void evict() {
+		List<CachedFile> entries = new ArrayList<>();
+		long total = 0;
+		long now = System.currentTimeMillis();
+		try(Stream<Path> files = Files.find(directory, 2, (path, attributes) -> attributes.isRegularFile())) {
+			for(Path path : files.collect(Collectors.toList())) {
+				BasicFileAttributes attributes;
+				try {
+					attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				} catch(IOException e) {
+					// deleted concurrently
+					continue;
+				}
+				String name = path.getFileName().toString();
+				if(name.endsWith(tempSuffix)) {
+					if(now - attributes.lastModifiedTime().toMillis() > staleTempFileAge) deleteQuietly(path);
+				} else if(name.endsWith(entrySuffix)) {
+					entries.add(new CachedFile(path, attributes.lastModifiedTime(), attributes.size()));
+					total += attributes.size();
+				}
+			}
+		} catch(NoSuchFileException e) {
+			size.set(0);
+			return;
+		} catch(IOException | UncheckedIOException e) {
+			return;
+		}
+		
+		if(total > maxSize) {
+			entries.sort(Comparator.comparing(file -> file.lastAccess));
+			long target = maxSize / 10 * 9;
+			for(int i = 0; i < entries.size() && total > target; i++) {
+				if(deleteQuietly(entries.get(i).path))
+					total -= entries.get(i).size;
+			}
+		}
+		size.set(total);
+	}
+	
+	private static class CachedFile {
+		final Path path;
+		final FileTime lastAccess;
+		final long size;
+		
+		CachedFile(Path path, FileTime lastAccess, long size) {
+			this.path = path;
+			this.lastAccess = lastAccess;
+			this.size = size;
+		}
+	}
+	
+	private void grow(long bytes) {
+		if(size.get() < 0) evict();
+		if(size.addAndGet(bytes) > maxSize) evict();
+	}
+	
+	/** @return The path of the entry for the given source, or null if the compiler build is unknown */
+	private Path entryPath(byte[] source) {
+		byte[] stamp = CompilerStamp.value;
+		if(stamp == null) return null;
+		MessageDigest digest = sha256();
+		digest.update(stamp);
+		String key = toHex(digest.digest(source));
+		return directory.resolve(key.substring(0, 2)).resolve(key.substring(2) + entrySuffix);
+	}
+	
+	private static void touch(Path path) {
+		try {
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch(IOException ignored) {
+			// only affects the eviction order
+		}
+	}
+	
+	private static boolean deleteQuietly(Path path) {
+		try {
+			return Files.deleteIfExists(path);
+		} catch(IOException e) {
+			return false;
+		}
+	}
+	
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for(byte b : bytes) {
+			sb.append(Character.forDigit(b >> 4 & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Stamp of the running compiler build, computed once from the paths, sizes and modification times of
+	 * its class files or jar. Reading the metadata is much cheaper than hashing the contents and still
+	 * changes whenever the compiler is rebuilt. Null if the compiler was not loaded from a jar or class
+	 * directory, which disables the cache.
+	 */
+	private static class CompilerStamp {
+		static final byte[] value = compute();
+		
+		private static byte[] compute() {
+			try {
+				CodeSource codeSource = ParseCache.class.getProtectionDomain().getCodeSource();
+				if(codeSource == null || codeSource.getLocation() == null) return null;
+				Path location = Paths.get(codeSource.getLocation().toURI());
+				MessageDigest digest = sha256();
+				if(Files.isDirectory(location)) {
+					List<Path> classFiles;
+					try(Stream<Path> files = Files.walk(location)) {
+						classFiles = files.filter(p -> p.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+					}
+					for(Path classFile : classFiles)
+						update(digest, location.relativize(classFile).toString(), classFile);
+				} else {
+					update(digest, location.toString(), location);
+				}
+				return digest.digest();
+			} catch(IOException | URISyntaxException | RuntimeException e) {
+				return null;
+			}
+		}
+		
+		private static void update(MessageDigest digest, String name, Path file) throws IOException {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			String entry = name + '\0' + attributes.size() + '\0' + attributes.lastModifiedTime().toMillis() + '\n';
+			digest.update(entry.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}
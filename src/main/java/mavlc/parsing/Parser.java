@@ -36,15 +36,33 @@ import static mavlc.syntax.expression.Compare.Comparison.*;
  */
 public final class Parser {
 	
-	private final Deque<Token> tokens;
-	private Token currentToken;
+	private final TokenCursor tokens;
 	
 	/**
 	 * @param tokens A token stream that was produced by the {@link Scanner}.
 	 */
 	public Parser(Deque<Token> tokens) {
+		this((TokenSource) tokens::poll);
+	}
+	
+	/**
+	 * @param tokens A token source, e.g. a {@link Scanner}, whose tokens are consumed on demand.
+	 */
+	public Parser(TokenSource tokens) {
+		this(new TokenSourceCursor(tokens));
+	}
+	
+	/**
+	 * @param tokens A compact token stream that was produced by {@link Scanner#scanCompact()}.
+	 *               Token objects are only created to report syntax errors.
+	 */
+	public Parser(TokenStore tokens) {
+		this(tokens.cursor());
+	}
+	
+	private Parser(TokenCursor tokens) {
 		this.tokens = tokens;
-		currentToken = tokens.poll();
+		tokens.advance();
 	}
 	
 	/**
@@ -54,12 +72,12 @@ public final class Parser {
 	 * @throws SyntaxError to indicate that an unexpected token was encountered.
 	 */
 	public Module parse() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		List<Function> functions = new ArrayList<>();
 		List<RecordTypeDeclaration> records = new ArrayList<>();
-		while(currentToken.type != EOF) {
-			switch(currentToken.type) {
+		while(tokens.type() != EOF) {
+			switch(tokens.type()) {
 				case FUNCTION:
 					functions.add(parseFunction());
 					break;
@@ -67,28 +85,29 @@ public final class Parser {
 					records.add(parseRecordTypeDeclaration());
 					break;
 				default:
-					throw new SyntaxError(currentToken, FUNCTION, RECORD);
+					throw new SyntaxError(tokens.token(), FUNCTION, RECORD);
 			}
 		}
 		return new Module(location, functions, records);
 	}
 	
 	private String accept(Token.TokenType type) {
-		Token t = currentToken;
-		if(t.type != type)
-			throw new SyntaxError(t, type);
+		if(tokens.type() != type)
+			throw new SyntaxError(tokens.token(), type);
+		String spelling = tokens.spelling();
 		acceptIt();
-		return t.spelling;
+		return spelling;
 	}
 	
 	private void acceptIt() {
-		currentToken = tokens.poll();
-		if(currentToken == null || currentToken.type == ERROR)
-			throw new SyntaxError(currentToken != null ? currentToken : new Token(EOF, null, -1, -1));
+		if(!tokens.advance())
+			throw new SyntaxError(new Token(EOF, null, -1, -1));
+		if(tokens.type() == ERROR)
+			throw new SyntaxError(tokens.token());
 	}
 	
 	private Function parseFunction() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 
 		accept(FUNCTION);
 		TypeSpecifier<?> typeSpecifier = parseTypeSpecifier();
@@ -98,9 +117,9 @@ public final class Parser {
 		List<Statement> body = new ArrayList<>();
 		
 		accept(LPAREN);
-		if(currentToken.type != RPAREN) {
+		if(tokens.type() != RPAREN) {
 			parameters.add(parseFormalParameter());
-			while(currentToken.type != RPAREN) {
+			while(tokens.type() != RPAREN) {
 				accept(COMMA);
 				parameters.add(parseFormalParameter());
 			}
@@ -108,7 +127,7 @@ public final class Parser {
 		accept(RPAREN);
 		
 		accept(LBRACE);
-		while(currentToken.type != RBRACE)
+		while(tokens.type() != RBRACE)
 			body.add(parseStatement());
 		accept(RBRACE);
 		
@@ -116,7 +135,7 @@ public final class Parser {
 	}
 	
 	private FormalParameter parseFormalParameter() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		TypeSpecifier<?> typeSpecifier = parseTypeSpecifier();
 		String name = accept(ID);
@@ -125,7 +144,7 @@ public final class Parser {
 	}
 	
 	private RecordTypeDeclaration parseRecordTypeDeclaration() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		accept(RECORD);
 		String name = accept(ID);
@@ -133,7 +152,7 @@ public final class Parser {
 		List<RecordElementDeclaration> elements = new ArrayList<>();
 		// no empty records allowed
 		elements.add(parseRecordElementDeclaration());
-		while(currentToken.type != RBRACE) {
+		while(tokens.type() != RBRACE) {
 			elements.add(parseRecordElementDeclaration());
 		}
 		accept(RBRACE);
@@ -142,10 +161,10 @@ public final class Parser {
 	}
 	
 	private RecordElementDeclaration parseRecordElementDeclaration() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		boolean isVariable;
-		switch(currentToken.type) {
+		switch(tokens.type()) {
 			case VAL:
 				acceptIt();
 				isVariable = false;
@@ -155,7 +174,7 @@ public final class Parser {
 				isVariable = true;
 				break;
 			default:
-				throw new SyntaxError(currentToken, VAL, VAR);
+				throw new SyntaxError(tokens.token(), VAL, VAR);
 		}
 		
 		TypeSpecifier<?> typeSpecifier = parseTypeSpecifier();
@@ -166,10 +185,10 @@ public final class Parser {
 	}
 	
 	private IteratorDeclaration parseIteratorDeclaration() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		boolean isVariable;
-		switch(currentToken.type) {
+		switch(tokens.type()) {
 			case VAL:
 				accept(VAL);
 				isVariable = false;
@@ -179,7 +198,7 @@ public final class Parser {
 				isVariable = true;
 				break;
 			default:
-				throw new SyntaxError(currentToken, VAL, VAR);
+				throw new SyntaxError(tokens.token(), VAL, VAR);
 		}
 		TypeSpecifier<?> typeSpecifier = parseTypeSpecifier();
 		String name = accept(ID);
@@ -187,10 +206,10 @@ public final class Parser {
 	}
 	
 	private TypeSpecifier<?> parseTypeSpecifier() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		boolean vector = false;
-		switch(currentToken.type) {
+		switch(tokens.type()) {
 			case INT:
 				acceptIt();
 				return new IntTypeSpecifier(location);
@@ -217,20 +236,20 @@ public final class Parser {
 				String name = accept(ID);
 				return new RecordTypeSpecifier(location, name);
 			default:
-				throw new SyntaxError(currentToken, INT, FLOAT, BOOL, VOID, STRING, VECTOR, MATRIX, ID);
+				throw new SyntaxError(tokens.token(), INT, FLOAT, BOOL, VOID, STRING, VECTOR, MATRIX, ID);
 		}
 		
 		accept(LANGLE);
 		TypeSpecifier<?> subtype;
-		switch(currentToken.type) {
+		switch(tokens.type()) {
 			case INT:
-				subtype = new IntTypeSpecifier(currentToken.sourceLocation);
+				subtype = new IntTypeSpecifier(tokens.location());
 				break;
 			case FLOAT:
-				subtype = new FloatTypeSpecifier(currentToken.sourceLocation);
+				subtype = new FloatTypeSpecifier(tokens.location());
 				break;
 			default:
-				throw new SyntaxError(currentToken, INT, FLOAT);
+				throw new SyntaxError(tokens.token(), INT, FLOAT);
 		}
 		acceptIt();
 		accept(RANGLE);
@@ -249,7 +268,7 @@ public final class Parser {
 	}
 	
 	private Statement parseStatement() {
-		switch(currentToken.type) {
+		switch(tokens.type()) {
 			case VAL:
 				return parseValueDef();
 			case VAR:
@@ -269,12 +288,12 @@ public final class Parser {
 			case LBRACE:
 				return parseCompound();
 			default:
-				throw new SyntaxError(currentToken, VAL, VAR, RETURN, ID, FOR, FOREACH, IF, SWITCH, LBRACE);
+				throw new SyntaxError(tokens.token(), VAL, VAR, RETURN, ID, FOR, FOREACH, IF, SWITCH, LBRACE);
 		}
 	}
 	
 	private ValueDefinition parseValueDef() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		accept(VAL);
 		TypeSpecifier<?> t = parseTypeSpecifier();
@@ -287,7 +306,7 @@ public final class Parser {
 	}
 	
 	private VariableDeclaration parseVarDecl() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		accept(VAR);
 		TypeSpecifier<?> t = parseTypeSpecifier();
@@ -298,7 +317,7 @@ public final class Parser {
 	}
 	
 	private ReturnStatement parseReturn() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		accept(RETURN);
 		Expression e = parseExpr();
 		accept(SEMICOLON);
@@ -307,12 +326,12 @@ public final class Parser {
 	}
 	
 	private Statement parseAssignOrCall() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		String name = accept(ID);
 		
 		Statement s;
-		if(currentToken.type != LPAREN)
+		if(tokens.type() != LPAREN)
 			s = parseAssign(name, location);
 		else
 			s = new CallStatement(location, parseCall(name, location));
@@ -324,17 +343,17 @@ public final class Parser {
 	private VariableAssignment parseAssign(String name, SourceLocation location) {
 		LeftHandIdentifier lhi = new LeftHandIdentifier(location, name);
 		
-		if(currentToken.type == AT) {
+		if(tokens.type() == AT) {
 			acceptIt();
 			String elementName = accept(ID);
 			lhi = new RecordLhsIdentifier(location, name, elementName);
-		} else if(currentToken.type == LBRACKET) {
+		} else if(tokens.type() == LBRACKET) {
 			acceptIt();
 			Expression xIndex = parseExpr();
 			lhi = new VectorLhsIdentifier(location, name, xIndex);
 			accept(RBRACKET);
 			
-			if(currentToken.type == LBRACKET) {
+			if(tokens.type() == LBRACKET) {
 				acceptIt();
 				Expression yIndex = parseExpr();
 				lhi = new MatrixLhsIdentifier(location, name, xIndex, yIndex);
@@ -352,9 +371,9 @@ public final class Parser {
 		accept(LPAREN);
 		
 		List<Expression> actualParameters = new ArrayList<>();
-		if(currentToken.type != RPAREN) {
+		if(tokens.type() != RPAREN) {
 			actualParameters.add(parseExpr());
-			while(currentToken.type != RPAREN) {
+			while(tokens.type() != RPAREN) {
 				accept(COMMA);
 				actualParameters.add(parseExpr());
 			}
@@ -365,7 +384,7 @@ public final class Parser {
 	}
 	
 	private ForLoop parseFor() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		accept(FOR);
 		accept(LPAREN);
@@ -383,7 +402,7 @@ public final class Parser {
 	}
 	
 	private ForEachLoop parseForEach() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		accept(FOREACH);
 		accept(LPAREN);
@@ -395,13 +414,13 @@ public final class Parser {
 	}
 	
 	private IfStatement parseIf() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		accept(IF);
 		accept(LPAREN);
 		Expression test = parseExpr();
 		accept(RPAREN);
 		Statement then = parseStatement();
-		if(currentToken.type == ELSE) {
+		if(tokens.type() == ELSE) {
 			acceptIt();
 			return new IfStatement(location, test, then, parseStatement());
 		}
@@ -409,7 +428,7 @@ public final class Parser {
 	}
 	
 	private SwitchStatement parseSwitch() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		accept(SWITCH);
 		accept(LPAREN);
 		Expression condition = parseExpr();
@@ -418,13 +437,13 @@ public final class Parser {
 		
 		List<Case> cases = new ArrayList<>();
 		List<Default> defaults = new ArrayList<>();
-		while(currentToken.type != RBRACE) {
-			if(currentToken.type == CASE)
+		while(tokens.type() != RBRACE) {
+			if(tokens.type() == CASE)
 				cases.add(parseCase());
-			else if(currentToken.type == DEFAULT)
+			else if(tokens.type() == DEFAULT)
 				defaults.add(parseDefault());
 			else
-				throw new SyntaxError(currentToken, CASE, DEFAULT);
+				throw new SyntaxError(tokens.token(), CASE, DEFAULT);
 		}
 		
 		accept(RBRACE);
@@ -432,7 +451,7 @@ public final class Parser {
 	}
 	
 	private Case parseCase() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		accept(CASE);
 		Expression caseCond = parseExpr();
@@ -442,7 +461,7 @@ public final class Parser {
 	}
 	
 	private Default parseDefault() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		accept(DEFAULT);
 		accept(COLON);
@@ -450,11 +469,11 @@ public final class Parser {
 	}
 	
 	private CompoundStatement parseCompound() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		List<Statement> statements = new ArrayList<>();
 		accept(LBRACE);
-		while(currentToken.type != RBRACE)
+		while(tokens.type() != RBRACE)
 			statements.add(parseStatement());
 		accept(RBRACE);
 		
@@ -466,10 +485,10 @@ public final class Parser {
 	}
 	
 	private Expression parseSelect() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		Expression cond = parseOr();
-		if(currentToken.type == QMARK) {
+		if(tokens.type() == QMARK) {
 			acceptIt();
 			Expression trueCase = parseOr();
 			accept(COLON);
@@ -480,10 +499,10 @@ public final class Parser {
 	}
 	
 	private Expression parseOr() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		Expression x = parseAnd();
-		while(currentToken.type == OR) {
+		while(tokens.type() == OR) {
 			acceptIt();
 			x = new Or(location, x, parseAnd());
 		}
@@ -491,10 +510,10 @@ public final class Parser {
 	}
 	
 	private Expression parseAnd() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		Expression x = parseNot();
-		while(currentToken.type == AND) {
+		while(tokens.type() == AND) {
 			acceptIt();
 			x = new And(location, x, parseNot());
 		}
@@ -502,9 +521,9 @@ public final class Parser {
 	}
 	
 	private Expression parseNot() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
-		if(currentToken.type == NOT) {
+		if(tokens.type() == NOT) {
 			acceptIt();
 			return new Not(location, parseCompare());
 		}
@@ -512,14 +531,14 @@ public final class Parser {
 	}
 	
 	private Expression parseCompare() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		Expression x = parseAddSub();
 		
 		List<Token.TokenType> list = Arrays.asList(RANGLE, LANGLE, CMPLE, CMPGE, CMPEQ, CMPNE);
 		
-		while(list.contains(currentToken.type)) {
-			Token.TokenType type = currentToken.type;
+		while(list.contains(tokens.type())) {
+			Token.TokenType type = tokens.type();
 			acceptIt();
 			switch(type) {
 				case RANGLE:
@@ -547,11 +566,11 @@ public final class Parser {
 	}
 	
 	private Expression parseAddSub() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		Expression x = parseMulDiv();
-		while(currentToken.type == ADD || currentToken.type == SUB) {
-			Token.TokenType type = currentToken.type;
+		while(tokens.type() == ADD || tokens.type() == SUB) {
+			Token.TokenType type = tokens.type();
 			acceptIt();
 			if(type == ADD) {
 				x = new Addition(location, x, parseMulDiv());
@@ -563,11 +582,11 @@ public final class Parser {
 	}
 	
 	private Expression parseMulDiv() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		Expression x = parseUnaryMinus();
-		while(currentToken.type == MULT || currentToken.type == DIV) {
-			Token.TokenType type = currentToken.type;
+		while(tokens.type() == MULT || tokens.type() == DIV) {
+			Token.TokenType type = tokens.type();
 			acceptIt();
 			if(type == MULT)
 				x = new Multiplication(location, x, parseUnaryMinus());
@@ -578,9 +597,9 @@ public final class Parser {
 	}
 	
 	private Expression parseUnaryMinus() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
-		if(currentToken.type == SUB) {
+		if(tokens.type() == SUB) {
 			acceptIt();
 			return new UnaryMinus(location, parseExponentiation());
 		}
@@ -588,10 +607,10 @@ public final class Parser {
 	}
 	
 	private Expression parseExponentiation() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		Expression left = parseDotProd();
-		if(currentToken.type == EXP) {
+		if(tokens.type() == EXP) {
 			acceptIt();
 			Expression right = parseExponentiation();
 			return new Exponentiation(location, left, right);
@@ -600,10 +619,10 @@ public final class Parser {
 	}
 	
 	private Expression parseDotProd() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		Expression x = parseMatrixMul();
-		while(currentToken.type == DOTPROD) {
+		while(tokens.type() == DOTPROD) {
 			acceptIt();
 			x = new DotProduct(location, x, parseMatrixMul());
 		}
@@ -611,10 +630,10 @@ public final class Parser {
 	}
 	
 	private Expression parseMatrixMul() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		Expression x = parseTranspose();
-		while(currentToken.type == MATMULT) {
+		while(tokens.type() == MATMULT) {
 			acceptIt();
 			x = new MatrixMultiplication(location, x, parseTranspose());
 		}
@@ -622,9 +641,9 @@ public final class Parser {
 	}
 	
 	private Expression parseTranspose() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
-		if(currentToken.type == TRANSPOSE) {
+		if(tokens.type() == TRANSPOSE) {
 			acceptIt();
 			return new MatrixTranspose(location, parseDim());
 		}
@@ -632,10 +651,10 @@ public final class Parser {
 	}
 	
 	private Expression parseDim() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		Expression x = parseSubRange();
-		switch(currentToken.type) {
+		switch(tokens.type()) {
 			case ROWS:
 				acceptIt();
 				return new MatrixRows(location, x);
@@ -651,11 +670,11 @@ public final class Parser {
 	}
 	
 	private Expression parseSubRange() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		Expression x = parseElementSelect();
 		
-		if(currentToken.type == LBRACE) {
+		if(tokens.type() == LBRACE) {
 			acceptIt();
 			Expression xStartIndex = parseExpr();
 			accept(COLON);
@@ -663,7 +682,7 @@ public final class Parser {
 			accept(COLON);
 			Expression xEndIndex = parseExpr();
 			accept(RBRACE);
-			if(currentToken.type != LBRACE)
+			if(tokens.type() != LBRACE)
 				return new SubVector(location, x, xBaseIndex, xStartIndex, xEndIndex);
 			
 			accept(LBRACE);
@@ -680,11 +699,11 @@ public final class Parser {
 	}
 	
 	private Expression parseElementSelect() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		Expression x = parseRecordElementSelect();
 		
-		while(currentToken.type == LBRACKET) {
+		while(tokens.type() == LBRACKET) {
 			acceptIt();
 			Expression idx = parseExpr();
 			accept(RBRACKET);
@@ -695,11 +714,11 @@ public final class Parser {
 	}
 	
 	private Expression parseRecordElementSelect() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
 		Expression x = parseAtom();
 		
-		if(currentToken.type == AT) {
+		if(tokens.type() == AT) {
 			accept(AT);
 			String elementName = accept(ID);
 			x = new RecordElementSelect(location, x, elementName);
@@ -709,9 +728,9 @@ public final class Parser {
 	}
 	
 	private Expression parseAtom() {
-		SourceLocation location = currentToken.sourceLocation;
+		SourceLocation location = tokens.location();
 		
-		switch(currentToken.type) {
+		switch(tokens.type()) {
 			case INTLIT:
 				return new IntValue(location, parseIntLit());
 			case FLOATLIT:
@@ -723,9 +742,9 @@ public final class Parser {
 			default: /* check other cases below */
 		}
 		
-		if(currentToken.type == ID) {
+		if(tokens.type() == ID) {
 			String name = accept(ID);
-			if(currentToken.type != LPAREN) {
+			if(tokens.type() != LPAREN) {
 				return new IdentifierReference(location, name);
 				
 			} else {
@@ -733,24 +752,24 @@ public final class Parser {
 			}
 		}
 		
-		if(currentToken.type == LPAREN) {
+		if(tokens.type() == LPAREN) {
 			acceptIt();
 			Expression x = parseExpr();
 			accept(RPAREN);
 			return x;
 		}
 		
-		if(currentToken.type == AT) {
+		if(tokens.type() == AT) {
 			acceptIt();
 			String name = accept(ID);
 			return new RecordInit(location, name, parseInitializerList());
 		}
 		
-		if(currentToken.type == LBRACKET) {
+		if(tokens.type() == LBRACKET) {
 			return new StructureInit(location, parseInitializerList());
 		}
 		
-		throw new SyntaxError(currentToken, INTLIT, FLOATLIT, BOOLLIT, STRINGLIT, ID, LPAREN, LBRACKET, AT);
+		throw new SyntaxError(tokens.token(), INTLIT, FLOATLIT, BOOLLIT, STRINGLIT, ID, LPAREN, LBRACKET, AT);
 	}
 	
 	private List<Expression> parseInitializerList() {
@@ -758,7 +777,7 @@ public final class Parser {
 		
 		accept(LBRACKET);
 		elements.add(parseExpr());
-		while(currentToken.type == COMMA) {
+		while(tokens.type() == COMMA) {
 			accept(COMMA);
 			elements.add(parseExpr());
 		}
@@ -12,8 +12,13 @@
 package mavlc.parsing;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Deque;
@@ -21,26 +26,107 @@ import java.util.List;
 
 /**
  * A simple scanner for MAVL.
+ * <p>
+ * The input program is either read from a byte buffer (a memory-mapped source file or an in-memory
+ * byte array), from a character sequence or, byte by byte, from an arbitrary input stream.
+ * All sources produce exactly the same token stream.
+ * <p>
+ * Tokens are produced on demand by {@link #nextToken()}, {@link #scan()} tokenizes the whole program at once
+ * and {@link #scanCompact()} does the same into a compact {@link TokenStore}.
  */
-public final class Scanner {
+public final class Scanner implements TokenSource {
+
+	/** Source files smaller than this are read into the heap instead of being memory-mapped. */
+	private static final long mappingThreshold = 64 * 1024;
 
 	private int currentLine = 1, currentColumn = 0;
 	private int lastLine = 1, lastColumn = 0;
 	private int currentChar;
-	private StringBuilder currentSpelling;
-	private FileInputStream fileInputStream;
+	private final StringBuilder currentSpelling = new StringBuilder(16);
+
+	// exactly one of the following three sources is set
+	private final ByteBuffer byteSource;
+	private final CharSequence charSource;
+	private final InputStream streamSource;
+	private int charPosition;
+	private boolean finished;
 
 	private static final List<Token.TokenType> keywords = Arrays.asList(
 			Token.TokenType.INT, Token.TokenType.FLOAT, Token.TokenType.BOOL, Token.TokenType.VOID, Token.TokenType.STRING, Token.TokenType.MATRIX, Token.TokenType.VECTOR,
 			Token.TokenType.VAL, Token.TokenType.VAR, Token.TokenType.FOR, Token.TokenType.IF, Token.TokenType.ELSE, Token.TokenType.RETURN, Token.TokenType.FUNCTION, Token.TokenType.SWITCH, Token.TokenType.CASE, Token.TokenType.DEFAULT, Token.TokenType.FOREACH, Token.TokenType.RECORD);
 
+	private static final KeywordTable keywordTable = new KeywordTable(keywords,
+			new String[]{"true", "false"}, new Token.TokenType[]{Token.TokenType.BOOLLIT, Token.TokenType.BOOLLIT});
+
+	/** Identifier spellings of this program, shared between all tokens with the same name. */
+	private final SymbolTable symbols = new SymbolTable();
+
+	/** Spelling of the last keyword or identifier, if it has already been resolved to a shared string. */
+	private String resolvedSpelling;
+
 	/**
+	 * Creates a scanner reading from a memory-mapped view of the given file.
+	 *
 	 * @param file The input program to tokenize.
 	 * @throws IOException in case an error occurs while accessing the given file.
 	 */
 	public Scanner(File file) throws IOException {
-		fileInputStream = new FileInputStream(file);
-		currentChar = fileInputStream.read();
+		this(readFile(file), null, null);
+		currentChar = read();
+	}
+
+	/**
+	 * Creates a scanner reading the input program byte by byte from the given stream.
+	 *
+	 * @param inputStream The input program to tokenize.
+	 * @throws IOException in case an error occurs while reading from the stream.
+	 */
+	public Scanner(InputStream inputStream) throws IOException {
+		this(null, null, inputStream);
+		currentChar = read();
+	}
+
+	/**
+	 * @param source The input program to tokenize, one character per byte.
+	 */
+	public Scanner(byte[] source) {
+		this(ByteBuffer.wrap(source), null, null);
+		currentChar = readInMemory();
+	}
+
+	/**
+	 * @param source The input program to tokenize.
+	 */
+	public Scanner(CharSequence source) {
+		this(null, source, null);
+		currentChar = readInMemory();
+	}
+
+	private Scanner(ByteBuffer byteSource, CharSequence charSource, InputStream streamSource) {
+		this.byteSource = byteSource;
+		this.charSource = charSource;
+		this.streamSource = streamSource;
+	}
+
+	/**
+	 * Reads the first character of an in-memory source, which cannot fail.
+	 */
+	private int readInMemory() {
+		try {
+			return read();
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static ByteBuffer readFile(File file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size < mappingThreshold)
+				return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+			// the mapping stays valid after the channel has been closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
 	}
 
 	/**
@@ -50,13 +136,50 @@ public final class Scanner {
 	 */
 	public Deque<Token> scan() {
 		ArrayDeque<Token> result = new ArrayDeque<>();
+		for(Token token = nextToken(); token != null; token = nextToken())
+			result.add(token);
+		return result;
+	}
+
+	/**
+	 * Scans the input program into a compact token store, without creating any {@link Token} objects.
+	 *
+	 * @return A store containing the tokenized representation of the input program.
+	 */
+	public TokenStore scanCompact() {
+		TokenStore result = new TokenStore();
+		for(Token.TokenType type = scanNext(); type != null; type = scanNext())
+			result.add(type, takeSpelling(type), lastLine, lastColumn);
+		return result;
+	}
+
+	/**
+	 * Scans the next token of the input program.
+	 *
+	 * @return The next token, an EOF token at the end of the input, or null once the EOF token has been returned.
+	 */
+	@Override
+	public Token nextToken() {
+		Token.TokenType type = scanNext();
+		return type != null ? new Token(type, takeSpelling(type), lastLine, lastColumn) : null;
+	}
+
+	/**
+	 * Scans the next token, whose position is left in lastLine and lastColumn.
+	 *
+	 * @return The type of the next token, or null once the EOF token has been scanned.
+	 */
+	private Token.TokenType scanNext() {
+		if(finished)
+			return null;
+
 		while(currentChar != -1) {
 
 			/* Skip all whitespaces immediately */
 			while(currentChar == ' ' || currentChar == '\n' || currentChar == '\r' || currentChar == '\t')
 				skipIt();
 
-			currentSpelling = new StringBuilder(16);
+			currentSpelling.setLength(0);
 			lastLine = this.currentLine;
 			lastColumn = this.currentColumn;
 
@@ -89,18 +212,44 @@ public final class Scanner {
 				}
 
 				// is actually operator
-				result.add(new Token(Token.TokenType.DIV, currentSpelling.toString(), lastLine, lastColumn));
-				continue;
+				return Token.TokenType.DIV;
 			}
 
-			if(currentChar != -1) {
-				Token.TokenType type = scanToken();
-				result.add(new Token(type, currentSpelling.toString(), lastLine, lastColumn));
-			}
+			if(currentChar != -1)
+				return scanToken();
 		}
 
-		result.add(new Token(Token.TokenType.EOF, Token.TokenType.EOF.pattern, currentLine, currentColumn));
-		return result;
+		finished = true;
+		lastLine = currentLine;
+		lastColumn = currentColumn;
+		return Token.TokenType.EOF;
+	}
+
+	private String takeSpelling(Token.TokenType type) {
+		String spelling;
+		if(resolvedSpelling != null)
+			spelling = resolvedSpelling;
+		else if(hasFixedSpelling(type))
+			spelling = type.pattern;
+		else
+			spelling = currentSpelling.toString();
+		resolvedSpelling = null;
+		return spelling;
+	}
+
+	/** @return Whether all tokens of the given type are spelled like the type's pattern. */
+	private static boolean hasFixedSpelling(Token.TokenType type) {
+		switch(type) {
+			case ID:
+			case INTLIT:
+			case FLOATLIT:
+			case BOOLLIT:
+			case STRINGLIT:
+			case ERROR:
+				return false;
+			default:
+				return true;
+		}
 	}
 
 	private void takeIt() {
@@ -108,6 +257,14 @@ public final class Scanner {
 		skipIt();
 	}
 
+	private int read() throws IOException {
+		if(byteSource != null)
+			return byteSource.hasRemaining() ? byteSource.get() & 0xFF : -1;
+		if(charSource != null)
+			return charPosition < charSource.length() ? charSource.charAt(charPosition++) : -1;
+		return streamSource.read();
+	}
+
 	private void skipIt() {
 		if((char) currentChar == '\n') {
 			currentLine++;
@@ -120,7 +277,7 @@ public final class Scanner {
 		}
 		try {
 			int old = currentChar;
-			currentChar = fileInputStream.read();
+			currentChar = read();
 			if(old == -1 && currentChar == -1) {
 				throw new RuntimeException(
 						String.format("Reached EOF while scanning, Token started at line %d, column %d",
@@ -136,15 +293,13 @@ public final class Scanner {
 		while(isLetter(currentChar) || isDigit(currentChar) || currentChar == '_')
 			takeIt();
 
-		String spelling = currentSpelling.toString();
-
-		if("true".equals(spelling) || "false".equals(spelling))
-			return Token.TokenType.BOOLLIT;
-
-		for(Token.TokenType keyword : keywords)
-			if(keyword.pattern.equals(currentSpelling.toString()))
-				return keyword;
+		int keyword = keywordTable.find(currentSpelling);
+		if(keyword >= 0) {
+			resolvedSpelling = keywordTable.spelling(keyword);
+			return keywordTable.type(keyword);
+		}
 
+		resolvedSpelling = symbols.intern(currentSpelling);
 		return Token.TokenType.ID;
 	}
 
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.parsing;
+
+/**
+ * Interns identifier spellings, such that every occurrence of a name within a
+ * program shares a single {@link String} instance.
+ * <p>
+ * Spellings are looked up by their characters, a new string is only allocated
+ * the first time a name is encountered.
+ */
+final class SymbolTable {
+	
+	private String[] symbols = new String[256];
+	private int[] hashes = new int[256];
+	private int count;
+	
+	/**
+	 * @param spelling The characters of an identifier.
+	 * @return The shared string instance with the given characters.
+	 */
+	String intern(CharSequence spelling) {
+		int length = spelling.length();
+		int hash = 0;
+		for(int i = 0; i < length; i++)
+			hash = 31 * hash + spelling.charAt(i);
+		
+		int mask = symbols.length - 1;
+		for(int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			String symbol = symbols[slot];
+			if(symbol == null) {
+				symbol = spelling.toString();
+				symbols[slot] = symbol;
+				hashes[slot] = hash;
+				if(++count * 2 > symbols.length) grow();
+				return symbol;
+			}
+			if(hashes[slot] == hash && matches(symbol, spelling, length))
+				return symbol;
+		}
+	}
+	
+	/** @return The number of distinct symbols. */
+	int size() {
+		return count;
+	}
+	
+	private static boolean matches(String symbol, CharSequence spelling, int length) {
+		if(symbol.length() != length) return false;
+		for(int i = 0; i < length; i++)
+			if(symbol.charAt(i) != spelling.charAt(i)) return false;
+		return true;
+	}
+	
+	private void grow() {
+		String[] oldSymbols = symbols;
+		int[] oldHashes = hashes;
+		symbols = new String[oldSymbols.length * 2];
+		hashes = new int[oldSymbols.length * 2];
+		int mask = symbols.length - 1;
+		for(int i = 0; i < oldSymbols.length; i++) {
+			if(oldSymbols[i] == null) continue;
+			int slot = oldHashes[i] & mask;
+			while(symbols[slot] != null) slot = (slot + 1) & mask;
+			symbols[slot] = oldSymbols[i];
+			hashes[slot] = oldHashes[i];
+		}
+	}
+}
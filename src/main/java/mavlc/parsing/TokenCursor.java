@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.parsing;
+
+import mavlc.syntax.SourceLocation;
+
+/**
+ * The parser's view on its input: a position in a token stream.
+ * Implementations need not keep {@link Token} objects, they are only materialized by {@link #token()}.
+ */
+interface TokenCursor {
+	
+	/** @return The type of the current token. */
+	Token.TokenType type();
+	
+	/** @return The spelling of the current token. */
+	String spelling();
+	
+	/** @return The source location of the current token. */
+	SourceLocation location();
+	
+	/** @return The current token, e.g. for error reporting. */
+	Token token();
+	
+	/**
+	 * Moves to the next token.
+	 *
+	 * @return False if the stream is exhausted, the cursor must not be queried anymore in that case.
+	 */
+	boolean advance();
+}
@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.parsing;
+
+/**
+ * A pull-based stream of tokens, consumed by the {@link Parser}.
+ */
+@FunctionalInterface
+public interface TokenSource {
+	
+	/**
+	 * Produces the next token of the stream. The last token of a well-formed stream is an EOF token.
+	 *
+	 * @return The next token, or null if the stream is exhausted.
+	 */
+	Token nextToken();
+}
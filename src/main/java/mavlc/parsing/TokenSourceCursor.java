@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.parsing;
+
+import mavlc.syntax.SourceLocation;
+
+/**
+ * A cursor pulling one token at a time from a {@link TokenSource}.
+ * MAVL is LL(1), so the parser never needs a token beyond the current one.
+ */
+final class TokenSourceCursor implements TokenCursor {
+	
+	private final TokenSource source;
+	private Token current;
+	
+	/**
+	 * @param source The token source to read from.
+	 */
+	TokenSourceCursor(TokenSource source) {
+		this.source = source;
+	}
+	
+	@Override
+	public boolean advance() {
+		current = source.nextToken();
+		return current != null;
+	}
+	
+	@Override
+	public Token.TokenType type() {
+		return current.type;
+	}
+	
+	@Override
+	public String spelling() {
+		return current.spelling;
+	}
+	
+	@Override
+	public SourceLocation location() {
+		return current.sourceLocation;
+	}
+	
+	@Override
+	public Token token() {
+		return current;
+	}
+}
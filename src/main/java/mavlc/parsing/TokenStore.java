@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.parsing;
+
+import mavlc.syntax.SourceLocation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compact, array-based representation of a token stream.
+ * <p>
+ * Each token occupies one entry in three parallel arrays: its type ordinal, its line and column packed
+ * into a single {@code long}, and an index into a pool of distinct spellings. Tokens whose spelling
+ * always equals the pattern of their type, i.e. keywords, operators and punctuation, do not refer to
+ * the pool at all. {@link Token} objects are only created on demand by {@link #get(int)}.
+ */
+public final class TokenStore {
+	
+	private static final Token.TokenType[] tokenTypes = Token.TokenType.values();
+	
+	/** Spelling index of tokens spelled like the pattern of their type. */
+	private static final int patternSpelling = -1;
+	
+	private byte[] types;
+	private long[] positions;
+	private int[] spellingIndices;
+	private int size;
+	
+	private String[] spellings = new String[64];
+	private int spellingCount;
+	private final Map<String, Integer> spellingPool = new HashMap<>();
+	
+	public TokenStore() {
+		this(1024);
+	}
+	
+	/** @param capacity The initial number of tokens the store can hold without growing. */
+	public TokenStore(int capacity) {
+		types = new byte[capacity];
+		positions = new long[capacity];
+		spellingIndices = new int[capacity];
+	}
+	
+	/**
+	 * Appends a token to the store.
+	 *
+	 * @param type The token's type.
+	 * @param spelling The token's spelling.
+	 * @param line The line number in the source file where the token was found.
+	 * @param column The column in the line where the token starts.
+	 */
+	public void add(Token.TokenType type, String spelling, int line, int column) {
+		if(size == types.length) {
+			int capacity = Math.max(16, size * 2);
+			types = Arrays.copyOf(types, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+			spellingIndices = Arrays.copyOf(spellingIndices, capacity);
+		}
+		types[size] = (byte) type.ordinal();
+		positions[size] = pack(line, column);
+		spellingIndices[size] = type.pattern.equals(spelling) ? patternSpelling : internSpelling(spelling);
+		size++;
+	}
+	
+	private int internSpelling(String spelling) {
+		Integer index = spellingPool.get(spelling);
+		if(index != null) return index;
+		if(spellingCount == spellings.length)
+			spellings = Arrays.copyOf(spellings, spellingCount * 2);
+		spellings[spellingCount] = spelling;
+		spellingPool.put(spelling, spellingCount);
+		return spellingCount++;
+	}
+	
+	private static long pack(int line, int column) {
+		return ((long) line << 32) | (column & 0xFFFFFFFFL);
+	}
+	
+	/** @return The number of tokens in the store. */
+	public int size() {
+		return size;
+	}
+	
+	/** @return The number of distinct spellings which are not implied by the token type. */
+	public int spellingCount() {
+		return spellingCount;
+	}
+	
+	public Token.TokenType type(int index) {
+		return tokenTypes[types[checkIndex(index)]];
+	}
+	
+	public String spelling(int index) {
+		int spellingIndex = spellingIndices[checkIndex(index)];
+		return spellingIndex == patternSpelling ? type(index).pattern : spellings[spellingIndex];
+	}
+	
+	public int line(int index) {
+		return (int) (positions[checkIndex(index)] >>> 32);
+	}
+	
+	public int column(int index) {
+		return (int) positions[checkIndex(index)];
+	}
+	
+	/**
+	 * Materializes a single token.
+	 *
+	 * @param index The index of the token in the stream.
+	 * @return A new token object equal to the one added at the given index.
+	 */
+	public Token get(int index) {
+		return new Token(type(index), spelling(index), line(index), column(index));
+	}
+	
+	private int checkIndex(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Token index " + index + " out of bounds for " + size + " tokens");
+		return index;
+	}
+	
+	/** @return A cursor positioned before the first token of the store. */
+	TokenCursor cursor() {
+		return new TokenCursor() {
+			private int index = -1;
+			private SourceLocation location;
+			
+			@Override public Token.TokenType type() { return TokenStore.this.type(index); }
+			
+			@Override public String spelling() { return TokenStore.this.spelling(index); }
+			
+			@Override public SourceLocation location() {
+				// the parser queries the location of a token repeatedly, only create it once
+				if(location == null) location = new SourceLocation(line(index), column(index));
+				return location;
+			}
+			
+			@Override public Token token() { return get(index); }
+			
+			@Override public boolean advance() {
+				location = null;
+				return ++index < size;
+			}
+		};
+	}
+}
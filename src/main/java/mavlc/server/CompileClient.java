@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.server;
+
+import mavlc.Driver;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Thin client that forwards a {@link Driver} command line to a running {@link CompileServer} and
+ * streams back its output, errors and exit status. If no server is running, the command line is run
+ * by a driver in this JVM instead.<br>
+ * <br>
+ * Pass {@code --shutdown-server} as the only argument to stop the running server.
+ */
+public class CompileClient {
+	
+	/** Exit status used if the connection to the server is lost during a request. */
+	public static final int connectionLost = 2;
+	
+	private final Protocol.ServerInfo server;
+	
+	private CompileClient(Protocol.ServerInfo server) {
+		this.server = server;
+	}
+	
+	/**
+	 * @return A client for the server published in the given file, or null if no server info is available
+	 */
+	public static CompileClient connectTo(Path serverFile) {
+		Protocol.ServerInfo info = Protocol.ServerInfo.read(serverFile);
+		return info == null ? null : new CompileClient(info);
+	}
+	
+	/**
+	 * Forwards a command line to the server.
+	 *
+	 * @param args The driver command line
+	 * @param workingDirectory The directory against which the server resolves relative paths
+	 * @param out Receives the standard output of the driver
+	 * @param err Receives the error output of the driver
+	 * @return The exit status of the driver
+	 * @throws IOException If the server cannot be reached
+	 */
+	public int compile(String[] args, Path workingDirectory, OutputStream out, OutputStream err) throws IOException {
+		try(Socket socket = connect()) {
+			DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			writeHeader(request, Protocol.requestCompile);
+			request.writeUTF(workingDirectory.toAbsolutePath().toString());
+			request.writeInt(args.length);
+			for(String arg : args)
+				request.writeUTF(arg);
+			request.flush();
+			return readResponse(new DataInputStream(new BufferedInputStream(socket.getInputStream())), out, err);
+		}
+	}
+	
+	/**
+	 * Asks the server to shut down after its current request.
+	 */
+	public void shutdown() throws IOException {
+		try(Socket socket = connect()) {
+			DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			writeHeader(request, Protocol.requestShutdown);
+			request.flush();
+			readResponse(new DataInputStream(new BufferedInputStream(socket.getInputStream())), System.out, System.err);
+		}
+	}
+	
+	private Socket connect() throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port);
+		socket.setTcpNoDelay(true);
+		return socket;
+	}
+	
+	private void writeHeader(DataOutputStream request, byte kind) throws IOException {
+		request.writeInt(Protocol.version);
+		request.writeUTF(server.token);
+		request.writeByte(kind);
+	}
+	
+	private static int readResponse(DataInputStream response, OutputStream out, OutputStream err) throws IOException {
+		byte[] buffer = new byte[8192];
+		while(true) {
+			int channel;
+			try {
+				channel = response.readByte();
+			} catch(EOFException e) {
+				err.write("Connection to the compile server was lost\n".getBytes());
+				err.flush();
+				return connectionLost;
+			}
+			int length = response.readInt();
+			if(channel == Protocol.channelExit) {
+				out.flush();
+				err.flush();
+				return length;
+			}
+			OutputStream target = channel == Protocol.channelErr ? err : out;
+			while(length > 0) {
+				int read = response.read(buffer, 0, Math.min(length, buffer.length));
+				if(read < 0) throw new EOFException();
+				target.write(buffer, 0, read);
+				length -= read;
+			}
+		}
+	}
+	
+	public static void main(String[] args) {
+		CompileClient client = connectTo(Protocol.defaultServerFile());
+		
+		if(args.length == 1 && args[0].equals("--shutdown-server")) {
+			if(client == null) {
+				System.err.println("No compile server is running");
+				System.exit(1);
+			}
+			try {
+				client.shutdown();
+			} catch(IOException e) {
+				System.err.println("Failed to reach the compile server: " + e.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
+		
+		int status;
+		if(client == null) {
+			status = Driver.run(args, Paths.get(""));
+		} else {
+			try {
+				status = client.compile(args, Paths.get(""), System.out, System.err);
+			} catch(ConnectException e) {
+				// stale server file, e.g. the server was killed
+				status = Driver.run(args, Paths.get(""));
+			} catch(IOException e) {
+				System.err.println("Failed to reach the compile server: " + e.getMessage());
+				status = connectionLost;
+			}
+		}
+		if(status != 0)
+			System.exit(status);
+	}
+}
@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.server;
+
+import mavlc.Driver;
+import mavlc.context_analysis.AnalysisCache;
+import mavlc.context_analysis.ContextualAnalysis;
+import mavlc.context_analysis.ModuleEnvironment;
+import mavlc.parsing.Parser;
+import mavlc.parsing.Scanner;
+import mavlc.services.serialization.XmlSerialization;
+import mavlc.services.visualization.Visualizer;
+import mavlc.syntax.module.Module;
+import mavlc.util.Ansi;
+import org.apache.commons.cli.*;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Long-running compiler daemon. Compile requests forwarded by the {@link CompileClient} are run by the
+ * {@link Driver} inside this JVM, so they reuse the JIT-compiled compiler, the loaded classes and the
+ * shared tables (e.g. the XStream instance and the runtime function declarations).<br>
+ * <br>
+ * The server only listens on the loopback interface. Its port and a random access token are published
+ * in a file readable only by the current user; requests without the token are rejected. Requests are
+ * handled one at a time because the driver redirects the global output streams; a request with multiple
+ * input files is still compiled concurrently by the driver itself. With incremental analysis enabled, the
+ * server keeps the analysis results of recently compiled files and only re-checks the functions that changed.
+ */
+public class CompileServer {
+	
+	private static final String warmUpSource =
+			"function int square(int x) {\n" +
+			"\treturn x * x;\n" +
+			"}\n" +
+			"\n" +
+			"function void main() {\n" +
+			"\tval int a = 3;\n" +
+			"\tvar int b;\n" +
+			"\tb = square(a) + 2;\n" +
+			"}\n";
+	
+	/** Maximum number of source files whose analysis results are kept for incremental analysis. */
+	private static final int maxCachedAnalyses = 256;
+	
+	private final ServerSocket serverSocket;
+	private final Path serverFile;
+	private final String token;
+	private final boolean verbose;
+	
+	private int requestTimeout = 10_000;
+	private volatile boolean running = true;
+	
+	private Map<Path, AnalysisCache> analysisCaches;
+	
+	/**
+	 * @param port The loopback port to listen on, or 0 to pick a free port
+	 * @param serverFile The file in which port and access token are published
+	 * @param idleTimeout Time in milliseconds after which an idle server shuts down, or 0 to run until shut down
+	 * @param verbose Whether to log requests to stdout
+	 */
+	public CompileServer(int port, Path serverFile, int idleTimeout, boolean verbose) throws IOException {
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.serverSocket.setSoTimeout(idleTimeout);
+		this.serverFile = serverFile;
+		this.verbose = verbose;
+		
+		byte[] secret = new byte[24];
+		new SecureRandom().nextBytes(secret);
+		this.token = Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+	}
+	
+	/**
+	 * Enables or disables incremental analysis. If enabled, the analysis results of the most recently
+	 * compiled source files are kept, and unchanged functions are not checked again on the next request.
+	 */
+	public void setIncrementalAnalysis(boolean enabled) {
+		analysisCaches = !enabled ? null : new LinkedHashMap<Path, AnalysisCache>(16, 0.75f, true) {
+			private static final long serialVersionUID = -2461178437195836519L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Path, AnalysisCache> eldest) {
+				return size() > maxCachedAnalyses;
+			}
+		};
+	}
+	
+	private AnalysisCache analysisCache(Path sourcePath) {
+		synchronized(analysisCaches) {
+			return analysisCaches.computeIfAbsent(sourcePath.toAbsolutePath().normalize(), path -> new AnalysisCache());
+		}
+	}
+	
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * @param requestTimeout Time in milliseconds a client may stay silent while sending its request before the connection is closed
+	 */
+	public void setRequestTimeout(int requestTimeout) {
+		this.requestTimeout = requestTimeout;
+	}
+	
+	/**
+	 * Publishes the server info and handles requests until the server is shut down or the idle timeout expires.
+	 */
+	public void serve() throws IOException {
+		new Protocol.ServerInfo(getPort(), token).write(serverFile);
+		if(verbose) System.out.println("mavlc server listening on port " + getPort());
+		try {
+			while(running) {
+				Socket accepted;
+				try {
+					accepted = serverSocket.accept();
+				} catch(SocketTimeoutException e) {
+					if(verbose) System.out.println("Idle timeout expired");
+					running = false;
+					continue;
+				} catch(IOException e) {
+					if(running && verbose) System.out.println("Accept failed: " + e.getMessage());
+					continue;
+				}
+				// a client that stops sending must not block the server, which handles one request at a time
+				try(Socket socket = accepted) {
+					socket.setSoTimeout(requestTimeout);
+					handle(socket);
+				} catch(SocketTimeoutException e) {
+					if(verbose) System.out.println("Request timed out");
+				} catch(IOException e) {
+					if(running && verbose) System.out.println("Request failed: " + e.getMessage());
+				}
+			}
+		} finally {
+			serverSocket.close();
+			// only remove the server file if it still belongs to this server
+			Protocol.ServerInfo published = Protocol.ServerInfo.read(serverFile);
+			if(published != null && token.equals(published.token))
+				Files.deleteIfExists(serverFile);
+		}
+	}
+	
+	/**
+	 * Stops the server after the current request.
+	 */
+	public void shutdown() {
+		running = false;
+		try {
+			serverSocket.close();
+		} catch(IOException ignored) {
+		}
+	}
+	
+	private void handle(Socket socket) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		
+		if(in.readInt() != Protocol.version) return;
+		byte[] clientToken = in.readUTF().getBytes(StandardCharsets.UTF_8);
+		if(!MessageDigest.isEqual(clientToken, token.getBytes(StandardCharsets.UTF_8))) return;
+		
+		byte request = in.readByte();
+		if(request == Protocol.requestShutdown) {
+			if(verbose) System.out.println("Shutdown requested");
+			running = false;
+			out.writeByte(Protocol.channelExit);
+			out.writeInt(0);
+			out.flush();
+			return;
+		}
+		if(request != Protocol.requestCompile) return;
+		
+		Path workingDirectory = Paths.get(in.readUTF());
+		String[] args = new String[in.readInt()];
+		for(int i = 0; i < args.length; i++)
+			args[i] = in.readUTF();
+		
+		long start = System.nanoTime();
+		int status = compile(args, workingDirectory, out, analysisCaches == null ? null : this::analysisCache);
+		if(verbose) System.out.printf("Handled request %s in %.3f ms%n", String.join(" ", args), (System.nanoTime() - start) / 1e6);
+		
+		synchronized(out) {
+			out.writeByte(Protocol.channelExit);
+			out.writeInt(status);
+			out.flush();
+		}
+	}
+	
+	private static int compile(String[] args, Path workingDirectory, DataOutputStream out, AnalysisCache.Provider analysisCaches) {
+		PrintStream stdout = System.out;
+		PrintStream stderr = System.err;
+		PrintStream clientOut = new PrintStream(new Protocol.FrameOutputStream(out, Protocol.channelOut), true, StandardCharsets.UTF_8);
+		PrintStream clientErr = new PrintStream(new Protocol.FrameOutputStream(out, Protocol.channelErr), true, StandardCharsets.UTF_8);
+		System.setOut(clientOut);
+		System.setErr(clientErr);
+		try {
+			return Driver.run(args, workingDirectory, analysisCaches);
+		} finally {
+			clientOut.flush();
+			clientErr.flush();
+			System.setOut(stdout);
+			System.setErr(stderr);
+		}
+	}
+	
+	/**
+	 * Loads and JIT-compiles the hot paths of the compiler before the first request arrives.
+	 * Failures are ignored, since they only affect the latency of the first requests.
+	 */
+	public static void warmUp(int iterations) {
+		for(int i = 0; i < iterations; i++) {
+			Module module;
+			try {
+				module = new Parser(new Scanner(warmUpSource)).parse();
+			} catch(RuntimeException e) {
+				return;
+			}
+			try {
+				if(i == 0) XmlSerialization.serialize(module);
+				module.accept(new ContextualAnalysis(new ModuleEnvironment()));
+				new Visualizer().buildVisualGraph(module, true);
+			} catch(RuntimeException ignored) {
+			}
+		}
+	}
+	
+	public static void main(String[] args) {
+		Options options = new Options();
+		options.addOption("h", "help", false, "Print this help text");
+		options.addOption("q", "quiet", false, "Do not log requests");
+		options.addOption(Option.builder("p").longOpt("port").hasArg(true).argName("port")
+				.desc("Loopback port to listen on (default: any free port)").build());
+		options.addOption(Option.builder("f").longOpt("server-file").hasArg(true).argName("path")
+				.desc("File in which port and access token are published (default: ~/.mavlc/server.properties or $" + Protocol.serverFileVariable + ")").build());
+		options.addOption("i", "incremental", false, "Reuse the analysis of unchanged functions from previous requests for the same file");
+		options.addOption(Option.builder("t").longOpt("idle-timeout").hasArg(true).argName("minutes")
+				.desc("Shut down after the given number of minutes without requests (default: never)").build());
+		
+		try {
+			CommandLine cmd = new DefaultParser().parse(options, args);
+			if(cmd.hasOption("help")) {
+				new HelpFormatter().printHelp("mavlc-server", options);
+				return;
+			}
+			int port = Integer.parseInt(cmd.getOptionValue("port", "0"));
+			int idleTimeout = Integer.parseInt(cmd.getOptionValue("idle-timeout", "0")) * 60_000;
+			Path serverFile = cmd.hasOption("server-file") ? Paths.get(cmd.getOptionValue("server-file")) : Protocol.defaultServerFile();
+			
+			CompileServer server = new CompileServer(port, serverFile, idleTimeout, !cmd.hasOption("quiet"));
+			server.setIncrementalAnalysis(cmd.hasOption("incremental"));
+			warmUp(200);
+			server.serve();
+		} catch(ParseException | NumberFormatException e) {
+			System.err.println(Ansi.red + "Invalid arguments: " + e.getMessage() + Ansi.reset);
+			System.exit(1);
+		} catch(IOException e) {
+			System.err.println(Ansi.red + "Failed to start the compile server: " + e.getMessage() + Ansi.reset);
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.server;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+
+/**
+ * Wire format shared by the {@link CompileServer} and the {@link CompileClient}.<br>
+ * <br>
+ * A request starts with the protocol version, the access token of the server and the request kind.
+ * A compile request continues with the working directory of the client and the command line arguments.
+ * The server answers with a sequence of frames, each starting with a channel byte. Output frames carry
+ * a length-prefixed chunk of stdout or stderr, the final exit frame carries the exit status.
+ */
+final class Protocol {
+	private Protocol() { }
+	
+	static final int version = 1;
+	
+	static final byte requestCompile = 1;
+	static final byte requestShutdown = 2;
+	
+	static final byte channelOut = 1;
+	static final byte channelErr = 2;
+	static final byte channelExit = 3;
+	
+	/** Environment variable to override the location of the server info file. */
+	static final String serverFileVariable = "MAVL_SERVER_FILE";
+	
+	static Path defaultServerFile() {
+		String override = System.getenv(serverFileVariable);
+		if(override != null) return Paths.get(override);
+		return Paths.get(System.getProperty("user.home"), ".mavlc", "server.properties");
+	}
+	
+	/**
+	 * Connection details published by a running server.
+	 */
+	static final class ServerInfo {
+		final int port;
+		final String token;
+		
+		ServerInfo(int port, String token) {
+			this.port = port;
+			this.token = token;
+		}
+		
+		/**
+		 * @return The server info stored in the given file, or null if no server info is available
+		 */
+		static ServerInfo read(Path file) {
+			if(!Files.isRegularFile(file)) return null;
+			Properties properties = new Properties();
+			try(Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+				properties.load(reader);
+				return new ServerInfo(Integer.parseInt(properties.getProperty("port")), properties.getProperty("token"));
+			} catch(IOException | RuntimeException e) {
+				return null;
+			}
+		}
+		
+		/**
+		 * Writes the server info atomically, readable only by the current user where the file system supports it.
+		 */
+		void write(Path file) throws IOException {
+			Path directory = file.toAbsolutePath().getParent();
+			Files.createDirectories(directory);
+			Path temp = Files.createTempFile(directory, "server", ".tmp");
+			try {
+				Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-------"));
+			} catch(UnsupportedOperationException ignored) {
+			}
+			Properties properties = new Properties();
+			properties.setProperty("port", Integer.toString(port));
+			properties.setProperty("token", token);
+			try(Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				properties.store(writer, "mavlc compile server");
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+	
+	/**
+	 * Output stream that wraps everything written to it into frames of the given channel.
+	 * Frames of different channels may be written concurrently.
+	 */
+	static final class FrameOutputStream extends OutputStream {
+		private final DataOutputStream out;
+		private final byte channel;
+		
+		FrameOutputStream(DataOutputStream out, byte channel) {
+			this.out = out;
+			this.channel = channel;
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[]{(byte) b}, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if(len == 0) return;
+			synchronized(out) {
+				out.writeByte(channel);
+				out.writeInt(len);
+				out.write(b, off, len);
+			}
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			synchronized(out) {
+				out.flush();
+			}
+		}
+	}
+}
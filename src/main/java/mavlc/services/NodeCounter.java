@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.services;
+
+import mavlc.syntax.AstNode;
+import mavlc.syntax.AstNodeBaseVisitor;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.module.Module;
+import mavlc.syntax.record.RecordTypeDeclaration;
+import mavlc.syntax.statement.*;
+import mavlc.syntax.type.MatrixTypeSpecifier;
+import mavlc.syntax.type.VectorTypeSpecifier;
+
+import java.util.List;
+
+/**
+ * Counts the nodes of a syntax tree. Declarations referenced from decorations are not followed,
+ * so the count is the same for the undecorated and the decorated tree.
+ */
+public final class NodeCounter extends AstNodeBaseVisitor<Void, Void> {
+	
+	private long count;
+	
+	private NodeCounter() {
+	}
+	
+	/**
+	 * @param node The root of the tree, may be null
+	 * @return The number of nodes in the tree
+	 */
+	public static long count(AstNode node) {
+		NodeCounter counter = new NodeCounter();
+		counter.add(node);
+		return counter.count;
+	}
+	
+	private void add(AstNode node) {
+		if(node != null) node.accept(this);
+	}
+	
+	private void addAll(List<? extends AstNode> nodes) {
+		for(AstNode node : nodes) add(node);
+	}
+	
+	@Override
+	protected Void defaultOperation(AstNode node, Void obj) {
+		count++;
+		return null;
+	}
+	
+	@Override
+	public Void visitModule(Module module, Void obj) {
+		count++;
+		addAll(module.records);
+		addAll(module.functions);
+		return null;
+	}
+	
+	@Override
+	public Void visitFunction(Function function, Void obj) {
+		count++;
+		add(function.returnTypeSpecifier);
+		addAll(function.parameters);
+		addAll(function.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordTypeDeclaration(RecordTypeDeclaration recordTypeDeclaration, Void obj) {
+		count++;
+		addAll(recordTypeDeclaration.elements);
+		return null;
+	}
+	
+	@Override
+	public Void visitVectorTypeSpecifier(VectorTypeSpecifier vectorTypeSpecifier, Void obj) {
+		count++;
+		add(vectorTypeSpecifier.elementTypeSpecifier);
+		add(vectorTypeSpecifier.dimensionExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixTypeSpecifier(MatrixTypeSpecifier matrixTypeSpecifier, Void obj) {
+		count++;
+		add(matrixTypeSpecifier.elementTypeSpecifier);
+		add(matrixTypeSpecifier.rowsExpression);
+		add(matrixTypeSpecifier.colsExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitDeclaration(Declaration declaration, Void obj) {
+		count++;
+		add(declaration.typeSpecifier);
+		return null;
+	}
+	
+	@Override
+	public Void visitValueDefinition(ValueDefinition valueDefinition, Void obj) {
+		visitDeclaration(valueDefinition, obj);
+		add(valueDefinition.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitVariableAssignment(VariableAssignment variableAssignment, Void obj) {
+		count++;
+		add(variableAssignment.identifier);
+		add(variableAssignment.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixLhsIdentifier(MatrixLhsIdentifier matrixLhsIdentifier, Void obj) {
+		count++;
+		add(matrixLhsIdentifier.rowIndexExpression);
+		add(matrixLhsIdentifier.colIndexExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitVectorLhsIdentifier(VectorLhsIdentifier vectorLhsIdentifier, Void obj) {
+		count++;
+		add(vectorLhsIdentifier.indexExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitForLoop(ForLoop forLoop, Void obj) {
+		count++;
+		add(forLoop.initExpression);
+		add(forLoop.loopCondition);
+		add(forLoop.incrExpression);
+		add(forLoop.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitForEachLoop(ForEachLoop forEachLoop, Void obj) {
+		count++;
+		add(forEachLoop.iteratorDeclaration);
+		add(forEachLoop.structExpression);
+		add(forEachLoop.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitIfStatement(IfStatement ifStatement, Void obj) {
+		count++;
+		add(ifStatement.condition);
+		add(ifStatement.thenStatement);
+		add(ifStatement.elseStatement);
+		return null;
+	}
+	
+	@Override
+	public Void visitCallStatement(CallStatement callStatement, Void obj) {
+		count++;
+		add(callStatement.callExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitReturnStatement(ReturnStatement returnStatement, Void obj) {
+		count++;
+		add(returnStatement.returnValue);
+		return null;
+	}
+	
+	@Override
+	public Void visitCompoundStatement(CompoundStatement compoundStatement, Void obj) {
+		count++;
+		addAll(compoundStatement.statements);
+		return null;
+	}
+	
+	@Override
+	public Void visitSwitchStatement(SwitchStatement switchStatement, Void obj) {
+		count++;
+		add(switchStatement.condition);
+		addAll(switchStatement.cases);
+		addAll(switchStatement.defaults);
+		return null;
+	}
+	
+	@Override
+	public Void visitCase(Case aCase, Void obj) {
+		count++;
+		add(aCase.conditionExpression);
+		add(aCase.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitDefault(Default defCase, Void obj) {
+		count++;
+		add(defCase.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitSelectExpression(SelectExpression expr, Void obj) {
+		count++;
+		add(expr.condition);
+		add(expr.trueCase);
+		add(expr.falseCase);
+		return null;
+	}
+	
+	@Override
+	public Void visitBinaryExpression(BinaryExpression binaryExpression, Void obj) {
+		count++;
+		add(binaryExpression.leftOperand);
+		add(binaryExpression.rightOperand);
+		return null;
+	}
+	
+	@Override
+	public Void visitUnaryExpression(UnaryExpression unaryExpression, Void obj) {
+		count++;
+		add(unaryExpression.operand);
+		return null;
+	}
+	
+	@Override
+	public Void visitStructureInit(StructureInit structureInit, Void obj) {
+		count++;
+		addAll(structureInit.elements);
+		return null;
+	}
+	
+	@Override
+	public Void visitCallExpression(CallExpression callExpression, Void obj) {
+		count++;
+		addAll(callExpression.actualParameters);
+		return null;
+	}
+	
+	@Override
+	public Void visitElementSelect(ElementSelect elementSelect, Void obj) {
+		count++;
+		add(elementSelect.structExpression);
+		add(elementSelect.indexExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordElementSelect(RecordElementSelect recordElementSelect, Void obj) {
+		count++;
+		add(recordElementSelect.recordExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitSubMatrix(SubMatrix subMatrix, Void obj) {
+		count++;
+		add(subMatrix.structExpression);
+		add(subMatrix.rowBaseIndexExpression);
+		add(subMatrix.rowStartOffsetExpression);
+		add(subMatrix.rowEndOffsetExpression);
+		add(subMatrix.colBaseIndexExpression);
+		add(subMatrix.colStartOffsetExpression);
+		add(subMatrix.colEndOffsetExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitSubVector(SubVector subVector, Void obj) {
+		count++;
+		add(subVector.structExpression);
+		add(subVector.baseIndexExpression);
+		add(subVector.startOffsetExpression);
+		add(subVector.endOffsetExpression);
+		return null;
+	}
+}
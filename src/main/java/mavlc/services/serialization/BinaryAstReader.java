@@ -0,0 +1,568 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.services.serialization;
+
+import mavlc.context_analysis.RuntimeFunctions;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.SourceLocation;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.function.FormalParameter;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.module.Module;
+import mavlc.syntax.record.RecordElementDeclaration;
+import mavlc.syntax.record.RecordTypeDeclaration;
+import mavlc.syntax.statement.*;
+import mavlc.syntax.type.*;
+import mavlc.type.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static mavlc.services.serialization.BinaryFormat.*;
+
+/**
+ * Reads an AST written by the {@link BinaryAstWriter}. Nodes are constructed bottom-up, so references to
+ * functions that are still being read (i.e. recursive calls) are resolved once the whole tree has been read.
+ */
+class BinaryAstReader {
+	
+	private static final Compare.Comparison[] comparisons = Compare.Comparison.values();
+	
+	private final byte[] data;
+	private int position;
+	
+	/** Nodes by their number; null while a node is still being read. */
+	private final List<AstNode> nodes = new ArrayList<>();
+	private final List<Type> types = new ArrayList<>();
+	private final List<String> strings = new ArrayList<>();
+	private final List<PendingReference<?>> pendingReferences = new ArrayList<>();
+	
+	private int lastLine;
+	
+	private static class PendingReference<T extends AstNode> {
+		final int id;
+		final Class<T> nodeClass;
+		final Consumer<T> setter;
+		
+		PendingReference(int id, Class<T> nodeClass, Consumer<T> setter) {
+			this.id = id;
+			this.nodeClass = nodeClass;
+			this.setter = setter;
+		}
+	}
+	
+	BinaryAstReader(byte[] data) {
+		this.data = data;
+	}
+	
+	AstNode read() throws IOException {
+		for(byte b : magic)
+			if(readByte() != b) throw new StreamCorruptedException("Not a serialized MAVL syntax tree");
+		int dataVersion = readVarInt();
+		if(dataVersion != version)
+			throw new StreamCorruptedException("Unsupported format version " + dataVersion + ", expected " + version);
+		
+		AstNode root = readNode();
+		if(position != data.length)
+			throw new StreamCorruptedException("Unexpected data after the end of the tree");
+		for(PendingReference<?> reference : pendingReferences)
+			resolve(reference);
+		return root;
+	}
+	
+	private <T extends AstNode> void resolve(PendingReference<T> reference) throws IOException {
+		reference.setter.accept(cast(reference.nodeClass, nodes.get(reference.id)));
+	}
+	
+	private int readByte() throws IOException {
+		if(position >= data.length) throw new EOFException("Unexpected end of serialized tree");
+		return data[position++];
+	}
+	
+	private int readVarInt() throws IOException {
+		int value = 0;
+		for(int shift = 0; shift < 32; shift += 7) {
+			int b = readByte();
+			value |= (b & 0x7f) << shift;
+			if((b & 0x80) == 0) return value;
+		}
+		throw new StreamCorruptedException("Malformed variable-length integer");
+	}
+	
+	private long readVarLong() throws IOException {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			value |= (long) (b & 0x7f) << shift;
+			if((b & 0x80) == 0) return value;
+		}
+		throw new StreamCorruptedException("Malformed variable-length integer");
+	}
+	
+	private int readSignedVarInt() throws IOException {
+		int value = readVarInt();
+		return value >>> 1 ^ -(value & 1);
+	}
+	
+	private boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+	
+	/** @return The decoded value, or null if the decoration was not set. */
+	private Integer readOptionalInt() throws IOException {
+		long value = readVarLong();
+		if(value == 0) return null;
+		int zigZag = (int) (value - 1);
+		return zigZag >>> 1 ^ -(zigZag & 1);
+	}
+	
+	private int readCount() throws IOException {
+		int count = readVarInt();
+		// every element occupies at least one byte
+		if(count < 0 || count > data.length - position)
+			throw new StreamCorruptedException("Invalid element count " + count);
+		return count;
+	}
+	
+	private String readString() throws IOException {
+		int index = readVarInt();
+		if(index == stringNull) return null;
+		if(index == stringNew) {
+			int length = readCount();
+			String value = new String(data, position, length, StandardCharsets.UTF_8);
+			position += length;
+			strings.add(value);
+			return value;
+		}
+		index -= stringIndexBase;
+		if(index < 0 || index >= strings.size())
+			throw new StreamCorruptedException("Invalid string index " + index);
+		return strings.get(index);
+	}
+	
+	private SourceLocation readLocation() throws IOException {
+		int line = lastLine + readSignedVarInt();
+		int column = readVarInt() - 1;
+		lastLine = line;
+		if(line == -1 && column == -1) return SourceLocation.unknown;
+		return new SourceLocation(line, column);
+	}
+	
+	private static <T> T cast(Class<T> expectedClass, Object value) throws StreamCorruptedException {
+		if(value != null && !expectedClass.isInstance(value))
+			throw new StreamCorruptedException("Expected " + expectedClass.getSimpleName() + " but got " + value.getClass().getSimpleName());
+		return expectedClass.cast(value);
+	}
+	
+	private int reserveId() {
+		nodes.add(null);
+		return nodes.size() - 1;
+	}
+	
+	private <T extends AstNode> T register(int id, T node) {
+		nodes.set(id, node);
+		return node;
+	}
+	
+	private AstNode referencedNode(int id) throws IOException {
+		if(id < 0 || id >= nodes.size())
+			throw new StreamCorruptedException("Invalid node reference " + id);
+		return nodes.get(id);
+	}
+	
+	private <T extends AstNode> T readNode(Class<T> nodeClass) throws IOException {
+		return cast(nodeClass, readNode());
+	}
+	
+	private AstNode readNode() throws IOException {
+		int tag = readByte();
+		if(tag == tagReference) {
+			AstNode node = referencedNode(readVarInt());
+			if(node == null) throw new StreamCorruptedException("Reference to a node that is not completely read yet");
+			return node;
+		}
+		return readNode(tag);
+	}
+	
+	/** Reads a decoration referring to another node, which might not be completely read yet. */
+	private <T extends AstNode> void readReference(Class<T> nodeClass, Consumer<T> setter) throws IOException {
+		int tag = readByte();
+		if(tag == tagReference) {
+			int id = readVarInt();
+			AstNode node = referencedNode(id);
+			if(node == null)
+				pendingReferences.add(new PendingReference<>(id, nodeClass, setter));
+			else
+				setter.accept(cast(nodeClass, node));
+			return;
+		}
+		T node = cast(nodeClass, readNode(tag));
+		if(node != null) setter.accept(node);
+	}
+	
+	private <T extends AstNode> List<T> readNodes(Class<T> nodeClass) throws IOException {
+		int count = readCount();
+		List<T> list = new ArrayList<>(count);
+		for(int i = 0; i < count; i++)
+			list.add(readNode(nodeClass));
+		return list;
+	}
+	
+	private Type readType() throws IOException {
+		int tag = readByte();
+		Type type;
+		switch(tag) {
+			case typeNull: return null;
+			case typeInt: return IntType.instance;
+			case typeFloat: return FloatType.instance;
+			case typeBool: return BoolType.instance;
+			case typeString: return StringType.instance;
+			case typeVoid: return VoidType.instance;
+			case typeReference: {
+				int id = readVarInt();
+				if(id < 0 || id >= types.size()) throw new StreamCorruptedException("Invalid type reference " + id);
+				return types.get(id);
+			}
+			case typeVector: {
+				NumericType elementType = cast(NumericType.class, readType());
+				type = new VectorType(elementType, readVarInt());
+				break;
+			}
+			case typeMatrix: {
+				NumericType elementType = cast(NumericType.class, readType());
+				int rows = readVarInt();
+				type = new MatrixType(elementType, rows, readVarInt());
+				break;
+			}
+			case typeRecord: {
+				String name = readString();
+				type = new RecordType(name, readNode(RecordTypeDeclaration.class));
+				break;
+			}
+			default:
+				throw new StreamCorruptedException("Invalid type tag " + tag);
+		}
+		types.add(type);
+		return type;
+	}
+	
+	private void readExpressionType(Expression expression) throws IOException {
+		Type type = readType();
+		if(type != null) expression.setType(type);
+	}
+	
+	private <T extends TypeSpecifier<?>> T readSpecifierType(T typeSpecifier) throws IOException {
+		Type type = readType();
+		if(type != null) typeSpecifier.setType(type);
+		return typeSpecifier;
+	}
+	
+	private <T extends Declaration> T readDeclarationDecorations(int id, T declaration) throws IOException {
+		register(id, declaration);
+		Type type = readType();
+		if(type != null) declaration.setType(type);
+		Integer localBaseOffset = readOptionalInt();
+		if(localBaseOffset != null) declaration.setLocalBaseOffset(localBaseOffset);
+		return declaration;
+	}
+	
+	private <T extends LeftHandIdentifier> T readLhsDecorations(T identifier) throws IOException {
+		readReference(Declaration.class, identifier::setDeclaration);
+		return identifier;
+	}
+	
+	private <T extends Expression> T readDecorations(T expression) throws IOException {
+		readExpressionType(expression);
+		return expression;
+	}
+	
+	private Function readFunction(SourceLocation location, int id) throws IOException {
+		String name = readString();
+		TypeSpecifier<?> returnTypeSpecifier = readNode(TypeSpecifier.class);
+		List<FormalParameter> parameters = readNodes(FormalParameter.class);
+		List<Statement> body = readNodes(Statement.class);
+		Function function = register(id, new Function(location, name, returnTypeSpecifier, parameters, body));
+		Type returnType = readType();
+		if(returnType != null) function.setReturnType(returnType);
+		Integer codeBaseOffset = readOptionalInt();
+		if(codeBaseOffset != null) function.setCodeBaseOffset(codeBaseOffset);
+		return function;
+	}
+	
+	private AstNode readNode(int tag) throws IOException {
+		if(tag == tagNull) return null;
+		if(tag == tagRuntimeFunction) {
+			String name = readString();
+			Function function = RuntimeFunctions.getRuntimeFunctions().get(name);
+			if(function == null) throw new StreamCorruptedException("Unknown runtime function " + name);
+			return function;
+		}
+		
+		SourceLocation location = readLocation();
+		switch(tag) {
+			case tagModule: {
+				List<RecordTypeDeclaration> records = readNodes(RecordTypeDeclaration.class);
+				int count = readCount();
+				int firstId = nodes.size();
+				for(int i = 0; i < count; i++)
+					reserveId();
+				List<Function> functions = new ArrayList<>(count);
+				for(int i = 0; i < count; i++) {
+					if(readByte() != tagFunction) throw new StreamCorruptedException("Expected a function");
+					functions.add(readFunction(readLocation(), firstId + i));
+				}
+				return new Module(location, functions, records);
+			}
+			case tagFunction:
+				return readFunction(location, reserveId());
+			case tagFormalParameter: {
+				int id = reserveId();
+				String name = readString();
+				return readDeclarationDecorations(id, new FormalParameter(location, name, readNode(TypeSpecifier.class)));
+			}
+			case tagRecordTypeDeclaration: {
+				int id = reserveId();
+				String name = readString();
+				return register(id, new RecordTypeDeclaration(location, name, readNodes(RecordElementDeclaration.class)));
+			}
+			case tagRecordElementDeclaration: {
+				int id = reserveId();
+				boolean isVariable = readBoolean();
+				TypeSpecifier<?> typeSpecifier = readNode(TypeSpecifier.class);
+				return readDeclarationDecorations(id, new RecordElementDeclaration(location, isVariable, typeSpecifier, readString()));
+			}
+			
+			case tagIntTypeSpecifier:
+				return new IntTypeSpecifier(location);
+			case tagFloatTypeSpecifier:
+				return new FloatTypeSpecifier(location);
+			case tagBoolTypeSpecifier:
+				return new BoolTypeSpecifier(location);
+			case tagStringTypeSpecifier:
+				return new StringTypeSpecifier(location);
+			case tagVoidTypeSpecifier:
+				return new VoidTypeSpecifier(location);
+			case tagVectorTypeSpecifier: {
+				TypeSpecifier<?> elementTypeSpecifier = readNode(TypeSpecifier.class);
+				Expression dimension = readNode(Expression.class);
+				return readSpecifierType(new VectorTypeSpecifier(location, elementTypeSpecifier, dimension));
+			}
+			case tagMatrixTypeSpecifier: {
+				TypeSpecifier<?> elementTypeSpecifier = readNode(TypeSpecifier.class);
+				Expression rows = readNode(Expression.class);
+				Expression cols = readNode(Expression.class);
+				return readSpecifierType(new MatrixTypeSpecifier(location, elementTypeSpecifier, rows, cols));
+			}
+			case tagRecordTypeSpecifier:
+				return readSpecifierType(new RecordTypeSpecifier(location, readString()));
+			
+			case tagValueDefinition: {
+				int id = reserveId();
+				TypeSpecifier<?> typeSpecifier = readNode(TypeSpecifier.class);
+				String name = readString();
+				Expression value = readNode(Expression.class);
+				return readDeclarationDecorations(id, new ValueDefinition(location, typeSpecifier, name, value));
+			}
+			case tagVariableDeclaration: {
+				int id = reserveId();
+				TypeSpecifier<?> typeSpecifier = readNode(TypeSpecifier.class);
+				return readDeclarationDecorations(id, new VariableDeclaration(location, typeSpecifier, readString()));
+			}
+			case tagIteratorDeclaration: {
+				int id = reserveId();
+				String name = readString();
+				TypeSpecifier<?> typeSpecifier = readNode(TypeSpecifier.class);
+				return readDeclarationDecorations(id, new IteratorDeclaration(location, name, typeSpecifier, readBoolean()));
+			}
+			
+			case tagVariableAssignment: {
+				LeftHandIdentifier identifier = readNode(LeftHandIdentifier.class);
+				return new VariableAssignment(location, identifier, readNode(Expression.class));
+			}
+			case tagLeftHandIdentifier:
+				return readLhsDecorations(new LeftHandIdentifier(location, readString()));
+			case tagMatrixLhsIdentifier: {
+				String name = readString();
+				Expression rowIndex = readNode(Expression.class);
+				Expression colIndex = readNode(Expression.class);
+				return readLhsDecorations(new MatrixLhsIdentifier(location, name, rowIndex, colIndex));
+			}
+			case tagVectorLhsIdentifier: {
+				String name = readString();
+				return readLhsDecorations(new VectorLhsIdentifier(location, name, readNode(Expression.class)));
+			}
+			case tagRecordLhsIdentifier: {
+				String name = readString();
+				return readLhsDecorations(new RecordLhsIdentifier(location, name, readString()));
+			}
+			case tagForLoop: {
+				String initVarName = readString();
+				Expression initExpression = readNode(Expression.class);
+				Expression loopCondition = readNode(Expression.class);
+				String incrVarName = readString();
+				Expression incrExpression = readNode(Expression.class);
+				Statement body = readNode(Statement.class);
+				ForLoop forLoop = new ForLoop(location, initVarName, initExpression, loopCondition, incrVarName, incrExpression, body);
+				readReference(Declaration.class, forLoop::setInitVarDeclaration);
+				readReference(Declaration.class, forLoop::setIncrVarDeclaration);
+				return forLoop;
+			}
+			case tagForEachLoop: {
+				IteratorDeclaration iterator = readNode(IteratorDeclaration.class);
+				Expression struct = readNode(Expression.class);
+				return new ForEachLoop(location, iterator, struct, readNode(Statement.class));
+			}
+			case tagIfStatement: {
+				Expression condition = readNode(Expression.class);
+				Statement thenStatement = readNode(Statement.class);
+				return new IfStatement(location, condition, thenStatement, readNode(Statement.class));
+			}
+			case tagCallStatement:
+				return new CallStatement(location, readNode(CallExpression.class));
+			case tagReturnStatement:
+				return new ReturnStatement(location, readNode(Expression.class));
+			case tagCompoundStatement:
+				return new CompoundStatement(location, readNodes(Statement.class));
+			case tagSwitchStatement: {
+				Expression condition = readNode(Expression.class);
+				List<Case> cases = readNodes(Case.class);
+				return new SwitchStatement(location, condition, cases, readNodes(Default.class));
+			}
+			case tagCase: {
+				Expression condition = readNode(Expression.class);
+				Case aCase = new Case(location, condition, readNode(Statement.class));
+				Integer value = readOptionalInt();
+				if(value != null) aCase.setCondition(value);
+				return aCase;
+			}
+			case tagDefault:
+				return new Default(location, readNode(Statement.class));
+			
+			case tagMatrixMultiplication:
+				return readDecorations(new MatrixMultiplication(location, readNode(Expression.class), readNode(Expression.class)));
+			case tagDotProduct:
+				return readDecorations(new DotProduct(location, readNode(Expression.class), readNode(Expression.class)));
+			case tagExponentiation:
+				return readDecorations(new Exponentiation(location, readNode(Expression.class), readNode(Expression.class)));
+			case tagMultiplication:
+				return readDecorations(new Multiplication(location, readNode(Expression.class), readNode(Expression.class)));
+			case tagDivision:
+				return readDecorations(new Division(location, readNode(Expression.class), readNode(Expression.class)));
+			case tagAddition:
+				return readDecorations(new Addition(location, readNode(Expression.class), readNode(Expression.class)));
+			case tagSubtraction:
+				return readDecorations(new Subtraction(location, readNode(Expression.class), readNode(Expression.class)));
+			case tagCompare: {
+				Expression left = readNode(Expression.class);
+				Expression right = readNode(Expression.class);
+				int comparator = readVarInt();
+				if(comparator < 0 || comparator >= comparisons.length)
+					throw new StreamCorruptedException("Invalid comparator " + comparator);
+				return readDecorations(new Compare(location, left, right, comparisons[comparator]));
+			}
+			case tagAnd:
+				return readDecorations(new And(location, readNode(Expression.class), readNode(Expression.class)));
+			case tagOr:
+				return readDecorations(new Or(location, readNode(Expression.class), readNode(Expression.class)));
+			
+			case tagMatrixTranspose:
+				return readDecorations(new MatrixTranspose(location, readNode(Expression.class)));
+			case tagMatrixRows:
+				return readDecorations(new MatrixRows(location, readNode(Expression.class)));
+			case tagMatrixCols:
+				return readDecorations(new MatrixCols(location, readNode(Expression.class)));
+			case tagVectorDimension:
+				return readDecorations(new VectorDimension(location, readNode(Expression.class)));
+			case tagUnaryMinus:
+				return readDecorations(new UnaryMinus(location, readNode(Expression.class)));
+			case tagNot:
+				return readDecorations(new Not(location, readNode(Expression.class)));
+			
+			case tagBoolValue:
+				return new BoolValue(location, readBoolean());
+			case tagIntValue:
+				return new IntValue(location, readSignedVarInt());
+			case tagFloatValue: {
+				int bits = (readByte() & 0xff) << 24 | (readByte() & 0xff) << 16 | (readByte() & 0xff) << 8 | readByte() & 0xff;
+				return new FloatValue(location, Float.intBitsToFloat(bits));
+			}
+			case tagStringValue:
+				return new StringValue(location, readString());
+			case tagStructureInit:
+				return readDecorations(new StructureInit(location, readNodes(Expression.class)));
+			case tagRecordInit: {
+				String typeName = readString();
+				return readDecorations(new RecordInit(location, typeName, readNodes(Expression.class)));
+			}
+			
+			case tagIdentifierReference: {
+				IdentifierReference reference = readDecorations(new IdentifierReference(location, readString()));
+				readReference(Declaration.class, reference::setDeclaration);
+				return reference;
+			}
+			case tagSelectExpression: {
+				Expression condition = readNode(Expression.class);
+				Expression trueCase = readNode(Expression.class);
+				return readDecorations(new SelectExpression(location, condition, trueCase, readNode(Expression.class)));
+			}
+			case tagCallExpression: {
+				String functionName = readString();
+				CallExpression call = readDecorations(new CallExpression(location, functionName, readNodes(Expression.class)));
+				readReference(Function.class, call::setCalleeDefinition);
+				return call;
+			}
+			case tagElementSelect: {
+				Expression struct = readNode(Expression.class);
+				return readDecorations(new ElementSelect(location, struct, readNode(Expression.class)));
+			}
+			case tagRecordElementSelect: {
+				Expression record = readNode(Expression.class);
+				return readDecorations(new RecordElementSelect(location, record, readString()));
+			}
+			case tagSubMatrix: {
+				Expression struct = readNode(Expression.class);
+				Expression rowBaseIndex = readNode(Expression.class);
+				Expression rowStartOffset = readNode(Expression.class);
+				Expression rowEndOffset = readNode(Expression.class);
+				Expression colBaseIndex = readNode(Expression.class);
+				Expression colStartOffset = readNode(Expression.class);
+				Expression colEndOffset = readNode(Expression.class);
+				SubMatrix subMatrix = readDecorations(new SubMatrix(location, struct,
+						rowBaseIndex, rowStartOffset, rowEndOffset, colBaseIndex, colStartOffset, colEndOffset));
+				Integer offset;
+				if((offset = readOptionalInt()) != null) subMatrix.setRowStartOffset(offset);
+				if((offset = readOptionalInt()) != null) subMatrix.setRowEndOffset(offset);
+				if((offset = readOptionalInt()) != null) subMatrix.setColStartOffset(offset);
+				if((offset = readOptionalInt()) != null) subMatrix.setColEndOffset(offset);
+				return subMatrix;
+			}
+			case tagSubVector: {
+				Expression struct = readNode(Expression.class);
+				Expression baseIndex = readNode(Expression.class);
+				Expression startOffset = readNode(Expression.class);
+				Expression endOffset = readNode(Expression.class);
+				SubVector subVector = readDecorations(new SubVector(location, struct, baseIndex, startOffset, endOffset));
+				Integer offset;
+				if((offset = readOptionalInt()) != null) subVector.setStartOffset(offset);
+				if((offset = readOptionalInt()) != null) subVector.setEndOffset(offset);
+				return subVector;
+			}
+			default:
+				throw new StreamCorruptedException("Invalid node tag " + tag);
+		}
+	}
+}
@@ -0,0 +1,719 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.services.serialization;
+
+import mavlc.context_analysis.RuntimeFunctions;
+import mavlc.errors.InternalCompilerError;
+import mavlc.syntax.AstNode;
+import mavlc.syntax.AstNodeBaseVisitor;
+import mavlc.syntax.SourceLocation;
+import mavlc.syntax.expression.*;
+import mavlc.syntax.function.FormalParameter;
+import mavlc.syntax.function.Function;
+import mavlc.syntax.module.Module;
+import mavlc.syntax.record.RecordElementDeclaration;
+import mavlc.syntax.record.RecordTypeDeclaration;
+import mavlc.syntax.statement.*;
+import mavlc.syntax.type.*;
+import mavlc.type.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static mavlc.services.serialization.BinaryFormat.*;
+
+/**
+ * Writes an AST in the {@link BinaryFormat binary AST format}. The visit methods write the tag and the
+ * contents of the visited node; {@link #writeNode(AstNode)} decides whether a node is written at all.
+ */
+class BinaryAstWriter extends AstNodeBaseVisitor<Void, Void> {
+	
+	private byte[] buffer = new byte[1024];
+	private int size;
+	
+	private final Map<AstNode, Integer> nodeIds = new IdentityHashMap<>();
+	private final Map<Type, Integer> typeIds = new IdentityHashMap<>();
+	private final Map<String, Integer> strings = new HashMap<>();
+	
+	private int lastLine;
+	
+	BinaryAstWriter() {
+		ensureCapacity(magic.length);
+		System.arraycopy(magic, 0, buffer, 0, magic.length);
+		size = magic.length;
+		writeVarInt(version);
+	}
+	
+	byte[] toByteArray() {
+		return Arrays.copyOf(buffer, size);
+	}
+	
+	private void ensureCapacity(int additional) {
+		if(size + additional > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+	}
+	
+	private void writeByte(int value) {
+		ensureCapacity(1);
+		buffer[size++] = (byte) value;
+	}
+	
+	private void writeVarInt(int value) {
+		ensureCapacity(5);
+		while((value & ~0x7f) != 0) {
+			buffer[size++] = (byte) (value & 0x7f | 0x80);
+			value >>>= 7;
+		}
+		buffer[size++] = (byte) value;
+	}
+	
+	private void writeSignedVarInt(int value) {
+		writeVarInt(value << 1 ^ value >> 31);
+	}
+	
+	private void writeBoolean(boolean value) {
+		writeByte(value ? 1 : 0);
+	}
+	
+	/** Writes an optional integer decoration as 0 if unset or as the signed value shifted by one. */
+	private void writeOptionalInt(boolean set, int value) {
+		if(!set) {
+			writeVarInt(0);
+		} else {
+			long zigZag = ((long) value << 1 ^ value >> 31) & 0xffffffffL;
+			writeVarLong(zigZag + 1);
+		}
+	}
+	
+	private void writeVarLong(long value) {
+		ensureCapacity(10);
+		while((value & ~0x7fL) != 0) {
+			buffer[size++] = (byte) (value & 0x7f | 0x80);
+			value >>>= 7;
+		}
+		buffer[size++] = (byte) value;
+	}
+	
+	private void writeString(String value) {
+		if(value == null) {
+			writeVarInt(stringNull);
+			return;
+		}
+		Integer index = strings.get(value);
+		if(index != null) {
+			writeVarInt(index + stringIndexBase);
+			return;
+		}
+		strings.put(value, strings.size());
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(stringNew);
+		writeVarInt(bytes.length);
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buffer, size, bytes.length);
+		size += bytes.length;
+	}
+	
+	/** Lines are written relative to the previously written location, columns as they are. */
+	private void writeLocation(SourceLocation location) {
+		writeSignedVarInt(location.line - lastLine);
+		writeVarInt(location.column + 1);
+		lastLine = location.line;
+	}
+	
+	private void writeHeader(int tag, AstNode node) {
+		writeByte(tag);
+		writeLocation(node.sourceLocation);
+	}
+	
+	/**
+	 * Writes a node, a back-reference to an already written declaration, function or record type
+	 * declaration, or a null marker.
+	 */
+	void writeNode(AstNode node) {
+		if(node == null) {
+			writeByte(tagNull);
+			return;
+		}
+		// checks against the abstract node classes instead of a common interface, these are considerably faster
+		if(node instanceof Declaration || node instanceof Function || node instanceof RecordTypeDeclaration) {
+			Integer id = nodeIds.get(node);
+			if(id != null) {
+				writeByte(tagReference);
+				writeVarInt(id);
+				return;
+			}
+			if(node instanceof Function && RuntimeFunctions.getRuntimeFunctions().get(((Function) node).name) == node) {
+				writeByte(tagRuntimeFunction);
+				writeString(((Function) node).name);
+				return;
+			}
+			nodeIds.put(node, nodeIds.size());
+		}
+		node.accept(this, null);
+	}
+	
+	private void writeNodes(List<? extends AstNode> nodes) {
+		writeVarInt(nodes.size());
+		for(AstNode node : nodes)
+			writeNode(node);
+	}
+	
+	private void writeType(Type type) {
+		if(type == null) {
+			writeByte(typeNull);
+		} else if(type instanceof IntType) {
+			writeByte(typeInt);
+		} else if(type instanceof FloatType) {
+			writeByte(typeFloat);
+		} else if(type instanceof BoolType) {
+			writeByte(typeBool);
+		} else if(type instanceof StringType) {
+			writeByte(typeString);
+		} else if(type instanceof VoidType) {
+			writeByte(typeVoid);
+		} else {
+			Integer id = typeIds.get(type);
+			if(id != null) {
+				writeByte(typeReference);
+				writeVarInt(id);
+				return;
+			}
+			if(type instanceof VectorType) {
+				writeByte(typeVector);
+				writeType(((VectorType) type).elementType);
+				writeVarInt(((VectorType) type).dimension);
+			} else if(type instanceof MatrixType) {
+				writeByte(typeMatrix);
+				writeType(((MatrixType) type).elementType);
+				writeVarInt(((MatrixType) type).rows);
+				writeVarInt(((MatrixType) type).cols);
+			} else if(type instanceof RecordType) {
+				writeByte(typeRecord);
+				writeString(((RecordType) type).name);
+				writeNode(((RecordType) type).typeDeclaration);
+			} else {
+				throw new InternalCompilerError("Cannot serialize type " + type);
+			}
+			// the components are written first, so types are numbered after them like in the reader
+			typeIds.put(type, typeIds.size());
+		}
+	}
+	
+	private void writeExpressionType(Expression expression) {
+		writeType(expression.isTypeSet() ? expression.getType() : null);
+	}
+	
+	private void writeDeclarationDecorations(Declaration declaration) {
+		writeType(declaration.isTypeSet() ? declaration.getType() : null);
+		writeOptionalInt(declaration.isLocalBaseOffsetSet(), declaration.isLocalBaseOffsetSet() ? declaration.getLocalBaseOffset() : 0);
+	}
+	
+	@Override
+	protected Void defaultOperation(AstNode node, Void obj) {
+		throw new InternalCompilerError(node, "Cannot serialize " + node.getClass().getSimpleName());
+	}
+	
+	@Override
+	public Void visitModule(Module module, Void obj) {
+		writeHeader(tagModule, module);
+		writeNodes(module.records);
+		// functions are numbered up front, so calls to functions defined further down become back-references
+		writeVarInt(module.functions.size());
+		for(Function function : module.functions)
+			nodeIds.put(function, nodeIds.size());
+		for(Function function : module.functions)
+			function.accept(this, null);
+		return null;
+	}
+	
+	@Override
+	public Void visitFunction(Function function, Void obj) {
+		writeHeader(tagFunction, function);
+		writeString(function.name);
+		writeNode(function.returnTypeSpecifier);
+		writeNodes(function.parameters);
+		writeNodes(function.body);
+		writeType(function.isReturnTypeSet() ? function.getReturnType() : null);
+		writeOptionalInt(function.isCodeBaseOffsetSet(), function.isCodeBaseOffsetSet() ? function.getCodeBaseOffset() : 0);
+		return null;
+	}
+	
+	@Override
+	public Void visitFormalParameter(FormalParameter formalParameter, Void obj) {
+		writeHeader(tagFormalParameter, formalParameter);
+		writeString(formalParameter.name);
+		writeNode(formalParameter.typeSpecifier);
+		writeDeclarationDecorations(formalParameter);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordTypeDeclaration(RecordTypeDeclaration recordTypeDeclaration, Void obj) {
+		writeHeader(tagRecordTypeDeclaration, recordTypeDeclaration);
+		writeString(recordTypeDeclaration.name);
+		writeNodes(recordTypeDeclaration.elements);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordElementDeclaration(RecordElementDeclaration recordElementDeclaration, Void obj) {
+		writeHeader(tagRecordElementDeclaration, recordElementDeclaration);
+		writeBoolean(recordElementDeclaration.isVariable());
+		writeNode(recordElementDeclaration.typeSpecifier);
+		writeString(recordElementDeclaration.name);
+		writeDeclarationDecorations(recordElementDeclaration);
+		return null;
+	}
+	
+	@Override
+	public Void visitIntTypeSpecifier(IntTypeSpecifier intTypeSpecifier, Void obj) {
+		writeHeader(tagIntTypeSpecifier, intTypeSpecifier);
+		return null;
+	}
+	
+	@Override
+	public Void visitFloatTypeSpecifier(FloatTypeSpecifier floatTypeSpecifier, Void obj) {
+		writeHeader(tagFloatTypeSpecifier, floatTypeSpecifier);
+		return null;
+	}
+	
+	@Override
+	public Void visitBoolTypeSpecifier(BoolTypeSpecifier boolTypeSpecifier, Void obj) {
+		writeHeader(tagBoolTypeSpecifier, boolTypeSpecifier);
+		return null;
+	}
+	
+	@Override
+	public Void visitStringTypeSpecifier(StringTypeSpecifier stringTypeSpecifier, Void obj) {
+		writeHeader(tagStringTypeSpecifier, stringTypeSpecifier);
+		return null;
+	}
+	
+	@Override
+	public Void visitVoidTypeSpecifier(VoidTypeSpecifier voidTypeSpecifier, Void obj) {
+		writeHeader(tagVoidTypeSpecifier, voidTypeSpecifier);
+		return null;
+	}
+	
+	@Override
+	public Void visitVectorTypeSpecifier(VectorTypeSpecifier vectorTypeSpecifier, Void obj) {
+		writeHeader(tagVectorTypeSpecifier, vectorTypeSpecifier);
+		writeNode(vectorTypeSpecifier.elementTypeSpecifier);
+		writeNode(vectorTypeSpecifier.dimensionExpression);
+		writeType(vectorTypeSpecifier.isTypeSet() ? vectorTypeSpecifier.getType() : null);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixTypeSpecifier(MatrixTypeSpecifier matrixTypeSpecifier, Void obj) {
+		writeHeader(tagMatrixTypeSpecifier, matrixTypeSpecifier);
+		writeNode(matrixTypeSpecifier.elementTypeSpecifier);
+		writeNode(matrixTypeSpecifier.rowsExpression);
+		writeNode(matrixTypeSpecifier.colsExpression);
+		writeType(matrixTypeSpecifier.isTypeSet() ? matrixTypeSpecifier.getType() : null);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordTypeSpecifier(RecordTypeSpecifier recordTypeSpecifier, Void obj) {
+		writeHeader(tagRecordTypeSpecifier, recordTypeSpecifier);
+		writeString(recordTypeSpecifier.recordTypeName);
+		writeType(recordTypeSpecifier.isTypeSet() ? recordTypeSpecifier.getType() : null);
+		return null;
+	}
+	
+	@Override
+	public Void visitValueDefinition(ValueDefinition valueDefinition, Void obj) {
+		writeHeader(tagValueDefinition, valueDefinition);
+		writeNode(valueDefinition.typeSpecifier);
+		writeString(valueDefinition.name);
+		writeNode(valueDefinition.value);
+		writeDeclarationDecorations(valueDefinition);
+		return null;
+	}
+	
+	@Override
+	public Void visitVariableDeclaration(VariableDeclaration variableDeclaration, Void obj) {
+		writeHeader(tagVariableDeclaration, variableDeclaration);
+		writeNode(variableDeclaration.typeSpecifier);
+		writeString(variableDeclaration.name);
+		writeDeclarationDecorations(variableDeclaration);
+		return null;
+	}
+	
+	@Override
+	public Void visitIteratorDeclaration(IteratorDeclaration iteratorDeclaration, Void obj) {
+		writeHeader(tagIteratorDeclaration, iteratorDeclaration);
+		writeString(iteratorDeclaration.name);
+		writeNode(iteratorDeclaration.typeSpecifier);
+		writeBoolean(iteratorDeclaration.isVariable());
+		writeDeclarationDecorations(iteratorDeclaration);
+		return null;
+	}
+	
+	@Override
+	public Void visitVariableAssignment(VariableAssignment variableAssignment, Void obj) {
+		writeHeader(tagVariableAssignment, variableAssignment);
+		writeNode(variableAssignment.identifier);
+		writeNode(variableAssignment.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitLeftHandIdentifier(LeftHandIdentifier leftHandIdentifier, Void obj) {
+		writeHeader(tagLeftHandIdentifier, leftHandIdentifier);
+		writeString(leftHandIdentifier.name);
+		writeNode(leftHandIdentifier.isDeclarationSet() ? leftHandIdentifier.getDeclaration() : null);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixLhsIdentifier(MatrixLhsIdentifier matrixLhsIdentifier, Void obj) {
+		writeHeader(tagMatrixLhsIdentifier, matrixLhsIdentifier);
+		writeString(matrixLhsIdentifier.name);
+		writeNode(matrixLhsIdentifier.rowIndexExpression);
+		writeNode(matrixLhsIdentifier.colIndexExpression);
+		writeNode(matrixLhsIdentifier.isDeclarationSet() ? matrixLhsIdentifier.getDeclaration() : null);
+		return null;
+	}
+	
+	@Override
+	public Void visitVectorLhsIdentifier(VectorLhsIdentifier vectorLhsIdentifier, Void obj) {
+		writeHeader(tagVectorLhsIdentifier, vectorLhsIdentifier);
+		writeString(vectorLhsIdentifier.name);
+		writeNode(vectorLhsIdentifier.indexExpression);
+		writeNode(vectorLhsIdentifier.isDeclarationSet() ? vectorLhsIdentifier.getDeclaration() : null);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordLhsIdentifier(RecordLhsIdentifier recordLhsIdentifier, Void obj) {
+		writeHeader(tagRecordLhsIdentifier, recordLhsIdentifier);
+		writeString(recordLhsIdentifier.name);
+		writeString(recordLhsIdentifier.elementName);
+		writeNode(recordLhsIdentifier.isDeclarationSet() ? recordLhsIdentifier.getDeclaration() : null);
+		return null;
+	}
+	
+	@Override
+	public Void visitForLoop(ForLoop forLoop, Void obj) {
+		writeHeader(tagForLoop, forLoop);
+		writeString(forLoop.initVarName);
+		writeNode(forLoop.initExpression);
+		writeNode(forLoop.loopCondition);
+		writeString(forLoop.incrVarName);
+		writeNode(forLoop.incrExpression);
+		writeNode(forLoop.body);
+		writeNode(forLoop.isInitVarDeclarationSet() ? forLoop.getInitVarDeclaration() : null);
+		writeNode(forLoop.isIncrVarDeclarationSet() ? forLoop.getIncrVarDeclaration() : null);
+		return null;
+	}
+	
+	@Override
+	public Void visitForEachLoop(ForEachLoop forEachLoop, Void obj) {
+		writeHeader(tagForEachLoop, forEachLoop);
+		writeNode(forEachLoop.iteratorDeclaration);
+		writeNode(forEachLoop.structExpression);
+		writeNode(forEachLoop.body);
+		return null;
+	}
+	
+	@Override
+	public Void visitIfStatement(IfStatement ifStatement, Void obj) {
+		writeHeader(tagIfStatement, ifStatement);
+		writeNode(ifStatement.condition);
+		writeNode(ifStatement.thenStatement);
+		writeNode(ifStatement.elseStatement);
+		return null;
+	}
+	
+	@Override
+	public Void visitCallStatement(CallStatement callStatement, Void obj) {
+		writeHeader(tagCallStatement, callStatement);
+		writeNode(callStatement.callExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitReturnStatement(ReturnStatement returnStatement, Void obj) {
+		writeHeader(tagReturnStatement, returnStatement);
+		writeNode(returnStatement.returnValue);
+		return null;
+	}
+	
+	@Override
+	public Void visitCompoundStatement(CompoundStatement compoundStatement, Void obj) {
+		writeHeader(tagCompoundStatement, compoundStatement);
+		writeNodes(compoundStatement.statements);
+		return null;
+	}
+	
+	@Override
+	public Void visitSwitchStatement(SwitchStatement switchCaseStatement, Void obj) {
+		writeHeader(tagSwitchStatement, switchCaseStatement);
+		writeNode(switchCaseStatement.condition);
+		writeNodes(switchCaseStatement.cases);
+		writeNodes(switchCaseStatement.defaults);
+		return null;
+	}
+	
+	@Override
+	public Void visitCase(Case aCase, Void obj) {
+		writeHeader(tagCase, aCase);
+		writeNode(aCase.conditionExpression);
+		writeNode(aCase.body);
+		writeOptionalInt(aCase.isConditionSet(), aCase.isConditionSet() ? aCase.getCondition() : 0);
+		return null;
+	}
+	
+	@Override
+	public Void visitDefault(Default defCase, Void obj) {
+		writeHeader(tagDefault, defCase);
+		writeNode(defCase.body);
+		return null;
+	}
+	
+	private Void writeBinaryExpression(int tag, BinaryExpression binaryExpression) {
+		writeHeader(tag, binaryExpression);
+		writeNode(binaryExpression.leftOperand);
+		writeNode(binaryExpression.rightOperand);
+		writeExpressionType(binaryExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixMultiplication(MatrixMultiplication matrixMultiplication, Void obj) {
+		return writeBinaryExpression(tagMatrixMultiplication, matrixMultiplication);
+	}
+	
+	@Override
+	public Void visitDotProduct(DotProduct dotProduct, Void obj) {
+		return writeBinaryExpression(tagDotProduct, dotProduct);
+	}
+	
+	@Override
+	public Void visitExponentiation(Exponentiation exponentiation, Void obj) {
+		return writeBinaryExpression(tagExponentiation, exponentiation);
+	}
+	
+	@Override
+	public Void visitMultiplication(Multiplication multiplication, Void obj) {
+		return writeBinaryExpression(tagMultiplication, multiplication);
+	}
+	
+	@Override
+	public Void visitDivision(Division division, Void obj) {
+		return writeBinaryExpression(tagDivision, division);
+	}
+	
+	@Override
+	public Void visitAddition(Addition addition, Void obj) {
+		return writeBinaryExpression(tagAddition, addition);
+	}
+	
+	@Override
+	public Void visitSubtraction(Subtraction subtraction, Void obj) {
+		return writeBinaryExpression(tagSubtraction, subtraction);
+	}
+	
+	@Override
+	public Void visitCompare(Compare compare, Void obj) {
+		writeHeader(tagCompare, compare);
+		writeNode(compare.leftOperand);
+		writeNode(compare.rightOperand);
+		writeVarInt(compare.comparator.ordinal());
+		writeExpressionType(compare);
+		return null;
+	}
+	
+	@Override
+	public Void visitAnd(And and, Void obj) {
+		return writeBinaryExpression(tagAnd, and);
+	}
+	
+	@Override
+	public Void visitOr(Or or, Void obj) {
+		return writeBinaryExpression(tagOr, or);
+	}
+	
+	private Void writeUnaryExpression(int tag, UnaryExpression unaryExpression) {
+		writeHeader(tag, unaryExpression);
+		writeNode(unaryExpression.operand);
+		writeExpressionType(unaryExpression);
+		return null;
+	}
+	
+	@Override
+	public Void visitMatrixTranspose(MatrixTranspose matrixTranspose, Void obj) {
+		return writeUnaryExpression(tagMatrixTranspose, matrixTranspose);
+	}
+	
+	@Override
+	public Void visitMatrixRows(MatrixRows rows, Void obj) {
+		return writeUnaryExpression(tagMatrixRows, rows);
+	}
+	
+	@Override
+	public Void visitMatrixCols(MatrixCols cols, Void obj) {
+		return writeUnaryExpression(tagMatrixCols, cols);
+	}
+	
+	@Override
+	public Void visitVectorDimension(VectorDimension vectorDimension, Void obj) {
+		return writeUnaryExpression(tagVectorDimension, vectorDimension);
+	}
+	
+	@Override
+	public Void visitUnaryMinus(UnaryMinus unaryMinus, Void obj) {
+		return writeUnaryExpression(tagUnaryMinus, unaryMinus);
+	}
+	
+	@Override
+	public Void visitNot(Not not, Void obj) {
+		return writeUnaryExpression(tagNot, not);
+	}
+	
+	// the types of literals are fixed by their node class
+	
+	@Override
+	public Void visitBoolValue(BoolValue boolValue, Void obj) {
+		writeHeader(tagBoolValue, boolValue);
+		writeBoolean(boolValue.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitIntValue(IntValue intValue, Void obj) {
+		writeHeader(tagIntValue, intValue);
+		writeSignedVarInt(intValue.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitFloatValue(FloatValue floatValue, Void obj) {
+		writeHeader(tagFloatValue, floatValue);
+		// the raw bits, varints would make most floats longer
+		int bits = Float.floatToRawIntBits(floatValue.value);
+		ensureCapacity(4);
+		buffer[size++] = (byte) (bits >>> 24);
+		buffer[size++] = (byte) (bits >>> 16);
+		buffer[size++] = (byte) (bits >>> 8);
+		buffer[size++] = (byte) bits;
+		return null;
+	}
+	
+	@Override
+	public Void visitStringValue(StringValue stringValue, Void obj) {
+		writeHeader(tagStringValue, stringValue);
+		writeString(stringValue.value);
+		return null;
+	}
+	
+	@Override
+	public Void visitStructureInit(StructureInit structureInit, Void obj) {
+		writeHeader(tagStructureInit, structureInit);
+		writeNodes(structureInit.elements);
+		writeExpressionType(structureInit);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordInit(RecordInit recordInit, Void obj) {
+		writeHeader(tagRecordInit, recordInit);
+		writeString(recordInit.typeName);
+		writeNodes(recordInit.elements);
+		writeExpressionType(recordInit);
+		return null;
+	}
+	
+	@Override
+	public Void visitIdentifierReference(IdentifierReference identifierReference, Void obj) {
+		writeHeader(tagIdentifierReference, identifierReference);
+		writeString(identifierReference.name);
+		writeExpressionType(identifierReference);
+		writeNode(identifierReference.isDeclarationSet() ? identifierReference.getDeclaration() : null);
+		return null;
+	}
+	
+	@Override
+	public Void visitSelectExpression(SelectExpression expr, Void obj) {
+		writeHeader(tagSelectExpression, expr);
+		writeNode(expr.condition);
+		writeNode(expr.trueCase);
+		writeNode(expr.falseCase);
+		writeExpressionType(expr);
+		return null;
+	}
+	
+	@Override
+	public Void visitCallExpression(CallExpression callExpression, Void obj) {
+		writeHeader(tagCallExpression, callExpression);
+		writeString(callExpression.functionName);
+		writeNodes(callExpression.actualParameters);
+		writeExpressionType(callExpression);
+		writeNode(callExpression.isCalleeDefinitionSet() ? callExpression.getCalleeDefinition() : null);
+		return null;
+	}
+	
+	@Override
+	public Void visitElementSelect(ElementSelect elementSelect, Void obj) {
+		writeHeader(tagElementSelect, elementSelect);
+		writeNode(elementSelect.structExpression);
+		writeNode(elementSelect.indexExpression);
+		writeExpressionType(elementSelect);
+		return null;
+	}
+	
+	@Override
+	public Void visitRecordElementSelect(RecordElementSelect recordElementSelect, Void obj) {
+		writeHeader(tagRecordElementSelect, recordElementSelect);
+		writeNode(recordElementSelect.recordExpression);
+		writeString(recordElementSelect.elementName);
+		writeExpressionType(recordElementSelect);
+		return null;
+	}
+	
+	@Override
+	public Void visitSubMatrix(SubMatrix subSelect, Void obj) {
+		writeHeader(tagSubMatrix, subSelect);
+		writeNode(subSelect.structExpression);
+		writeNode(subSelect.rowBaseIndexExpression);
+		writeNode(subSelect.rowStartOffsetExpression);
+		writeNode(subSelect.rowEndOffsetExpression);
+		writeNode(subSelect.colBaseIndexExpression);
+		writeNode(subSelect.colStartOffsetExpression);
+		writeNode(subSelect.colEndOffsetExpression);
+		writeExpressionType(subSelect);
+		writeOptionalInt(subSelect.isRowStartOffsetSet(), subSelect.isRowStartOffsetSet() ? subSelect.getRowStartOffset() : 0);
+		writeOptionalInt(subSelect.isRowEndOffsetSet(), subSelect.isRowEndOffsetSet() ? subSelect.getRowEndOffset() : 0);
+		writeOptionalInt(subSelect.isColStartOffsetSet(), subSelect.isColStartOffsetSet() ? subSelect.getColStartOffset() : 0);
+		writeOptionalInt(subSelect.isColEndOffsetSet(), subSelect.isColEndOffsetSet() ? subSelect.getColEndOffset() : 0);
+		return null;
+	}
+	
+	@Override
+	public Void visitSubVector(SubVector subVector, Void obj) {
+		writeHeader(tagSubVector, subVector);
+		writeNode(subVector.structExpression);
+		writeNode(subVector.baseIndexExpression);
+		writeNode(subVector.startOffsetExpression);
+		writeNode(subVector.endOffsetExpression);
+		writeExpressionType(subVector);
+		writeOptionalInt(subVector.isStartOffsetSet(), subVector.isStartOffsetSet() ? subVector.getStartOffset() : 0);
+		writeOptionalInt(subVector.isEndOffsetSet(), subVector.isEndOffsetSet() ? subVector.getEndOffset() : 0);
+		return null;
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.services.serialization;
+
+/**
+ * Constants of the binary AST format read and written by {@link BinarySerialization}.
+ * <p>
+ * A serialized tree starts with the {@link #magic} bytes and the {@link #version}, followed by the root
+ * node. Every node starts with a one-byte tag. Regular nodes continue with their source location and then
+ * their children and attributes in the order of the node's constructor parameters, followed by their
+ * decorations. Declarations, functions and record type declarations are numbered in the order they are
+ * written; once written, further occurrences are encoded as back-references to that number. Types are
+ * numbered separately in the same way. Integers are encoded as variable-length quantities, strings as an
+ * index into a table that is built up while reading.
+ */
+final class BinaryFormat {
+	
+	private BinaryFormat() { }
+	
+	static final byte[] magic = { 'M', 'A', 'V', 'B' };
+	
+	/** Increment on every incompatible change of the format. */
+	static final int version = 1;
+	
+	// special node tags
+	static final int tagNull = 0;
+	static final int tagReference = 1;
+	static final int tagRuntimeFunction = 2;
+	
+	// miscellaneous
+	static final int tagModule = 3;
+	static final int tagFunction = 4;
+	static final int tagFormalParameter = 5;
+	static final int tagRecordTypeDeclaration = 6;
+	static final int tagRecordElementDeclaration = 7;
+	
+	// type specifiers
+	static final int tagIntTypeSpecifier = 8;
+	static final int tagFloatTypeSpecifier = 9;
+	static final int tagBoolTypeSpecifier = 10;
+	static final int tagStringTypeSpecifier = 11;
+	static final int tagVoidTypeSpecifier = 12;
+	static final int tagVectorTypeSpecifier = 13;
+	static final int tagMatrixTypeSpecifier = 14;
+	static final int tagRecordTypeSpecifier = 15;
+	
+	// declarations
+	static final int tagValueDefinition = 16;
+	static final int tagVariableDeclaration = 17;
+	static final int tagIteratorDeclaration = 18;
+	
+	// statements
+	static final int tagVariableAssignment = 19;
+	static final int tagLeftHandIdentifier = 20;
+	static final int tagMatrixLhsIdentifier = 21;
+	static final int tagVectorLhsIdentifier = 22;
+	static final int tagRecordLhsIdentifier = 23;
+	static final int tagForLoop = 24;
+	static final int tagForEachLoop = 25;
+	static final int tagIfStatement = 26;
+	static final int tagCallStatement = 27;
+	static final int tagReturnStatement = 28;
+	static final int tagCompoundStatement = 29;
+	static final int tagSwitchStatement = 30;
+	static final int tagCase = 31;
+	static final int tagDefault = 32;
+	
+	// binary expressions
+	static final int tagMatrixMultiplication = 33;
+	static final int tagDotProduct = 34;
+	static final int tagExponentiation = 35;
+	static final int tagMultiplication = 36;
+	static final int tagDivision = 37;
+	static final int tagAddition = 38;
+	static final int tagSubtraction = 39;
+	static final int tagCompare = 40;
+	static final int tagAnd = 41;
+	static final int tagOr = 42;
+	
+	// unary expressions
+	static final int tagMatrixTranspose = 43;
+	static final int tagMatrixRows = 44;
+	static final int tagMatrixCols = 45;
+	static final int tagVectorDimension = 46;
+	static final int tagUnaryMinus = 47;
+	static final int tagNot = 48;
+	
+	// literals
+	static final int tagBoolValue = 49;
+	static final int tagIntValue = 50;
+	static final int tagFloatValue = 51;
+	static final int tagStringValue = 52;
+	static final int tagStructureInit = 53;
+	static final int tagRecordInit = 54;
+	
+	// other expressions
+	static final int tagIdentifierReference = 55;
+	static final int tagSelectExpression = 56;
+	static final int tagCallExpression = 57;
+	static final int tagElementSelect = 58;
+	static final int tagRecordElementSelect = 59;
+	static final int tagSubMatrix = 60;
+	static final int tagSubVector = 61;
+	
+	// type tags
+	static final int typeNull = 0;
+	static final int typeReference = 1;
+	static final int typeInt = 2;
+	static final int typeFloat = 3;
+	static final int typeBool = 4;
+	static final int typeString = 5;
+	static final int typeVoid = 6;
+	static final int typeVector = 7;
+	static final int typeMatrix = 8;
+	static final int typeRecord = 9;
+	
+	// string table entries, table indices are written offset by stringIndexBase
+	static final int stringNull = 0;
+	static final int stringNew = 1;
+	static final int stringIndexBase = 2;
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.services.serialization;
+
+import mavlc.syntax.AstNode;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compact binary serialization of (decorated) syntax trees.
+ * <p>
+ * Unlike {@link XmlSerialization}, the format is written by hand-written visitors instead of reflection.
+ * Nodes are identified by one-byte tags, source locations and integers are stored as variable-length
+ * quantities, every distinct string is stored only once, and declarations, functions and types referenced
+ * from several places are written once and then referred to by number. Everything compared by the
+ * {@code AstComparator} survives a round trip, including source locations, types, declaration references,
+ * callee definitions and the offsets computed by the context analysis. References to runtime functions are
+ * restored to the shared declarations of {@link mavlc.context_analysis.RuntimeFunctions}.
+ * <p>
+ * The format is versioned; data written by a different version is rejected on deserialization.
+ */
+public final class BinarySerialization {
+	
+	private BinarySerialization() { }
+	
+	public static byte[] serialize(AstNode node) {
+		BinaryAstWriter writer = new BinaryAstWriter();
+		writer.writeNode(node);
+		return writer.toByteArray();
+	}
+	
+	public static void serialize(AstNode node, Path outPath) throws IOException {
+		Files.write(outPath, serialize(node));
+	}
+	
+	/**
+	 * @param data A tree serialized by {@link #serialize(AstNode)}
+	 * @return The root of the deserialized tree
+	 * @throws StreamCorruptedException If the data is not a tree written by this format version
+	 */
+	public static <T extends AstNode> T deserialize(byte[] data) throws IOException {
+		@SuppressWarnings("unchecked")
+		T node = (T) new BinaryAstReader(data).read();
+		return node;
+	}
+	
+	public static <T extends AstNode> T deserialize(Path inPath) throws IOException {
+		return deserialize(Files.readAllBytes(inPath));
+	}
+}
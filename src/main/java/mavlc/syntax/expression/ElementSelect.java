@@ -24,6 +24,9 @@ public class ElementSelect extends Expression {
 	public final Expression structExpression;
 	public final Expression indexExpression;
 	
+	/** Whether the index has been proven to lie within the dimensions, so the runtime check can be skipped. */
+	protected boolean inBounds;
+	
 	
 	/**
 	 * @param sourceLocation Location of the node within the containing source file.
@@ -36,6 +39,20 @@ public class ElementSelect extends Expression {
 		this.indexExpression = index;
 	}
 	
+	/**
+	 * @return Whether the index has been proven to lie within the dimensions of the structure.
+	 */
+	public boolean isInBounds() {
+		return inBounds;
+	}
+	
+	/**
+	 * @param inBounds Whether the index has been proven to lie within the dimensions of the structure.
+	 */
+	public void setInBounds(boolean inBounds) {
+		this.inBounds = inBounds;
+	}
+	
 	@Override
 	public <RetTy, ArgTy> RetTy accept(AstNodeVisitor<? extends RetTy, ArgTy> visitor, ArgTy obj) {
 		return visitor.visitElementSelect(this, obj);
@@ -25,6 +25,9 @@ public class MatrixLhsIdentifier extends LeftHandIdentifier {
 	public final Expression rowIndexExpression;
 	public final Expression colIndexExpression;
 	
+	/** Whether the indices have been proven to lie within the dimensions, so the runtime check can be skipped. */
+	protected boolean inBounds;
+	
 	/**
 	 * @param sourceLocation Location of the node within the containing source file.
 	 * @param variableName Name of the referenced matrix.
@@ -37,6 +40,20 @@ public class MatrixLhsIdentifier extends LeftHandIdentifier {
 		this.colIndexExpression = colIndex;
 	}
 	
+	/**
+	 * @return Whether the indices have been proven to lie within the dimensions of the referenced structure.
+	 */
+	public boolean isInBounds() {
+		return inBounds;
+	}
+	
+	/**
+	 * @param inBounds Whether the indices have been proven to lie within the dimensions of the referenced structure.
+	 */
+	public void setInBounds(boolean inBounds) {
+		this.inBounds = inBounds;
+	}
+	
 	@Override
 	public <RetTy, ArgTy> RetTy accept(AstNodeVisitor<? extends RetTy, ArgTy> visitor, ArgTy obj) {
 		return visitor.visitMatrixLhsIdentifier(this, obj);
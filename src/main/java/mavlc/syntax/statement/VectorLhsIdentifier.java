@@ -24,6 +24,9 @@ public class VectorLhsIdentifier extends LeftHandIdentifier {
 	
 	public final Expression indexExpression;
 	
+	/** Whether the index has been proven to lie within the dimensions, so the runtime check can be skipped. */
+	protected boolean inBounds;
+	
 	/**
 	 * @param sourceLocation Location of the node within the containing source file.
 	 * @param name Name of the referenced vector.
@@ -34,6 +37,20 @@ public class VectorLhsIdentifier extends LeftHandIdentifier {
 		this.indexExpression = index;
 	}
 	
+	/**
+	 * @return Whether the index has been proven to lie within the dimensions of the referenced structure.
+	 */
+	public boolean isInBounds() {
+		return inBounds;
+	}
+	
+	/**
+	 * @param inBounds Whether the index has been proven to lie within the dimensions of the referenced structure.
+	 */
+	public void setInBounds(boolean inBounds) {
+		this.inBounds = inBounds;
+	}
+	
 	@Override
 	public <RetTy, ArgTy> RetTy accept(AstNodeVisitor<? extends RetTy, ArgTy> visitor, ArgTy obj) {
 		return visitor.visitVectorLhsIdentifier(this, obj);
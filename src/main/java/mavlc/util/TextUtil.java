@@ -31,4 +31,25 @@ public class TextUtil {
 		if(str.length() >= len) return str.substring(str.length() - len);
 		return new String(new char[len - str.length()]).replace('\0', ch) + str;
 	}
+	
+	/**
+	 * @return The given string as a quoted JSON string literal
+	 */
+	public static String quoteJson(String str) {
+		StringBuilder sb = new StringBuilder(str.length() + 2).append('"');
+		for(int i = 0; i < str.length(); i++) {
+			char ch = str.charAt(i);
+			switch(ch) {
+				case '"': sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				default:
+					if(ch < 0x20) sb.append(String.format("\\u%04x", (int) ch));
+					else sb.append(ch);
+			}
+		}
+		return sb.append('"').toString();
+	}
 }
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.parsing.Parser;
+import mavlc.parsing.Scanner;
+import mavlc.services.serialization.BinarySerialization;
+import mavlc.services.serialization.XmlSerialization;
+import mavlc.syntax.module.Module;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class BinarySerializationTest {
+	
+	private final Path refFilePath;
+	private final Path srcFilePath;
+	
+	public BinarySerializationTest(Path refFilePath, String testName) {
+		this.refFilePath = refFilePath;
+		String fileName = refFilePath.getFileName().toString();
+		this.srcFilePath = refFilePath.resolveSibling(fileName.substring(0, fileName.length() - ".xml".length()) + ".mavl");
+	}
+	
+	@Test
+	public void decoratedTreeRoundTrip() throws IOException {
+		Module reference = XmlSerialization.deserialize(refFilePath.toString());
+		assertRoundTrip(reference);
+	}
+	
+	@Test
+	public void parsedTreeRoundTrip() throws IOException {
+		Module reference = new Parser(new Scanner(srcFilePath.toFile())).parse();
+		Module copy = assertRoundTrip(reference);
+		// the XML form covers all fields, including the ones the comparator skips
+		assertEquals(XmlSerialization.serialize(reference), XmlSerialization.serialize(copy));
+	}
+	
+	@Test
+	public void rejectsCorruptData() {
+		byte[] data = BinarySerialization.serialize(XmlSerialization.<Module>deserialize(refFilePath.toString()));
+		
+		assertRejected(Arrays.copyOf(data, data.length / 2));
+		
+		byte[] otherVersion = data.clone();
+		otherVersion[4]++;
+		assertRejected(otherVersion);
+	}
+	
+	private static void assertRejected(byte[] data) {
+		try {
+			BinarySerialization.deserialize(data);
+			fail("Corrupt data was not rejected");
+		} catch(IOException expected) {
+		}
+	}
+	
+	private static Module assertRoundTrip(Module reference) throws IOException {
+		byte[] data = BinarySerialization.serialize(reference);
+		Module copy = BinarySerialization.deserialize(data);
+		
+		new AstComparator().compare(copy, reference);
+		assertArrayEquals("Serialization is not deterministic", data, BinarySerialization.serialize(copy));
+		return copy;
+	}
+	
+	@Parameters(name = "{1}")
+	public static Collection<Object[]> data() throws IOException {
+		Path root = Paths.get("src", "test", "testcases", "trees");
+		try(Stream<Path> files = Files.find(root, Integer.MAX_VALUE, (p, a) -> a.isRegularFile() && p.toString().endsWith(".xml"))) {
+			return files.sorted().map(p -> {
+				String name = root.relativize(p).toString().replace('\\', '/');
+				return new Object[]{p, name.substring(0, name.indexOf('.'))};
+			}).collect(Collectors.toList());
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.server.CompileClient;
+import mavlc.server.CompileServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class CompileServerTest {
+	
+	private Path directory;
+	private CompileServer server;
+	private Thread serverThread;
+	private CompileClient client;
+	
+	@Before
+	public void startServer() throws Exception {
+		directory = Files.createTempDirectory("mavlc-server");
+		Path serverFile = directory.resolve("server.properties");
+		server = new CompileServer(0, serverFile, 0, false);
+		server.setRequestTimeout(500);
+		serverThread = new Thread(() -> {
+			try {
+				server.serve();
+			} catch(Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		serverThread.start();
+		for(int i = 0; i < 500 && client == null; i++) {
+			client = CompileClient.connectTo(serverFile);
+			if(client == null) Thread.sleep(10);
+		}
+		assertNotNull("Server did not publish its connection details", client);
+	}
+	
+	@After
+	public void stopServer() throws Exception {
+		client.shutdown();
+		serverThread.join(10_000);
+		assertFalse(serverThread.isAlive());
+		assertFalse(Files.exists(directory.resolve("server.properties")));
+		Files.walk(directory).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+	}
+	
+	@Test
+	public void forwardsOutputAndExitStatus() throws Exception {
+		Files.write(directory.resolve("valid.mavl"), "function void main() {\n\tval int a = 1;\n}\n".getBytes(StandardCharsets.UTF_8));
+		Files.write(directory.resolve("invalid.mavl"), "function void main( {\n}\n".getBytes(StandardCharsets.UTF_8));
+		
+		for(int i = 0; i < 3; i++) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ByteArrayOutputStream err = new ByteArrayOutputStream();
+			// relative paths are resolved against the working directory of the client
+			assertEquals(0, client.compile(new String[]{"-p", "valid.mavl", "-ds"}, directory, out, err));
+			assertTrue(out.toString("UTF-8").contains("dumpSource"));
+			assertTrue(Files.exists(directory.resolve("valid_dump.mavl")));
+		}
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		assertEquals(1, client.compile(new String[]{"-p", "-q", "invalid.mavl"}, directory, out, err));
+		assertTrue(err.toString("UTF-8").contains("Syntax error"));
+	}
+	
+	@Test
+	public void closesSilentConnections() throws Exception {
+		Files.write(directory.resolve("valid.mavl"), "function void main() {\n\tval int a = 1;\n}\n".getBytes(StandardCharsets.UTF_8));
+		
+		try(Socket silent = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+			silent.setSoTimeout(10_000);
+			// the server closes the connection instead of waiting for the request forever
+			assertEquals(-1, silent.getInputStream().read());
+			
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ByteArrayOutputStream err = new ByteArrayOutputStream();
+			assertEquals(0, client.compile(new String[]{"-p", "valid.mavl"}, directory, out, err));
+		}
+	}
+}
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.Pipeline;
+import mavlc.errors.ExecutionError;
+import mavlc.execution.Engine;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the behavior of the execution engines that is not covered by comparing
+ * the output of programs, i.e. input, files, runtime errors, the cycle limit,
+ * parallel execution and the reuse of buffers for temporaries.
+ */
+@RunWith(Parameterized.class)
+public class ExecutionTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private final Engine engine;
+	
+	public ExecutionTest(Engine engine) {
+		this.engine = engine;
+	}
+	
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> data() {
+		return Arrays.stream(Engine.values()).map(engine -> new Object[] { engine }).collect(Collectors.toList());
+	}
+	
+	private Pipeline compile(String source) throws IOException {
+		return compile(source, 0);
+	}
+	
+	private Pipeline compile(String source, int parallelThreshold) throws IOException {
+		Path sourcePath = folder.newFile().toPath();
+		Files.write(sourcePath, source.getBytes(StandardCharsets.UTF_8));
+		Pipeline pipeline = new Pipeline();
+		pipeline.setEngine(engine);
+		pipeline.setParallelThreshold(parallelThreshold);
+		if(!pipeline.parseProgram(sourcePath)) pipeline.throwError();
+		if(!pipeline.analyzeProgram()) pipeline.throwError();
+		if(!pipeline.compileProgram()) pipeline.throwError();
+		return pipeline;
+	}
+	
+	private static String execute(Pipeline pipeline, String input) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if(!pipeline.executeProgram(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out, 0))
+			pipeline.throwError();
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+	
+	private static String runtimeError(Pipeline pipeline, int maxCycles) {
+		assertFalse(pipeline.executeProgram(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), maxCycles));
+		assertTrue(String.valueOf(pipeline.getError()), pipeline.getError() instanceof ExecutionError);
+		return pipeline.getError().getMessage();
+	}
+	
+	@Test
+	public void readsInput() throws IOException {
+		Pipeline pipeline = compile("function void main() {\n" +
+				"\tval int a = readInt();\n" +
+				"\tval float b = readFloat();\n" +
+				"\tprintInt(a * 2);\n" +
+				"\tprintFloat(b);\n" +
+				"\tprintBool(readBool());\n" +
+				"}\n");
+		assertEquals("842.5true", execute(pipeline, " 42\n2.5 true"));
+	}
+	
+	@Test
+	public void matricesAreWrittenAndReadRelativeToTheSource() throws IOException {
+		Pipeline pipeline = compile("function void main() {\n" +
+				"\tvar matrix<int>[9][9] m;\n" +
+				"\tvar int i;\n" +
+				"\tfor(i = 0; i < 9; i = i + 1) m[i][8 - i] = i;\n" +
+				"\twriteIntMatrix9(\"matrix.txt\", m);\n" +
+				"\tm = readIntMatrix9(\"matrix.txt\");\n" +
+				"\tprintInt(m[7][1]);\n" +
+				"}\n");
+		assertEquals("7", execute(pipeline, ""));
+		assertTrue(Files.exists(folder.getRoot().toPath().resolve("matrix.txt")));
+	}
+	
+	@Test
+	public void reportsRuntimeErrors() throws IOException {
+		assertTrue(runtimeError(compile("function void main() {\n" +
+				"\tval int zero = 0;\n" +
+				"\tprintInt(1 / zero);\n" +
+				"}\n"), 0).contains("Division by zero"));
+		assertTrue(runtimeError(compile("function void main() {\n" +
+				"\tvar vector<int>[3] v;\n" +
+				"\tval int i = 3;\n" +
+				"\tv[i] = 1;\n" +
+				"}\n"), 0).contains("Index 3 out of bounds"));
+		assertTrue(runtimeError(compile("function void main() {\n" +
+				"\tval float f = error(\"custom message\");\n" +
+				"}\n"), 0).contains("custom message"));
+	}
+	
+	@Test
+	public void stopsAtCycleLimit() throws IOException {
+		Pipeline pipeline = compile("function void main() {\n" +
+				"\tvar int i;\n" +
+				"\tfor(i = 0; true; i = i + 1) { }\n" +
+				"}\n");
+		assertTrue(runtimeError(pipeline, 1000).contains("limit of 1000 cycles"));
+		
+		pipeline = compile("function void main() {\n" +
+				"\tvar int i;\n" +
+				"\tfor(i = 0; i < 10; i = i + 1) { }\n" +
+				"}\n");
+		execute(pipeline, "");
+		assertEquals(12, pipeline.getCycles());
+	}
+	
+	@Test
+	public void dumpsOutput() throws IOException {
+		Pipeline pipeline = compile("function void main() {\n" +
+				"\tprintString(\"Hello\");\n" +
+				"\tprintLine();\n" +
+				"}\n");
+		assertTrue(pipeline.executeProgram());
+		Path outPath = folder.getRoot().toPath().resolve("output.txt");
+		assertTrue(pipeline.dumpOutput(outPath));
+		assertEquals("Hello\n", new String(Files.readAllBytes(outPath), StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void dumpsProfile() throws IOException {
+		Pipeline pipeline = compile("function void main() {\n" +
+				"\tvar int i;\n" +
+				"\tfor(i = 0; i < 10; i = i + 1) { }\n" +
+				"}\n");
+		execute(pipeline, "");
+		Path outPath = folder.getRoot().toPath().resolve("profile.txt");
+		assertTrue(pipeline.dumpProfile(outPath));
+		String profile = new String(Files.readAllBytes(outPath), StandardCharsets.UTF_8);
+		assertTrue(profile, profile.startsWith("engine: " + engine + "\ncycles: 12\ntime: "));
+	}
+	
+	@Test
+	public void dumpsClassFile() throws IOException {
+		Assume.assumeTrue(engine == Engine.bytecode);
+		Pipeline pipeline = compile("function int square(int x) {\n" +
+				"\treturn x * x;\n" +
+				"}\n" +
+				"function void main() {\n" +
+				"\tprintInt(square(7));\n" +
+				"}\n");
+		Path classPath = folder.getRoot().toPath().resolve("program.class");
+		assertTrue(pipeline.dumpClass(classPath));
+		byte[] classFile = Files.readAllBytes(classPath);
+		assertEquals(0xCAFEBABE, ByteBuffer.wrap(classFile).getInt());
+		assertEquals("49", execute(pipeline, ""));
+	}
+	
+	@Test
+	public void temporariesDoNotOverwriteLiveValues() throws IOException {
+		// the temporaries of step are reused by its recursive calls, b and first must not refer to a buffer
+		Pipeline pipeline = compile("function matrix<int>[3][3] step(matrix<int>[3][3] m, int depth) {\n" +
+				"\tvar matrix<int>[3][3] r;\n" +
+				"\tif(depth > 0)\n" +
+				"\t\tr = (m # m) - ~step(m * 2, depth - 1);\n" +
+				"\telse\n" +
+				"\t\tr = m;\n" +
+				"\treturn r + ~(m * depth);\n" +
+				"}\n" +
+				"function void main() {\n" +
+				"\tvar matrix<int>[3][3] a;\n" +
+				"\tvar matrix<int>[3][3] first;\n" +
+				"\tvar int i;\n" +
+				"\tvar int j;\n" +
+				"\tvar int sum;\n" +
+				"\tfor(i = 0; i < 3; i = i + 1)\n" +
+				"\t\tfor(j = 0; j < 3; j = j + 1)\n" +
+				"\t\t\ta[i][j] = i * 3 - j;\n" +
+				"\tfor(i = 0; i < 4; i = i + 1) {\n" +
+				"\t\tval matrix<int>[3][3] b = (a # a + ~a) * i;\n" +
+				"\t\tif(i == 1) first = b;\n" +
+				"\t\tsum = sum + (a # ~b)[2][i - i / 3 * 3] + (((b - a)[1] * 2){0:1:1})[1];\n" +
+				"\t}\n" +
+				"\tprintInt(sum);\n" +
+				"\tprintString(\" \");\n" +
+				"\tprintInt(first[2][1]);\n" +
+				"\tprintString(\" \");\n" +
+				"\tprintInt(step(a, 3)[1][2] + (step(a, 2) - a)[0][0]);\n" +
+				"}\n");
+		assertEquals("535 25 -60", execute(pipeline, ""));
+	}
+	
+	private static final String parallelProgram = "function void main() {\n" +
+			"\tvar matrix<int>[16][16] a;\n" +
+			"\tvar matrix<float>[16][16] b;\n" +
+			"\tvar int i;\n" +
+			"\tvar int j;\n" +
+			"\tvar int sum;\n" +
+			"\tvar float total;\n" +
+			"\tfor(i = 0; i < 16; i = i + 1)\n" +
+			"\t\tfor(j = 0; j < 16; j = j + 1) {\n" +
+			"\t\t\ta[i][j] = i * 16 - j;\n" +
+			"\t\t\tb[i][j] = int2float(i + j) / 7.0;\n" +
+			"\t\t}\n" +
+			// independent loops, executed in parallel
+			"\tforeach(var int x : a) {\n" +
+			"\t\tvar int k;\n" +
+			"\t\tval int y = x * x;\n" +
+			"\t\tfor(k = 0; k < 3; k = k + 1) x = x + k;\n" +
+			"\t\tif(y > 100) x = y - x;\n" +
+			"\t}\n" +
+			"\tforeach(var float f : b) f = f * f + 0.25;\n" +
+			// dependent loops, executed sequentially
+			"\tforeach(val int x : a) sum = sum + x;\n" +
+			"\tforeach(var int x : a) x = x + a[0][0];\n" +
+			"\tforeach(val float f : b) total = total + f;\n" +
+			"\tprintInt(sum);\n" +
+			"\tprintFloat(total);\n" +
+			"\tval matrix<int>[16][16] c = a # ~a + 3 * a - a * a;\n" +
+			"\tval matrix<float>[16][16] d = b # b * 0.5 + ~b;\n" +
+			"\tprintInt(c[3][5] + c[15][0]);\n" +
+			"\tprintFloat(d[2][9] + d[14][1]);\n" +
+			"}\n";
+	
+	@Test
+	public void parallelExecutionMatchesSequential() throws IOException {
+		Pipeline sequential = compile(parallelProgram);
+		String expected = execute(sequential, "");
+		Pipeline parallel = compile(parallelProgram, 1);
+		assertEquals(expected, execute(parallel, ""));
+		assertEquals(sequential.getCycles(), parallel.getCycles());
+	}
+	
+	@Test
+	public void parallelLoopsReportRuntimeErrors() throws IOException {
+		assertTrue(runtimeError(compile("function void main() {\n" +
+				"\tvar vector<int>[64] v;\n" +
+				"\tforeach(var int x : v) {\n" +
+				"\t\tval vector<int>[4] w = [1, 2, 3, 4];\n" +
+				"\t\tx = w[x + 4];\n" +
+				"\t}\n" +
+				"}\n", 1), 0).contains("Index 4 out of bounds"));
+		assertTrue(runtimeError(compile("function void main() {\n" +
+				"\tvar vector<int>[64] v;\n" +
+				"\tforeach(var int x : v) x = x + 1;\n" +
+				"}\n", 1), 50).contains("limit of 50 cycles"));
+	}
+}
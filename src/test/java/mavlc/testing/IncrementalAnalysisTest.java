@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.context_analysis.AnalysisCache;
+import mavlc.context_analysis.ContextualAnalysis;
+import mavlc.context_analysis.IncrementalAnalysis;
+import mavlc.context_analysis.ModuleEnvironment;
+import mavlc.parsing.Parser;
+import mavlc.parsing.Scanner;
+import mavlc.syntax.module.Module;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalAnalysisTest {
+	
+	private static final String record =
+			"record point {\n" +
+			"\tvar int x;\n" +
+			"\tvar int y;\n" +
+			"}\n\n";
+	
+	private static final String lengthFunction =
+			"function int length2(int a, int b) {\n" +
+			"\tval int s = a * a + b * b;\n" +
+			"\treturn s;\n" +
+			"}\n\n";
+	
+	private static final String shiftFunction =
+			"function void shift(int d) {\n" +
+			"\tvar point p;\n" +
+			"\tp@x = d;\n" +
+			"\tvar vector<int>[3] v;\n" +
+			"\tv[0] = p@x + 1;\n" +
+			"}\n\n";
+	
+	private static final String mainFunction =
+			"function void main() {\n" +
+			"\tvar int a;\n" +
+			"\ta = 3;\n" +
+			"\tif(true) {\n" +
+			"\t\ta = a + 1;\n" +
+			"\t} else\n" +
+			"\t\ta = 2;\n" +
+			"}\n";
+	
+	private final AnalysisCache cache = new AnalysisCache();
+	
+	@Test
+	public void reusesUnchangedFunctions() {
+		String source = record + lengthFunction + shiftFunction + mainFunction;
+		analyze(source);
+		assertCounts(0, 3);
+		
+		analyze(source);
+		assertCounts(3, 0);
+		
+		// moving functions to other lines does not invalidate them
+		analyze("\n\n" + record + shiftFunction + lengthFunction + mainFunction);
+		assertCounts(3, 0);
+		
+		analyze(record + lengthFunction.replace("b * b", "b * b + 1") + shiftFunction + mainFunction);
+		assertCounts(2, 1);
+	}
+	
+	@Test
+	public void changedRecordInvalidatesUsers() {
+		analyze(record + lengthFunction + shiftFunction + mainFunction);
+		analyze(record.replace("var int y;", "var int y;\n\tvar float z;") + lengthFunction + shiftFunction + mainFunction);
+		assertCounts(2, 1);
+	}
+	
+	@Test
+	public void changedSignatureInvalidatesFunction() {
+		analyze(record + lengthFunction + shiftFunction + mainFunction);
+		analyze(record + lengthFunction + shiftFunction.replace("int d", "int d, int e") + mainFunction);
+		assertCounts(2, 1);
+	}
+	
+	private void analyze(String source) {
+		Module module = new Parser(new Scanner(source)).parse();
+		new IncrementalAnalysis(cache).analyze(module);
+		
+		// the reused decorations must be indistinguishable from a full analysis
+		Module reference = new Parser(new Scanner(source)).parse();
+		reference.accept(new ContextualAnalysis(new ModuleEnvironment()));
+		assertTrue(new AstComparator().compare(module, reference));
+	}
+	
+	private void assertCounts(int reused, int analyzed) {
+		assertEquals("reused functions", reused, cache.getReusedCount());
+		assertEquals("analyzed functions", analyzed, cache.getAnalyzedCount());
+	}
+}
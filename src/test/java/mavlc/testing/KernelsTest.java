@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.execution.Kernels;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KernelsTest {
+	
+	// not a multiple of the tile size, so the tiled kernels have to handle partial tiles
+	private static final int rows = Kernels.TILE + 7, inner = 2 * Kernels.TILE + 3, cols = Kernels.TILE + 29;
+	
+	private final Random random = new Random(42);
+	
+	private int[] randomInts(int length) {
+		int[] result = new int[length];
+		for(int i = 0; i < length; i++) result[i] = random.nextInt(200) - 100;
+		return result;
+	}
+	
+	private float[] randomFloats(int length) {
+		float[] result = new float[length];
+		for(int i = 0; i < length; i++) result[i] = random.nextFloat() * 2 - 1;
+		return result;
+	}
+	
+	@Test
+	public void tiledIntMatrixMultiplication() {
+		int[] left = randomInts(rows * inner), right = randomInts(inner * cols);
+		int[] expected = new int[rows * cols];
+		for(int i = 0; i < rows; i++)
+			for(int j = 0; j < cols; j++)
+				for(int k = 0; k < inner; k++) expected[i * cols + j] += left[i * inner + k] * right[k * cols + j];
+		assertArrayEquals(expected, Kernels.matrixMultiply(left, right, rows, inner, cols));
+	}
+	
+	@Test
+	public void tiledFloatMatrixMultiplicationKeepsSummationOrder() {
+		float[] left = randomFloats(rows * inner), right = randomFloats(inner * cols);
+		float[] expected = new float[rows * cols];
+		for(int i = 0; i < rows; i++)
+			for(int j = 0; j < cols; j++)
+				for(int k = 0; k < inner; k++) expected[i * cols + j] += left[i * inner + k] * right[k * cols + j];
+		// exact comparison, the tiles must not change the rounding
+		assertArrayEquals(expected, Kernels.matrixMultiply(left, right, rows, inner, cols), 0);
+	}
+	
+	@Test
+	public void tiledTranspose() {
+		float[] matrix = randomFloats(rows * cols);
+		float[] transposed = Kernels.transpose(matrix, rows, cols);
+		for(int i = 0; i < rows; i++)
+			for(int j = 0; j < cols; j++) assertEquals(matrix[i * cols + j], transposed[j * rows + i], 0);
+		assertArrayEquals(matrix, Kernels.transpose(transposed, cols, rows), 0);
+	}
+	
+	@Test
+	public void reusedResultBuffersAreOverwritten() {
+		int[] left = randomInts(rows * inner), right = randomInts(inner * cols);
+		// the matrix multiplication accumulates, so the old contents must be cleared first
+		int[] buffer = randomInts(rows * cols);
+		assertSame(buffer, Kernels.matrixMultiply(left, right, rows, inner, cols, buffer));
+		assertArrayEquals(Kernels.matrixMultiply(left, right, rows, inner, cols), buffer);
+		float[] matrix = randomFloats(rows * cols), transposed = randomFloats(rows * cols);
+		assertArrayEquals(Kernels.transpose(matrix, rows, cols), Kernels.transpose(matrix, rows, cols, transposed), 0);
+		float[] sum = randomFloats(rows * cols);
+		assertArrayEquals(Kernels.add(matrix, transposed), Kernels.add(matrix, transposed, sum), 0);
+	}
+	
+	@Test
+	public void elementWiseOperations() {
+		int[] left = randomInts(100), right = randomInts(100);
+		int[] sum = Kernels.add(left, right), difference = Kernels.subtract(left, right);
+		int[] product = Kernels.multiply(left, right), scaled = Kernels.scale(3, left);
+		int dot = 0;
+		for(int i = 0; i < 100; i++) {
+			assertEquals(left[i] + right[i], sum[i]);
+			assertEquals(left[i] - right[i], difference[i]);
+			assertEquals(left[i] * right[i], product[i]);
+			assertEquals(3 * left[i], scaled[i]);
+			dot += left[i] * right[i];
+		}
+		assertEquals(dot, Kernels.dotProduct(left, right));
+	}
+}
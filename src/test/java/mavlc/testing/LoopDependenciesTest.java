@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.Pipeline;
+import mavlc.execution.LoopDependencies;
+import mavlc.syntax.module.Module;
+import mavlc.syntax.statement.ForEachLoop;
+import mavlc.syntax.statement.Statement;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LoopDependenciesTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * @return For each foreach loop at the top level of main, whether its iterations are independent.
+	 */
+	private List<Boolean> classify(String body) throws IOException {
+		Path sourcePath = folder.newFile().toPath();
+		String source = "function int f(int x) {\n\treturn x;\n}\n" +
+				"function void main() {\n" +
+				"\tvar matrix<int>[4][4] m;\n" +
+				"\tvar vector<int>[4] v;\n" +
+				"\tvar int outer;\n" +
+				body +
+				"}\n";
+		Files.write(sourcePath, source.getBytes(StandardCharsets.UTF_8));
+		Pipeline pipeline = new Pipeline();
+		assertTrue(pipeline.parseProgram(sourcePath));
+		assertTrue(pipeline.analyzeProgram());
+		List<Boolean> result = new ArrayList<>();
+		for(Statement statement : ((Module) pipeline.getAst()).functions.get(1).body)
+			if(statement instanceof ForEachLoop) result.add(LoopDependencies.isIndependent((ForEachLoop) statement));
+		return result;
+	}
+	
+	@Test
+	public void independentLoops() throws IOException {
+		assertEquals(Arrays.asList(true, true, true, true), classify("" +
+				"\tforeach(var int x : m) x = x * outer;\n" +
+				"\tforeach(val int x : m) {\n" +
+				"\t\tvar vector<int>[4] w;\n" +
+				"\t\tvar int i;\n" +
+				"\t\tfor(i = 0; i < 4; i = i + 1) w[i] = x + v[i];\n" +
+				"\t\tforeach(var int y : w) y = y + 1;\n" +
+				"\t}\n" +
+				"\tforeach(val int x : v) {\n" +
+				"\t\tval int y = x + m[0][0];\n" +
+				"\t}\n" +
+				"\tforeach(var int x : v) x = x + m[1][1];\n"));
+	}
+	
+	@Test
+	public void dependentLoops() throws IOException {
+		assertEquals(Arrays.asList(false, false, false, false, false, false), classify("" +
+				"\tforeach(val int x : m) outer = outer + x;\n" +
+				"\tforeach(val int x : v) m[x][0] = x;\n" +
+				"\tforeach(var int x : v) x = v[0];\n" +
+				"\tforeach(val int x : m) foreach(var int y : v) y = x;\n" +
+				"\tforeach(var int x : v) x = f(x);\n" +
+				"\tforeach(val int x : v) printInt(x);\n"));
+	}
+}
@@ -0,0 +1,477 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.CompilationJob;
+import mavlc.Pipeline;
+import mavlc.Task;
+import mavlc.execution.Engine;
+import mavlc.optimization.Optimizer;
+import mavlc.services.visualization.Dumper;
+import mavlc.syntax.module.Module;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class OptimizerTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private Pipeline analyze(String source, Optimizer optimizer) throws IOException {
+		Path sourcePath = folder.newFile().toPath();
+		Files.write(sourcePath, source.getBytes(StandardCharsets.UTF_8));
+		Pipeline pipeline = new Pipeline();
+		pipeline.setOptimizer(optimizer);
+		if(!pipeline.parseProgram(sourcePath)) pipeline.throwError();
+		if(!pipeline.analyzeProgram()) pipeline.throwError();
+		return pipeline;
+	}
+	
+	/**
+	 * @return The output of the program, followed by the first line of the runtime error if execution failed.
+	 */
+	private String execute(String source, Optimizer optimizer, Engine engine) throws IOException {
+		Pipeline pipeline = analyze(source, optimizer);
+		pipeline.setEngine(engine);
+		if(!pipeline.compileProgram()) pipeline.throwError();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		boolean success = pipeline.executeProgram(new ByteArrayInputStream(new byte[0]), out, 0);
+		String output = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		return success ? output : output + "\n" + pipeline.getError().getMessage().trim().split("\n")[0];
+	}
+	
+	private static final String constantProgram = "function int id(int x) {\n" +
+			"\tprintInt(x);\n" +
+			"\treturn x;\n" +
+			"}\n" +
+			"function void main() {\n" +
+			"\tval int n = 4;\n" +
+			"\tval float half = 1.0 / 2.0;\n" +
+			"\tvar matrix<int>[3][5] m;\n" +
+			"\tvar vector<float>[8] v;\n" +
+			"\tvar int i;\n" +
+			"\tprintInt(n * (2 + 3) - 1);\n" +
+			"\tprintFloat(half * 3.0 + 0.25);\n" +
+			"\tprintInt(m.rows + m.cols * v.dimension);\n" +
+			"\tprintBool(n > 3 & !false ? n == 4 : false);\n" +
+			"\ti = id(2) * 1 + 0;\n" +
+			"\tm = ~(~m);\n" +
+			"\tprintBool(false & id(3) > 0);\n" +
+			"\tprintFloat(-0.0 - 0.0);\n" +
+			"\tprintInt(i / (n - 4));\n" +
+			"}\n";
+	
+	@Test
+	public void foldsConstants() throws IOException {
+		// without inlining, so the calls are kept
+		Pipeline pipeline = analyze(constantProgram, new Optimizer(0));
+		String main = Dumper.dump(((Module) pipeline.getAst()).functions.get(1));
+		assertTrue(main, main.contains("val float half = 0.5;"));
+		assertTrue(main, main.contains("printInt(19);"));
+		assertTrue(main, main.contains("printFloat(1.75);"));
+		assertTrue(main, main.contains("printInt(43);"));
+		assertTrue(main, main.contains("printBool(true);"));
+		assertTrue(main, main.contains("i = id(2);"));
+		assertTrue(main, main.contains("m = m;"));
+		// calls and integer divisions by zero are kept, as they have an effect at runtime
+		assertTrue(main, main.contains("printBool(false & id(3) > 0);"));
+		assertTrue(main, main.contains("printInt(i / 0);"));
+		assertTrue(pipeline.getOptimization().nodesAfter < pipeline.getOptimization().nodesBefore);
+	}
+	
+	@Test
+	public void keepsAnalyzedModule() throws IOException {
+		Pipeline pipeline = analyze(constantProgram, null);
+		Module module = (Module) pipeline.getAst();
+		String before = Dumper.dump(module);
+		Optimizer.Result result = new Optimizer().optimize(module);
+		assertNotSame(module, result.module);
+		assertEquals(before, Dumper.dump(module));
+	}
+	
+	@Test
+	public void keepsBehavior() throws IOException {
+		for(Engine engine : Engine.values())
+			assertEquals(engine.toString(), execute(constantProgram, null, engine), execute(constantProgram, new Optimizer(), engine));
+	}
+	
+	private static final String deadCodeProgram = "record Unused {\n" +
+			"\tvar int a;\n" +
+			"}\n" +
+			"record Used {\n" +
+			"\tvar int a;\n" +
+			"}\n" +
+			"function int unused(int x) {\n" +
+			"\treturn helper(x);\n" +
+			"}\n" +
+			"function int helper(int x) {\n" +
+			"\treturn x + 1;\n" +
+			"}\n" +
+			"function int used(int x) {\n" +
+			"\treturn helper(x) * 2;\n" +
+			"}\n" +
+			"function void main() {\n" +
+			"\tval bool debug = false;\n" +
+			"\tvar Used u;\n" +
+			"\tif(debug) printInt(unused(1));\n" +
+			"\tif(!debug) {\n" +
+			"\t\tu@a = used(2);\n" +
+			"\t} else printInt(0);\n" +
+			"\tprintInt(u@a);\n" +
+			"}\n";
+	
+	@Test
+	public void eliminatesDeadCode() throws IOException {
+		Module module = (Module) analyze(deadCodeProgram, new Optimizer(0)).getAst();
+		assertEquals(Arrays.asList("helper", "used", "main"), module.functions.stream().map(function -> function.name).collect(Collectors.toList()));
+		assertEquals(Collections.singletonList("Used"), module.records.stream().map(record -> record.name).collect(Collectors.toList()));
+		String main = Dumper.dump(module.functions.get(2));
+		assertFalse(main, main.contains("if"));
+		assertTrue(main, main.contains("u@a = used(2);"));
+		for(Engine engine : Engine.values())
+			assertEquals("6", execute(deadCodeProgram, new Optimizer(), engine));
+	}
+	
+	private static final String inlineProgram = "function int clamp(int x, int lo, int hi) {\n" +
+			"\tvar int r;\n" +
+			"\tr = x;\n" +
+			"\tif(r < lo) r = lo;\n" +
+			"\tif(r > hi) r = hi;\n" +
+			"\treturn r;\n" +
+			"}\n" +
+			"function int square(int x) {\n" +
+			"\treturn x * x;\n" +
+			"}\n" +
+			"function int shift(int x) {\n" +
+			"\tx = x + 1;\n" +
+			"\treturn x;\n" +
+			"}\n" +
+			"function int trace(int x) {\n" +
+			"\tprintInt(x);\n" +
+			"\treturn x;\n" +
+			"}\n" +
+			"function int fact(int n) {\n" +
+			"\treturn n <= 1 ? 1 : n * fact(n - 1);\n" +
+			"}\n" +
+			"function void main() {\n" +
+			"\tvar int s;\n" +
+			"\tvar int r;\n" +
+			"\tvar matrix<int>[3][3] m;\n" +
+			"\ts = 0;\n" +
+			"\tfor(r = 0; r < 3; r = r + 1) {\n" +
+			"\t\tvar int c;\n" +
+			"\t\tfor(c = 0; c < clamp(r, 1, 3); c = c + 1)\n" +
+			"\t\t\tm[r][c] = clamp(square(r - c) * 3 - 2, 0, 5);\n" +
+			"\t}\n" +
+			"\tforeach(val int e : m) s = s + e;\n" +
+			"\tprintInt(s + shift(s));\n" +
+			"\tprintInt(trace(1) + trace(square(2)));\n" +
+			"\tprintInt(fact(5) + trace(3));\n" +
+			"\tprintInt(s > 2 ? trace(4) : trace(5));\n" +
+			"}\n";
+	
+	@Test
+	public void inlinesSmallFunctions() throws IOException {
+		Module module = (Module) analyze(inlineProgram, new Optimizer()).getAst();
+		// recursive functions and functions with calls left are kept, all others are inlined and eliminated
+		assertEquals(Arrays.asList("clamp", "trace", "fact", "main"), module.functions.stream().map(function -> function.name).collect(Collectors.toList()));
+		String main = Dumper.dump(module.functions.get(3));
+		assertFalse(main, main.contains("clamp(square"));
+		assertTrue(main, main.contains("printInt(1);"));
+		// calls in loop conditions, after calls with side effects and in select expressions are not inlined
+		assertTrue(main, main.contains("c < clamp(r, 1, 3)"));
+		assertTrue(main, main.contains("fact(5) + trace(3)"));
+		assertTrue(main, main.contains("trace(4) : trace(5)"));
+		
+		// the dump is a valid program that declares every name only once
+		Pipeline dumped = analyze(Dumper.dump(module), null);
+		assertEquals(4, ((Module) dumped.getAst()).functions.size());
+		for(Engine engine : Engine.values()) {
+			String expected = execute(inlineProgram, null, engine);
+			assertEquals(engine.toString(), expected, execute(inlineProgram, new Optimizer(), engine));
+			assertEquals(engine.toString(), expected, execute(Dumper.dump(module), null, engine));
+		}
+	}
+	
+	@Test
+	public void respectsInlineThreshold() throws IOException {
+		Module module = (Module) analyze(inlineProgram, new Optimizer(10)).getAst();
+		String main = Dumper.dump(module.functions.get(module.functions.size() - 1));
+		assertTrue(main, main.contains("clamp("));
+		assertFalse(main, main.contains("square("));
+	}
+	
+	private static final String loopProgram = "function void main() {\n" +
+			"\tvar vector<int>[32] v;\n" +
+			"\tvar int n;\n" +
+			"\tvar int i;\n" +
+			"\tvar int s;\n" +
+			"\tn = 3;\n" +
+			"\ts = 0;\n" +
+			"\tfor(i = 0; i < 8; i = i + 1) {\n" +
+			"\t\tvar int j;\n" +
+			"\t\tfor(j = 0; j < 4; j = j + 1)\n" +
+			"\t\t\ts = s + j * (n * n - 1) + i * n;\n" +
+			"\t\tv[i * 4] = s;\n" +
+			"\t\tv[i * 4 + 1] = n * 2;\n" +
+			"\t}\n" +
+			"\tfor(i = 7; i >= 0; i = i - 1) {\n" +
+			"\t\ts = s + v[i * 4] * (s + 1) + v[i * 4 + 1];\n" +
+			"\t\tn = n + 1;\n" +
+			"\t}\n" +
+			"\tfor(i = 0; i < 5; i = i + 1)\n" +
+			"\t\ts = s + i * i + i * i;\n" +
+			"\tprintInt(s);\n" +
+			"\tprintInt(n);\n" +
+			"}\n";
+	
+	@Test
+	public void optimizesLoops() throws IOException {
+		Pipeline pipeline = analyze(loopProgram, new Optimizer());
+		String main = Dumper.dump(pipeline.getAst());
+		// invariant expressions are moved out of all loops in which they are invariant
+		assertTrue(main, main.contains("val int inv_1 = n * n - 1;\n\tval int inv_3 = n * 2;"));
+		assertTrue(main, main.contains("val int inv_2 = i * n;"));
+		assertTrue(main, main.contains("s = s + j * inv_1 + inv_2;"));
+		// expressions referencing variables assigned in the loop are kept
+		assertTrue(main, main.contains("* (s + 1) + v[i_2 + 1];"));
+		// products of the loop variable occurring twice are reduced
+		assertTrue(main, main.contains("i_1 = i_1 + 4;"));
+		assertTrue(main, main.contains("i_2 = 28;"));
+		assertTrue(main, main.contains("i_2 = i_2 - 4;"));
+		// the loop variable itself is not an invariant factor
+		assertTrue(main, main.contains("s = s + i * i + i * i;"));
+		assertEquals(7, pipeline.getOptimization().report.size());
+		assertTrue(pipeline.getOptimizationReport().startsWith("// 1:0: removed 4 of 4 index checks in main\n// 11:"));
+		
+		for(Engine engine : Engine.values()) {
+			String expected = execute(loopProgram, null, engine);
+			assertEquals(engine.toString(), expected, execute(loopProgram, new Optimizer(), engine));
+			assertEquals(engine.toString(), expected, execute(pipeline.getOptimizationReport(), null, engine));
+		}
+	}
+	
+	private static final String subexpressionProgram = "function int next(int x) {\n" +
+			"\tprintInt(x);\n" +
+			"\treturn x > 100 ? x : next(x * 2);\n" +
+			"}\n" +
+			"function void main() {\n" +
+			"\tvar matrix<int>[4][4] img;\n" +
+			"\tvar int i;\n" +
+			"\tvar int j;\n" +
+			"\tvar int s;\n" +
+			"\ti = 1;\n" +
+			"\tj = 2;\n" +
+			"\timg[1][2] = 5;\n" +
+			"\ts = img[i][j] * 2 + img[i][j + 1] * 3 + img[i][j];\n" +
+			"\tprintInt(s + img[i][j]);\n" +
+			"\tj = 1;\n" +
+			"\tprintInt(img[i][j] + next(i) + next(i) + img[i][j]);\n" +
+			"\tprintInt(next(j) + img[i + j][j] + img[i + j][j]);\n" +
+			"}\n";
+	
+	@Test
+	public void mergesCommonSubexpressions() throws IOException {
+		Pipeline pipeline = analyze(subexpressionProgram, new Optimizer());
+		String main = Dumper.dump(((Module) pipeline.getAst()).functions.get(1));
+		assertTrue(main, main.contains("val int cse_1 = img[i][j];\n\ts = cse_1 * 2 + img[i][j + 1] * 3 + cse_1;\n\tprintInt(s + cse_1);"));
+		// the assignment to j yields a different value
+		assertTrue(main, main.contains("val int cse_2 = img[i][j];\n\tprintInt(cse_2 + next(i) + next(i) + cse_2);"));
+		// an access that may fail is not evaluated before a call
+		assertTrue(main, main.contains("printInt(next(j) + img[i + j][j] + img[i + j][j]);"));
+		
+		for(Engine engine : Engine.values()) {
+			String expected = execute(subexpressionProgram, null, engine);
+			assertEquals(engine.toString(), expected, execute(subexpressionProgram, new Optimizer(), engine));
+			assertEquals(engine.toString(), expected, execute(Dumper.dump(pipeline.getAst()), null, engine));
+		}
+	}
+	
+	private static final String comparisonProgram = "function void main() {\n" +
+			"\tvar int x;\n" +
+			"\tvar int y;\n" +
+			"\tvar bool lt;\n" +
+			"\tvar bool gt;\n" +
+			"\tvar bool eq;\n" +
+			"\tvar bool ne;\n" +
+			"\tx = 3;\n" +
+			"\ty = 2;\n" +
+			"\tlt = x * 2 + 1 < y * 3 - 1;\n" +
+			"\tgt = x * 2 + 1 > y * 3 - 1;\n" +
+			"\teq = x * 2 + 1 == y * 3 - 1;\n" +
+			"\tne = x * 2 + 1 != y * 3 - 1;\n" +
+			"\tprintBool(lt);\n" +
+			"\tprintBool(gt);\n" +
+			"\tprintBool(eq);\n" +
+			"\tprintBool(ne);\n" +
+			"}\n";
+	
+	@Test
+	public void keepsComparisonsWithDifferentOperators() throws IOException {
+		Pipeline pipeline = analyze(comparisonProgram, new Optimizer());
+		// only the operands are shared, the comparisons differ in their operator
+		assertEquals(Arrays.asList("10:9: merged 4 occurrences of x * 2 + 1 into cse_1", "10:21: merged 4 occurrences of y * 3 - 1 into cse_2"),
+				pipeline.getOptimization().report);
+		String main = Dumper.dump(((Module) pipeline.getAst()).functions.get(0));
+		assertTrue(main, main.contains("lt = cse_1 < cse_2;\n\tgt = cse_1 > cse_2;\n\teq = cse_1 == cse_2;\n\tne = cse_1 != cse_2;"));
+		
+		for(Engine engine : Engine.values()) {
+			String expected = execute(comparisonProgram, null, engine);
+			assertEquals(engine.toString(), "falsetruefalsetrue", expected);
+			assertEquals(engine.toString(), expected, execute(comparisonProgram, new Optimizer(), engine));
+		}
+	}
+	
+	private static final String boundsProgram = "function void main() {\n" +
+			"\tval int n = 6;\n" +
+			"\tvar matrix<int>[6][6] img;\n" +
+			"\tvar matrix<int>[6][6] out;\n" +
+			"\tvar vector<int>[5] v;\n" +
+			"\tvar int i;\n" +
+			"\tvar int j;\n" +
+			"\tfor(i = 0; i < n; i = i + 1)\n" +
+			"\t\tfor(j = n - 1; j >= 0; j = j - 1)\n" +
+			"\t\t\timg[i][j] = i * j + j / 2;\n" +
+			"\tfor(i = 1; i < n - 1; i = i + 1)\n" +
+			"\t\tfor(j = 1; j < n - 1; j = j + 1)\n" +
+			"\t\t\tout[i][j] = img[i - 1][j] + img[i + 1][j] + img[i][j - 1] + img[i][j + 1] - 4 * img[i][j];\n" +
+			"\tj = 3;\n" +
+			"\tprintInt(out[j][2] + out[4][4]);\n" +
+			"\tfor(i = 0; i <= v.dimension; i = i + 1)\n" +
+			"\t\tv[i] = i;\n" +
+			"}\n";
+	
+	@Test
+	public void eliminatesBoundsChecks() throws IOException {
+		Pipeline pipeline = analyze(boundsProgram, new Optimizer());
+		// the row index j of out and the index i of v, which reaches the dimension, are still checked
+		assertEquals(17, pipeline.getOptimization().removedChecks);
+		assertEquals("1:0: removed 17 of 19 index checks in main", pipeline.getOptimization().report.get(0));
+		
+		for(Engine engine : Engine.values()) {
+			String expected = execute(boundsProgram, null, engine);
+			assertTrue(expected, expected.contains("Index 5 out of bounds for dimension 5"));
+			assertEquals(engine.toString(), expected, execute(boundsProgram, new Optimizer(), engine));
+		}
+		
+		// an index that is out of bounds whenever it is evaluated keeps its check and is reported
+		String outOfBounds = boundsProgram.replace("v[i] = i;", "v[i + 5] = i;");
+		pipeline = analyze(outOfBounds, new Optimizer());
+		assertTrue(pipeline.getOptimizationReport(), pipeline.getOptimizationReport().contains("// 17:8: index range [5, 10] is always out of bounds for dimension 5\n"));
+		for(Engine engine : Engine.values()) {
+			String expected = execute(outOfBounds, null, engine);
+			assertTrue(expected, expected.contains("Index 5 out of bounds for dimension 5"));
+			assertEquals(engine.toString(), expected, execute(outOfBounds, new Optimizer(), engine));
+		}
+	}
+	
+	private static final String unreachableProgram = "function void unused(vector<int>[4] v) {\n" +
+			"\tprintInt(v[5]);\n" +
+			"}\n" +
+			"function void main() {\n" +
+			"\tvar vector<int>[4] v;\n" +
+			"\tvar bool c;\n" +
+			"\tv[2] = 2;\n" +
+			"\tc = false;\n" +
+			"\tif(c) printInt(v[5]);\n" +
+			"\tprintInt(v[2]);\n" +
+			"}\n";
+	
+	@Test
+	public void accessesOutOfBoundsOnlyFailWhenExecuted() throws IOException {
+		Pipeline pipeline = analyze(unreachableProgram, new Optimizer());
+		// the function that is never called is removed before the ranges are analyzed
+		assertEquals(Arrays.asList("9:19: index 5 is always out of bounds for dimension 4", "4:0: removed 2 of 3 index checks in main"),
+				pipeline.getOptimization().report);
+		assertEquals(Collections.singletonList("9:19: index 5 is always out of bounds for dimension 4"), pipeline.getOptimization().warnings);
+		
+		// the warnings are logged even without verbose output
+		Path sourcePath = folder.getRoot().toPath().resolve("unreachable.mavl");
+		Files.write(sourcePath, unreachableProgram.getBytes(StandardCharsets.UTF_8));
+		CompilationJob job = new CompilationJob(sourcePath, EnumSet.of(Task.parse, Task.analyze), (source, option, extension) -> {
+			throw new AssertionError("No dump task selected");
+		});
+		job.setOptimizer(new Optimizer());
+		assertTrue(job.call().succeeded());
+		assertTrue(job.getLog(), job.getLog().contains("Warning: unreachable.mavl:9:19: index 5 is always out of bounds for dimension 4"));
+		
+		for(Engine engine : Engine.values()) {
+			assertEquals(engine.toString(), "2", execute(unreachableProgram, null, engine));
+			assertEquals(engine.toString(), "2", execute(unreachableProgram, new Optimizer(), engine));
+		}
+	}
+	
+	private static final String fusionProgram = "function void main() {\n" +
+			"\tvar matrix<int>[3][4] img;\n" +
+			"\tvar vector<int>[4] v;\n" +
+			"\tvar int i;\n" +
+			"\tvar int j;\n" +
+			"\tvar int count;\n" +
+			"\tfor(i = 0; i < 3; i = i + 1)\n" +
+			"\t\tfor(j = 0; j < 4; j = j + 1)\n" +
+			"\t\t\timg[i][j] = i * 60 + j * 25;\n" +
+			"\tforeach(var int p : img)\n" +
+			"\t\tp = p * 255 / 195;\n" +
+			"\tforeach(val int q : img)\n" +
+			"\t\tprintInt(q);\n" +
+			"\tforeach(var int p : img)\n" +
+			"\t\tp = p > 128 ? 255 : 0;\n" +
+			"\tforeach(var int q : img) {\n" +
+			"\t\tvar int t;\n" +
+			"\t\tt = 255 - q;\n" +
+			"\t\tq = t;\n" +
+			"\t}\n" +
+			"\tforeach(val int p : img)\n" +
+			"\t\tv[0] = v[0] + p;\n" +
+			"\tv = img[1];\n" +
+			"\tforeach(var int x : v)\n" +
+			"\t\tx = x / j;\n" +
+			"\tforeach(var int x : v)\n" +
+			"\t\tx = x / i;\n" +
+			"\tforeach(val int x : v)\n" +
+			"\t\tcount = x;\n" +
+			"\tprintInt(v[0] + v[3]);\n" +
+			"}\n";
+	
+	@Test
+	public void fusesForeachLoops() throws IOException {
+		Pipeline pipeline = analyze(fusionProgram, new Optimizer());
+		String main = Dumper.dump(pipeline.getAst());
+		// a loop with calls, a loop writing other variables and two loops which may both fail are kept
+		assertTrue(main, main.contains("foreach(val int q : img) printInt(q);"));
+		assertTrue(main, main.contains("foreach(val int p : img) v[0] = v[0] + p;"));
+		assertTrue(main, main.contains("foreach(var int x : v) x = x / j;\n\tforeach(var int x : v) x = x / i;"));
+		// the iterator of the second loop is renamed, its local t keeps a scope of its own
+		assertTrue(main, main.contains("foreach(var int p : img) {\n\t\tp = p > 128 ? 255 : 0;\n\t\t{\n\t\t\tvar int t;\n\t\t\tt = 255 - p;\n\t\t\tp = t;\n\t\t}\n\t}"));
+		assertFalse(main, main.contains("foreach(var int q"));
+		assertTrue(pipeline.getOptimization().report.contains("14:4: fused the foreach loop in line 16 over img into this loop"));
+		
+		for(Engine engine : Engine.values()) {
+			String expected = execute(fusionProgram, null, engine);
+			assertEquals(engine.toString(), expected, execute(fusionProgram, new Optimizer(), engine));
+		}
+	}
+}
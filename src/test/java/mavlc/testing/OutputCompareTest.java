@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.Pipeline;
+import mavlc.execution.Engine;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(Parameterized.class)
+public class OutputCompareTest extends BaseCompareTest {
+	
+	private final Engine engine;
+	
+	public OutputCompareTest(Path srcFilePath, String testName, Engine engine) {
+		super(srcFilePath, testName, ".txt", ".mavl");
+		this.engine = engine;
+	}
+	
+	@Override
+	public void run() {
+		Pipeline pipeline = new Pipeline();
+		pipeline.setEngine(engine);
+		if(!pipeline.parseProgram(srcFilePath)) pipeline.throwError();
+		if(!pipeline.analyzeProgram()) pipeline.throwError();
+		if(!pipeline.compileProgram()) pipeline.throwError();
+		if(!pipeline.executeProgram()) pipeline.throwError();
+		
+		try {
+			String refOutput = new String(Files.readAllBytes(refFilePath), StandardCharsets.UTF_8).replace("\r", "");
+			assertEquals("Output of the program does not match the expectation", refOutput, pipeline.getOutput());
+		} catch(IOException e) {
+			throw new RuntimeException("Failed to load reference output", e);
+		}
+	}
+	
+	/**
+	 * Every program is executed by every engine.
+	 */
+	@Parameters(name = "{1} ({2})")
+	public static Collection<Object[]> data() {
+		List<Object[]> data = new ArrayList<>();
+		for(Object[] testCase : TestUtils.findTestCases(Paths.get("src", "test", "testcases", "execution")))
+			for(Engine engine : Engine.values())
+				data.add(new Object[] { testCase[0], testCase[1], engine });
+		return data;
+	}
+}
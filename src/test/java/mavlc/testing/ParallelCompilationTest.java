@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.CompilationJob;
+import mavlc.Task;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ParallelCompilationTest {
+	
+	private static final Set<Task> tasks = EnumSet.of(Task.parse, Task.analyze);
+	
+	@Test
+	public void concurrentJobsMatchSequentialJobs() throws Exception {
+		List<Path> sources = Stream.concat(
+				TestUtils.findSourceFiles(Paths.get("src", "test", "testcases", "trees")),
+				TestUtils.findSourceFiles(Paths.get("src", "test", "testcases", "errors")))
+				.sorted().collect(Collectors.toList());
+		
+		List<CompilationJob> sequential = new ArrayList<>();
+		for(Path source : sources)
+			sequential.add(newJob(source).call());
+		
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for(int round = 0; round < 4; round++) {
+				List<Future<CompilationJob>> futures = new ArrayList<>();
+				for(Path source : sources)
+					futures.add(executor.submit(newJob(source)));
+				for(int i = 0; i < sources.size(); i++)
+					assertSameResult(sequential.get(i), futures.get(i).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void bufferedJobsKeepProgramOutput() throws Exception {
+		Path source = Paths.get("src", "test", "testcases", "execution", "programs").resolve("recursion.exec.mavl");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<CompilationJob>> futures = new ArrayList<>();
+			for(int i = 0; i < 8; i++)
+				futures.add(executor.submit(new CompilationJob(source, EnumSet.of(Task.parse, Task.analyze, Task.compile, Task.execute), (sourcePath, option, extension) -> {
+					throw new AssertionError("No dump task selected");
+				})));
+			for(Future<CompilationJob> future : futures) {
+				CompilationJob job = future.get();
+				assertTrue(job.succeeded());
+				assertFalse(job.getPipeline().getOutput().isEmpty());
+				// the job is not verbose, so its log holds exactly the program output
+				assertEquals(job.getPipeline().getOutput(), job.getLog());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	private static CompilationJob newJob(Path source) {
+		return new CompilationJob(source, tasks, (sourcePath, option, extension) -> {
+			throw new AssertionError("No dump task selected");
+		});
+	}
+	
+	private static void assertSameResult(CompilationJob expected, CompilationJob actual) {
+		assertEquals(expected.sourcePath, actual.sourcePath);
+		assertEquals(expected.getFailedTask(), actual.getFailedTask());
+		if(!expected.succeeded()) {
+			assertEquals(expected.getError().getClass(), actual.getError().getClass());
+			assertEquals(expected.getError().getMessage(), actual.getError().getMessage());
+		}
+		if(expected.getPipeline().getAst() != null)
+			assertTrue(new AstComparator().compare(actual.getPipeline().getAst(), expected.getPipeline().getAst()));
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.Pipeline;
+import mavlc.parsing.ParseCache;
+import mavlc.parsing.Parser;
+import mavlc.parsing.Scanner;
+import mavlc.syntax.module.Module;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ParseCacheTest {
+	
+	private static final String source =
+			"function void main() {\n" +
+			"\tvar int a;\n" +
+			"\ta = 3 * 4;\n" +
+			"}\n";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void pipelineReusesCachedModules() throws IOException {
+		ParseCache cache = new ParseCache(folder.newFolder("cache").toPath(), ParseCache.defaultMaxSize);
+		Path sourcePath = Paths.get("src", "test", "testcases", "trees", "p2_public", "task_1", "compound_4.ctx.mavl");
+		
+		Pipeline first = new Pipeline();
+		first.setParseCache(cache);
+		assertTrue(first.parseProgram(sourcePath));
+		assertEquals(0, cache.getHitCount());
+		
+		Pipeline second = new Pipeline();
+		second.setParseCache(cache);
+		assertTrue(second.parseProgram(sourcePath));
+		assertEquals(1, cache.getHitCount());
+		
+		new AstComparator().compare(second.getAst(), first.getAst());
+	}
+	
+	@Test
+	public void corruptEntriesAreDiscarded() throws IOException {
+		Path directory = folder.newFolder("cache").toPath();
+		ParseCache cache = new ParseCache(directory, ParseCache.defaultMaxSize);
+		byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+		cache.put(bytes, parse(bytes));
+		
+		List<Path> entries = entries(directory);
+		assertEquals(1, entries.size());
+		Files.write(entries.get(0), new byte[]{'M', 'A', 'V', 'B', 1, 42});
+		
+		assertNull(cache.get(bytes));
+		assertTrue(entries(directory).isEmpty());
+	}
+	
+	@Test
+	public void evictsLeastRecentlyUsedEntries() throws IOException {
+		Path directory = folder.newFolder("cache").toPath();
+		ParseCache cache = new ParseCache(directory, ParseCache.defaultMaxSize);
+		byte[][] sources = new byte[8][];
+		Set<Path> written = new HashSet<>();
+		long totalSize = 0;
+		for(int i = 0; i < sources.length; i++) {
+			sources[i] = (source + "// " + i + "\n").getBytes(StandardCharsets.UTF_8);
+			cache.put(sources[i], parse(sources[i]));
+			for(Path entry : entries(directory)) {
+				if(!written.add(entry)) continue;
+				// the first source was used least recently
+				Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis() - (sources.length - i) * 60_000L));
+				totalSize += Files.size(entry);
+			}
+		}
+		assertEquals(sources.length, written.size());
+		
+		new ParseCache(directory, totalSize / 2).evict();
+		
+		ParseCache remaining = new ParseCache(directory, ParseCache.defaultMaxSize);
+		for(int i = 0; i < sources.length / 2; i++)
+			assertNull("Entry " + i + " should have been evicted", remaining.get(sources[i]));
+		assertNotNull(remaining.get(sources[sources.length - 1]));
+	}
+	
+	private static Module parse(byte[] bytes) {
+		return new Parser(new Scanner(bytes)).parse();
+	}
+	
+	private static List<Path> entries(Path directory) throws IOException {
+		try(Stream<Path> files = Files.walk(directory)) {
+			return files.filter(p -> p.toString().endsWith(".ast")).collect(Collectors.toList());
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.Pipeline;
+import mavlc.PipelineStatistics;
+import mavlc.parsing.Scanner;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PipelineStatisticsTest {
+	
+	private static final Path testcases = Paths.get("src", "test", "testcases");
+	
+	@Test
+	public void recordsEachStage() throws IOException {
+		Path sourcePath = testcases.resolve(Paths.get("trees", "p2_public", "task_1", "compound_4.ctx.mavl"));
+		Pipeline pipeline = new Pipeline();
+		pipeline.setStatistics(new PipelineStatistics());
+		assertTrue(pipeline.parseProgram(sourcePath));
+		assertTrue(pipeline.analyzeProgram());
+		
+		List<PipelineStatistics.Entry> entries = pipeline.getStatistics().getEntries();
+		assertEquals(2, entries.size());
+		PipelineStatistics.Entry syntax = entries.get(0);
+		PipelineStatistics.Entry context = entries.get(1);
+		assertEquals(Pipeline.Stage.syntax, syntax.stage);
+		assertEquals(Pipeline.Stage.context, context.stage);
+		
+		assertEquals(new Scanner(sourcePath.toFile()).scan().size(), syntax.tokens);
+		assertEquals(-1, context.tokens);
+		assertTrue(syntax.nodes > 0);
+		assertEquals(syntax.nodes, context.nodes);
+		for(PipelineStatistics.Entry entry : entries) {
+			assertTrue(entry.success);
+			assertTrue(entry.wallTime > 0);
+			assertTrue(entry.cpuTime == -1 || entry.cpuTime >= 0);
+			assertTrue(entry.allocatedBytes == -1 || entry.allocatedBytes > 0);
+		}
+	}
+	
+	@Test
+	public void recordsFailedStage() {
+		Path sourcePath = testcases.resolve(Paths.get("errors", "p2_public", "task_1", "compound_err_2.ctx.mavl"));
+		Pipeline pipeline = new Pipeline();
+		pipeline.setStatistics(new PipelineStatistics());
+		assertTrue(pipeline.parseProgram(sourcePath));
+		assertFalse(pipeline.analyzeProgram());
+		
+		PipelineStatistics.Entry context = pipeline.getStatistics().getEntries().get(1);
+		assertFalse(context.success);
+		assertEquals(-1, context.nodes);
+		
+		StringBuilder sb = new StringBuilder();
+		context.appendJson(sb);
+		assertTrue(sb.toString(), sb.toString().startsWith("{\"stage\": \"context\", \"success\": false, "));
+		assertTrue(sb.toString(), sb.toString().endsWith(", \"tokens\": null, \"nodes\": null}"));
+	}
+	
+	@Test
+	public void disabledByDefault() {
+		Pipeline pipeline = new Pipeline();
+		assertTrue(pipeline.parseProgram(testcases.resolve(Paths.get("trees", "p2_public", "task_1", "compound_4.ctx.mavl"))));
+		assertNull(pipeline.getStatistics());
+	}
+}
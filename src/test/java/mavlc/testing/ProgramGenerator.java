@@ -0,0 +1,663 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.errors.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates synthetic, type-correct MAVL modules for benchmarks and scaling tests.
+ * The output only depends on the seed and the size parameters.
+ * <br>
+ * Each function takes the same parameters and may call functions with a lower index,
+ * main calls every function once. All vectors and matrices have the same size, so
+ * structure operations are always well-typed, and element indices are either constants
+ * or counters of enclosing for loops, so they stay within bounds.
+ * <br>
+ * With {@link #setInjectedError(InjectedError)}, a single erroneous statement is placed
+ * at a random position, all other code stays valid.
+ */
+public class ProgramGenerator {
+	
+	/**
+	 * The kinds of errors that can be injected, each with the error that the compiler is expected to report.
+	 */
+	public enum InjectedError {
+		none(null),
+		syntax(SyntaxError.class),
+		undeclaredReference(UndeclaredReferenceError.class),
+		type(TypeError.class),
+		constantAssignment(ConstantAssignmentError.class),
+		inapplicableOperation(InapplicableOperationError.class),
+		structureDimension(StructureDimensionError.class),
+		duplicateCase(DuplicateCaseError.class),
+		argumentCount(ArgumentCountError.class);
+		
+		public final Class<? extends CompilationError> errorClass;
+		
+		InjectedError(Class<? extends CompilationError> errorClass) {
+			this.errorClass = errorClass;
+		}
+	}
+	
+	/** The value types used by generated programs. Records have rank -1 and refer to their declaration. */
+	private static final class Kind {
+		final String element;
+		final int rank;
+		final List<Variable> elements;
+		
+		Kind(String element, int rank) {
+			this.element = element;
+			this.rank = rank;
+			this.elements = null;
+		}
+		
+		Kind(String name, List<Variable> elements) {
+			this.element = name;
+			this.rank = -1;
+			this.elements = elements;
+		}
+	}
+	
+	private static final Kind intKind = new Kind("int", 0);
+	private static final Kind floatKind = new Kind("float", 0);
+	private static final Kind boolKind = new Kind("bool", 0);
+	private static final Kind intVectorKind = new Kind("int", 1);
+	private static final Kind floatVectorKind = new Kind("float", 1);
+	private static final Kind intMatrixKind = new Kind("int", 2);
+	private static final Kind floatMatrixKind = new Kind("float", 2);
+	
+	private static final Kind[] numericKinds = {intKind, floatKind};
+	private static final Kind[] memberKinds = {intKind, floatKind, boolKind, intVectorKind, floatVectorKind, intMatrixKind, floatMatrixKind};
+	private static final Kind[] returnKinds = {intKind, floatKind, null};
+	
+	private static final class Variable {
+		final String name;
+		final Kind kind;
+		final boolean assignable;
+		
+		Variable(String name, Kind kind, boolean assignable) {
+			this.name = name;
+			this.kind = kind;
+			this.assignable = assignable;
+		}
+	}
+	
+	private final Random random;
+	
+	private int functionCount = 10;
+	private int recordCount = 2;
+	private int nestingDepth = 2;
+	private int matrixSize = 4;
+	private int statementsPerBlock = 4;
+	private int expressionDepth = 2;
+	private int chainLength = 8;
+	private InjectedError injectedError = InjectedError.none;
+	
+	private StringBuilder out;
+	private int indent;
+	private final List<Kind> records = new ArrayList<>();
+	private final List<Kind> functionKinds = new ArrayList<>();
+	private final List<Variable> variables = new ArrayList<>();
+	private final List<Integer> scopes = new ArrayList<>();
+	private final List<String> indices = new ArrayList<>();
+	private int currentFunction;
+	private int valueCount;
+	private boolean callsAllowed;
+	private int errorFunction;
+	private boolean errorPending;
+	
+	/**
+	 * @param seed The seed of the random number generator, equal seeds and sizes produce equal programs
+	 */
+	public ProgramGenerator(long seed) {
+		random = new Random(seed);
+	}
+	
+	/** @param functionCount The number of functions besides main */
+	public ProgramGenerator setFunctionCount(int functionCount) {
+		this.functionCount = functionCount;
+		return this;
+	}
+	
+	/** @param recordCount The number of record types */
+	public ProgramGenerator setRecordCount(int recordCount) {
+		this.recordCount = recordCount;
+		return this;
+	}
+	
+	/** @param nestingDepth The depth of nested if, for, foreach and switch statements in each function */
+	public ProgramGenerator setNestingDepth(int nestingDepth) {
+		this.nestingDepth = nestingDepth;
+		return this;
+	}
+	
+	/** @param matrixSize The dimension of all vectors and the number of rows and columns of all matrices */
+	public ProgramGenerator setMatrixSize(int matrixSize) {
+		this.matrixSize = matrixSize;
+		return this;
+	}
+	
+	/** @param statementsPerBlock The number of statements in each block */
+	public ProgramGenerator setStatementsPerBlock(int statementsPerBlock) {
+		this.statementsPerBlock = statementsPerBlock;
+		return this;
+	}
+	
+	/** @param expressionDepth The maximum depth of generated expressions */
+	public ProgramGenerator setExpressionDepth(int expressionDepth) {
+		this.expressionDepth = expressionDepth;
+		return this;
+	}
+	
+	/** @param chainLength The number of operands of unparenthesized arithmetic chains, 0 to disable them */
+	public ProgramGenerator setChainLength(int chainLength) {
+		this.chainLength = chainLength;
+		return this;
+	}
+	
+	/** @param injectedError The kind of error placed in one of the functions, or {@link InjectedError#none} */
+	public ProgramGenerator setInjectedError(InjectedError injectedError) {
+		this.injectedError = injectedError;
+		return this;
+	}
+	
+	/**
+	 * @return The source code of a new module
+	 */
+	public String generate() {
+		out = new StringBuilder();
+		indent = 0;
+		records.clear();
+		functionKinds.clear();
+		for(int i = 0; i < recordCount; i++)
+			generateRecord(i);
+		for(int i = 0; i < functionCount; i++)
+			functionKinds.add(returnKinds[random.nextInt(returnKinds.length)]);
+		
+		errorFunction = random.nextInt(functionCount + 1);
+		for(currentFunction = 0; currentFunction < functionCount; currentFunction++)
+			generateFunction();
+		generateMain();
+		return out.toString();
+	}
+	
+	private void generateRecord(int index) {
+		List<Variable> elements = new ArrayList<>();
+		String name = "R" + index;
+		line("record " + name + " {");
+		indent++;
+		int count = 1 + random.nextInt(4);
+		for(int i = 0; i < count; i++) {
+			Variable element = new Variable("e" + i, memberKinds[random.nextInt(memberKinds.length)], random.nextInt(4) != 0);
+			elements.add(element);
+			line((element.assignable ? "var " : "val ") + typeName(element.kind) + " " + element.name + ";");
+		}
+		indent--;
+		line("}");
+		line("");
+		records.add(new Kind(name, elements));
+	}
+	
+	private void generateFunction() {
+		Kind returnKind = functionKinds.get(currentFunction);
+		valueCount = 0;
+		errorPending = injectedError != InjectedError.none && currentFunction == errorFunction;
+		line("function " + (returnKind == null ? "void" : typeName(returnKind)) + " f" + currentFunction +
+				"(int pa, float pb, " + typeName(floatVectorKind) + " pv, " + typeName(intMatrixKind) + " pm) {");
+		indent++;
+		openScope();
+		declare("pa", intKind, true);
+		declare("pb", floatKind, true);
+		declare("pv", floatVectorKind, true);
+		declare("pm", intMatrixKind, true);
+		declareLocals();
+		
+		callsAllowed = true;
+		generateStatements(0);
+		callsAllowed = false;
+		if(errorPending)
+			generateError();
+		if(returnKind != null)
+			line("return " + expression(returnKind, expressionDepth) + ";");
+		
+		closeScope();
+		indent--;
+		line("}");
+		line("");
+	}
+	
+	private void generateMain() {
+		currentFunction = functionCount;
+		valueCount = 0;
+		errorPending = injectedError != InjectedError.none && currentFunction == errorFunction;
+		line("function void main() {");
+		indent++;
+		openScope();
+		declareLocals();
+		for(int i = 0; i < functionCount; i++) {
+			Kind kind = functionKinds.get(i);
+			String call = call(i);
+			if(kind == null) {
+				line(call + ";");
+			} else {
+				String name = "r" + i;
+				line("val " + typeName(kind) + " " + name + " = " + call + ";");
+			}
+		}
+		if(errorPending)
+			generateError();
+		closeScope();
+		indent--;
+		line("}");
+	}
+	
+	/** Declares and initializes the loop counters, one or two variables of each kind and up to two records. */
+	private void declareLocals() {
+		for(int i = 0; i < Math.max(nestingDepth, 2); i++)
+			line("var int c" + i + ";");
+		String[] names = {"i", "x", "q", "vi", "vf", "mi", "mf"};
+		for(int k = 0; k < memberKinds.length; k++) {
+			Kind kind = memberKinds[k];
+			for(int i = 0; i < (kind.rank == 0 ? 2 : 1); i++) {
+				String name = names[k] + i;
+				line("var " + typeName(kind) + " " + name + ";");
+				initialize(name, kind);
+				declare(name, kind, true);
+			}
+		}
+		for(int i = 0; i < Math.min(records.size(), 2); i++) {
+			Kind kind = records.get(random.nextInt(records.size()));
+			String name = "rec" + i;
+			line("var " + typeName(kind) + " " + name + ";");
+			line(name + " = " + recordInit(kind) + ";");
+			declare(name, kind, true);
+		}
+	}
+	
+	private void initialize(String name, Kind kind) {
+		switch(kind.rank) {
+			case 0:
+				line(name + " = " + literal(kind) + ";");
+				break;
+			case 1:
+				line("for(c0 = 0; c0 < " + matrixSize + "; c0 = c0 + 1)");
+				line("\t" + name + "[c0] = " + literal(elementKind(kind)) + ";");
+				break;
+			default:
+				line("for(c0 = 0; c0 < " + matrixSize + "; c0 = c0 + 1)");
+				line("\tfor(c1 = 0; c1 < " + matrixSize + "; c1 = c1 + 1)");
+				line("\t\t" + name + "[c0][c1] = " + literal(elementKind(kind)) + ";");
+		}
+	}
+	
+	private void generateStatements(int depth) {
+		for(int i = 0; i < statementsPerBlock; i++) {
+			// the first statement of each block is nested to reach the requested depth
+			if(depth < nestingDepth && (i == 0 || random.nextInt(4) == 0))
+				generateNestedStatement(depth);
+			else if(errorPending && random.nextInt(4) == 0)
+				generateError();
+			else
+				generateSimpleStatement();
+		}
+	}
+	
+	private void generateNestedStatement(int depth) {
+		boolean calls = callsAllowed;
+		callsAllowed = false;
+		switch(random.nextInt(4)) {
+			case 0:
+				line("if(" + expression(boolKind, expressionDepth) + ")");
+				generateBlock(depth);
+				if(random.nextBoolean()) {
+					line("else");
+					generateBlock(depth);
+				}
+				break;
+			case 1: {
+				String counter = "c" + depth;
+				line("for(" + counter + " = 0; " + counter + " < " + matrixSize + "; " + counter + " = " + counter + " + 1)");
+				indices.add(counter);
+				generateBlock(depth);
+				indices.remove(indices.size() - 1);
+				break;
+			}
+			case 2: {
+				Variable struct = variable(random.nextBoolean() ? floatVectorKind : intMatrixKind);
+				Kind element = elementKind(struct.kind);
+				String iterator = "e" + depth;
+				line("foreach(val " + typeName(element) + " " + iterator + " : " + struct.name + ")");
+				openScope();
+				declare(iterator, element, false);
+				generateBlock(depth);
+				closeScope();
+				break;
+			}
+			default: {
+				line("switch(" + expression(intKind, expressionDepth) + ") {");
+				indent++;
+				int cases = 1 + random.nextInt(3);
+				int label = random.nextInt(3);
+				for(int i = 0; i < cases; i++) {
+					line("case " + label + ":");
+					generateBlock(depth);
+					label += 1 + random.nextInt(3);
+				}
+				if(random.nextBoolean()) {
+					line("default:");
+					generateBlock(depth);
+				}
+				indent--;
+				line("}");
+			}
+		}
+		callsAllowed = calls;
+	}
+	
+	private void generateBlock(int depth) {
+		line("{");
+		indent++;
+		openScope();
+		generateStatements(depth + 1);
+		closeScope();
+		indent--;
+		line("}");
+	}
+	
+	private void generateSimpleStatement() {
+		int choice = random.nextInt(callsAllowed && currentFunction > 0 ? 6 : 5);
+		if(choice == 0) {
+			Kind kind = memberKinds[random.nextInt(memberKinds.length)];
+			String name = "t" + valueCount++;
+			line("val " + typeName(kind) + " " + name + " = " + expression(kind, expressionDepth) + ";");
+			declare(name, kind, false);
+		} else if(choice == 1 && chainLength > 1) {
+			Kind kind = numericKinds[random.nextInt(numericKinds.length)];
+			line(assignableVariable(kind).name + " = " + chain(kind) + ";");
+		} else if(choice == 5) {
+			line(call(random.nextInt(currentFunction)) + ";");
+		} else {
+			Variable target = assignableVariable();
+			if(target.kind.rank < 0) {
+				List<Variable> elements = new ArrayList<>();
+				for(Variable element : target.kind.elements)
+					if(element.assignable) elements.add(element);
+				if(elements.isEmpty() || random.nextBoolean()) {
+					line(target.name + " = " + recordInit(target.kind) + ";");
+				} else {
+					Variable element = elements.get(random.nextInt(elements.size()));
+					line(target.name + "@" + element.name + " = " + expression(element.kind, expressionDepth) + ";");
+				}
+				return;
+			}
+			switch(target.kind.rank == 0 || random.nextBoolean() ? 0 : target.kind.rank) {
+				case 0:
+					line(target.name + " = " + expression(target.kind, expressionDepth) + ";");
+					break;
+				case 1:
+					line(target.name + "[" + index() + "] = " + expression(elementKind(target.kind), expressionDepth) + ";");
+					break;
+				default:
+					line(target.name + "[" + index() + "][" + index() + "] = " + expression(elementKind(target.kind), expressionDepth) + ";");
+			}
+		}
+	}
+	
+	/** Emits a statement that contains the injected error, all other statements stay valid. */
+	private void generateError() {
+		errorPending = false;
+		String function = currentFunction < functionCount ? "f" + currentFunction : "main";
+		switch(injectedError) {
+			case syntax:
+				line("i0 = (i1 + ;");
+				break;
+			case undeclaredReference:
+				line("i0 = undeclared" + valueCount + ";");
+				break;
+			case type:
+				line("i0 = " + literal(floatKind) + ";");
+				break;
+			case constantAssignment: {
+				String name = "t" + valueCount++;
+				line("val int " + name + " = " + literal(intKind) + ";");
+				line(name + " = " + literal(intKind) + ";");
+				break;
+			}
+			case inapplicableOperation:
+				line("i0 = (q0 + " + literal(intKind) + ");");
+				break;
+			case structureDimension: {
+				StringBuilder vector = new StringBuilder("[");
+				for(int i = 0; i <= matrixSize; i++)
+					vector.append(i == 0 ? "" : ", ").append(literal(floatKind));
+				line("x0 = (vf0 .* " + vector.append(']') + ");");
+				break;
+			}
+			case duplicateCase: {
+				int label = random.nextInt(10);
+				line("switch(i0) {");
+				line("\tcase " + label + ": {}");
+				line("\tcase " + label + ": {}");
+				line("}");
+				break;
+			}
+			case argumentCount:
+				line(function + "(" + literal(intKind) + ", " + literal(intKind) + ", " + literal(intKind) + ", " + literal(intKind) + ", " + literal(intKind) + ");");
+				break;
+			default:
+				throw new IllegalStateException("No error to inject");
+		}
+	}
+	
+	private String call(int function) {
+		boolean calls = callsAllowed;
+		callsAllowed = false;
+		String call = "f" + function + "(" + expression(intKind, 1) + ", " + expression(floatKind, 1) + ", " +
+				expression(floatVectorKind, 1) + ", " + expression(intMatrixKind, 1) + ")";
+		callsAllowed = calls;
+		return call;
+	}
+	
+	/** @return A left-associative chain of additions, subtractions and multiplications without parentheses */
+	private String chain(Kind kind) {
+		StringBuilder chain = new StringBuilder(atom(kind));
+		String[] operators = {" + ", " - ", " * "};
+		for(int i = 1; i < chainLength; i++)
+			chain.append(operators[random.nextInt(operators.length)]).append(atom(kind));
+		return chain.toString();
+	}
+	
+	private String recordInit(Kind record) {
+		StringBuilder init = new StringBuilder("@" + record.element + "[");
+		for(int i = 0; i < record.elements.size(); i++)
+			init.append(i == 0 ? "" : ", ").append(expression(record.elements.get(i).kind, 1));
+		return init.append(']').toString();
+	}
+	
+	private String expression(Kind kind, int depth) {
+		if(kind.rank < 0)
+			return random.nextBoolean() ? variable(kind).name : recordInit(kind);
+		if(depth <= 0 || random.nextInt(4) == 0)
+			return atom(kind);
+		int sub = depth - 1;
+		if(random.nextInt(8) == 0) {
+			String select = recordElementSelect(kind);
+			if(select != null) return select;
+		}
+		if(kind == boolKind) {
+			switch(random.nextInt(4)) {
+				case 0: {
+					Kind operand = numericKinds[random.nextInt(numericKinds.length)];
+					String[] comparisons = {"<", ">", "<=", ">=", "==", "!="};
+					return "(" + expression(operand, sub) + " " + comparisons[random.nextInt(comparisons.length)] + " " + expression(operand, sub) + ")";
+				}
+				case 1:
+					return "(" + expression(boolKind, sub) + " & " + expression(boolKind, sub) + ")";
+				case 2:
+					return "(" + expression(boolKind, sub) + " | " + expression(boolKind, sub) + ")";
+				default:
+					return "!(" + expression(boolKind, sub) + ")";
+			}
+		}
+		if(kind.rank == 0) {
+			switch(random.nextInt(callsAllowed ? 10 : 9)) {
+				case 0:
+					return "(" + expression(kind, sub) + " + " + expression(kind, sub) + ")";
+				case 1:
+					return "(" + expression(kind, sub) + " - " + expression(kind, sub) + ")";
+				case 2:
+					return "(" + expression(kind, sub) + " * " + expression(kind, sub) + ")";
+				case 3:
+					return "(" + expression(kind, sub) + " / " + (kind == intKind ? "2" : "2.0") + ")";
+				case 4:
+					return "-(" + expression(kind, sub) + ")";
+				case 5:
+					return "(" + expression(boolKind, sub) + " ? " + expression(kind, sub) + " : " + expression(kind, sub) + ")";
+				case 6:
+					return "(" + expression(vectorKind(kind), sub) + " .* " + expression(vectorKind(kind), sub) + ")";
+				case 7:
+					return variable(vectorKind(kind)).name + "[" + index() + "]";
+				case 8:
+					if(kind == intKind)
+						return random.nextBoolean() ? variable(intMatrixKind).name + ".rows" : variable(floatVectorKind).name + ".dimension";
+					return variable(matrixKind(kind)).name + "[" + index() + "][" + index() + "]";
+				default:
+					return callReturning(kind);
+			}
+		}
+		Kind element = elementKind(kind);
+		switch(random.nextInt(kind.rank == 1 ? 4 : 5)) {
+			case 0:
+				return "(" + expression(kind, sub) + " + " + expression(kind, sub) + ")";
+			case 1:
+				return "(" + expression(kind, sub) + " - " + expression(kind, sub) + ")";
+			case 2:
+				return random.nextBoolean()
+						? "(" + expression(kind, sub) + " * " + expression(element, sub) + ")"
+						: "(" + expression(element, sub) + " * " + expression(kind, sub) + ")";
+			case 3:
+				if(kind.rank == 1)
+					return variable(matrixKind(element)).name + "[" + index() + "]";
+				return "~(" + expression(kind, sub) + ")";
+			default:
+				return "(" + expression(kind, sub) + " # " + expression(kind, sub) + ")";
+		}
+	}
+	
+	/** @return A call to a lower function returning the given kind, or an atom if there is none */
+	private String callReturning(Kind kind) {
+		List<Integer> candidates = new ArrayList<>();
+		for(int i = 0; i < currentFunction; i++)
+			if(functionKinds.get(i) == kind) candidates.add(i);
+		if(candidates.isEmpty()) return atom(kind);
+		return call(candidates.get(random.nextInt(candidates.size())));
+	}
+	
+	/** @return A selection of a record element of the given kind, or null if no record in scope has one */
+	private String recordElementSelect(Kind kind) {
+		List<String> candidates = new ArrayList<>();
+		for(Variable variable : variables) {
+			if(variable.kind.rank >= 0) continue;
+			for(Variable element : variable.kind.elements)
+				if(element.kind == kind) candidates.add(variable.name + "@" + element.name);
+		}
+		return candidates.isEmpty() ? null : candidates.get(random.nextInt(candidates.size()));
+	}
+	
+	private String atom(Kind kind) {
+		if(kind.rank == 0 && random.nextInt(3) == 0)
+			return literal(kind);
+		return variable(kind).name;
+	}
+	
+	private String literal(Kind kind) {
+		if(kind == intKind) return Integer.toString(random.nextInt(10));
+		if(kind == floatKind) return String.format(Locale.ROOT, "%d.%d", random.nextInt(10), random.nextInt(10));
+		return Boolean.toString(random.nextBoolean());
+	}
+	
+	private String index() {
+		if(!indices.isEmpty() && random.nextBoolean())
+			return indices.get(random.nextInt(indices.size()));
+		return Integer.toString(random.nextInt(matrixSize));
+	}
+	
+	private Variable variable(Kind kind) {
+		List<Variable> candidates = new ArrayList<>();
+		for(Variable variable : variables)
+			if(variable.kind == kind) candidates.add(variable);
+		return candidates.get(random.nextInt(candidates.size()));
+	}
+	
+	private Variable assignableVariable() {
+		Variable variable;
+		do {
+			variable = variables.get(random.nextInt(variables.size()));
+		} while(!variable.assignable);
+		return variable;
+	}
+	
+	private Variable assignableVariable(Kind kind) {
+		Variable variable;
+		do {
+			variable = variable(kind);
+		} while(!variable.assignable);
+		return variable;
+	}
+	
+	private void declare(String name, Kind kind, boolean assignable) {
+		variables.add(new Variable(name, kind, assignable));
+	}
+	
+	private void openScope() {
+		scopes.add(variables.size());
+	}
+	
+	private void closeScope() {
+		int size = scopes.remove(scopes.size() - 1);
+		variables.subList(size, variables.size()).clear();
+	}
+	
+	private String typeName(Kind kind) {
+		switch(kind.rank) {
+			case -1:
+			case 0:
+				return kind.element;
+			case 1:
+				return "vector<" + kind.element + ">[" + matrixSize + "]";
+			default:
+				return "matrix<" + kind.element + ">[" + matrixSize + "][" + matrixSize + "]";
+		}
+	}
+	
+	private static Kind elementKind(Kind kind) {
+		return kind.element.equals("int") ? intKind : floatKind;
+	}
+	
+	private static Kind vectorKind(Kind kind) {
+		return kind.element.equals("int") ? intVectorKind : floatVectorKind;
+	}
+	
+	private static Kind matrixKind(Kind kind) {
+		return kind.element.equals("int") ? intMatrixKind : floatMatrixKind;
+	}
+	
+	private void line(String line) {
+		for(int i = 0; i < indent; i++) out.append('\t');
+		out.append(line).append('\n');
+	}
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.Pipeline;
+import mavlc.context_analysis.ContextualAnalysis;
+import mavlc.context_analysis.ModuleEnvironment;
+import mavlc.parsing.Parser;
+import mavlc.parsing.Scanner;
+import mavlc.parsing.TokenStore;
+import mavlc.syntax.module.Module;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the front end on generated programs of increasing size and checks that
+ * the time and memory spent per token do not grow with the size of the program.
+ */
+public class ScalingTest {
+	
+	private static final int smallSize = 32;
+	private static final int largeSize = 128;
+	private static final int repetitions = 5;
+	
+	/** Time is measured on a shared machine, so only a gross deviation from linear growth fails the test. */
+	private static final double maxTimeRatio = 3.0;
+	/** Growable arrays double their capacity, so the allocation per token varies by up to a factor of two. */
+	private static final double maxAllocationRatio = 2.0;
+	
+	private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/** The best time and the allocated bytes of one stage. */
+	private static class Cost {
+		long time = Long.MAX_VALUE;
+		long allocated = Long.MAX_VALUE;
+	}
+	
+	private static class Costs {
+		final int tokens;
+		final Cost scan = new Cost(), parse = new Cost(), analyze = new Cost();
+		
+		Costs(int tokens) {
+			this.tokens = tokens;
+		}
+	}
+	
+	@Test
+	public void frontendScalesLinearly() {
+		byte[] small = generate(smallSize);
+		byte[] large = generate(largeSize);
+		measure(large); // warm up
+		Costs smallCosts = measure(small);
+		Costs largeCosts = measure(large);
+		
+		assertLinear("scanner", smallCosts.scan, smallCosts.tokens, largeCosts.scan, largeCosts.tokens);
+		assertLinear("parser", smallCosts.parse, smallCosts.tokens, largeCosts.parse, largeCosts.tokens);
+		assertLinear("contextual analysis", smallCosts.analyze, smallCosts.tokens, largeCosts.analyze, largeCosts.tokens);
+	}
+	
+	@Test
+	public void generatedProgramsAreValidAndReproducible() {
+		for(long seed = 0; seed < 20; seed++) {
+			String source = new ProgramGenerator(seed).setNestingDepth(3).generate();
+			assertEquals(source, new ProgramGenerator(seed).setNestingDepth(3).generate());
+			Module module = new Parser(new Scanner(source)).parse();
+			module.accept(new ContextualAnalysis(new ModuleEnvironment()));
+		}
+	}
+	
+	@Test
+	public void injectedErrorsAreReported() throws IOException {
+		for(ProgramGenerator.InjectedError error : ProgramGenerator.InjectedError.values()) {
+			if(error == ProgramGenerator.InjectedError.none) continue;
+			for(long seed = 0; seed < 5; seed++) {
+				Path sourcePath = folder.newFile(error + "_" + seed + ".mavl").toPath();
+				Files.write(sourcePath, new ProgramGenerator(seed).setInjectedError(error).generate().getBytes(StandardCharsets.UTF_8));
+				
+				Pipeline pipeline = new Pipeline();
+				boolean success = pipeline.parseProgram(sourcePath) && pipeline.analyzeProgram();
+				assertFalse(error + " with seed " + seed, success);
+				assertEquals(error + " with seed " + seed, error.errorClass, pipeline.getError().getClass());
+			}
+		}
+	}
+	
+	private static byte[] generate(int functions) {
+		return new ProgramGenerator(42).setFunctionCount(functions).setNestingDepth(3).generate().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	private static Costs measure(byte[] source) {
+		TokenStore tokens = new Scanner(source).scanCompact();
+		Costs costs = new Costs(tokens.size());
+		for(int i = 0; i < repetitions; i++) {
+			measure(costs.scan, () -> new Scanner(source).scanCompact());
+			measure(costs.parse, () -> new Parser(tokens).parse());
+			Module module = new Parser(tokens).parse();
+			measure(costs.analyze, () -> {
+				module.accept(new ContextualAnalysis(new ModuleEnvironment()));
+				return module;
+			});
+		}
+		return costs;
+	}
+	
+	private static void measure(Cost cost, Supplier<Object> stage) {
+		long threadId = Thread.currentThread().getId();
+		long allocated = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		Object result = stage.get();
+		long time = System.nanoTime() - start;
+		allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+		assertNotNull(result);
+		cost.time = Math.min(cost.time, time);
+		cost.allocated = Math.min(cost.allocated, allocated);
+	}
+	
+	private static void assertLinear(String stage, Cost small, int smallTokens, Cost large, int largeTokens) {
+		double timeRatio = ((double) large.time / largeTokens) / ((double) small.time / smallTokens);
+		double allocationRatio = ((double) large.allocated / largeTokens) / ((double) small.allocated / smallTokens);
+		String message = String.format(Locale.ROOT, "%s: %d -> %d tokens, %.1f -> %.1f ns and %.1f -> %.1f bytes per token", stage,
+				smallTokens, largeTokens, (double) small.time / smallTokens, (double) large.time / largeTokens,
+				(double) small.allocated / smallTokens, (double) large.allocated / largeTokens);
+		assertTrue(message, timeRatio <= maxTimeRatio);
+		assertTrue(message, allocationRatio <= maxAllocationRatio);
+	}
+}
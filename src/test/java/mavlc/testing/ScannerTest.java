@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.errors.CompilationError;
+import mavlc.parsing.Parser;
+import mavlc.parsing.Scanner;
+import mavlc.parsing.Token;
+import mavlc.parsing.TokenStore;
+import mavlc.syntax.module.Module;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class ScannerTest {
+	
+	private final Path srcFilePath;
+	
+	public ScannerTest(Path srcFilePath, String testName) {
+		this.srcFilePath = srcFilePath;
+	}
+	
+	@Test
+	public void sourcesProduceIdenticalTokens() throws IOException {
+		List<Token> reference;
+		try(InputStream in = new FileInputStream(srcFilePath.toFile())) {
+			reference = new ArrayList<>(new Scanner(in).scan());
+		}
+		byte[] bytes = Files.readAllBytes(srcFilePath);
+		
+		assertTokensEqual(reference, new ArrayList<>(new Scanner(srcFilePath.toFile()).scan()));
+		assertTokensEqual(reference, new ArrayList<>(new Scanner(bytes).scan()));
+		assertTokensEqual(reference, new ArrayList<>(new Scanner(new String(bytes, StandardCharsets.ISO_8859_1)).scan()));
+	}
+	
+	@Test(expected = IOException.class)
+	public void unreadableStreamFails() throws IOException {
+		// the stream fails before the first character of the program has been read
+		new Scanner(new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("Cannot read " + srcFilePath);
+			}
+		});
+	}
+	
+	@Test
+	public void compactStoreMatchesTokenStream() throws IOException {
+		List<Token> reference = new ArrayList<>(new Scanner(srcFilePath.toFile()).scan());
+		TokenStore store = new Scanner(srcFilePath.toFile()).scanCompact();
+		
+		List<Token> materialized = new ArrayList<>(store.size());
+		for(int i = 0; i < store.size(); i++)
+			materialized.add(store.get(i));
+		assertTokensEqual(reference, materialized);
+		
+		Module expected = null, actual = null;
+		CompilationError expectedError = null, actualError = null;
+		try {
+			expected = new Parser(new Scanner(srcFilePath.toFile())).parse();
+		} catch(CompilationError e) {
+			expectedError = e;
+		}
+		try {
+			actual = new Parser(store).parse();
+		} catch(CompilationError e) {
+			actualError = e;
+		}
+		if(expectedError != null) {
+			assertEquals(expectedError.getMessage(), actualError != null ? actualError.getMessage() : null);
+		} else {
+			assertTrue(new AstComparator().compare(actual, expected));
+		}
+	}
+	
+	private static void assertTokensEqual(List<Token> expected, List<Token> actual) {
+		assertEquals("Mismatching token count", expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i), actual.get(i));
+			assertEquals(expected.get(i).sourceLocation, actual.get(i).sourceLocation);
+		}
+	}
+	
+	@Parameters(name = "{1}")
+	public static Collection<Object[]> data() {
+		List<Object[]> testCases = new ArrayList<>(TestUtils.findTestCases(Paths.get("src", "test", "testcases", "trees")));
+		testCases.addAll(TestUtils.findTestCases(Paths.get("src", "test", "testcases", "errors")));
+		return testCases;
+	}
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2019 Embedded Systems and Applications Group
+ * Department of Computer Science, Technische Universitaet Darmstadt,
+ * Hochschulstr. 10, 64289 Darmstadt, Germany.
+ *
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only.
+ * It may not be used for commercial purposes without the
+ * prior written permission of the authors.
+ ******************************************************************************/
+package mavlc.testing;
+
+import mavlc.Pipeline;
+import mavlc.execution.Temporaries;
+import mavlc.optimization.AstWalker;
+import mavlc.syntax.expression.BinaryExpression;
+import mavlc.syntax.expression.Expression;
+import mavlc.syntax.expression.UnaryExpression;
+import mavlc.syntax.module.Module;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TemporariesTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * @return The temporaries of main, in the order of their slots.
+	 */
+	private List<String> temporaries(String body) throws IOException {
+		Path sourcePath = folder.newFile().toPath();
+		String source = "function matrix<int>[4][4] f(matrix<int>[4][4] x) {\n\treturn x;\n}\n" +
+				"function int g(int x) {\n\treturn x;\n}\n" +
+				"function void main() {\n" +
+				"\tvar matrix<int>[4][4] a;\n" +
+				"\tvar matrix<int>[4][4] b;\n" +
+				"\tvar vector<int>[4] v;\n" +
+				"\tvar int i;\n" +
+				body +
+				"}\n";
+		Files.write(sourcePath, source.getBytes(StandardCharsets.UTF_8));
+		Pipeline pipeline = new Pipeline();
+		assertTrue(pipeline.parseProgram(sourcePath));
+		assertTrue(pipeline.analyzeProgram());
+		Module module = (Module) pipeline.getAst();
+		Temporaries temporaries = Temporaries.of(module);
+		String[] result = new String[temporaries.count()];
+		// only binary operations and transpositions produce temporaries
+		new AstWalker() {
+			private void record(Expression expression) {
+				if(temporaries.slot(expression) >= 0) result[temporaries.slot(expression)] = expression.dump();
+			}
+			
+			@Override
+			public Void visitBinaryExpression(BinaryExpression binaryExpression, Void obj) {
+				record(binaryExpression);
+				return super.visitBinaryExpression(binaryExpression, obj);
+			}
+			
+			@Override
+			public Void visitUnaryExpression(UnaryExpression unaryExpression, Void obj) {
+				record(unaryExpression);
+				return super.visitUnaryExpression(unaryExpression, obj);
+			}
+			
+			{ walk(module.functions.get(2)); }
+		};
+		return Arrays.asList(result);
+	}
+	
+	@Test
+	public void operandsOfStructureOperations() throws IOException {
+		assertEquals(Arrays.asList("a # b", "~b", "v * 2", "a + b", "(a - b) * 3", "a - b"), temporaries("" +
+				"\tval matrix<int>[4][4] c = (a # b) + ~b;\n" +
+				"\ti = (v * 2) .* v;\n" +
+				"\ti = (a + b)[1][2] + (((a - b) * 3){0:1:1}{0:1:1})[0][0];\n"));
+	}
+	
+	@Test
+	public void escapingValues() throws IOException {
+		assertEquals(Collections.emptyList(), temporaries("" +
+				"\tvar matrix<int>[4][4] c;\n" +
+				"\tc = a + b;\n" +
+				"\tc = f(a # b);\n" +
+				"\tc = i > 0 ? a - b : a;\n" +
+				"\tforeach(val int x : a * b) i = i + x;\n"));
+	}
+	
+	@Test
+	public void callsBetweenWriteAndRead() throws IOException {
+		// f might overwrite the buffer of the left operand, which is evaluated first
+		assertEquals(Arrays.asList("~f(b)"), temporaries("" +
+				"\tval matrix<int>[4][4] c = (a # b) + ~f(b);\n" +
+				"\ti = (a + b)[g(1)][0];\n"));
+	}
+}